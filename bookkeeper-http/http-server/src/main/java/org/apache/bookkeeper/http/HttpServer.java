@@ -81,6 +81,7 @@ public interface HttpServer {
         EXPAND_STORAGE,
         GC,
         GC_DETAILS,
+        TIERING_DETAILS,
         BOOKIE_STATE,
         BOOKIE_STATE_READONLY,
         BOOKIE_IS_READY,
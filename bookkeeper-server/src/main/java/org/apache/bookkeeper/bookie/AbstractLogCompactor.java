@@ -23,6 +23,14 @@ package org.apache.bookkeeper.bookie;
 
 import com.google.common.util.concurrent.RateLimiter;
 
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.bookkeeper.bookie.EntryLogger.StoredEntryScanner;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 
 /**
@@ -32,6 +40,10 @@ public abstract class AbstractLogCompactor {
 
     protected final ServerConfiguration conf;
     protected final Throttler throttler;
+    private final boolean clusteredByLedger;
+
+    private static final Comparator<EntryLocation> LEDGER_ORDER =
+            Comparator.comparingLong(EntryLocation::getLedger).thenComparingLong(EntryLocation::getEntry);
 
     interface LogRemovalListener {
         void removeEntryLog(long logToRemove);
@@ -40,8 +52,25 @@ public abstract class AbstractLogCompactor {
     protected final LogRemovalListener logRemovalListener;
 
     public AbstractLogCompactor(ServerConfiguration conf, LogRemovalListener logRemovalListener) {
+        this(conf, logRemovalListener, (CompactionRateLimiter) null);
+    }
+
+    /**
+     * @param sharedRateLimiter if not null, the compaction rate is limited by this shared budget instead of the
+     *                          compaction rate configured for each compactor
+     */
+    public AbstractLogCompactor(ServerConfiguration conf, LogRemovalListener logRemovalListener,
+                                CompactionRateLimiter sharedRateLimiter) {
+        this(conf, logRemovalListener, new Throttler(conf, sharedRateLimiter));
+    }
+
+    /**
+     * @param throttler throttler of the compaction, which can be shared by compactors running concurrently
+     */
+    AbstractLogCompactor(ServerConfiguration conf, LogRemovalListener logRemovalListener, Throttler throttler) {
         this.conf = conf;
-        this.throttler = new Throttler(conf);
+        this.throttler = throttler;
+        this.clusteredByLedger = conf.isCompactionClusteredByLedger();
         this.logRemovalListener = logRemovalListener;
     }
 
@@ -57,18 +86,70 @@ public abstract class AbstractLogCompactor {
      */
     public void cleanUpAndRecover() {}
 
+    /**
+     * Scan the entries of an entry log to compact it. The entries are passed to the scanner as they are stored, so
+     * that the compressed entries are copied as is.
+     *
+     * <p>When the compaction is clustered by ledger, the locations of the accepted entries are collected first and
+     * the entries are then read again, and passed to the scanner, sorted by ledger id and entry id. The compacted
+     * entries of each ledger are thus written back contiguously, no matter how they were interleaved in the entry
+     * log.
+     */
+    protected void scanEntryLog(EntryLogger entryLogger, long entryLogId, StoredEntryScanner scanner)
+            throws IOException {
+        if (!clusteredByLedger) {
+            entryLogger.scanStoredEntries(entryLogId, scanner);
+            return;
+        }
+
+        List<EntryLocation> locations = new ArrayList<>();
+        entryLogger.scanStoredEntries(entryLogId, new StoredEntryScanner() {
+            @Override
+            public boolean accept(long ledgerId) {
+                return scanner.accept(ledgerId);
+            }
+
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry, boolean compressed) {
+                long entryId = entry.getLong(entry.readerIndex() + 8);
+                locations.add(new EntryLocation(ledgerId, entryId, (entryLogId << 32L) | (offset + 4)));
+            }
+        });
+
+        // The sort is stable: if an entry was added more than once, the last copy is still processed last
+        locations.sort(LEDGER_ORDER);
+
+        for (EntryLocation location : locations) {
+            ByteBuf stored = entryLogger.readStoredEntry(location.ledger, location.entry, location.location);
+            try {
+                int sizeHeader = stored.readInt();
+                scanner.process(location.ledger, (location.location & 0xffffffffL) - 4, stored,
+                        EntryLogCompression.isCompressed(sizeHeader));
+            } finally {
+                stored.release();
+            }
+        }
+    }
+
     static class Throttler {
         private final RateLimiter rateLimiter;
         private final boolean isThrottleByBytes;
+        private final CompactionRateLimiter sharedRateLimiter;
 
-        Throttler(ServerConfiguration conf) {
+        Throttler(ServerConfiguration conf, CompactionRateLimiter sharedRateLimiter) {
             this.isThrottleByBytes  = conf.getIsThrottleByBytes();
             this.rateLimiter = RateLimiter.create(this.isThrottleByBytes
                 ? conf.getCompactionRateByBytes() : conf.getCompactionRateByEntries());
+            this.sharedRateLimiter = sharedRateLimiter;
         }
 
         // acquire. if bybytes: bytes of this entry; if byentries: 1.
         void acquire(int permits) {
+            if (sharedRateLimiter != null) {
+                // The shared budget is always in bytes
+                sharedRateLimiter.acquire(permits);
+                return;
+            }
             rateLimiter.acquire(this.isThrottleByBytes ? permits : 1);
         }
     }
@@ -109,12 +109,22 @@ public interface BookKeeperServerStats {
     String JOURNAL_FORCE_WRITE_LATENCY = "JOURNAL_FORCE_WRITE_LATENCY";
     String JOURNAL_FORCE_WRITE_BATCH_ENTRIES = "JOURNAL_FORCE_WRITE_BATCH_ENTRIES";
     String JOURNAL_FORCE_WRITE_BATCH_BYTES = "JOURNAL_FORCE_WRITE_BATCH_BYTES";
+    String JOURNAL_WRITE_SYSCALL_BYTES = "JOURNAL_WRITE_SYSCALL_BYTES";
+    String JOURNAL_FILE_POOL_SIZE = "JOURNAL_FILE_POOL_SIZE";
+    String JOURNAL_FILE_POOL_HITS = "JOURNAL_FILE_POOL_HITS";
+    String JOURNAL_FILE_POOL_MISSES = "JOURNAL_FILE_POOL_MISSES";
+    String JOURNAL_GROUP_COMMIT_WAIT = "JOURNAL_GROUP_COMMIT_WAIT";
+    String JOURNAL_GROUP_COMMIT_BATCH_BYTES = "JOURNAL_GROUP_COMMIT_BATCH_BYTES";
     String JOURNAL_FLUSH_LATENCY = "JOURNAL_FLUSH_LATENCY";
     String JOURNAL_QUEUE_LATENCY = "JOURNAL_QUEUE_LATENCY";
     String JOURNAL_PROCESS_TIME_LATENCY = "JOURNAL_PROCESS_TIME_LATENCY";
     String JOURNAL_CREATION_LATENCY = "JOURNAL_CREATION_LATENCY";
     String JOURNAL_MEMORY_MAX = "JOURNAL_MEMORY_MAX";
     String JOURNAL_MEMORY_USED = "JOURNAL_MEMORY_USED";
+    String JOURNAL_REPLAY_ENTRIES = "JOURNAL_REPLAY_ENTRIES";
+    String JOURNAL_REPLAY_BYTES = "JOURNAL_REPLAY_BYTES";
+    String JOURNAL_REPLAY_ENTRIES_PER_SECOND = "JOURNAL_REPLAY_ENTRIES_PER_SECOND";
+    String JOURNAL_REPLAY_BYTES_PER_SECOND = "JOURNAL_REPLAY_BYTES_PER_SECOND";
 
     // Ledger Storage Stats
     String STORAGE_GET_OFFSET = "STORAGE_GET_OFFSET";
@@ -126,6 +136,9 @@ public interface BookKeeperServerStats {
 
     // Ledger Cache Stats
     String LEDGER_CACHE_READ_PAGE = "LEDGER_CACHE_READ_PAGE";
+    String INDEX_FILE_OPEN = "INDEX_FILE_OPEN";
+    String INDEX_FILE_SYNC = "INDEX_FILE_SYNC";
+    String INDEX_FLUSH = "INDEX_FLUSH";
     // SkipList Stats
     String SKIP_LIST_GET_ENTRY = "SKIP_LIST_GET_ENTRY";
     String SKIP_LIST_PUT_ENTRY = "SKIP_LIST_PUT_ENTRY";
@@ -146,12 +159,22 @@ public interface BookKeeperServerStats {
     String ACTIVE_ENTRY_LOG_SPACE_BYTES = "ACTIVE_ENTRY_LOG_SPACE_BYTES";
     String RECLAIMED_COMPACTION_SPACE_BYTES = "RECLAIMED_COMPACTION_SPACE_BYTES";
     String RECLAIMED_DELETION_SPACE_BYTES = "RECLAIMED_DELETION_SPACE_BYTES";
+    String RECLAIMED_COMPACTION_LOGICAL_BYTES = "RECLAIMED_COMPACTION_LOGICAL_BYTES";
+    String RECLAIMED_DELETION_LOGICAL_BYTES = "RECLAIMED_DELETION_LOGICAL_BYTES";
     String THREAD_RUNTIME = "THREAD_RUNTIME";
     String MAJOR_COMPACTION_COUNT = "MAJOR_COMPACTION_COUNT";
     String MINOR_COMPACTION_COUNT = "MINOR_COMPACTION_COUNT";
     String ACTIVE_LEDGER_COUNT = "ACTIVE_LEDGER_COUNT";
     String DELETED_LEDGER_COUNT = "DELETED_LEDGER_COUNT";
 
+    // Entry Log Tiering Related Counters
+    String DEMOTED_ENTRY_LOG_COUNT = "DEMOTED_ENTRY_LOG_COUNT";
+    String DEMOTED_ENTRY_LOG_BYTES = "DEMOTED_ENTRY_LOG_BYTES";
+    String PROMOTED_ENTRY_LOG_COUNT = "PROMOTED_ENTRY_LOG_COUNT";
+    String PROMOTED_ENTRY_LOG_BYTES = "PROMOTED_ENTRY_LOG_BYTES";
+    String CAPACITY_TIER_ENTRY_LOG_COUNT = "CAPACITY_TIER_ENTRY_LOG_COUNT";
+    String CAPACITY_TIER_ENTRY_LOG_BYTES = "CAPACITY_TIER_ENTRY_LOG_BYTES";
+
     // Index Related Counters
     String INDEX_INMEM_ILLEGAL_STATE_RESET = "INDEX_INMEM_ILLEGAL_STATE_RESET";
     String INDEX_INMEM_ILLEGAL_STATE_DELETE = "INDEX_INMEM_ILLEGAL_STATE_DELETE";
@@ -182,6 +205,7 @@ public interface BookKeeperServerStats {
     // LedgerDirs Stats
     String LD_LEDGER_SCOPE = "ledger";
     String LD_INDEX_SCOPE = "index";
+    String LD_CAPACITY_TIER_SCOPE = "capacity_tier";
     String LD_WRITABLE_DIRS = "writable_dirs";
 
     // EntryLogManagerForEntryLogPerLedger Stats
@@ -191,4 +215,7 @@ public interface BookKeeperServerStats {
     String NUM_OF_WRITE_LEDGERS_REMOVED_CACHE_MAXSIZE = "NUM_OF_WRITE_LEDGERS_REMOVED_CACHE_MAXSIZE";
     String NUM_LEDGERS_HAVING_MULTIPLE_ENTRYLOGS = "NUM_LEDGERS_HAVING_MULTIPLE_ENTRYLOGS";
     String ENTRYLOGS_PER_LEDGER = "ENTRYLOGS_PER_LEDGER";
+    String NUM_OF_WRITE_LEDGERS_PARKED = "NUM_OF_WRITE_LEDGERS_PARKED";
+    String NUM_OF_WRITE_LEDGERS_UNPARKED = "NUM_OF_WRITE_LEDGERS_UNPARKED";
+    String ENTRYLOGS_WRITE_BUFFER_BYTES = "ENTRYLOGS_WRITE_BUFFER_BYTES";
 }
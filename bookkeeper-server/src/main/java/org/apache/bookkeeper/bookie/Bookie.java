@@ -23,7 +23,12 @@ package org.apache.bookkeeper.bookie;
 
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_MEMORY_MAX;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_MEMORY_USED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_BYTES_PER_SECOND;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_ENTRIES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_ENTRIES_PER_SECOND;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LD_CAPACITY_TIER_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LD_INDEX_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LD_LEDGER_SCOPE;
 
@@ -50,6 +55,7 @@ import java.nio.file.FileStore;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -59,6 +65,7 @@ import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -134,6 +141,9 @@ public class Bookie extends BookieCriticalThread {
     protected final Supplier<BookieServiceInfo> bookieServiceInfoProvider;
     private final LedgerDirsManager indexDirsManager;
     LedgerDirsMonitor dirsMonitor;
+    // Null when the bookie has no capacity tier
+    private final LedgerDirsManager capacityTierDirsManager;
+    private LedgerDirsMonitor capacityTierDirsMonitor;
 
     // Registration Manager for managing registration
     protected final MetadataBookieDriver metadataDriver;
@@ -142,6 +152,8 @@ public class Bookie extends BookieCriticalThread {
 
     private final ConcurrentLongHashMap<byte[]> masterKeyCache = new ConcurrentLongHashMap<>();
 
+    private final JournalReplayProgress journalReplayProgress = new JournalReplayProgress();
+
     protected StateManager stateManager;
 
     // Expose Stats
@@ -164,6 +176,31 @@ public class Bookie extends BookieCriticalThread {
     )
     private final Gauge<Long> journalMemoryUsedStats;
 
+    // The http service only starts once the journals are replayed, so the replay progress is exposed as gauges
+    @StatsDoc(
+            name = JOURNAL_REPLAY_ENTRIES,
+            help = "The number of journal records replayed at startup"
+    )
+    private final Gauge<Long> journalReplayEntriesStats;
+
+    @StatsDoc(
+            name = JOURNAL_REPLAY_BYTES,
+            help = "The number of bytes of journal records replayed at startup"
+    )
+    private final Gauge<Long> journalReplayBytesStats;
+
+    @StatsDoc(
+            name = JOURNAL_REPLAY_ENTRIES_PER_SECOND,
+            help = "The number of journal records replayed per second at startup"
+    )
+    private final Gauge<Long> journalReplayEntriesRateStats;
+
+    @StatsDoc(
+            name = JOURNAL_REPLAY_BYTES_PER_SECOND,
+            help = "The number of bytes of journal records replayed per second at startup"
+    )
+    private final Gauge<Long> journalReplayBytesRateStats;
+
     /**
      * Exception is thrown when no such a ledger is found in this bookie.
      */
@@ -258,6 +295,9 @@ public class Bookie extends BookieCriticalThread {
         if (indexDirsManager != ledgerDirsManager) {
             allLedgerDirs.addAll(indexDirsManager.getAllLedgerDirs());
         }
+        if (capacityTierDirsManager != null) {
+            allLedgerDirs.addAll(capacityTierDirsManager.getAllLedgerDirs());
+        }
         if (metadataDriver == null) { // exists only for testing, just make sure directories are correct
 
             for (File journalDirectory : journalDirectories) {
@@ -723,6 +763,8 @@ public class Bookie extends BookieCriticalThread {
         this.ledgerDirsManager = createLedgerDirsManager(conf, diskChecker, statsLogger.scope(LD_LEDGER_SCOPE));
         this.indexDirsManager = createIndexDirsManager(conf, diskChecker, statsLogger.scope(LD_INDEX_SCOPE),
                                                        this.ledgerDirsManager);
+        this.capacityTierDirsManager = createCapacityTierDirsManager(conf, diskChecker,
+                statsLogger.scope(LD_CAPACITY_TIER_SCOPE));
         this.writeDataToJournal = conf.getJournalWriteData();
         this.allocator = allocator;
 
@@ -764,6 +806,17 @@ public class Bookie extends BookieCriticalThread {
                 this.stateManager.transitionToReadOnlyMode();
             }
         }
+        // The capacity tier dirs have their own monitor: when they're full, the entry logs are no longer moved there,
+        // but the bookie stays writable
+        if (capacityTierDirsManager != null) {
+            this.capacityTierDirsMonitor = new LedgerDirsMonitor(conf, diskChecker,
+                    Collections.singletonList(capacityTierDirsManager));
+            try {
+                this.capacityTierDirsMonitor.init();
+            } catch (NoWritableLedgerDirException nle) {
+                LOG.warn("All the capacity tier dirs are full");
+            }
+        }
 
         // instantiate the journals
         journals = Lists.newArrayList();
@@ -862,6 +915,30 @@ public class Bookie extends BookieCriticalThread {
             }
         };
         statsLogger.scope(JOURNAL_SCOPE).registerGauge(JOURNAL_MEMORY_USED, journalMemoryUsedStats);
+
+        journalReplayEntriesStats = journalReplayGauge(journalReplayProgress::getReplayedEntries);
+        statsLogger.scope(JOURNAL_SCOPE).registerGauge(JOURNAL_REPLAY_ENTRIES, journalReplayEntriesStats);
+        journalReplayBytesStats = journalReplayGauge(journalReplayProgress::getReplayedBytes);
+        statsLogger.scope(JOURNAL_SCOPE).registerGauge(JOURNAL_REPLAY_BYTES, journalReplayBytesStats);
+        journalReplayEntriesRateStats = journalReplayGauge(journalReplayProgress::getEntriesPerSecond);
+        statsLogger.scope(JOURNAL_SCOPE).registerGauge(JOURNAL_REPLAY_ENTRIES_PER_SECOND,
+                journalReplayEntriesRateStats);
+        journalReplayBytesRateStats = journalReplayGauge(journalReplayProgress::getBytesPerSecond);
+        statsLogger.scope(JOURNAL_SCOPE).registerGauge(JOURNAL_REPLAY_BYTES_PER_SECOND, journalReplayBytesRateStats);
+    }
+
+    private static Gauge<Long> journalReplayGauge(LongSupplier sample) {
+        return new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return sample.getAsLong();
+            }
+        };
     }
 
     StateManager initializeStateManager() throws IOException {
@@ -957,22 +1034,37 @@ public class Bookie extends BookieCriticalThread {
             }
         };
 
-        for (Journal journal : journals) {
-            replay(journal, scanner);
+        journalReplayProgress.start();
+        try {
+            if (conf.getJournalReplayThreads() > 0) {
+                new ParallelJournalReplay(scanner, conf.getJournalReplayThreads(), journalReplayProgress)
+                        .replay(journals);
+            } else {
+                JournalScanner countingScanner = (journalVersion, offset, recBuff) -> {
+                    int len = recBuff.remaining();
+                    scanner.process(journalVersion, offset, recBuff);
+                    journalReplayProgress.recordReplayed(len);
+                };
+                for (Journal journal : journals) {
+                    replay(journal, countingScanner);
+                }
+            }
+        } finally {
+            journalReplayProgress.finish();
         }
         long elapsedTs = System.currentTimeMillis() - startTs;
-        LOG.info("Finished replaying journal in {} ms.", elapsedTs);
+        LOG.info("Finished replaying journal in {} ms: replayed {}.", elapsedTs, journalReplayProgress);
     }
 
     /**
-     * Replay journal files and updates journal's in-memory lastLogMark object.
+     * List the journal files to replay, from the file of the last log mark of the journal.
      *
      * @param journal Journal object corresponding to a journalDir
-     * @param scanner Scanner to process replayed entries.
-     * @throws IOException
+     * @param markedLog last log mark of the journal
+     * @return the ids of the journal files to replay
+     * @throws IOException if the journal file of the last log mark is missing
      */
-    private void replay(Journal journal, JournalScanner scanner) throws IOException {
-        final LogMark markedLog = journal.getLastLogMark().getCurMark();
+    static List<Long> listJournalsToReplay(Journal journal, LogMark markedLog) throws IOException {
         List<Long> logs = Journal.listJournalIds(journal.getJournalDirectory(), journalId ->
             journalId >= markedLog.getLogFileId());
         // last log mark may be missed due to no sync up before
@@ -982,6 +1074,19 @@ public class Bookie extends BookieCriticalThread {
                 throw new IOException("Recovery log " + markedLog.getLogFileId() + " is missing");
             }
         }
+        return logs;
+    }
+
+    /**
+     * Replay journal files and updates journal's in-memory lastLogMark object.
+     *
+     * @param journal Journal object corresponding to a journalDir
+     * @param scanner Scanner to process replayed entries.
+     * @throws IOException
+     */
+    private void replay(Journal journal, JournalScanner scanner) throws IOException {
+        final LogMark markedLog = journal.getLastLogMark().getCurMark();
+        List<Long> logs = listJournalsToReplay(journal, markedLog);
 
         // TODO: When reading in the journal logs that need to be synced, we
         // should use BufferedChannels instead to minimize the amount of
@@ -1009,6 +1114,9 @@ public class Bookie extends BookieCriticalThread {
         }
         //Start DiskChecker thread
         dirsMonitor.start();
+        if (capacityTierDirsMonitor != null) {
+            capacityTierDirsMonitor.start();
+        }
 
         // replay journals
         try {
@@ -1070,6 +1178,9 @@ public class Bookie extends BookieCriticalThread {
         if (indexDirsManager != ledgerDirsManager) {
             indexDirsManager.addLedgerDirsListener(getLedgerDirsListener());
         }
+        if (capacityTierDirsManager != null) {
+            capacityTierDirsManager.addLedgerDirsListener(getCapacityTierDirsListener());
+        }
 
         ledgerStorage.start();
 
@@ -1128,6 +1239,33 @@ public class Bookie extends BookieCriticalThread {
         };
     }
 
+    /*
+     * Get the listener of the capacity tier dirs, which only holds rotated entry logs
+     */
+    private LedgerDirsListener getCapacityTierDirsListener() {
+
+        return new LedgerDirsListener() {
+
+            @Override
+            public void diskFailed(File disk) {
+                // The entry logs of the capacity tier are no longer readable
+                triggerBookieShutdown(ExitCode.BOOKIE_EXCEPTION);
+            }
+
+            @Override
+            public void allDisksFull(boolean highPriorityWritesAllowed) {
+                // The entry logs are only moved to the capacity tier dirs with enough space left
+                LOG.warn("All the capacity tier dirs are full");
+            }
+
+            @Override
+            public void fatalError() {
+                LOG.error("Fatal error reported by capacityTierDirsManager");
+                triggerBookieShutdown(ExitCode.BOOKIE_EXCEPTION);
+            }
+        };
+    }
+
     /**
      * Instantiate the metadata driver for the Bookie.
      */
@@ -1274,6 +1412,9 @@ public class Bookie extends BookieCriticalThread {
 
                 //Shutdown disk checker
                 dirsMonitor.shutdown();
+                if (capacityTierDirsMonitor != null) {
+                    capacityTierDirsMonitor.shutdown();
+                }
             }
             // Shutdown the ZK client
             if (metadataDriver != null) {
@@ -1513,6 +1654,38 @@ public class Bookie extends BookieCriticalThread {
         }
     }
 
+    /**
+     * Read a range of consecutive entries of a ledger, with as few reads from the ledger storage as possible.
+     *
+     * @see LedgerStorage#getEntries(long, long, long, long)
+     */
+    public List<ByteBuf> readEntries(long ledgerId, long firstEntryId, long lastEntryId, long maxBytes)
+            throws IOException, NoLedgerException {
+        long requestNanos = MathUtils.nowInNano();
+        List<ByteBuf> entries = null;
+        try {
+            LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Reading {}-{}@{}", firstEntryId, lastEntryId, ledgerId);
+            }
+            entries = handle.readEntries(firstEntryId, lastEntryId, maxBytes);
+            return entries;
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            if (entries != null) {
+                // Same stats as the entries read one by one, the time of the read being shared by the entries
+                long entryNanos = elapsedNanos / entries.size();
+                for (ByteBuf entry : entries) {
+                    bookieStats.getReadBytes().add(entry.readableBytes());
+                    bookieStats.getReadEntryStats().registerSuccessfulEvent(entryNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getReadBytesStats().registerSuccessfulValue(entry.readableBytes());
+                }
+            } else {
+                bookieStats.getReadEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
     public long readLastAddConfirmed(long ledgerId) throws IOException {
         LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
         return handle.getLastAddConfirmed();
@@ -1543,6 +1716,13 @@ public class Bookie extends BookieCriticalThread {
         return (BookieStateManager) this.stateManager;
     }
 
+    /**
+     * @return the progress of the replay of the journals at startup
+     */
+    public JournalReplayProgress getJournalReplayProgress() {
+        return journalReplayProgress;
+    }
+
     @VisibleForTesting
     public LedgerManagerFactory getLedgerManagerFactory() {
         return ledgerManagerFactory;
@@ -1634,6 +1814,13 @@ public class Bookie extends BookieCriticalThread {
             }
         }
 
+        for (String dir : conf.getCapacityTierLedgerDirNames()) {
+            if (!cleanDir(new File(dir))) {
+                LOG.error("Formatting capacity tier directory " + dir + " failed");
+                return false;
+            }
+        }
+
         LOG.info("Bookie format completed successfully");
         return true;
     }
@@ -1685,6 +1872,22 @@ public class Bookie extends BookieCriticalThread {
         }
     }
 
+    /**
+     * @return the manager of the capacity tier dirs, or null if there's no capacity tier
+     */
+    static LedgerDirsManager createCapacityTierDirsManager(ServerConfiguration conf, DiskChecker diskChecker,
+                                                           StatsLogger statsLogger) {
+        String[] capacityTierDirNames = conf.getCapacityTierLedgerDirNames();
+        if (capacityTierDirNames.length == 0) {
+            return null;
+        }
+        File[] capacityTierDirs = new File[capacityTierDirNames.length];
+        for (int i = 0; i < capacityTierDirNames.length; i++) {
+            capacityTierDirs[i] = new File(capacityTierDirNames[i]);
+        }
+        return new LedgerDirsManager(conf, capacityTierDirs, diskChecker, statsLogger);
+    }
+
     public OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException, NoLedgerException {
         long requestNanos = MathUtils.nowInNano();
         boolean success = false;
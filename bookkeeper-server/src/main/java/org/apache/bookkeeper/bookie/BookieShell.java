@@ -2085,6 +2085,7 @@ public class BookieShell implements Tool {
 
         public RebuildDbLedgerLocationsIndexCmd() {
             super(CMD_REBUILD_DB_LEDGER_LOCATIONS_INDEX);
+            opts.addOption("t", "threads", true, "Number of threads scanning the entry logs");
         }
 
         @Override
@@ -2099,14 +2100,25 @@ public class BookieShell implements Tool {
 
         @Override
         String getUsage() {
-            return CMD_REBUILD_DB_LEDGER_LOCATIONS_INDEX;
+            return CMD_REBUILD_DB_LEDGER_LOCATIONS_INDEX + " [-threads <threads>]";
         }
 
         @Override
         int runCmd(CommandLine cmdLine) throws Exception {
             RebuildDBLedgerLocationsIndexCommand cmd = new RebuildDBLedgerLocationsIndexCommand();
-            cmd.apply(bkConf, new CliFlags());
-            return 0;
+            RebuildDBLedgerLocationsIndexCommand.RebuildFlags flags =
+                    new RebuildDBLedgerLocationsIndexCommand.RebuildFlags();
+            if (cmdLine.hasOption("t")) {
+                String threads = cmdLine.getOptionValue("t");
+                try {
+                    flags.threads(Integer.parseInt(threads));
+                } catch (NumberFormatException nfe) {
+                    System.err.println("ERROR: invalid value for option t : " + threads);
+                    return -1;
+                }
+            }
+            boolean result = cmd.apply(bkConf, flags);
+            return result ? 0 : -1;
         }
     }
 
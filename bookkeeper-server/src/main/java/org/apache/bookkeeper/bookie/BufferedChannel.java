@@ -71,6 +71,13 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
      */
     protected final AtomicLong unpersistedBytes;
 
+    /*
+     * if non-null, the write buffer doubles its capacity, up to writeCapacity,
+     * each time it fills up, and its capacity is accounted in this counter
+     * until the channel is closed.
+     */
+    private AtomicLong growableWriteBufferBytes = null;
+
     private boolean closed = false;
 
     // make constructor to be public for unit test
@@ -87,11 +94,19 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
 
     public BufferedChannel(ByteBufAllocator allocator, FileChannel fc, int writeCapacity, int readCapacity,
             long unpersistedBytesBound) throws IOException {
+        this(fc, allocator.directBuffer(writeCapacity), writeCapacity, readCapacity, unpersistedBytesBound);
+    }
+
+    /**
+     * Create a buffered channel that writes through the given buffer, which is released when the channel is closed.
+     */
+    protected BufferedChannel(FileChannel fc, ByteBuf writeBuffer, int writeCapacity, int readCapacity,
+            long unpersistedBytesBound) throws IOException {
         super(fc, readCapacity);
         this.writeCapacity = writeCapacity;
         this.position = fc.position();
         this.writeBufferStartPosition.set(position);
-        this.writeBuffer = allocator.directBuffer(writeCapacity);
+        this.writeBuffer = writeBuffer;
         this.unpersistedBytes = new AtomicLong(0);
         this.unpersistedBytesBound = unpersistedBytesBound;
         this.doRegularFlushes = unpersistedBytesBound > 0;
@@ -102,11 +117,61 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
         if (closed) {
             return;
         }
+        if (growableWriteBufferBytes != null) {
+            growableWriteBufferBytes.addAndGet(-writeBuffer.capacity());
+        }
         ReferenceCountUtil.safeRelease(writeBuffer);
         fileChannel.close();
         closed = true;
     }
 
+    /**
+     * Let the write buffer start from the given capacity, and double its capacity each time it fills up, up to the
+     * write capacity of the channel. The capacity of the write buffer is accounted in the given counter until the
+     * channel is closed.
+     *
+     * @param initialCapacity the capacity of the write buffer, flushed first if it holds more data
+     * @param writeBufferBytes the counter of the capacity of the write buffers
+     */
+    public synchronized void setGrowableWriteBuffer(int initialCapacity, AtomicLong writeBufferBytes)
+            throws IOException {
+        if (growableWriteBufferBytes != null) {
+            throw new IllegalStateException("The write buffer is already growable");
+        }
+        writeBufferBytes.addAndGet(writeBuffer.capacity());
+        growableWriteBufferBytes = writeBufferBytes;
+        resizeWriteBuffer(initialCapacity);
+    }
+
+    /**
+     * Resize a growable write buffer, after flushing its data if it doesn't fit.
+     *
+     * @param capacity the new capacity, bounded by the write capacity of the channel
+     */
+    public synchronized void resizeWriteBuffer(int capacity) throws IOException {
+        int newCapacity = Math.max(1, Math.min(capacity, writeCapacity));
+        int oldCapacity = writeBuffer.capacity();
+        if (growableWriteBufferBytes == null || !isWriteBufferResizable() || newCapacity == oldCapacity) {
+            return;
+        }
+        if (writeBuffer.readableBytes() > newCapacity) {
+            flush();
+        }
+        writeBuffer.capacity(newCapacity);
+        growableWriteBufferBytes.addAndGet(newCapacity - oldCapacity);
+    }
+
+    public synchronized int getWriteBufferCapacity() {
+        return writeBuffer.capacity();
+    }
+
+    /**
+     * @return whether the capacity of the write buffer can change
+     */
+    protected boolean isWriteBufferResizable() {
+        return true;
+    }
+
     /**
      * Write all the data in src to the {@link FileChannel}. Note that this function can
      * buffer or re-order writes based on the implementation. These writes will be flushed
@@ -129,6 +194,9 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
                 // file
                 if (!writeBuffer.isWritable()) {
                     flush();
+                    if (growableWriteBufferBytes != null && writeBuffer.capacity() < writeCapacity) {
+                        resizeWriteBuffer(writeBuffer.capacity() * 2);
+                    }
                 }
             }
             position += copied;
@@ -145,6 +213,17 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
         }
     }
 
+    /**
+     * Write all the data in src, which the caller doesn't modify until it's flushed. This implementation copies it
+     * like {@link #write(ByteBuf)}, while other implementations may write it from src without copying it.
+     *
+     * @param src The source ByteBuf which contains the data to be written.
+     * @throws IOException if a write operation fails.
+     */
+    public void writeImmutable(ByteBuf src) throws IOException {
+        write(src);
+    }
+
     /**
      * Get the position where the next write operation will begin writing from.
      * @return
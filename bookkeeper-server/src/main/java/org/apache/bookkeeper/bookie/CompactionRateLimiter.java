@@ -0,0 +1,127 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compaction bandwidth budget, in bytes per second, shared by the compactors of all the ledger directories.
+ *
+ * <p>The latency of the foreground reads and writes can be reported to the limiter: when their average latency, over
+ * the last interval, exceeds a threshold, the compaction rate is halved. It grows back linearly to the configured
+ * budget once the latency is back under the threshold.
+ */
+public class CompactionRateLimiter {
+    private static final Logger LOG = LoggerFactory.getLogger(CompactionRateLimiter.class);
+
+    private static final long ADJUST_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // The rate never drops below this fraction of the budget, so that compaction always makes progress
+    private static final double MIN_RATE_RATIO = 0.01;
+
+    // Fraction of the budget by which the rate grows back on each interval
+    private static final double RATE_INCREASE_RATIO = 0.1;
+
+    private final RateLimiter rateLimiter;
+    private final double maxRate;
+    private final long latencyThresholdNanos;
+
+    private final LongAdder latencySum = new LongAdder();
+    private final LongAdder latencyCount = new LongAdder();
+
+    // Guarded by this
+    private long lastAdjustNanos;
+    private long lastLatencySum;
+    private long lastLatencyCount;
+
+    public CompactionRateLimiter(long bytesPerSecond, long latencyThresholdMillis) {
+        this.maxRate = bytesPerSecond;
+        this.rateLimiter = RateLimiter.create(maxRate);
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.lastAdjustNanos = MathUtils.nowInNano();
+    }
+
+    /**
+     * Report the latency of a foreground read or write operation.
+     */
+    public void recordForegroundLatency(long latencyNanos) {
+        if (latencyThresholdNanos > 0) {
+            latencySum.add(latencyNanos);
+            latencyCount.increment();
+        }
+    }
+
+    /**
+     * @return whether the latency of the foreground operations needs to be reported
+     */
+    public boolean isLatencyBackoffEnabled() {
+        return latencyThresholdNanos > 0;
+    }
+
+    /**
+     * Wait until the given number of bytes can be compacted.
+     */
+    public void acquire(int bytes) {
+        if (latencyThresholdNanos > 0) {
+            maybeAdjustRate();
+        }
+        rateLimiter.acquire(Math.max(1, bytes));
+    }
+
+    private synchronized void maybeAdjustRate() {
+        long now = MathUtils.nowInNano();
+        if (now - lastAdjustNanos < ADJUST_INTERVAL_NANOS) {
+            return;
+        }
+
+        long sum = latencySum.sum();
+        long count = latencyCount.sum();
+        long intervalCount = count - lastLatencyCount;
+        long averageLatencyNanos = intervalCount > 0 ? (sum - lastLatencySum) / intervalCount : 0;
+        lastAdjustNanos = now;
+        lastLatencySum = sum;
+        lastLatencyCount = count;
+
+        double rate = rateLimiter.getRate();
+        double newRate;
+        if (averageLatencyNanos > latencyThresholdNanos) {
+            newRate = Math.max(maxRate * MIN_RATE_RATIO, rate / 2);
+        } else {
+            newRate = Math.min(maxRate, rate + maxRate * RATE_INCREASE_RATIO);
+        }
+
+        if (newRate != rate) {
+            rateLimiter.setRate(newRate);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Foreground average latency {} us, compaction rate changed from {} to {} bytes/s",
+                        TimeUnit.NANOSECONDS.toMicros(averageLatencyNanos), (long) rate, (long) newRate);
+            }
+        }
+    }
+}
@@ -37,6 +37,7 @@ import java.io.OutputStreamWriter;
 import java.io.StringReader;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.Objects;
 import java.util.Set;
 import org.apache.bookkeeper.bookie.BookieException.InvalidCookieException;
 import org.apache.bookkeeper.bookie.BookieException.UnknownBookieIdException;
@@ -72,14 +73,18 @@ public class Cookie {
     private final String journalDirs;
     private final String ledgerDirs;
     private final String instanceId;
+    // Null when the bookie has no capacity tier
+    private final String capacityTierLedgerDirs;
     private static final String SEPARATOR = "\t";
 
-    private Cookie(int layoutVersion, String bookieId, String journalDirs, String ledgerDirs, String instanceId) {
+    private Cookie(int layoutVersion, String bookieId, String journalDirs, String ledgerDirs, String instanceId,
+                   String capacityTierLedgerDirs) {
         this.layoutVersion = layoutVersion;
         this.bookieId = bookieId;
         this.journalDirs = journalDirs;
         this.ledgerDirs = ledgerDirs;
         this.instanceId = instanceId;
+        this.capacityTierLedgerDirs = capacityTierLedgerDirs;
     }
 
     public static String encodeDirPaths(String[] dirs) {
@@ -124,6 +129,17 @@ public class Cookie {
         }
     }
 
+    private boolean verifyCapacityTierLedgerDirs(Cookie c, boolean checkIfSuperSet) {
+        if (!checkIfSuperSet) {
+            return Objects.equals(capacityTierLedgerDirs, c.capacityTierLedgerDirs);
+        } else if (c.capacityTierLedgerDirs == null) {
+            return true;
+        } else {
+            return capacityTierLedgerDirs != null && isSuperSet(decodeDirPathFromCookie(capacityTierLedgerDirs),
+                    decodeDirPathFromCookie(c.capacityTierLedgerDirs));
+        }
+    }
+
     private void verifyInternal(Cookie c, boolean checkIfSuperSet) throws BookieException.InvalidCookieException {
         String errMsg;
         if (c.layoutVersion < 3 && c.layoutVersion != layoutVersion) {
@@ -131,7 +147,8 @@ public class Cookie {
             LOG.error(errMsg);
             throw new BookieException.InvalidCookieException(errMsg);
         } else if (!(c.layoutVersion >= 3 && c.bookieId.equals(bookieId)
-            && c.journalDirs.equals(journalDirs) && verifyLedgerDirs(c, checkIfSuperSet))) {
+            && c.journalDirs.equals(journalDirs) && verifyLedgerDirs(c, checkIfSuperSet)
+            && verifyCapacityTierLedgerDirs(c, checkIfSuperSet))) {
             errMsg = "Cookie [" + this + "] is not matching with [" + c + "]";
             throw new BookieException.InvalidCookieException(errMsg);
         } else if ((instanceId == null && c.instanceId != null)
@@ -163,6 +180,9 @@ public class Cookie {
         if (null != instanceId) {
             builder.setInstanceId(instanceId);
         }
+        if (null != capacityTierLedgerDirs) {
+            builder.setCapacityTierLedgerDirs(capacityTierLedgerDirs);
+        }
         StringBuilder b = new StringBuilder();
         b.append(CURRENT_COOKIE_LAYOUT_VERSION).append("\n");
         b.append(builder.build().toString());
@@ -207,6 +227,9 @@ public class Cookie {
             if (null != data.getInstanceId() && !data.getInstanceId().isEmpty()) {
                 cBuilder.setInstanceId(data.getInstanceId());
             }
+            if (data.hasCapacityTierLedgerDirs()) {
+                cBuilder.setCapacityTierLedgerDirs(data.getCapacityTierLedgerDirs());
+            }
         }
         return cBuilder;
     }
@@ -296,6 +319,9 @@ public class Cookie {
         builder.setBookieId(Bookie.getBookieId(conf).toString());
         builder.setJournalDirs(Joiner.on(',').join(conf.getJournalDirNames()));
         builder.setLedgerDirs(encodeDirPaths(conf.getLedgerDirNames()));
+        if (conf.getCapacityTierLedgerDirNames().length > 0) {
+            builder.setCapacityTierLedgerDirs(encodeDirPaths(conf.getCapacityTierLedgerDirNames()));
+        }
         return builder;
     }
 
@@ -390,17 +416,19 @@ public class Cookie {
         private String journalDirs = null;
         private String ledgerDirs = null;
         private String instanceId = null;
+        private String capacityTierLedgerDirs = null;
 
         private Builder() {
         }
 
         private Builder(int layoutVersion, String bookieId, String journalDirs, String ledgerDirs,
-                        String instanceId) {
+                        String instanceId, String capacityTierLedgerDirs) {
             this.layoutVersion = layoutVersion;
             this.bookieId = bookieId;
             this.journalDirs = journalDirs;
             this.ledgerDirs = ledgerDirs;
             this.instanceId = instanceId;
+            this.capacityTierLedgerDirs = capacityTierLedgerDirs;
         }
 
         public Builder setLayoutVersion(int layoutVersion) {
@@ -428,8 +456,13 @@ public class Cookie {
             return this;
         }
 
+        public Builder setCapacityTierLedgerDirs(String capacityTierLedgerDirs) {
+            this.capacityTierLedgerDirs = capacityTierLedgerDirs;
+            return this;
+        }
+
         public Cookie build() {
-            return new Cookie(layoutVersion, bookieId, journalDirs, ledgerDirs, instanceId);
+            return new Cookie(layoutVersion, bookieId, journalDirs, ledgerDirs, instanceId, capacityTierLedgerDirs);
         }
     }
 
@@ -450,6 +483,6 @@ public class Cookie {
      */
     public static Builder newBuilder(Cookie oldCookie) {
         return new Builder(oldCookie.layoutVersion, oldCookie.bookieId, oldCookie.journalDirs, oldCookie.ledgerDirs,
-                oldCookie.instanceId);
+                oldCookie.instanceId, oldCookie.capacityTierLedgerDirs);
     }
 }
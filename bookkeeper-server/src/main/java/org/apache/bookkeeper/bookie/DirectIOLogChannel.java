@@ -0,0 +1,127 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.util.NativeIO.DIRECT_IO_ALIGNMENT;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.bookkeeper.bookie.EntryLogger.BufferedLogChannel;
+
+/**
+ * Entry log channel that writes the entry log with direct I/O, bypassing the OS page cache.
+ *
+ * <p>The write buffer is aligned in memory and every flush writes the complete blocks it holds through a file
+ * descriptor opened with O_DIRECT. The last incomplete block is written through the page cache, so that the file
+ * size always matches the data that was flushed, and kept at the head of the write buffer: it's written again, with
+ * direct I/O, once it's complete. Since the file offsets of the direct writes are always aligned, the data is
+ * never written twice to the device, except for the last block of each flush.
+ */
+class DirectIOLogChannel extends BufferedLogChannel {
+
+    private final FileChannel directFileChannel;
+
+    DirectIOLogChannel(ByteBufAllocator allocator, FileChannel fc, FileChannel directFileChannel, int writeCapacity,
+            int readCapacity, long logId, File logFile, long unpersistedBytesBound) throws IOException {
+        super(fc, allocateAlignedBuffer(allocator, alignedCapacity(writeCapacity)), alignedCapacity(writeCapacity),
+                readCapacity, logId, logFile, unpersistedBytesBound);
+        this.directFileChannel = directFileChannel;
+        if (writeBufferStartPosition.get() % DIRECT_IO_ALIGNMENT != 0) {
+            throw new IOException("Direct I/O entry log " + logFile + " doesn't start at an aligned position");
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        int length = writeBuffer.writerIndex();
+        int alignedLength = length - length % DIRECT_IO_ALIGNMENT;
+        int tailLength = length - alignedLength;
+        long startPosition = writeBufferStartPosition.get();
+
+        if (alignedLength > 0) {
+            ByteBuffer toWrite = writeBuffer.internalNioBuffer(0, alignedLength);
+            long pos = startPosition;
+            do {
+                pos += directFileChannel.write(toWrite, pos);
+            } while (toWrite.hasRemaining());
+        }
+
+        if (tailLength > 0) {
+            ByteBuffer tail = writeBuffer.internalNioBuffer(alignedLength, tailLength);
+            long pos = startPosition + alignedLength;
+            do {
+                pos += fileChannel.write(tail, pos);
+            } while (tail.hasRemaining());
+
+            if (alignedLength > 0) {
+                // Move the incomplete block to the head of the buffer. The regions cannot overlap, since the tail is
+                // shorter than a block
+                writeBuffer.setBytes(0, writeBuffer, alignedLength, tailLength);
+            }
+        }
+
+        writeBuffer.setIndex(0, tailLength);
+        writeBufferStartPosition.set(startPosition + alignedLength);
+    }
+
+    @Override
+    protected boolean isWriteBufferResizable() {
+        // the write buffer is an aligned slice of a larger buffer
+        return false;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            directFileChannel.close();
+        } finally {
+            super.close();
+        }
+    }
+
+    private static int alignedCapacity(int capacity) {
+        return Math.max(DIRECT_IO_ALIGNMENT,
+                (capacity + DIRECT_IO_ALIGNMENT - 1) / DIRECT_IO_ALIGNMENT * DIRECT_IO_ALIGNMENT);
+    }
+
+    /**
+     * Allocate a direct buffer whose memory address is aligned for direct I/O. Releasing the returned buffer
+     * releases the whole allocation.
+     */
+    static ByteBuf allocateAlignedBuffer(ByteBufAllocator allocator, int capacity) throws IOException {
+        ByteBuf buffer = allocator.directBuffer(capacity + DIRECT_IO_ALIGNMENT, capacity + DIRECT_IO_ALIGNMENT);
+        if (!buffer.hasMemoryAddress()) {
+            buffer.release();
+            throw new IOException("Direct I/O requires direct buffers with an accessible memory address");
+        }
+
+        int misalignment = (int) (buffer.memoryAddress() % DIRECT_IO_ALIGNMENT);
+        int offset = misalignment == 0 ? 0 : DIRECT_IO_ALIGNMENT - misalignment;
+        return buffer.slice(offset, capacity).clear();
+    }
+}
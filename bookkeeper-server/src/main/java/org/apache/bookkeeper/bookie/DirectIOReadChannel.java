@@ -0,0 +1,148 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.util.NativeIO.DIRECT_IO_ALIGNMENT;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read channel for an entry log file opened with direct I/O.
+ *
+ * <p>Every read is widened to the enclosing aligned blocks. The reads smaller than the read buffer fill an aligned
+ * read-ahead buffer, from which the following reads are served until they fall out of it, so that reading the
+ * successive small entries or entry headers of an entry log doesn't cost an aligned read each. Larger reads are read
+ * in a temporary aligned buffer and copied in the destination.
+ *
+ * <p>There is no cache beyond the read-ahead buffer. Since the OS page cache is bypassed, the entries are expected
+ * to be cached by the ledger storage, like the read cache of the DbLedgerStorage that its read-ahead fills. The
+ * larger reads are not serialized, unlike {@link BufferedReadChannel}.
+ */
+class DirectIOReadChannel extends BufferedReadChannel {
+
+    private final ByteBufAllocator allocator;
+
+    // Aligned read-ahead buffer and the position of the data it holds in the file
+    private final ByteBuf readAheadBuffer;
+    private final int readAheadCapacity;
+    private long readAheadStartPosition = Long.MIN_VALUE;
+
+    DirectIOReadChannel(ByteBufAllocator allocator, FileChannel directFileChannel, int readCapacity) {
+        // The read buffer of the parent class is not used
+        super(directFileChannel, 0);
+        this.allocator = allocator;
+        this.readAheadCapacity = alignUp(Math.max(readCapacity, 1));
+        // Not pooled, so that the memory is reclaimed with the channel, which is never explicitly released
+        this.readAheadBuffer = allocateUnpooledAlignedBuffer(readAheadCapacity);
+    }
+
+    @Override
+    public int read(ByteBuf dest, long pos, int length) throws IOException {
+        FileChannel fc = validateAndGetFileChannel();
+        long eof = fc.size();
+        if (pos >= eof) {
+            return -1;
+        }
+
+        length = (int) Math.min(length, eof - pos);
+        long alignedStart = pos - pos % DIRECT_IO_ALIGNMENT;
+        int offsetInBlock = (int) (pos - alignedStart);
+        int alignedLength = alignUp(offsetInBlock + length);
+
+        if (alignedLength <= readAheadCapacity) {
+            return readBuffered(fc, dest, pos, length, alignedStart);
+        }
+
+        ByteBuf buffer = DirectIOLogChannel.allocateAlignedBuffer(allocator, alignedLength);
+        try {
+            int readBytes = readAligned(fc, buffer, alignedStart, alignedLength);
+            int bytesToCopy = Math.min(length, readBytes - offsetInBlock);
+            if (bytesToCopy <= 0) {
+                throw new IOException("Reading from filechannel returned a non-positive value. Short read.");
+            }
+            dest.writeBytes(buffer, offsetInBlock, bytesToCopy);
+            return bytesToCopy;
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private synchronized int readBuffered(FileChannel fc, ByteBuf dest, long pos, int length, long alignedStart)
+            throws IOException {
+        invocationCount++;
+        if (readAheadStartPosition <= pos
+                && pos + length <= readAheadStartPosition + readAheadBuffer.writerIndex()) {
+            cacheHitCount++;
+        } else {
+            readAheadStartPosition = Long.MIN_VALUE;
+            readAheadBuffer.clear();
+            readAheadBuffer.writerIndex(readAligned(fc, readAheadBuffer, alignedStart, readAheadCapacity));
+            readAheadStartPosition = alignedStart;
+        }
+
+        int posInBuffer = (int) (pos - readAheadStartPosition);
+        int bytesToCopy = Math.min(length, readAheadBuffer.writerIndex() - posInBuffer);
+        if (bytesToCopy <= 0) {
+            throw new IOException("Reading from filechannel returned a non-positive value. Short read.");
+        }
+        dest.writeBytes(readAheadBuffer, posInBuffer, bytesToCopy);
+        return bytesToCopy;
+    }
+
+    /**
+     * Read aligned blocks, up to the end of the file.
+     *
+     * @return the number of bytes read
+     */
+    private static int readAligned(FileChannel fc, ByteBuf buffer, long alignedStart, int alignedLength)
+            throws IOException {
+        ByteBuffer nioBuffer = buffer.nioBuffer(0, alignedLength);
+        while (nioBuffer.hasRemaining()) {
+            int readBytes = fc.read(nioBuffer, alignedStart + nioBuffer.position());
+            if (readBytes <= 0 || nioBuffer.position() % DIRECT_IO_ALIGNMENT != 0) {
+                // Reached the end of the file
+                break;
+            }
+        }
+        return nioBuffer.position();
+    }
+
+    private static int alignUp(int length) {
+        return (length + DIRECT_IO_ALIGNMENT - 1) / DIRECT_IO_ALIGNMENT * DIRECT_IO_ALIGNMENT;
+    }
+
+    private static ByteBuf allocateUnpooledAlignedBuffer(int capacity) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(capacity + DIRECT_IO_ALIGNMENT);
+        int misalignment = (int) (PlatformDependent.directBufferAddress(buffer) % DIRECT_IO_ALIGNMENT);
+        int offset = misalignment == 0 ? 0 : DIRECT_IO_ALIGNMENT - misalignment;
+        buffer.position(offset);
+        buffer.limit(offset + capacity);
+        return Unpooled.wrappedBuffer(buffer.slice()).clear();
+    }
+}
@@ -49,7 +49,25 @@ public class EntryLogCompactor extends AbstractLogCompactor {
             EntryLogger entryLogger,
             CompactableLedgerStorage ledgerStorage,
             LogRemovalListener logRemover) {
-        super(conf, logRemover);
+        this(conf, entryLogger, ledgerStorage, logRemover, (CompactionRateLimiter) null);
+    }
+
+    public EntryLogCompactor(
+            ServerConfiguration conf,
+            EntryLogger entryLogger,
+            CompactableLedgerStorage ledgerStorage,
+            LogRemovalListener logRemover,
+            CompactionRateLimiter sharedRateLimiter) {
+        this(conf, entryLogger, ledgerStorage, logRemover, new Throttler(conf, sharedRateLimiter));
+    }
+
+    EntryLogCompactor(
+            ServerConfiguration conf,
+            EntryLogger entryLogger,
+            CompactableLedgerStorage ledgerStorage,
+            LogRemovalListener logRemover,
+            Throttler throttler) {
+        super(conf, logRemover, throttler);
         this.maxOutstandingRequests = conf.getCompactionMaxOutstandingRequests();
         this.entryLogger = entryLogger;
         this.ledgerStorage = ledgerStorage;
@@ -58,8 +76,7 @@ public class EntryLogCompactor extends AbstractLogCompactor {
     @Override
     public boolean compact(EntryLogMetadata entryLogMeta) {
         try {
-            entryLogger.scanEntryLog(entryLogMeta.getEntryLogId(),
-                scannerFactory.newScanner(entryLogMeta));
+            scanEntryLog(entryLogger, entryLogMeta.getEntryLogId(), scannerFactory.newScanner(entryLogMeta));
             scannerFactory.flush();
             LOG.info("Removing entry log {} after compaction", entryLogMeta.getEntryLogId());
             logRemovalListener.removeEntryLog(entryLogMeta.getEntryLogId());
@@ -82,16 +99,17 @@ public class EntryLogCompactor extends AbstractLogCompactor {
     class CompactionScannerFactory {
         List<EntryLocation> offsets = new ArrayList<EntryLocation>();
 
-        EntryLogger.EntryLogScanner newScanner(final EntryLogMetadata meta) {
+        EntryLogger.StoredEntryScanner newScanner(final EntryLogMetadata meta) {
 
-            return new EntryLogger.EntryLogScanner() {
+            return new EntryLogger.StoredEntryScanner() {
                 @Override
                 public boolean accept(long ledgerId) {
                     return meta.containsLedger(ledgerId);
                 }
 
                 @Override
-                public void process(final long ledgerId, long offset, ByteBuf entry) throws IOException {
+                public void process(final long ledgerId, long offset, ByteBuf entry, boolean compressed)
+                        throws IOException {
                     throttler.acquire(entry.readableBytes());
 
                     if (offsets.size() > maxOutstandingRequests) {
@@ -99,7 +117,7 @@ public class EntryLogCompactor extends AbstractLogCompactor {
                     }
                     long entryId = entry.getLong(entry.readerIndex() + 8);
 
-                    long newoffset = entryLogger.addEntry(ledgerId, entry);
+                    long newoffset = entryLogger.addStoredEntry(ledgerId, entry, compressed);
                     offsets.add(new EntryLocation(ledgerId, entryId, newoffset));
 
                 }
@@ -0,0 +1,384 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.compression.DecompressionException;
+import io.netty.handler.codec.compression.Snappy;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compression of the entries stored in the entry logs.
+ *
+ * <p>A compressed entry is flagged by the high bit of its size header. Its ledger id and entry id are kept
+ * uncompressed, so that the entry logs can still be scanned, and the entries validated, without decompressing them:
+ *
+ * <pre>
+ * size | COMPRESSED_FLAG: (4 bytes)
+ * ledger id: (8 bytes)
+ * entry id: (8 bytes)
+ * codec: (1 byte)
+ * size of the uncompressed entry: (4 bytes)
+ * compressed remainder of the entry
+ * </pre>
+ *
+ * <p>Snappy compresses the remainder of the entry in independent blocks of up to {@link #SNAPPY_BLOCK_SIZE} bytes,
+ * each preceded by its compressed size (4 bytes), since the Netty encoder only supports inputs of that size.
+ *
+ * <p>A bookie unaware of the flag sees an invalid negative size, and fails to read the entry instead of returning
+ * compressed data.
+ *
+ * <p>The entries that don't shrink enough are stored uncompressed. Since the entries of a ledger usually carry
+ * similar payloads, once an entry of a ledger is found incompressible, the following entries of the ledger are
+ * stored uncompressed without even trying, until the ledger is probed again. The same applies to the entries that
+ * the codec fails to compress.
+ */
+class EntryLogCompression {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntryLogCompression.class);
+
+    static final int COMPRESSED_FLAG = 0x80000000;
+
+    // Ledger id and entry id, kept uncompressed
+    private static final int ENTRY_HEADER_SIZE = 8 + 8;
+    // Entry header, codec and uncompressed size
+    static final int COMPRESSED_HEADER_SIZE = ENTRY_HEADER_SIZE + 1 + 4;
+
+    // Max size of the input of a snappy block, larger inputs overflow the offsets of the Netty encoder hash table
+    static final int SNAPPY_BLOCK_SIZE = 32 * 1024;
+
+    // Smaller entries are not worth compressing
+    private static final int MIN_ENTRY_SIZE = 128;
+
+    // Number of entries of an incompressible ledger stored before trying again to compress
+    private static final int INCOMPRESSIBLE_LEDGER_PROBE_INTERVAL = 64;
+    private static final int MAX_INCOMPRESSIBLE_LEDGERS = 64 * 1024;
+
+    /**
+     * Compression codecs. The id of the codec is stored in each compressed entry, so it must never change.
+     */
+    enum Codec {
+        NONE(0),
+        SNAPPY(1),
+        DEFLATE(2);
+
+        final byte id;
+
+        Codec(int id) {
+            this.id = (byte) id;
+        }
+
+        static Codec fromName(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown entry log compression codec: " + name);
+            }
+        }
+
+        static Codec fromId(byte id) throws IOException {
+            for (Codec codec : values()) {
+                if (codec.id == id) {
+                    return codec;
+                }
+            }
+            throw new IOException("Unknown entry log compression codec id: " + id);
+        }
+    }
+
+    /**
+     * Codecs of a thread, reused across the entries.
+     */
+    private static final class Codecs {
+        final Snappy snappy = new Snappy();
+        final Deflater deflater = new Deflater();
+        final Inflater inflater = new Inflater();
+        // Copy of the input of the deflater or inflater, when it is not backed by an array
+        byte[] input = new byte[0];
+
+        void setInput(ByteBuf buf, boolean deflate) {
+            int size = buf.readableBytes();
+            byte[] array;
+            int offset;
+            if (buf.hasArray()) {
+                array = buf.array();
+                offset = buf.arrayOffset() + buf.readerIndex();
+            } else {
+                if (input.length < size) {
+                    input = new byte[size];
+                }
+                buf.getBytes(buf.readerIndex(), input, 0, size);
+                array = input;
+                offset = 0;
+            }
+
+            if (deflate) {
+                deflater.setInput(array, offset, size);
+            } else {
+                inflater.setInput(array, offset, size);
+            }
+        }
+    }
+
+    private static final FastThreadLocal<Codecs> CODECS = new FastThreadLocal<Codecs>() {
+        @Override
+        protected Codecs initialValue() {
+            return new Codecs();
+        }
+
+        @Override
+        protected void onRemoval(Codecs codecs) {
+            codecs.deflater.end();
+            codecs.inflater.end();
+        }
+    };
+
+    private final Codec codec;
+    private final double maxRatio;
+    private final ByteBufAllocator allocator;
+
+    // Number of entries still to be stored uncompressed, for the ledgers found incompressible
+    private final ConcurrentLongLongHashMap incompressibleLedgers = new ConcurrentLongLongHashMap(1024, 4);
+
+    EntryLogCompression(Codec codec, double maxRatio, ByteBufAllocator allocator) {
+        this.codec = codec;
+        this.maxRatio = maxRatio;
+        this.allocator = allocator;
+    }
+
+    /**
+     * Compress an entry, if compression is enabled and worth it.
+     *
+     * @return the compressed entry, which must be released, or null if the entry must be stored as is
+     */
+    ByteBuf compress(long ledgerId, ByteBuf entry) {
+        int entrySize = entry.readableBytes();
+        if (codec == Codec.NONE || entrySize < MIN_ENTRY_SIZE) {
+            return null;
+        }
+
+        if (!incompressibleLedgers.isEmpty()) {
+            long remaining = incompressibleLedgers.get(ledgerId);
+            if (remaining > 0) {
+                incompressibleLedgers.put(ledgerId, remaining - 1);
+                return null;
+            } else if (remaining == 0) {
+                incompressibleLedgers.remove(ledgerId);
+            }
+        }
+
+        int maxCompressedSize = (int) (entrySize * maxRatio);
+        int payloadSize = entrySize - ENTRY_HEADER_SIZE;
+        // The deflater writes into the array of the buffer
+        ByteBuf compressed = codec == Codec.SNAPPY
+                ? allocator.buffer(COMPRESSED_HEADER_SIZE + payloadSize)
+                : allocator.heapBuffer(COMPRESSED_HEADER_SIZE + payloadSize);
+        compressed.writeBytes(entry, entry.readerIndex(), ENTRY_HEADER_SIZE);
+        compressed.writeByte(codec.id);
+        compressed.writeInt(entrySize);
+
+        ByteBuf payload = entry.slice(entry.readerIndex() + ENTRY_HEADER_SIZE, payloadSize);
+        boolean fits = false;
+        try {
+            if (codec == Codec.SNAPPY) {
+                fits = snappyEncode(payload, compressed, maxCompressedSize);
+            } else {
+                fits = deflate(payload, compressed, maxCompressedSize);
+            }
+        } catch (RuntimeException e) {
+            // Never fail to store an entry because of the compression
+            LOG.warn("Failed to compress entry of ledger {} with {}, storing it uncompressed", ledgerId, codec, e);
+        } finally {
+            if (!fits) {
+                compressed.release();
+            }
+        }
+
+        if (!fits) {
+            if (incompressibleLedgers.size() >= MAX_INCOMPRESSIBLE_LEDGERS) {
+                // Most likely ledgers that were deleted in the meantime
+                incompressibleLedgers.clear();
+            }
+            incompressibleLedgers.put(ledgerId, INCOMPRESSIBLE_LEDGER_PROBE_INTERVAL);
+            return null;
+        }
+
+        return compressed;
+    }
+
+    /**
+     * @return true if the whole payload was compressed within maxCompressedSize
+     */
+    private static boolean snappyEncode(ByteBuf payload, ByteBuf compressed, int maxCompressedSize) {
+        Snappy snappy = CODECS.get().snappy;
+        int idx = payload.readerIndex();
+        int end = payload.writerIndex();
+        while (idx < end) {
+            int blockSize = Math.min(SNAPPY_BLOCK_SIZE, end - idx);
+            int sizeIdx = compressed.writerIndex();
+            compressed.writeInt(0);
+            snappy.reset();
+            snappy.encode(payload.slice(idx, blockSize), compressed, blockSize);
+            compressed.setInt(sizeIdx, compressed.writerIndex() - sizeIdx - 4);
+            if (compressed.readableBytes() > maxCompressedSize) {
+                return false;
+            }
+            idx += blockSize;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the whole payload was compressed within maxCompressedSize
+     */
+    private static boolean deflate(ByteBuf payload, ByteBuf compressed, int maxCompressedSize) {
+        int maxOutputSize = maxCompressedSize - compressed.readableBytes();
+        if (maxOutputSize <= 0) {
+            return false;
+        }
+
+        Codecs codecs = CODECS.get();
+        Deflater deflater = codecs.deflater;
+        deflater.reset();
+        codecs.setInput(payload, true);
+        deflater.finish();
+
+        compressed.ensureWritable(maxOutputSize);
+        int outputSize = deflater.deflate(compressed.array(), compressed.arrayOffset() + compressed.writerIndex(),
+                maxOutputSize);
+        if (!deflater.finished()) {
+            return false;
+        }
+        compressed.writerIndex(compressed.writerIndex() + outputSize);
+        return true;
+    }
+
+    /**
+     * Decompress an entry read from an entry log, whose size header had the compressed flag.
+     *
+     * @param stored the compressed entry, which is not released
+     * @return the original entry, which must be released
+     */
+    ByteBuf decompress(ByteBuf stored) throws IOException {
+        int idx = stored.readerIndex();
+        if (stored.readableBytes() < COMPRESSED_HEADER_SIZE) {
+            throw new IOException("Invalid compressed entry of size " + stored.readableBytes());
+        }
+
+        Codec entryCodec = Codec.fromId(stored.getByte(idx + ENTRY_HEADER_SIZE));
+        int entrySize = stored.getInt(idx + ENTRY_HEADER_SIZE + 1);
+        if (entrySize < ENTRY_HEADER_SIZE) {
+            throw new IOException("Invalid uncompressed size " + entrySize + " of compressed entry");
+        }
+
+        // The inflater writes into the array of the buffer
+        ByteBuf entry = entryCodec == Codec.DEFLATE
+                ? allocator.heapBuffer(entrySize, entrySize)
+                : allocator.buffer(entrySize, entrySize);
+        try {
+            entry.writeBytes(stored, idx, ENTRY_HEADER_SIZE);
+            ByteBuf payload = stored.slice(idx + COMPRESSED_HEADER_SIZE,
+                    stored.readableBytes() - COMPRESSED_HEADER_SIZE);
+            switch (entryCodec) {
+            case SNAPPY:
+                snappyDecode(payload, entry);
+                break;
+            case DEFLATE:
+                inflate(payload, entry);
+                break;
+            default:
+                throw new IOException("Invalid codec " + entryCodec + " of compressed entry");
+            }
+
+            if (entry.readableBytes() != entrySize) {
+                throw new IOException("Decompressed entry size " + entry.readableBytes() + " doesn't match the "
+                        + "expected size " + entrySize);
+            }
+            return entry;
+        } catch (IOException e) {
+            entry.release();
+            throw e;
+        } catch (DecompressionException | IndexOutOfBoundsException e) {
+            entry.release();
+            throw new IOException("Failed to decompress entry", e);
+        }
+    }
+
+    private static void snappyDecode(ByteBuf payload, ByteBuf entry) throws IOException {
+        Snappy snappy = CODECS.get().snappy;
+        while (payload.isReadable()) {
+            if (payload.readableBytes() < 4) {
+                throw new IOException("Truncated snappy block in compressed entry");
+            }
+            int blockSize = payload.readInt();
+            if (blockSize <= 0 || blockSize > payload.readableBytes()) {
+                throw new IOException("Invalid snappy block size " + blockSize + " in compressed entry");
+            }
+            snappy.reset();
+            snappy.decode(payload.readSlice(blockSize), entry);
+        }
+    }
+
+    private static void inflate(ByteBuf payload, ByteBuf entry) throws IOException {
+        Codecs codecs = CODECS.get();
+        Inflater inflater = codecs.inflater;
+        inflater.reset();
+        codecs.setInput(payload, false);
+
+        try {
+            int outputSize = inflater.inflate(entry.array(), entry.arrayOffset() + entry.writerIndex(),
+                    entry.writableBytes());
+            if (!inflater.finished()) {
+                throw new IOException("Compressed entry is larger than its expected size");
+            }
+            entry.writerIndex(entry.writerIndex() + outputSize);
+        } catch (DataFormatException e) {
+            throw new IOException("Failed to inflate entry", e);
+        }
+    }
+
+    /**
+     * @return the size of the original entry, given a compressed entry as stored in the entry log
+     */
+    static int uncompressedSize(ByteBuf stored) {
+        return stored.getInt(stored.readerIndex() + ENTRY_HEADER_SIZE + 1);
+    }
+
+    static boolean isCompressed(int sizeHeader) {
+        return (sizeHeader & COMPRESSED_FLAG) != 0;
+    }
+
+    static int storedSize(int sizeHeader) {
+        return sizeHeader & ~COMPRESSED_FLAG;
+    }
+}
@@ -32,9 +32,10 @@ interface EntryLogManager {
 
     /*
      * add entry to the corresponding entrylog and return the position of
-     * the entry in the entrylog
+     * the entry in the entrylog. A compressed entry is flagged in its size
+     * header, see EntryLogCompression.
      */
-    long addEntry(long ledger, ByteBuf entry, boolean rollLog) throws IOException;
+    long addEntry(long ledger, ByteBuf entry, boolean compressed, boolean rollLog) throws IOException;
 
     /*
      * gets the active logChannel with the given entryLogId. null if it is
@@ -67,17 +67,19 @@ abstract class EntryLogManagerBase implements EntryLogManager {
      * should be in the right scope of the lock.
      */
     @Override
-    public long addEntry(long ledger, ByteBuf entry, boolean rollLog) throws IOException {
+    public long addEntry(long ledger, ByteBuf entry, boolean compressed, boolean rollLog) throws IOException {
         int entrySize = entry.readableBytes() + 4; // Adding 4 bytes to prepend the size
         BufferedLogChannel logChannel = getCurrentLogForLedgerForAddEntry(ledger, entrySize, rollLog);
         ByteBuf sizeBuffer = sizeBufferForAdd.get();
         sizeBuffer.clear();
-        sizeBuffer.writeInt(entry.readableBytes());
+        sizeBuffer.writeInt(compressed
+                ? entry.readableBytes() | EntryLogCompression.COMPRESSED_FLAG : entry.readableBytes());
         logChannel.write(sizeBuffer);
 
         long pos = logChannel.position();
+        int logicalSize = compressed ? EntryLogCompression.uncompressedSize(entry) + 4 : entrySize;
         logChannel.write(entry);
-        logChannel.registerWrittenEntry(ledger, entrySize);
+        logChannel.registerWrittenEntry(ledger, entrySize, logicalSize);
 
         return (logChannel.getLogId() << 32L) | pos;
     }
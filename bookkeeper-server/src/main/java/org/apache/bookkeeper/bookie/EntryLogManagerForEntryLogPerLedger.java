@@ -24,10 +24,13 @@ package org.apache.bookkeeper.bookie;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ENTRYLOGGER_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ENTRYLOGS_PER_LEDGER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ENTRYLOGS_WRITE_BUFFER_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.NUM_LEDGERS_HAVING_MULTIPLE_ENTRYLOGS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.NUM_OF_WRITE_ACTIVE_LEDGERS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.NUM_OF_WRITE_LEDGERS_PARKED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.NUM_OF_WRITE_LEDGERS_REMOVED_CACHE_EXPIRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.NUM_OF_WRITE_LEDGERS_REMOVED_CACHE_MAXSIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.NUM_OF_WRITE_LEDGERS_UNPARKED;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.CacheBuilder;
@@ -41,6 +44,8 @@ import io.netty.buffer.ByteBuf;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -51,6 +56,8 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -61,6 +68,7 @@ import org.apache.bookkeeper.bookie.EntryLogger.BufferedLogChannel;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.LedgerDirsListener;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.annotations.StatsDoc;
@@ -72,12 +80,44 @@ import org.apache.commons.lang3.mutable.MutableInt;
 @Slf4j
 class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
 
+    /*
+     * the current entrylog of a ledger. When the entrylog is parked, its
+     * channel is closed until the ledger is written again, and then it is
+     * replaced by a channel reopening the entrylog.
+     */
     static class BufferedLogChannelWithDirInfo {
-        private final BufferedLogChannel logChannel;
+        private volatile BufferedLogChannel logChannel;
         volatile boolean ledgerDirFull = false;
+        private volatile boolean parked = false;
+        private volatile long lastAddTimeNanos = MathUtils.nowInNano();
+        // position of the entrylog at the previous checkpoint, to size its write buffer
+        private long positionAtLastCheckpoint;
 
         private BufferedLogChannelWithDirInfo(BufferedLogChannel logChannel) {
             this.logChannel = logChannel;
+            this.positionAtLastCheckpoint = logChannel.position();
+        }
+
+        boolean isParked() {
+            return parked;
+        }
+
+        private void park() {
+            parked = true;
+        }
+
+        private void unpark(BufferedLogChannel reopenedLogChannel) {
+            logChannel = reopenedLogChannel;
+            positionAtLastCheckpoint = reopenedLogChannel.position();
+            parked = false;
+        }
+
+        private long getLastAddTimeNanos() {
+            return lastAddTimeNanos;
+        }
+
+        private void updateLastAddTime() {
+            lastAddTimeNanos = MathUtils.nowInNano();
         }
 
         private boolean isLedgerDirFull() {
@@ -98,11 +138,7 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
         private BufferedLogChannelWithDirInfo entryLogWithDirInfo;
 
         private EntryLogAndLockTuple(long ledgerId) {
-            int lockIndex = MathUtils.signSafeMod(Long.hashCode(ledgerId), lockArrayPool.length());
-            if (lockArrayPool.get(lockIndex) == null) {
-                lockArrayPool.compareAndSet(lockIndex, null, new ReentrantLock());
-            }
-            ledgerLock = lockArrayPool.get(lockIndex);
+            ledgerLock = getLockFromPool(ledgerId);
         }
 
         private Lock getLedgerLock() {
@@ -150,6 +186,22 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
             help = "The distribution of number of entry logs per ledger"
         )
         private final OpStatsLogger entryLogsPerLedger;
+        @StatsDoc(
+            name = NUM_OF_WRITE_LEDGERS_PARKED,
+            help = "Number of times the entrylog of a write ledger was parked to stay under the limits"
+        )
+        private final Counter numOfWriteLedgersParked;
+        @StatsDoc(
+            name = NUM_OF_WRITE_LEDGERS_UNPARKED,
+            help = "Number of times the parked entrylog of a write ledger was reopened"
+        )
+        private final Counter numOfWriteLedgersUnparked;
+        @StatsDoc(
+            name = ENTRYLOGS_WRITE_BUFFER_BYTES,
+            help = "Current number of bytes of the write buffers of the entrylogs open for writing,"
+                + " if they are accounted"
+        )
+        private final Gauge<Long> writeBufferBytesGauge;
         /*
          * ledgerIdEntryLogCounterCacheMap cache will be used to store count of
          * entrylogs as value for its ledgerid key. This cacheMap limits -
@@ -170,6 +222,20 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
                     .getCounter(NUM_OF_WRITE_LEDGERS_REMOVED_CACHE_MAXSIZE);
             this.numLedgersHavingMultipleEntrylogs = statsLogger.getCounter(NUM_LEDGERS_HAVING_MULTIPLE_ENTRYLOGS);
             this.entryLogsPerLedger = statsLogger.getOpStatsLogger(ENTRYLOGS_PER_LEDGER);
+            this.numOfWriteLedgersParked = statsLogger.getCounter(NUM_OF_WRITE_LEDGERS_PARKED);
+            this.numOfWriteLedgersUnparked = statsLogger.getCounter(NUM_OF_WRITE_LEDGERS_UNPARKED);
+            this.writeBufferBytesGauge = new Gauge<Long>() {
+                @Override
+                public Long getDefaultValue() {
+                    return 0L;
+                }
+
+                @Override
+                public Long getSample() {
+                    return writeBufferBytes.get();
+                }
+            };
+            statsLogger.registerGauge(ENTRYLOGS_WRITE_BUFFER_BYTES, writeBufferBytesGauge);
 
             ledgerIdEntryLogCounterCacheMap = CacheBuilder.newBuilder()
                     .expireAfterAccess(entrylogMapAccessExpiryTimeInSeconds * entryLogPerLedgerCounterLimitsMultFactor,
@@ -263,6 +329,15 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
     private final int entrylogMapAccessExpiryTimeInSeconds;
     private final int maximumNumberOfActiveEntryLogs;
     private final int entryLogPerLedgerCounterLimitsMultFactor;
+    private final int minWriteBufferBytes;
+    private final long writeBufferMemoryLimit;
+    private final int maxOpenEntryLogs;
+    // capacity of the write buffers of the entrylogs open for writing, if they are accounted
+    private final AtomicLong writeBufferBytes = new AtomicLong(0);
+    private final AtomicBoolean parkingEntryLogs = new AtomicBoolean(false);
+
+    // the entrylogs are parked until they are under this fraction of the limits
+    private static final double PARKING_TARGET_RATIO = 0.9;
 
     // Expose Stats
     private final StatsLogger statsLogger;
@@ -279,6 +354,9 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
         this.entrylogMapAccessExpiryTimeInSeconds = conf.getEntrylogMapAccessExpiryTimeInSeconds();
         this.maximumNumberOfActiveEntryLogs = conf.getMaximumNumberOfActiveEntryLogs();
         this.entryLogPerLedgerCounterLimitsMultFactor = conf.getEntryLogPerLedgerCounterLimitsMultFactor();
+        this.minWriteBufferBytes = conf.getEntryLogPerLedgerMinWriteBufferSizeBytes();
+        this.writeBufferMemoryLimit = conf.getEntryLogPerLedgerWriteBufferMemoryLimitBytes();
+        this.maxOpenEntryLogs = conf.getEntryLogPerLedgerMaxOpenEntryLogs();
 
         ledgerDirsManager.addLedgerDirsListener(getLedgerDirsListener());
         this.lockArrayPool = new AtomicReferenceArray<Lock>(maximumNumberOfActiveEntryLogs * 2);
@@ -352,6 +430,21 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
         }
         lock.lock();
         try {
+            if (logChannelWithDirInfo.isParked()) {
+                // reopen the entrylog to append the ledgers map
+                try {
+                    unpark(logChannelWithDirInfo);
+                } catch (IOException e) {
+                    // the parked entrylog was synced, it can do without the ledgers map
+                    log.error("Got IOException while trying to reopen parked entrylog {} in cacheEntryRemoval"
+                            + " callback", logChannelWithDirInfo.getLogChannel().getLogId(), e);
+                    recentlyCreatedEntryLogsStatus.flushRotatedEntryLog(
+                            logChannelWithDirInfo.getLogChannel().getLogId());
+                    entryLogsPerLedgerCounter.removedLedgerFromEntryLogMapCache(ledgerId,
+                            removedLedgerEntryLogMapEntry.getCause());
+                    return;
+                }
+            }
             BufferedLogChannel logChannel = logChannelWithDirInfo.getLogChannel();
             // Append ledgers map at the end of entry log
             try {
@@ -360,7 +453,7 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
                 log.error("Got IOException while trying to appendLedgersMap in cacheEntryRemoval callback", e);
             }
             replicaOfCurrentLogChannels.remove(logChannel.getLogId());
-            rotatedLogChannels.add(logChannel);
+            addToRotatedLogs(logChannel);
             entryLogsPerLedgerCounter.removedLedgerFromEntryLogMapCache(ledgerId,
                     removedLedgerEntryLogMapEntry.getCause());
         } finally {
@@ -392,6 +485,127 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
         };
     }
 
+    private Lock getLockFromPool(long ledgerId) {
+        int lockIndex = MathUtils.signSafeMod(Long.hashCode(ledgerId), lockArrayPool.length());
+        if (lockArrayPool.get(lockIndex) == null) {
+            lockArrayPool.compareAndSet(lockIndex, null, new ReentrantLock());
+        }
+        return lockArrayPool.get(lockIndex);
+    }
+
+    /*
+     * accounts the write buffer of an entrylog open for writing, if the write
+     * buffers are adaptive or limited.
+     */
+    private void trackWriteBuffer(BufferedLogChannel logChannel) throws IOException {
+        if (minWriteBufferBytes > 0) {
+            logChannel.setGrowableWriteBuffer(minWriteBufferBytes, writeBufferBytes);
+        } else if (writeBufferMemoryLimit > 0) {
+            // write buffers of a fixed capacity
+            logChannel.setGrowableWriteBuffer(Integer.MAX_VALUE, writeBufferBytes);
+        }
+    }
+
+    private void addToRotatedLogs(BufferedLogChannel logChannel) {
+        rotatedLogChannels.add(logChannel);
+        if (minWriteBufferBytes > 0) {
+            // the rotated entrylog is not written anymore until it is synced and closed
+            try {
+                logChannel.resizeWriteBuffer(minWriteBufferBytes);
+            } catch (IOException e) {
+                // it is flushed again when it is synced
+                log.warn("Failed to flush rotated entrylog {} to shrink its write buffer", logChannel.getLogId(), e);
+            }
+        }
+    }
+
+    /*
+     * reopens the parked entrylog of a ledger, to append to it. The lock of
+     * the ledger should be held.
+     */
+    private void unpark(BufferedLogChannelWithDirInfo logChannelWithDirInfo) throws IOException {
+        synchronized (logChannelWithDirInfo) {
+            BufferedLogChannel logChannel = entryLoggerAllocator.reopenLog(logChannelWithDirInfo.getLogChannel());
+            try {
+                trackWriteBuffer(logChannel);
+            } catch (IOException e) {
+                logChannel.close();
+                throw e;
+            }
+            logChannelWithDirInfo.unpark(logChannel);
+            logChannelWithDirInfo.setLedgerDirFull(
+                    ledgerDirsManager.isDirFull(logChannel.getLogFile().getParentFile()));
+            replicaOfCurrentLogChannels.put(logChannel.getLogId(), logChannelWithDirInfo);
+            entryLogsPerLedgerCounter.numOfWriteLedgersUnparked.inc();
+            log.debug("Reopened parked entrylog {} of ledger {}", logChannel.getLogId(),
+                    logChannel.getLedgerIdAssigned());
+        }
+    }
+
+    /*
+     * parks the current entrylog of a ledger: flushes, syncs and closes it,
+     * until the ledger is written again.
+     */
+    private void park(BufferedLogChannelWithDirInfo logChannelWithDirInfo) throws IOException {
+        Lock lock = getLockFromPool(logChannelWithDirInfo.getLogChannel().getLedgerIdAssigned());
+        lock.lock();
+        try {
+            synchronized (logChannelWithDirInfo) {
+                BufferedLogChannel logChannel = logChannelWithDirInfo.getLogChannel();
+                // the entrylog might have been parked or rotated in the meantime
+                if (logChannelWithDirInfo.isParked()
+                        || replicaOfCurrentLogChannels.get(logChannel.getLogId()) != logChannelWithDirInfo) {
+                    return;
+                }
+                logChannel.flushAndForceWrite(false);
+                replicaOfCurrentLogChannels.remove(logChannel.getLogId());
+                logChannelWithDirInfo.park();
+                logChannel.close();
+                entryLogsPerLedgerCounter.numOfWriteLedgersParked.inc();
+                log.debug("Parked entrylog {} of ledger {}", logChannel.getLogId(), logChannel.getLedgerIdAssigned());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isOverLimits(double ratio) {
+        return (maxOpenEntryLogs > 0
+                    && replicaOfCurrentLogChannels.size() + rotatedLogChannels.size() > maxOpenEntryLogs * ratio)
+                || (writeBufferMemoryLimit > 0 && writeBufferBytes.get() > writeBufferMemoryLimit * ratio);
+    }
+
+    /*
+     * if there are more entrylogs open for writing, or more memory used by
+     * their write buffers, than allowed, then syncs and closes the rotated
+     * entrylogs, and parks the entrylogs of the least recently written
+     * ledgers. It should be called without holding any ledger lock.
+     */
+    private void parkEntryLogsIfNeeded() throws IOException {
+        if (!isOverLimits(1.0) || !parkingEntryLogs.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (!rotatedLogChannels.isEmpty()) {
+                flushRotatedLogs();
+            }
+            if (!isOverLimits(PARKING_TARGET_RATIO)) {
+                return;
+            }
+            List<BufferedLogChannelWithDirInfo> currentLogs =
+                    new ArrayList<BufferedLogChannelWithDirInfo>(replicaOfCurrentLogChannels.values());
+            currentLogs.sort(Comparator.comparingLong(BufferedLogChannelWithDirInfo::getLastAddTimeNanos));
+            for (BufferedLogChannelWithDirInfo currentLog : currentLogs) {
+                if (!isOverLimits(PARKING_TARGET_RATIO)) {
+                    break;
+                }
+                park(currentLog);
+            }
+        } finally {
+            parkingEntryLogs.set(false);
+        }
+    }
+
     Lock getLock(long ledgerId) throws IOException {
         try {
             return ledgerIdEntryLogMap.get(ledgerId).getLedgerLock();
@@ -415,13 +629,14 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
             BufferedLogChannel hasToRotateLogChannel = getCurrentLogForLedger(ledgerId);
             boolean newLedgerInEntryLogMapCache = (hasToRotateLogChannel == null);
             logChannel.setLedgerIdAssigned(ledgerId);
+            trackWriteBuffer(logChannel);
             BufferedLogChannelWithDirInfo logChannelWithDirInfo = new BufferedLogChannelWithDirInfo(logChannel);
             ledgerIdEntryLogMap.get(ledgerId).setEntryLogWithDirInfo(logChannelWithDirInfo);
             entryLogsPerLedgerCounter.openNewEntryLogForLedger(ledgerId, newLedgerInEntryLogMapCache);
             replicaOfCurrentLogChannels.put(logChannel.getLogId(), logChannelWithDirInfo);
             if (hasToRotateLogChannel != null) {
                 replicaOfCurrentLogChannels.remove(hasToRotateLogChannel.getLogId());
-                rotatedLogChannels.add(hasToRotateLogChannel);
+                addToRotatedLogs(hasToRotateLogChannel);
             }
         } catch (Exception e) {
             log.error("Received unexpected exception while fetching entry from map for ledger: " + ledgerId, e);
@@ -446,7 +661,11 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
         lock.lock();
         try {
             EntryLogAndLockTuple entryLogAndLockTuple = ledgerIdEntryLogMap.get(ledgerId);
-            return entryLogAndLockTuple.getEntryLogWithDirInfo();
+            BufferedLogChannelWithDirInfo logChannelWithDirInfo = entryLogAndLockTuple.getEntryLogWithDirInfo();
+            if (logChannelWithDirInfo != null && logChannelWithDirInfo.isParked()) {
+                unpark(logChannelWithDirInfo);
+            }
+            return logChannelWithDirInfo;
         } catch (Exception e) {
             log.error("Received unexpected exception while fetching entry from map for ledger: " + ledgerId, e);
             throw new IOException("Received unexpected exception while fetching entry from map", e);
@@ -603,11 +822,28 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
     void flushCurrentLogs() throws IOException {
         Set<BufferedLogChannelWithDirInfo> copyOfCurrentLogsWithDirInfo = getCopyOfCurrentLogs();
         for (BufferedLogChannelWithDirInfo logChannelWithDirInfo : copyOfCurrentLogsWithDirInfo) {
-            /**
-             * flushCurrentLogs method is called during checkpoint, so metadata
-             * of the file also should be force written.
-             */
-            flushLogChannel(logChannelWithDirInfo.getLogChannel(), true);
+            synchronized (logChannelWithDirInfo) {
+                if (logChannelWithDirInfo.isParked()) {
+                    // synced when it was parked
+                    continue;
+                }
+                BufferedLogChannel logChannel = logChannelWithDirInfo.getLogChannel();
+                /**
+                 * flushCurrentLogs method is called during checkpoint, so metadata
+                 * of the file also should be force written.
+                 */
+                flushLogChannel(logChannel, true);
+                if (minWriteBufferBytes > 0) {
+                    // halve the write buffer if the ledger wrote less than half of it since the previous checkpoint
+                    long position = logChannel.position();
+                    long writtenBytes = position - logChannelWithDirInfo.positionAtLastCheckpoint;
+                    logChannelWithDirInfo.positionAtLastCheckpoint = position;
+                    int capacity = logChannel.getWriteBufferCapacity();
+                    if (writtenBytes < capacity / 2) {
+                        logChannel.resizeWriteBuffer(Math.max(minWriteBufferBytes, capacity / 2));
+                    }
+                }
+            }
         }
     }
 
@@ -618,14 +854,17 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
     }
 
     @Override
-    public long addEntry(long ledger, ByteBuf entry, boolean rollLog) throws IOException {
+    public long addEntry(long ledger, ByteBuf entry, boolean compressed, boolean rollLog) throws IOException {
         Lock lock = getLock(ledger);
+        long location;
         lock.lock();
         try {
-            return super.addEntry(ledger, entry, rollLog);
+            location = super.addEntry(ledger, entry, compressed, rollLog);
         } finally {
             lock.unlock();
         }
+        parkEntryLogsIfNeeded();
+        return location;
     }
 
     @Override
@@ -672,16 +911,18 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
                 createNewLog(ledgerId,
                     ": diskFull = " + diskFull + ", allDisksFull = " + allDisksFull
                         + ", reachEntryLogLimit = " + reachEntryLogLimit + ", logChannel = " + logChannel);
+                logChannelWithDirInfo = getCurrentLogWithDirInfoForLedger(ledgerId);
             }
 
-            return getCurrentLogForLedger(ledgerId);
+            logChannelWithDirInfo.updateLastAddTime();
+            return logChannelWithDirInfo.getLogChannel();
         } finally {
             lock.unlock();
         }
     }
 
     @Override
-    public void flushRotatedLogs() throws IOException {
+    public synchronized void flushRotatedLogs() throws IOException {
         for (BufferedLogChannel channel : rotatedLogChannels) {
             channel.flushAndForceWrite(true);
             // since this channel is only used for writing, after flushing the channel,
@@ -83,8 +83,9 @@ class EntryLogManagerForSingleEntryLog extends EntryLogManagerBase {
     }
 
     @Override
-    public synchronized long addEntry(long ledger, ByteBuf entry, boolean rollLog) throws IOException {
-        return super.addEntry(ledger, entry, rollLog);
+    public synchronized long addEntry(long ledger, ByteBuf entry, boolean compressed, boolean rollLog)
+            throws IOException {
+        return super.addEntry(ledger, entry, compressed, rollLog);
     }
 
     @Override
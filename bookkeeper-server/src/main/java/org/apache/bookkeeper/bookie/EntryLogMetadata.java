@@ -21,32 +21,85 @@
 
 package org.apache.bookkeeper.bookie;
 
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
 import java.util.function.LongPredicate;
 
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 
 /**
  * Records the total size, remaining size and the set of ledgers that comprise a entry log.
+ *
+ * <p>The sizes are the bytes used in the entry log. When the entries are compressed, the logical sizes are the bytes
+ * of the entries once decompressed.
  */
 public class EntryLogMetadata {
+    private static final short SERIALIZATION_VERSION_V1 = 1;
+    // Introduced the logical sizes
+    private static final short SERIALIZATION_VERSION = 2;
+
     private final long entryLogId;
     private long totalSize;
     private long remainingSize;
+    private long totalLogicalSize;
+    private long remainingLogicalSize;
     private final ConcurrentLongLongHashMap ledgersMap;
+    // Only the ledgers with compressed entries have a logical size different from their size, and are tracked here
+    private ConcurrentLongLongHashMap ledgersLogicalSizeMap;
 
     public EntryLogMetadata(long logId) {
         this.entryLogId = logId;
 
         totalSize = remainingSize = 0;
+        totalLogicalSize = remainingLogicalSize = 0;
         ledgersMap = new ConcurrentLongLongHashMap(256, 1);
     }
 
     public void addLedgerSize(long ledgerId, long size) {
+        addLedgerSize(ledgerId, size, size);
+    }
+
+    public void addLedgerSize(long ledgerId, long size, long logicalSize) {
         totalSize += size;
         remainingSize += size;
-        ledgersMap.addAndGet(ledgerId, size);
+        totalLogicalSize += logicalSize;
+        remainingLogicalSize += logicalSize;
+        long ledgerSize = ledgersMap.addAndGet(ledgerId, size);
+
+        if (ledgersLogicalSizeMap != null && ledgersLogicalSizeMap.containsKey(ledgerId)) {
+            ledgersLogicalSizeMap.addAndGet(ledgerId, logicalSize);
+        } else if (logicalSize != size) {
+            if (ledgersLogicalSizeMap == null) {
+                ledgersLogicalSizeMap = new ConcurrentLongLongHashMap(16, 1);
+            }
+            // The previous entries of the ledger were not compressed
+            ledgersLogicalSizeMap.put(ledgerId, ledgerSize - size + logicalSize);
+        }
+    }
+
+    /**
+     * Set the logical size of a ledger whose size was already added.
+     */
+    public void setLedgerLogicalSize(long ledgerId, long logicalSize) {
+        long delta = logicalSize - getLedgerLogicalSize(ledgerId);
+        totalLogicalSize += delta;
+        remainingLogicalSize += delta;
+        if (ledgersLogicalSizeMap == null) {
+            ledgersLogicalSizeMap = new ConcurrentLongLongHashMap(16, 1);
+        }
+        ledgersLogicalSizeMap.put(ledgerId, logicalSize);
     }
 
+    private long getLedgerLogicalSize(long ledgerId) {
+        if (ledgersLogicalSizeMap != null) {
+            long logicalSize = ledgersLogicalSizeMap.get(ledgerId);
+            if (logicalSize >= 0) {
+                return logicalSize;
+            }
+        }
+        return Math.max(0, ledgersMap.get(ledgerId));
+    }
     public boolean containsLedger(long ledgerId) {
         return ledgersMap.containsKey(ledgerId);
     }
@@ -74,24 +127,112 @@ public class EntryLogMetadata {
         return remainingSize;
     }
 
+    public long getTotalLogicalSize() {
+        return totalLogicalSize;
+    }
+
+    public long getRemainingLogicalSize() {
+        return remainingLogicalSize;
+    }
+
     public ConcurrentLongLongHashMap getLedgersMap() {
         return ledgersMap;
     }
 
+    /**
+     * @return the logical sizes of the ledgers that have compressed entries, or null if there are none
+     */
+    public ConcurrentLongLongHashMap getLedgersLogicalSizeMap() {
+        return ledgersLogicalSizeMap;
+    }
+
     public void removeLedgerIf(LongPredicate predicate) {
         ledgersMap.removeIf((ledgerId, size) -> {
             boolean shouldRemove = predicate.test(ledgerId);
             if (shouldRemove) {
                 remainingSize -= size;
+                long logicalSize = ledgersLogicalSizeMap != null ? ledgersLogicalSizeMap.remove(ledgerId) : -1;
+                remainingLogicalSize -= logicalSize >= 0 ? logicalSize : size;
             }
             return shouldRemove;
         });
     }
 
+    /**
+     * @return the size of the serialized metadata
+     */
+    public int getSerializedSize() {
+        int logicalSizesCount = ledgersLogicalSizeMap != null ? (int) ledgersLogicalSizeMap.size() : 0;
+        return 2 + 8 * 4 + 16 * (int) ledgersMap.size() + 8 * 3 + 16 * logicalSizesCount;
+    }
+
+    /**
+     * Serialize the metadata, to be persisted in the entry log metadata cache.
+     */
+    public void serialize(ByteBuf buf) {
+        buf.writeShort(SERIALIZATION_VERSION);
+        buf.writeLong(entryLogId);
+        buf.writeLong(totalSize);
+        buf.writeLong(remainingSize);
+        buf.writeLong(ledgersMap.size());
+        ledgersMap.forEach((ledgerId, size) -> {
+            buf.writeLong(ledgerId);
+            buf.writeLong(size);
+        });
+
+        buf.writeLong(totalLogicalSize);
+        buf.writeLong(remainingLogicalSize);
+        if (ledgersLogicalSizeMap != null) {
+            buf.writeLong(ledgersLogicalSizeMap.size());
+            ledgersLogicalSizeMap.forEach((ledgerId, logicalSize) -> {
+                buf.writeLong(ledgerId);
+                buf.writeLong(logicalSize);
+            });
+        } else {
+            buf.writeLong(0);
+        }
+    }
+
+    public static EntryLogMetadata deserialize(ByteBuf buf) throws IOException {
+        short version = buf.readShort();
+        if (version != SERIALIZATION_VERSION && version != SERIALIZATION_VERSION_V1) {
+            throw new IOException("Unsupported entry log metadata serialization version " + version);
+        }
+
+        EntryLogMetadata meta = new EntryLogMetadata(buf.readLong());
+        long totalSize = buf.readLong();
+        long remainingSize = buf.readLong();
+        long ledgersCount = buf.readLong();
+        for (long i = 0; i < ledgersCount; i++) {
+            meta.ledgersMap.put(buf.readLong(), buf.readLong());
+        }
+        meta.totalSize = totalSize;
+        meta.remainingSize = remainingSize;
+
+        if (version == SERIALIZATION_VERSION_V1) {
+            meta.totalLogicalSize = totalSize;
+            meta.remainingLogicalSize = remainingSize;
+            return meta;
+        }
+
+        meta.totalLogicalSize = buf.readLong();
+        meta.remainingLogicalSize = buf.readLong();
+        long logicalSizesCount = buf.readLong();
+        if (logicalSizesCount > 0) {
+            meta.ledgersLogicalSizeMap = new ConcurrentLongLongHashMap(16, 1);
+            for (long i = 0; i < logicalSizesCount; i++) {
+                meta.ledgersLogicalSizeMap.put(buf.readLong(), buf.readLong());
+            }
+        }
+        return meta;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("{ totalSize = ").append(totalSize).append(", remainingSize = ").append(remainingSize)
+                .append(", totalLogicalSize = ").append(totalLogicalSize)
+                .append(", remainingLogicalSize = ").append(remainingLogicalSize)
                 .append(", ledgersMap = ").append(ledgersMap).append(" }");
         return sb.toString();
     }
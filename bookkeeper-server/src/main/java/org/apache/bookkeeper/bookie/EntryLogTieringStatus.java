@@ -0,0 +1,50 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * This is the entry log tiering thread status.
+ * It includes the placement of the entry logs across the tiers, and the entry logs moved between them.
+ */
+@Setter
+@Getter
+@Builder
+public class EntryLogTieringStatus {
+    // whether the tiering thread is moving entry logs.
+    private boolean migrating;
+
+    private long lastRunTime;
+    private int fastTierEntryLogCount;
+    private long fastTierEntryLogBytes;
+    private int capacityTierEntryLogCount;
+    private long capacityTierEntryLogBytes;
+    private long demotedEntryLogCounter;
+    private long demotedEntryLogBytes;
+    private long promotedEntryLogCounter;
+    private long promotedEntryLogBytes;
+    // bytes moved per second during the last run that moved entry logs.
+    private long lastMigrationBytesPerSecond;
+}
@@ -0,0 +1,409 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.bookie.stats.EntryLogTieringStats;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.DiskChecker.DiskErrorException;
+import org.apache.bookkeeper.util.DiskChecker.DiskOutOfSpaceException;
+import org.apache.bookkeeper.util.DiskChecker.DiskWarnThresholdException;
+import org.apache.bookkeeper.util.SafeRunnable;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the entry logs between the ledger dirs, the fast tier, and their capacity tier dirs.
+ *
+ * <p>The rotated entry logs that were not read for a while are moved to the capacity tier. When promotions are
+ * enabled, the entry logs of the capacity tier that are read often are moved back to their ledger dir. The new entry
+ * logs are always written in the ledger dirs.
+ *
+ * <p>The reads are tracked per entry log and in memory only: an entry log that was not read since the bookie started
+ * is considered read when it was last modified, or when the bookie started, whichever is the latest.
+ */
+public class EntryLogTieringThread extends SafeRunnable {
+    private static final Logger LOG = LoggerFactory.getLogger(EntryLogTieringThread.class);
+
+    // The last read time of an entry log is updated at most once per interval
+    private static final long READ_TIME_GRANULARITY_MILLIS = 1000;
+
+    // Time the channels of a moved entry log are kept open, for the reads that were using them to complete
+    private static final long RETIRED_CHANNEL_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final EntryLogger entryLogger;
+    private final LedgerDirsManager ledgerDirsManager;
+    private final ScheduledExecutorService tieringExecutor;
+    private volatile ScheduledFuture<?> scheduledFuture = null;
+    private volatile boolean running = true;
+
+    private final long intervalSeconds;
+    private final long coldThresholdMillis;
+    private final int promotionReadsThreshold;
+    private final float diskUsageWarnThreshold;
+    private final RateLimiter rateLimiter;
+    private final long startTime = System.currentTimeMillis();
+
+    // Last read time of the entry logs that were read since the bookie started
+    private final ConcurrentLongLongHashMap lastReadTimes = new ConcurrentLongLongHashMap(1024, 4);
+    // Number of reads since the last run, of each entry log of the capacity tier
+    private final ConcurrentLongLongHashMap capacityTierReads = new ConcurrentLongLongHashMap(1024, 4);
+
+    private final EntryLogTieringStats tieringStats;
+    private volatile boolean migrating = false;
+    private volatile long lastRunTime = 0;
+    private volatile long lastMigrationBytesPerSecond = 0;
+    private volatile int fastTierEntryLogCount = 0;
+    private volatile long fastTierEntryLogBytes = 0;
+    private volatile int capacityTierEntryLogCount = 0;
+    private volatile long capacityTierEntryLogBytes = 0;
+
+    public EntryLogTieringThread(ServerConfiguration conf, EntryLogger entryLogger, StatsLogger statsLogger)
+            throws IOException {
+        this(conf, entryLogger, null, statsLogger);
+    }
+
+    /**
+     * @param rateLimiter bandwidth of the moves, which can be shared with the tiering of other entry loggers, or
+     *                    null to limit the moves of this entry logger on their own
+     */
+    public EntryLogTieringThread(ServerConfiguration conf, EntryLogger entryLogger, RateLimiter rateLimiter,
+                                 StatsLogger statsLogger) throws IOException {
+        this.entryLogger = entryLogger;
+        this.ledgerDirsManager = entryLogger.getLedgerDirsManager();
+        this.tieringExecutor = Executors.newSingleThreadScheduledExecutor(
+                new DefaultThreadFactory("EntryLogTieringThread"));
+        this.intervalSeconds = conf.getEntryLogTieringIntervalSeconds();
+        this.coldThresholdMillis = TimeUnit.SECONDS.toMillis(conf.getEntryLogTieringColdThresholdSeconds());
+        this.promotionReadsThreshold = conf.getEntryLogTieringPromotionReadsThreshold();
+        this.diskUsageWarnThreshold = conf.getDiskUsageWarnThreshold();
+        this.rateLimiter = rateLimiter != null
+                ? rateLimiter : RateLimiter.create(conf.getEntryLogTieringRateByBytes());
+        this.tieringStats = new EntryLogTieringStats(statsLogger,
+                () -> capacityTierEntryLogCount, () -> capacityTierEntryLogBytes);
+
+        for (Map.Entry<File, File> dirs : entryLogger.getCapacityTierDirs().entrySet()) {
+            File capacityTierDir = dirs.getValue();
+            if (!capacityTierDir.exists() && !capacityTierDir.mkdirs()) {
+                throw new IOException("Failed to create capacity tier dir " + capacityTierDir);
+            }
+            cleanupInterruptedMoves(dirs.getKey(), capacityTierDir);
+        }
+        updatePlacement();
+
+        entryLogger.setTiering(this);
+        LOG.info("Entry log tiering: interval={}s, coldThreshold={}ms, promotionReadsThreshold={},"
+                + " capacity tier dirs={}", intervalSeconds, coldThresholdMillis, promotionReadsThreshold,
+                entryLogger.getCapacityTierDirs());
+    }
+
+    /**
+     * Drop the partial copies, and the original files of the entry logs that were moved but not deleted yet.
+     */
+    private void cleanupInterruptedMoves(File ledgerDir, File capacityTierDir) throws IOException {
+        for (File dir : new File[] { ledgerDir, capacityTierDir }) {
+            File[] partialCopies = dir.listFiles(file -> file.getName().endsWith(EntryLogger.TIERING_SUFFIX));
+            if (partialCopies != null) {
+                for (File partialCopy : partialCopies) {
+                    LOG.info("Deleting partial copy of entry log {}", partialCopy);
+                    if (!partialCopy.delete()) {
+                        throw new IOException("Failed to delete " + partialCopy);
+                    }
+                }
+            }
+        }
+
+        // Both copies are complete, since the copy is synced before being renamed
+        Set<Long> capacityTierEntryLogs = new HashSet<>(listEntryLogs(capacityTierDir));
+        for (long entryLogId : listEntryLogs(ledgerDir)) {
+            if (capacityTierEntryLogs.contains(entryLogId)) {
+                File duplicate = entryLogFile(ledgerDir, entryLogId);
+                LOG.info("Deleting {} which was already moved to {}", duplicate, capacityTierDir);
+                if (!duplicate.delete()) {
+                    throw new IOException("Failed to delete " + duplicate);
+                }
+            }
+        }
+    }
+
+    public void start() {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(false);
+        }
+        scheduledFuture = tieringExecutor.scheduleAtFixedRate(this, intervalSeconds, intervalSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Record a read of an entry log.
+     */
+    void recordRead(long entryLogId) {
+        long now = System.currentTimeMillis();
+        if (now - lastReadTimes.get(entryLogId) > READ_TIME_GRANULARITY_MILLIS) {
+            lastReadTimes.put(entryLogId, now);
+        }
+
+        if (!capacityTierReads.isEmpty()) {
+            // Only the entry logs of the capacity tier are in the map. Concurrent reads might not be all counted
+            long reads = capacityTierReads.get(entryLogId);
+            if (reads >= 0) {
+                capacityTierReads.compareAndSet(entryLogId, reads, reads + 1);
+            }
+        }
+    }
+
+    @Override
+    public void safeRun() {
+        // The reads that were in progress when the previous runs moved their entry logs are over by now
+        entryLogger.closeRetiredChannels(RETIRED_CHANNEL_GRACE_MILLIS);
+
+        long runStartTime = System.currentTimeMillis();
+        long movedBytes = 0;
+        migrating = true;
+        try {
+            for (Map.Entry<File, File> dirs : entryLogger.getCapacityTierDirs().entrySet()) {
+                movedBytes += demoteColdEntryLogs(dirs.getKey(), dirs.getValue(), runStartTime);
+                if (promotionReadsThreshold > 0) {
+                    movedBytes += promoteHotEntryLogs(dirs.getKey(), dirs.getValue());
+                }
+            }
+        } finally {
+            migrating = false;
+        }
+
+        updatePlacement();
+        lastRunTime = System.currentTimeMillis();
+        if (movedBytes > 0) {
+            lastMigrationBytesPerSecond = movedBytes * 1000 / Math.max(1, lastRunTime - runStartTime);
+        }
+    }
+
+    private long demoteColdEntryLogs(File ledgerDir, File capacityTierDir, long now) {
+        long leastUnflushedLogId = entryLogger.getLeastUnflushedLogId();
+        List<Long> coldEntryLogs = new ArrayList<>();
+        for (long entryLogId : listEntryLogs(ledgerDir)) {
+            if (entryLogId < leastUnflushedLogId
+                    && now - getLastReadTime(ledgerDir, entryLogId) >= coldThresholdMillis) {
+                coldEntryLogs.add(entryLogId);
+            }
+        }
+        coldEntryLogs.sort(Comparator.comparingLong(entryLogId -> getLastReadTime(ledgerDir, entryLogId)));
+
+        long movedBytes = 0;
+        for (long entryLogId : coldEntryLogs) {
+            if (!running) {
+                break;
+            }
+
+            long size = entryLogFile(ledgerDir, entryLogId).length();
+            if (capacityTierDir.getUsableSpace() < size || isFull(capacityTierDir)) {
+                LOG.warn("Not enough space left in capacity tier dir {} to move entry log {}", capacityTierDir,
+                        entryLogId);
+                break;
+            }
+
+            long bytes = moveEntryLog(entryLogId, capacityTierDir);
+            if (bytes >= 0) {
+                capacityTierReads.put(entryLogId, 0);
+                tieringStats.getDemotedEntryLogCounter().inc();
+                tieringStats.getDemotedEntryLogBytes().add(bytes);
+                movedBytes += bytes;
+            }
+        }
+        return movedBytes;
+    }
+
+    /**
+     * @return whether the disk usage of the dir is above the threshold at which the ledger dirs are no longer written
+     */
+    private boolean isFull(File dir) {
+        try {
+            ledgerDirsManager.getDiskChecker().checkDir(dir);
+            return false;
+        } catch (DiskWarnThresholdException e) {
+            return false;
+        } catch (DiskOutOfSpaceException e) {
+            return true;
+        } catch (DiskErrorException e) {
+            LOG.error("Failed to check capacity tier dir {}", dir, e);
+            return true;
+        }
+    }
+
+    private long promoteHotEntryLogs(File ledgerDir, File capacityTierDir) {
+        long movedBytes = 0;
+        for (long entryLogId : listEntryLogs(capacityTierDir)) {
+            if (!running) {
+                break;
+            }
+            if (capacityTierReads.get(entryLogId) < promotionReadsThreshold) {
+                continue;
+            }
+
+            // Keep the ledger dir below the warn threshold, so that the promotions never make it read-only
+            long size = entryLogFile(capacityTierDir, entryLogId).length();
+            long totalSpace = ledgerDir.getTotalSpace();
+            long usedSpace = totalSpace - ledgerDir.getUsableSpace() + size;
+            if (ledgerDirsManager.isDirFull(ledgerDir) || usedSpace > totalSpace * diskUsageWarnThreshold) {
+                LOG.info("Not enough space left in ledger dir {} to move back entry log {}", ledgerDir, entryLogId);
+                break;
+            }
+
+            long bytes = moveEntryLog(entryLogId, ledgerDir);
+            if (bytes >= 0) {
+                capacityTierReads.remove(entryLogId);
+                lastReadTimes.put(entryLogId, System.currentTimeMillis());
+                tieringStats.getPromotedEntryLogCounter().inc();
+                tieringStats.getPromotedEntryLogBytes().add(bytes);
+                movedBytes += bytes;
+            }
+        }
+        return movedBytes;
+    }
+
+    /**
+     * @return the bytes moved, or -1 if the entry log was not moved
+     */
+    private long moveEntryLog(long entryLogId, File targetDir) {
+        try {
+            long bytes = entryLogger.moveEntryLog(entryLogId, targetDir, rateLimiter);
+            if (bytes >= 0) {
+                LOG.info("Moved entry log {} ({} bytes) to {}", entryLogId, bytes, targetDir);
+            }
+            return bytes;
+        } catch (IOException e) {
+            LOG.warn("Failed to move entry log {} to {}", entryLogId, targetDir, e);
+            return -1;
+        }
+    }
+
+    private long getLastReadTime(File dir, long entryLogId) {
+        long lastReadTime = lastReadTimes.get(entryLogId);
+        if (lastReadTime >= 0) {
+            return lastReadTime;
+        }
+        return Math.max(startTime, entryLogFile(dir, entryLogId).lastModified());
+    }
+
+    /**
+     * Count the entry logs of each tier, and start counting the reads of the entry logs of the capacity tier over.
+     */
+    private void updatePlacement() {
+        Set<Long> entryLogs = new HashSet<>();
+        Set<Long> capacityTierEntryLogs = new HashSet<>();
+        int fastTierCount = 0;
+        long fastTierBytes = 0;
+        int capacityTierCount = 0;
+        long capacityTierBytes = 0;
+        for (Map.Entry<File, File> dirs : entryLogger.getCapacityTierDirs().entrySet()) {
+            for (long entryLogId : listEntryLogs(dirs.getKey())) {
+                entryLogs.add(entryLogId);
+                fastTierCount++;
+                fastTierBytes += entryLogFile(dirs.getKey(), entryLogId).length();
+            }
+            for (long entryLogId : listEntryLogs(dirs.getValue())) {
+                entryLogs.add(entryLogId);
+                capacityTierEntryLogs.add(entryLogId);
+                capacityTierCount++;
+                capacityTierBytes += entryLogFile(dirs.getValue(), entryLogId).length();
+            }
+        }
+
+        capacityTierReads.removeIf((entryLogId, reads) -> !capacityTierEntryLogs.contains(entryLogId));
+        for (long entryLogId : capacityTierEntryLogs) {
+            capacityTierReads.put(entryLogId, 0);
+        }
+        // Forget the entry logs that were garbage collected
+        lastReadTimes.removeIf((entryLogId, lastReadTime) -> !entryLogs.contains(entryLogId));
+
+        this.fastTierEntryLogCount = fastTierCount;
+        this.fastTierEntryLogBytes = fastTierBytes;
+        this.capacityTierEntryLogCount = capacityTierCount;
+        this.capacityTierEntryLogBytes = capacityTierBytes;
+    }
+
+    private static List<Long> listEntryLogs(File dir) {
+        List<Long> entryLogs = new ArrayList<>();
+        File[] files = dir.listFiles(file -> file.getName().endsWith(".log"));
+        if (files != null) {
+            for (File file : files) {
+                long entryLogId = EntryLogger.fileName2LogId(file.getName());
+                if (entryLogId != EntryLogger.INVALID_LID) {
+                    entryLogs.add(entryLogId);
+                }
+            }
+        }
+        return entryLogs;
+    }
+
+    private static File entryLogFile(File dir, long entryLogId) {
+        return new File(dir, Long.toHexString(entryLogId) + ".log");
+    }
+
+    public EntryLogTieringStatus getEntryLogTieringStatus() {
+        return EntryLogTieringStatus.builder()
+            .migrating(migrating)
+            .lastRunTime(lastRunTime)
+            .fastTierEntryLogCount(fastTierEntryLogCount)
+            .fastTierEntryLogBytes(fastTierEntryLogBytes)
+            .capacityTierEntryLogCount(capacityTierEntryLogCount)
+            .capacityTierEntryLogBytes(capacityTierEntryLogBytes)
+            .demotedEntryLogCounter(tieringStats.getDemotedEntryLogCounter().get())
+            .demotedEntryLogBytes(tieringStats.getDemotedEntryLogBytes().get())
+            .promotedEntryLogCounter(tieringStats.getPromotedEntryLogCounter().get())
+            .promotedEntryLogBytes(tieringStats.getPromotedEntryLogBytes().get())
+            .lastMigrationBytesPerSecond(lastMigrationBytesPerSecond)
+            .build();
+    }
+
+    /**
+     * Shutdown the tiering thread, interrupting the move in progress if any.
+     */
+    public void shutdown() throws InterruptedException {
+        this.running = false;
+        LOG.info("Shutting down EntryLogTieringThread");
+        entryLogger.setTiering(null);
+
+        tieringExecutor.shutdownNow();
+        if (!tieringExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+            LOG.warn("Entry log tiering thread did not stop");
+        }
+    }
+}
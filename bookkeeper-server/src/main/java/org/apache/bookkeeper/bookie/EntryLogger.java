@@ -27,6 +27,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.MapMaker;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.RateLimiter;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
@@ -44,8 +45,12 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -60,8 +65,10 @@ import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.DiskChecker;
 import org.apache.bookkeeper.util.IOUtils;
+import org.apache.bookkeeper.util.NativeIO;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap.BiConsumerLong;
+import org.apache.commons.lang3.mutable.MutableLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -94,6 +101,27 @@ public class EntryLogger {
             this.entryLogMetadata = new EntryLogMetadata(logId);
             this.logFile = logFile;
         }
+
+        protected BufferedLogChannel(FileChannel fc, ByteBuf writeBuffer, int writeCapacity, int readCapacity,
+                long logId, File logFile, long unpersistedBytesBound) throws IOException {
+            super(fc, writeBuffer, writeCapacity, readCapacity, unpersistedBytesBound);
+            this.logId = logId;
+            this.entryLogMetadata = new EntryLogMetadata(logId);
+            this.logFile = logFile;
+        }
+
+        /**
+         * Create a channel appending to the log of a channel that was closed while it was still a current log.
+         * The channel takes over the ledgers map of the closed channel.
+         */
+        BufferedLogChannel(ByteBufAllocator allocator, FileChannel fc, int writeCapacity, int readCapacity,
+                BufferedLogChannel closedLogChannel, long unpersistedBytesBound) throws IOException {
+            super(allocator, fc, writeCapacity, readCapacity, unpersistedBytesBound);
+            this.logId = closedLogChannel.logId;
+            this.entryLogMetadata = closedLogChannel.entryLogMetadata;
+            this.logFile = closedLogChannel.logFile;
+            this.ledgerIdAssigned = closedLogChannel.ledgerIdAssigned;
+        }
         public long getLogId() {
             return logId;
         }
@@ -106,6 +134,10 @@ public class EntryLogger {
             entryLogMetadata.addLedgerSize(ledgerId, entrySize);
         }
 
+        public void registerWrittenEntry(long ledgerId, long entrySize, long logicalSize) {
+            entryLogMetadata.addLedgerSize(ledgerId, entrySize, logicalSize);
+        }
+
         public ConcurrentLongLongHashMap getLedgersMap() {
             return entryLogMetadata.getLedgersMap();
         }
@@ -138,8 +170,30 @@ public class EntryLogger {
             ConcurrentLongLongHashMap ledgersMap = this.getLedgersMap();
             int numberOfLedgers = (int) ledgersMap.size();
 
-            // Write the ledgers map into several batches
+            // Write the ledgers map into several batches, followed by the logical sizes of the ledgers having
+            // compressed entries
+            writeLedgersMapBatches(ledgersMap, LEDGERS_MAP_ENTRY_ID);
+            ConcurrentLongLongHashMap ledgersLogicalSizeMap = entryLogMetadata.getLedgersLogicalSizeMap();
+            if (ledgersLogicalSizeMap != null && !ledgersLogicalSizeMap.isEmpty()) {
+                writeLedgersMapBatches(ledgersLogicalSizeMap, LEDGERS_MAP_LOGICAL_SIZES_ENTRY_ID);
+            }
+
+            // Flush the ledger's map out before we write the header.
+            // Otherwise the header might point to something that is not fully
+            // written
+            flush();
+
+            // Update the headers with the map offset and count of ledgers
+            ByteBuffer mapInfo = ByteBuffer.allocate(8 + 4);
+            mapInfo.putLong(ledgerMapOffset);
+            mapInfo.putInt(numberOfLedgers);
+            mapInfo.flip();
+            this.fileChannel.write(mapInfo, LEDGERS_MAP_OFFSET_POSITION);
+        }
 
+        private void writeLedgersMapBatches(ConcurrentLongLongHashMap ledgersMap, long batchEntryId)
+                throws IOException {
+            int numberOfLedgers = (int) ledgersMap.size();
             final int maxMapSize = LEDGERS_MAP_HEADER_SIZE + LEDGERS_MAP_ENTRY_SIZE * LEDGERS_MAP_MAX_BATCH_SIZE;
             final ByteBuf serializedMap = ByteBufAllocator.DEFAULT.buffer(maxMapSize);
 
@@ -158,7 +212,7 @@ public class EntryLogger {
                             serializedMap.clear();
                             serializedMap.writeInt(ledgerMapSize - 4);
                             serializedMap.writeLong(INVALID_LID);
-                            serializedMap.writeLong(LEDGERS_MAP_ENTRY_ID);
+                            serializedMap.writeLong(batchEntryId);
                             serializedMap.writeInt(batchSize);
 
                             startNewBatch = false;
@@ -190,17 +244,6 @@ public class EntryLogger {
             } finally {
                 serializedMap.release();
             }
-            // Flush the ledger's map out before we write the header.
-            // Otherwise the header might point to something that is not fully
-            // written
-            super.flush();
-
-            // Update the headers with the map offset and count of ledgers
-            ByteBuffer mapInfo = ByteBuffer.allocate(8 + 4);
-            mapInfo.putLong(ledgerMapOffset);
-            mapInfo.putInt(numberOfLedgers);
-            mapInfo.flip();
-            this.fileChannel.write(mapInfo, LEDGERS_MAP_OFFSET_POSITION);
         }
     }
 
@@ -277,12 +320,31 @@ public class EntryLogger {
     // EntryId used to mark an entry (belonging to INVALID_ID) as a component of the serialized ledgers map
     static final long LEDGERS_MAP_ENTRY_ID = -2L;
 
+    // EntryId used to mark an entry (belonging to INVALID_ID) as a component of the logical sizes of the ledgers
+    // having compressed entries, serialized in the same format as the ledgers map after it
+    static final long LEDGERS_MAP_LOGICAL_SIZES_ENTRY_ID = -3L;
+
     static final int MIN_SANE_ENTRY_SIZE = 8 + 8;
     static final long MB = 1024 * 1024;
 
     private final int maxSaneEntrySize;
 
     private final ByteBufAllocator allocator;
+    private final EntryLogCompression compression;
+
+    static final String TIERING_SUFFIX = ".tiering";
+
+    // The capacity tier dir of each ledger dir, where the cold entry logs are moved
+    private final Map<File, File> capacityTierDirs;
+    private volatile EntryLogTieringThread tiering;
+    // Channels of the entry logs moved to another dir, with the time they were retired at. They're no longer handed
+    // to the readers, and are closed once the reads that were using them are over
+    private final Map<FileChannel, Long> retiredFileChannels = new HashMap<>();
+    private final Object moveLock = new Object();
+
+    // Null unless the rotated entry logs are read through memory mapped regions
+    private final MappedEntryLogRegions mappedRegions;
+    private final boolean directIOEnabled;
 
     final ServerConfiguration conf;
     /**
@@ -345,6 +407,23 @@ public class EntryLogger {
         this.allocator = allocator;
         this.ledgerDirsManager = ledgerDirsManager;
         this.conf = conf;
+        this.compression = new EntryLogCompression(
+                EntryLogCompression.Codec.fromName(conf.getEntryLogCompressionCodec()),
+                conf.getEntryLogCompressionMaxRatio(), allocator);
+        if (conf.isEntryLogDirectIOEnabled() && !NativeIO.isDirectIOSupported()) {
+            LOG.warn("Direct I/O is not supported on this platform, the entry logs will use buffered I/O");
+        }
+        this.directIOEnabled = conf.isEntryLogDirectIOEnabled() && NativeIO.isDirectIOSupported();
+        if (conf.isEntryLogMmapReadEnabled() && directIOEnabled) {
+            LOG.warn("Memory mapped reads of the entry logs are disabled, since direct I/O is enabled");
+        }
+        if (conf.isEntryLogMmapReadEnabled() && !directIOEnabled) {
+            this.mappedRegions = new MappedEntryLogRegions(conf.getEntryLogMmapRegionSize(),
+                    conf.getEntryLogMmapMaxRegions(), this::findFile);
+        } else {
+            this.mappedRegions = null;
+        }
+        this.capacityTierDirs = getCapacityTierDirs(conf, ledgerDirsManager);
         entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
         if (listener != null) {
             addListener(listener);
@@ -418,6 +497,26 @@ public class EntryLogger {
         return channel.read(buff, pos);
     }
 
+    /**
+     * Read as many bytes as possible, up to the buffer writable bytes, stopping at the end of the data that was
+     * appended to the entry log so far.
+     *
+     * @return the number of bytes read, or -1 if the position is past the end of the entry log
+     */
+    private int readAvailableFromLogChannel(long entryLogId, BufferedReadChannel channel, ByteBuf buff, long pos)
+            throws IOException {
+        BufferedLogChannel bc = entryLogManager.getCurrentLogIfPresent(entryLogId);
+        if (null != bc) {
+            synchronized (bc) {
+                if (pos + buff.writableBytes() >= bc.getFileChannelPosition()) {
+                    int length = (int) Math.min(buff.writableBytes(), bc.position() - pos);
+                    return length > 0 ? bc.read(buff, pos, length) : -1;
+                }
+            }
+        }
+        return channel.read(buff, pos);
+    }
+
     /**
      * A thread-local variable that wraps a mapping of log ids to bufferedchannels
      * These channels should be used only for reading. logChannel is the one
@@ -443,6 +542,9 @@ public class EntryLogger {
      */
     private final ConcurrentMap<Long, FileChannel> logid2FileChannel = new ConcurrentHashMap<Long, FileChannel>();
 
+    // The channels in logid2FileChannel that were opened with direct I/O
+    private final Set<FileChannel> directIOFileChannels = ConcurrentHashMap.newKeySet();
+
     /**
      * Put the logId, bc pair in the map responsible for the current thread.
      * @param logId
@@ -458,8 +560,13 @@ public class EntryLogger {
      * @param logId
      */
     public void removeFromChannelsAndClose(long logId) {
+        if (null != mappedRegions) {
+            mappedRegions.removeEntryLog(logId);
+        }
+
         FileChannel fileChannel = logid2FileChannel.remove(logId);
         if (null != fileChannel) {
+            directIOFileChannels.remove(fileChannel);
             try {
                 fileChannel.close();
             } catch (IOException e) {
@@ -526,17 +633,145 @@ public class EntryLogger {
     protected boolean removeEntryLog(long entryLogId) {
         removeFromChannelsAndClose(entryLogId);
         File entryLogFile;
-        try {
-            entryLogFile = findFile(entryLogId);
+        synchronized (moveLock) {
+            try {
+                entryLogFile = findFile(entryLogId);
+            } catch (FileNotFoundException e) {
+                LOG.error("Trying to delete an entryLog file that could not be found: "
+                        + entryLogId + ".log");
+                return false;
+            }
+            if (!entryLogFile.delete()) {
+                LOG.warn("Could not delete entry log file {}", entryLogFile);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Move a rotated entry log to another dir, typically of another storage tier.
+     *
+     * <p>The entry log is copied while it's still read from its current dir. The copy is then renamed, and the
+     * original file deleted, so that the entry log is found in either dir at any time. Since the locations of the
+     * entries don't depend on the dir of their entry log, the ledger indexes are left untouched. The channels
+     * opened on the original file keep serving the reads in progress until {@link #closeRetiredChannels(long)}, while
+     * the next reads open the moved file.
+     *
+     * @return the number of bytes moved, or -1 if the entry log was removed in the meantime
+     */
+    long moveEntryLog(long entryLogId, File targetDir, RateLimiter rateLimiter) throws IOException {
+        if (entryLogId >= getLeastUnflushedLogId()) {
+            throw new IOException("Can't move entry log " + entryLogId + " which is not flushed yet");
+        }
+
+        File source = findFile(entryLogId);
+        File target = new File(targetDir, source.getName());
+        File tmp = new File(targetDir, source.getName() + TIERING_SUFFIX);
+
+        long size;
+        try (FileChannel src = new RandomAccessFile(source, "r").getChannel();
+             FileChannel dst = new RandomAccessFile(tmp, "rw").getChannel()) {
+            size = src.size();
+            long pos = 0;
+            while (pos < size) {
+                long len = Math.min(MB, size - pos);
+                rateLimiter.acquire((int) len);
+                pos += src.transferTo(pos, len, dst);
+            }
+            dst.force(true);
         } catch (FileNotFoundException e) {
-            LOG.error("Trying to delete an entryLog file that could not be found: "
-                    + entryLogId + ".log");
-            return false;
+            // The entry log was removed in the meantime
+            Files.deleteIfExists(tmp.toPath());
+            return -1;
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp.toPath());
+            throw e;
         }
-        if (!entryLogFile.delete()) {
-            LOG.warn("Could not delete entry log file {}", entryLogFile);
+
+        synchronized (moveLock) {
+            if (!source.exists()) {
+                Files.deleteIfExists(tmp.toPath());
+                return -1;
+            }
+
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            if (!source.delete()) {
+                throw new IOException("Failed to delete " + source + " after moving it to " + targetDir);
+            }
+
+            // The next reads open the moved file
+            if (null != mappedRegions) {
+                mappedRegions.removeEntryLog(entryLogId);
+            }
+            FileChannel fileChannel = logid2FileChannel.remove(entryLogId);
+            if (null != fileChannel) {
+                synchronized (retiredFileChannels) {
+                    retiredFileChannels.put(fileChannel, System.currentTimeMillis());
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Close the channels of the entry logs that were moved to another dir at least minRetiredMillis ago.
+     */
+    void closeRetiredChannels(long minRetiredMillis) {
+        List<FileChannel> channels = new ArrayList<>();
+        long retiredBefore = System.currentTimeMillis() - minRetiredMillis;
+        synchronized (retiredFileChannels) {
+            retiredFileChannels.entrySet().removeIf(retired -> {
+                if (retired.getValue() <= retiredBefore) {
+                    channels.add(retired.getKey());
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        for (FileChannel fileChannel : channels) {
+            directIOFileChannels.remove(fileChannel);
+            try {
+                fileChannel.close();
+            } catch (IOException e) {
+                LOG.warn("Exception while closing channel of moved entry log", e);
+            }
         }
-        return true;
+    }
+
+    void setTiering(EntryLogTieringThread tiering) {
+        this.tiering = tiering;
+    }
+
+    /**
+     * @return the capacity tier dir of each ledger dir, empty if there's no capacity tier
+     */
+    Map<File, File> getCapacityTierDirs() {
+        return capacityTierDirs;
+    }
+
+    /**
+     * Pair the ledger dirs of this entry logger with their capacity tier dirs, using the order of both in the
+     * configuration.
+     */
+    private static Map<File, File> getCapacityTierDirs(ServerConfiguration conf, LedgerDirsManager ledgerDirsManager) {
+        String[] capacityTierDirNames = conf.getCapacityTierLedgerDirNames();
+        if (capacityTierDirNames.length == 0) {
+            return Collections.emptyMap();
+        }
+
+        File[] ledgerDirs = conf.getLedgerDirs();
+        Map<File, File> capacityTierDirs = new LinkedHashMap<>();
+        for (File dir : ledgerDirsManager.getAllLedgerDirs()) {
+            for (int i = 0; i < ledgerDirs.length && i < capacityTierDirNames.length; i++) {
+                File ledgerDir = Bookie.getCurrentDirectory(ledgerDirs[i]);
+                if (ledgerDir.getAbsoluteFile().toPath().normalize()
+                        .equals(dir.getAbsoluteFile().toPath().normalize())) {
+                    capacityTierDirs.put(dir, Bookie.getCurrentDirectory(new File(capacityTierDirNames[i])));
+                }
+            }
+        }
+        return capacityTierDirs;
     }
 
     private long getLastLogId(File dir) {
@@ -594,15 +829,24 @@ public class EntryLogger {
     }
 
     long addEntry(long ledger, ByteBuffer entry) throws IOException {
-        return entryLogManager.addEntry(ledger, Unpooled.wrappedBuffer(entry), true);
+        return addEntry(ledger, Unpooled.wrappedBuffer(entry), true);
     }
 
     long addEntry(long ledger, ByteBuf entry) throws IOException {
-        return entryLogManager.addEntry(ledger, entry, true);
+        return addEntry(ledger, entry, true);
     }
 
     public long addEntry(long ledger, ByteBuf entry, boolean rollLog) throws IOException {
-        return entryLogManager.addEntry(ledger, entry, rollLog);
+        ByteBuf compressed = compression.compress(ledger, entry);
+        if (compressed == null) {
+            return entryLogManager.addEntry(ledger, entry, false, rollLog);
+        }
+
+        try {
+            return entryLogManager.addEntry(ledger, compressed, true, rollLog);
+        } finally {
+            compressed.release();
+        }
     }
 
     private final FastThreadLocal<ByteBuf> sizeBuffer = new FastThreadLocal<ByteBuf>() {
@@ -613,21 +857,40 @@ public class EntryLogger {
         }
     };
 
-    long addEntryForCompaction(long ledgerId, ByteBuf entry) throws IOException {
+    /**
+     * Add an entry as it was stored in another entry log, without compressing or decompressing it again.
+     *
+     * @param stored the entry as stored, compressed or not
+     * @param compressed whether the stored entry is compressed
+     */
+    long addStoredEntry(long ledger, ByteBuf stored, boolean compressed) throws IOException {
+        return entryLogManager.addEntry(ledger, stored, compressed, true);
+    }
+
+    /**
+     * Add an entry to the compaction log as it was stored in the compacted entry log, without compressing or
+     * decompressing it again.
+     *
+     * @param stored the entry as stored, compressed or not
+     * @param compressed whether the stored entry is compressed
+     */
+    long addEntryForCompaction(long ledgerId, ByteBuf stored, boolean compressed) throws IOException {
         synchronized (compactionLogLock) {
-            int entrySize = entry.readableBytes() + 4;
+            int entrySize = stored.readableBytes() + 4;
             if (compactionLogChannel == null) {
                 createNewCompactionLog();
             }
 
             ByteBuf sizeBuffer = this.sizeBuffer.get();
             sizeBuffer.clear();
-            sizeBuffer.writeInt(entry.readableBytes());
+            sizeBuffer.writeInt(compressed
+                    ? stored.readableBytes() | EntryLogCompression.COMPRESSED_FLAG : stored.readableBytes());
             compactionLogChannel.write(sizeBuffer);
 
             long pos = compactionLogChannel.position();
-            compactionLogChannel.write(entry);
-            compactionLogChannel.registerWrittenEntry(ledgerId, entrySize);
+            int logicalSize = compressed ? EntryLogCompression.uncompressedSize(stored) + 4 : entrySize;
+            compactionLogChannel.write(stored);
+            compactionLogChannel.registerWrittenEntry(ledgerId, entrySize, logicalSize);
             return (compactionLogChannel.getLogId() << 32L) | pos;
         }
     }
@@ -793,7 +1056,7 @@ public class EntryLogger {
 
     private void validateEntry(long ledgerId, long entryId, long entryLogId, long pos, ByteBuf sizeBuff)
             throws IOException, EntryLookupException {
-        int entrySize = sizeBuff.readInt();
+        int entrySize = EntryLogCompression.storedSize(sizeBuff.readInt());
 
         // entrySize does not include the ledgerId
         if (entrySize > maxSaneEntrySize) {
@@ -815,17 +1078,30 @@ public class EntryLogger {
 
     public ByteBuf internalReadEntry(long ledgerId, long entryId, long location, boolean validateEntry)
             throws IOException {
+        return internalReadEntry(ledgerId, entryId, location, validateEntry, null);
+    }
+
+    private ByteBuf internalReadEntry(long ledgerId, long entryId, long location, boolean validateEntry,
+                                      MutableLong nextLocation) throws IOException {
         long entryLogId = logIdForOffset(location);
         long pos = posForOffset(location);
+        recordRead(entryLogId);
 
+        ByteBuf mappedEntry = readEntryFromMappedLog(ledgerId, entryId, entryLogId, pos, validateEntry,
+                nextLocation);
+        if (mappedEntry != null) {
+            return mappedEntry;
+        }
 
         BufferedReadChannel fc = null;
         int entrySize = -1;
+        boolean compressed = false;
         try {
             fc = getFCForEntryInternal(ledgerId, entryId, entryLogId, pos);
 
             ByteBuf sizeBuff = readEntrySize(ledgerId, entryId, entryLogId, pos, fc);
-            entrySize = sizeBuff.getInt(0);
+            compressed = EntryLogCompression.isCompressed(sizeBuff.getInt(0));
+            entrySize = EntryLogCompression.storedSize(sizeBuff.getInt(0));
             if (validateEntry) {
                 validateEntry(ledgerId, entryId, entryLogId, pos, sizeBuff);
             }
@@ -852,14 +1128,232 @@ public class EntryLogger {
                                               + pos + "(" + rc + "!=" + entrySize + ")", ledgerId, entryId);
         }
         data.writerIndex(entrySize);
+        if (nextLocation != null) {
+            nextLocation.setValue(location + entrySize + 4);
+        }
+
+        if (compressed) {
+            try {
+                return compression.decompress(data);
+            } finally {
+                data.release();
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Read an entry as it is stored in the entry log, without decompressing it.
+     *
+     * @return the stored entry, which must be released, preceded by its size header that tells whether it is
+     *         compressed
+     */
+    ByteBuf readStoredEntry(long ledgerId, long entryId, long location) throws IOException {
+        long entryLogId = logIdForOffset(location);
+        long pos = posForOffset(location);
+
+        BufferedReadChannel fc;
+        int sizeHeader;
+        try {
+            fc = getFCForEntryInternal(ledgerId, entryId, entryLogId, pos);
+            ByteBuf sizeBuff = readEntrySize(ledgerId, entryId, entryLogId, pos, fc);
+            sizeHeader = sizeBuff.getInt(0);
+            validateEntry(ledgerId, entryId, entryLogId, pos, sizeBuff);
+        } catch (EntryLookupException.MissingEntryException entryLookupError) {
+            throw new Bookie.NoEntryException("Short read from entrylog " + entryLogId, ledgerId, entryId);
+        } catch (EntryLookupException e) {
+            throw new IOException(e.toString());
+        }
 
+        int entrySize = EntryLogCompression.storedSize(sizeHeader);
+        ByteBuf data = allocator.buffer(entrySize + 4, entrySize + 4);
+        data.writeInt(sizeHeader);
+        int rc = readFromLogChannel(entryLogId, fc, data, pos);
+        if (rc != entrySize) {
+            data.release();
+            throw new Bookie.NoEntryException("Short read for " + ledgerId + "@" + entryId + " in " + entryLogId
+                    + "@" + pos + "(" + rc + "!=" + entrySize + ")", ledgerId, entryId);
+        }
         return data;
     }
 
+    /**
+     * Slice the entry out of the memory mapped entry log, if the entry log is rotated and the read through mapped
+     * regions is enabled.
+     *
+     * @return the entry, or null if it needs to be read through the regular read path, which also takes care of
+     *         reporting invalid entries
+     */
+    private ByteBuf readEntryFromMappedLog(long ledgerId, long entryId, long entryLogId, long pos,
+                                          boolean validateEntry, MutableLong nextLocation) {
+        // Include the size header of the entry
+        ByteBuf data = sliceFromMappedLog(entryLogId, pos - 4, Integer.MAX_VALUE);
+        if (data == null) {
+            return null;
+        }
+
+        try {
+            if (data.readableBytes() < 4 + MIN_SANE_ENTRY_SIZE) {
+                return null;
+            }
+
+            int entrySize = EntryLogCompression.storedSize(data.getInt(0));
+            if (entrySize < MIN_SANE_ENTRY_SIZE || entrySize > data.readableBytes() - 4) {
+                // Either invalid or crossing the end of the mapped region
+                return null;
+            }
+
+            if (validateEntry && (data.getLong(4) != ledgerId || data.getLong(12) != entryId)) {
+                return null;
+            }
+
+            ByteBuf entry;
+            if (EntryLogCompression.isCompressed(data.getInt(0))) {
+                try {
+                    entry = compression.decompress(data.slice(4, entrySize));
+                } catch (IOException e) {
+                    // Let the regular read path report the invalid entry
+                    return null;
+                }
+            } else {
+                entry = data.retainedSlice(4, entrySize);
+            }
+            if (nextLocation != null) {
+                nextLocation.setValue((entryLogId << 32L) | (pos + entrySize + 4));
+            }
+            return entry;
+        } finally {
+            data.release();
+        }
+    }
+
+    private void recordRead(long entryLogId) {
+        EntryLogTieringThread tiering = this.tiering;
+        if (tiering != null) {
+            tiering.recordRead(entryLogId);
+        }
+    }
+
+    private ByteBuf sliceFromMappedLog(long entryLogId, long pos, int maxLength) {
+        // Only the entry logs that were rotated and flushed are immutable
+        if (null == mappedRegions || entryLogId >= getLeastUnflushedLogId()) {
+            return null;
+        }
+
+        return mappedRegions.slice(entryLogId, pos, maxLength);
+    }
+
     public ByteBuf readEntry(long ledgerId, long entryId, long location) throws IOException, Bookie.NoEntryException {
         return internalReadEntry(ledgerId, entryId, location, true /* validateEntry */);
     }
 
+    /**
+     * Read, with a single read from the entry log, the entries of a ledger that were appended back to back starting
+     * from the given location.
+     *
+     * <p>The returned entries have increasing entry ids in the range [firstEntryId, lastEntryId]. The read stops at the
+     * first entry that belongs to a different ledger or that's out of the range, at the end of the entry log or once
+     * maxBytes are read, though the first entry is always returned. The entries are slices of a single buffer and
+     * each of them must be released.
+     *
+     * @param location the location of an entry of the ledger, as stored in the ledger index
+     * @return the entries, or an empty list if no complete entry of the range was found at the location
+     */
+    public List<ByteBuf> readEntries(long ledgerId, long firstEntryId, long lastEntryId, long location, int maxBytes)
+            throws IOException {
+        return readEntries(ledgerId, firstEntryId, lastEntryId, location, maxBytes, null);
+    }
+
+    /**
+     * Read entries, like {@link #readEntries(long, long, long, long, int)}, and set nextLocation to the location of
+     * the entry stored right after the last one returned, if any.
+     */
+    public List<ByteBuf> readEntries(long ledgerId, long firstEntryId, long lastEntryId, long location, int maxBytes,
+                                     MutableLong nextLocation) throws IOException {
+        long entryLogId = logIdForOffset(location);
+        // Include the size header of the first entry
+        long pos = posForOffset(location) - 4;
+        recordRead(entryLogId);
+
+        // Read at least the header of the first entry
+        int readSize = Math.max(maxBytes, 4 + MIN_SANE_ENTRY_SIZE);
+        ByteBuf data = sliceFromMappedLog(entryLogId, pos, readSize);
+        if (data == null) {
+            BufferedReadChannel fc;
+            try {
+                fc = getFCForEntryInternal(ledgerId, firstEntryId, entryLogId, pos);
+            } catch (EntryLookupException e) {
+                throw new IOException(e.toString());
+            }
+
+            data = allocator.buffer(readSize, readSize);
+            try {
+                readAvailableFromLogChannel(entryLogId, fc, data, pos);
+            } catch (BufferedChannelBase.BufferedChannelClosedException | AsynchronousCloseException e) {
+                data.release();
+                throw new IOException("Entry log " + entryLogId + " was closed while reading", e);
+            } catch (IOException e) {
+                data.release();
+                throw e;
+            }
+        }
+
+        List<ByteBuf> entries = new ArrayList<>();
+        try {
+            long previousEntryId = firstEntryId - 1;
+            long returnedBytes = 0;
+            while (data.readableBytes() >= 4 + MIN_SANE_ENTRY_SIZE) {
+                int sizeHeader = data.getInt(data.readerIndex());
+                int entrySize = EntryLogCompression.storedSize(sizeHeader);
+                if (entrySize < MIN_SANE_ENTRY_SIZE || entrySize > data.readableBytes() - 4) {
+                    // Either a corrupted size or an entry that was only partially read
+                    break;
+                }
+
+                int entryIndex = data.readerIndex() + 4;
+                long entryId = data.getLong(entryIndex + 8);
+                if (data.getLong(entryIndex) != ledgerId || entryId <= previousEntryId || entryId > lastEntryId) {
+                    break;
+                }
+
+                if (EntryLogCompression.isCompressed(sizeHeader)) {
+                    ByteBuf stored = data.slice(entryIndex, entrySize);
+                    returnedBytes += EntryLogCompression.uncompressedSize(stored);
+                    if (!entries.isEmpty() && returnedBytes > maxBytes) {
+                        // The decompressed entries must fit in maxBytes as well
+                        break;
+                    }
+                    entries.add(compression.decompress(stored));
+                } else {
+                    returnedBytes += entrySize;
+                    entries.add(data.retainedSlice(entryIndex, entrySize));
+                }
+                data.skipBytes(4 + entrySize);
+                previousEntryId = entryId;
+            }
+
+            if (!entries.isEmpty()) {
+                if (nextLocation != null) {
+                    // The read started at the size header of the first entry, so it stopped at the size header
+                    // of the next one
+                    nextLocation.setValue(location + data.readerIndex());
+                }
+            } else if (data.readableBytes() >= 4 + MIN_SANE_ENTRY_SIZE
+                    && data.getLong(4) == ledgerId && data.getLong(12) >= firstEntryId
+                    && data.getLong(12) <= lastEntryId) {
+                // The first entry is bigger than maxBytes, read it on its own
+                entries.add(internalReadEntry(ledgerId, data.getLong(12), location, false /* validateEntry */,
+                        nextLocation));
+            }
+            return entries;
+        } catch (IOException e) {
+            entries.forEach(ByteBuf::release);
+            throw e;
+        } finally {
+            data.release();
+        }
+    }
+
     /**
      * Read the header of an entry log.
      */
@@ -889,30 +1383,63 @@ public class EntryLogger {
 
     private BufferedReadChannel getChannelForLogId(long entryLogId) throws IOException {
         BufferedReadChannel fc = getFromChannels(entryLogId);
-        if (fc != null) {
+        // The channel is retired once its entry log was moved to another dir
+        if (fc != null && fc.fileChannel == logid2FileChannel.get(entryLogId)) {
             return fc;
         }
         File file = findFile(entryLogId);
         // get channel is used to open an existing entry log file
         // it would be better to open using read mode
-        FileChannel newFc = new RandomAccessFile(file, "r").getChannel();
+        RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(file, "r");
+        } catch (FileNotFoundException e) {
+            // Concurrently moved to another dir
+            file = findFile(entryLogId);
+            raf = new RandomAccessFile(file, "r");
+        }
+        boolean directIO = directIOEnabled && tryEnableDirectIO(raf, file);
+        FileChannel newFc = raf.getChannel();
+        if (directIO) {
+            // Must be visible to the threads that will find the channel in logid2FileChannel
+            directIOFileChannels.add(newFc);
+        }
         FileChannel oldFc = logid2FileChannel.putIfAbsent(entryLogId, newFc);
         if (null != oldFc) {
+            directIOFileChannels.remove(newFc);
             newFc.close();
             newFc = oldFc;
+            directIO = directIOFileChannels.contains(newFc);
+        }
+        if (directIO) {
+            fc = new DirectIOReadChannel(allocator, newFc, conf.getReadBufferBytes());
+        } else {
+            // We set the position of the write buffer of this buffered channel to Long.MAX_VALUE
+            // so that there are no overlaps with the write buffer while reading
+            fc = new BufferedReadChannel(newFc, conf.getReadBufferBytes());
         }
-        // We set the position of the write buffer of this buffered channel to Long.MAX_VALUE
-        // so that there are no overlaps with the write buffer while reading
-        fc = new BufferedReadChannel(newFc, conf.getReadBufferBytes());
         putInReadChannels(entryLogId, fc);
         return fc;
     }
 
+    /**
+     * Switch an entry log file to direct I/O, if its file system supports it.
+     */
+    private static boolean tryEnableDirectIO(RandomAccessFile raf, File file) {
+        try {
+            NativeIO.enableDirectIO(raf.getFD());
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Failed to enable direct I/O on entry log {}, it will be read with buffered I/O", file, e);
+            return false;
+        }
+    }
+
     /**
      * Whether the log file exists or not.
      */
     boolean logExists(long logId) {
-        for (File d : ledgerDirsManager.getAllLedgerDirs()) {
+        for (File d : getAllEntryLogDirs()) {
             File f = new File(d, Long.toHexString(logId) + ".log");
             if (f.exists()) {
                 return true;
@@ -921,6 +1448,18 @@ public class EntryLogger {
         return false;
     }
 
+    /**
+     * @return the ledger dirs, followed by their capacity tier dirs
+     */
+    private List<File> getAllEntryLogDirs() {
+        if (capacityTierDirs.isEmpty()) {
+            return ledgerDirsManager.getAllLedgerDirs();
+        }
+        List<File> dirs = new ArrayList<>(ledgerDirsManager.getAllLedgerDirs());
+        dirs.addAll(capacityTierDirs.values());
+        return dirs;
+    }
+
     /**
      * Returns a set with the ids of all the entry log files.
      *
@@ -947,11 +1486,23 @@ public class EntryLogger {
                 entryLogs.add(entryLogId);
             }
         }
+        for (File d : capacityTierDirs.values()) {
+            // Only created once an entry log is moved there
+            File[] files = d.listFiles(logFileFilter);
+            if (files == null) {
+                continue;
+            }
+
+            for (File f : files) {
+                Long entryLogId = Long.parseLong(f.getName().split(".log")[0], 16);
+                entryLogs.add(entryLogId);
+            }
+        }
         return entryLogs;
     }
 
-    private File findFile(long logId) throws FileNotFoundException {
-        for (File d : ledgerDirsManager.getAllLedgerDirs()) {
+    File findFile(long logId) throws FileNotFoundException {
+        for (File d : getAllEntryLogDirs()) {
             File f = new File(d, Long.toHexString(logId) + ".log");
             if (f.exists()) {
                 return f;
@@ -968,6 +1519,43 @@ public class EntryLogger {
      * @throws IOException
      */
     public void scanEntryLog(long entryLogId, EntryLogScanner scanner) throws IOException {
+        scanStoredEntries(entryLogId, new StoredEntryScanner() {
+            @Override
+            public boolean accept(long ledgerId) {
+                return scanner.accept(ledgerId);
+            }
+
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry, boolean compressed) throws IOException {
+                if (!compressed) {
+                    scanner.process(ledgerId, offset, entry);
+                    return;
+                }
+
+                ByteBuf decompressed = compression.decompress(entry);
+                try {
+                    scanner.process(ledgerId, offset, decompressed);
+                } finally {
+                    decompressed.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Scanner of the entries as stored in an entry log, possibly compressed. A compressed entry still starts with its
+     * ledger id and entry id.
+     */
+    interface StoredEntryScanner {
+        boolean accept(long ledgerId);
+
+        void process(long ledgerId, long offset, ByteBuf entry, boolean compressed) throws IOException;
+    }
+
+    /**
+     * Scan the entries of an entry log as they are stored, without decompressing them.
+     */
+    void scanStoredEntries(long entryLogId, StoredEntryScanner scanner) throws IOException {
         // Buffer where to read the entrySize (4 bytes) and the ledgerId (8 bytes)
         ByteBuf headerBuffer = Unpooled.buffer(4 + 8);
         BufferedReadChannel bc;
@@ -989,6 +1577,9 @@ public class EntryLogger {
 
             // Read through the entry log file and extract the ledger ID's.
             while (true) {
+                // The entry log might be moved to another dir during the scan, so the channel is not kept across
+                // the reads
+                bc = getChannelForLogId(entryLogId);
                 // Check if we've finished reading the entry log file.
                 if (pos >= bc.size()) {
                     break;
@@ -999,7 +1590,9 @@ public class EntryLogger {
                 }
                 long offset = pos;
                 pos += 4;
-                int entrySize = headerBuffer.readInt();
+                int sizeHeader = headerBuffer.readInt();
+                boolean compressed = EntryLogCompression.isCompressed(sizeHeader);
+                int entrySize = EntryLogCompression.storedSize(sizeHeader);
                 long ledgerId = headerBuffer.readLong();
                 headerBuffer.clear();
 
@@ -1023,7 +1616,7 @@ public class EntryLogger {
                     return;
                 }
                 // process the entry
-                scanner.process(ledgerId, offset, data);
+                scanner.process(ledgerId, offset, data, compressed);
 
                 // Advance position to the next entry
                 pos += entrySize;
@@ -1090,7 +1683,7 @@ public class EntryLogger {
                 }
 
                 long entryId = ledgersMap.readLong();
-                if (entryId != LEDGERS_MAP_ENTRY_ID) {
+                if (entryId != LEDGERS_MAP_ENTRY_ID && entryId != LEDGERS_MAP_LOGICAL_SIZES_ENTRY_ID) {
                     throw new IOException("Cannot deserialize ledgers map from entryId " + entryId);
                 }
 
@@ -1102,6 +1695,11 @@ public class EntryLogger {
                     long ledgerId = ledgersMap.readLong();
                     long size = ledgersMap.readLong();
 
+                    if (entryId == LEDGERS_MAP_LOGICAL_SIZES_ENTRY_ID) {
+                        meta.setLedgerLogicalSize(ledgerId, size);
+                        continue;
+                    }
+
                     if (LOG.isDebugEnabled()) {
                         LOG.debug("Recovering ledgers maps for log {} -- Found ledger: {} with size: {}",
                                 entryLogId, ledgerId, size);
@@ -1133,11 +1731,13 @@ public class EntryLogger {
         final EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
 
         // Read through the entry log file and extract the entry log meta
-        scanEntryLog(entryLogId, new EntryLogScanner() {
+        scanStoredEntries(entryLogId, new StoredEntryScanner() {
             @Override
-            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+            public void process(long ledgerId, long offset, ByteBuf entry, boolean compressed) {
                 // add new entry size of a ledger to entry log meta
-                meta.addLedgerSize(ledgerId, entry.readableBytes() + 4);
+                int entrySize = entry.readableBytes() + 4;
+                meta.addLedgerSize(ledgerId, entrySize,
+                        compressed ? EntryLogCompression.uncompressedSize(entry) + 4 : entrySize);
             }
 
             @Override
@@ -1163,8 +1763,10 @@ public class EntryLogger {
             for (FileChannel fc : logid2FileChannel.values()) {
                 fc.close();
             }
+            closeRetiredChannels(0);
             // clear the mapping, so we don't need to go through the channels again in finally block in normal case.
             logid2FileChannel.clear();
+            directIOFileChannels.clear();
             entryLogManager.close();
             synchronized (compactionLogLock) {
                 if (compactionLogChannel != null) {
@@ -1184,6 +1786,10 @@ public class EntryLogger {
             synchronized (compactionLogLock) {
                 IOUtils.close(LOG, compactionLogChannel);
             }
+
+            if (null != mappedRegions) {
+                mappedRegions.close();
+            }
         }
         // shutdown the pre-allocation thread
         entryLoggerAllocator.stop();
@@ -46,6 +46,7 @@ import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.bookie.EntryLogger.BufferedLogChannel;
 import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.NativeIO;
 
 /**
  * An allocator pre-allocates entry log files.
@@ -62,6 +63,7 @@ class EntryLoggerAllocator {
     private final Object createCompactionLogLock = new Object();
     private final EntryLogger.RecentEntryLogsStatus recentlyCreatedEntryLogsStatus;
     private final boolean entryLogPreAllocationEnabled;
+    private final boolean entryLogDirectIOEnabled;
     private final ByteBufAllocator byteBufAllocator;
     final ByteBuf logfileHeader = Unpooled.buffer(EntryLogger.LOGFILE_HEADER_SIZE);
 
@@ -74,6 +76,7 @@ class EntryLoggerAllocator {
         this.preallocatedLogId = logId;
         this.recentlyCreatedEntryLogsStatus = recentlyCreatedEntryLogsStatus;
         this.entryLogPreAllocationEnabled = conf.isEntryLogFilePreAllocationEnabled();
+        this.entryLogDirectIOEnabled = conf.isEntryLogDirectIOEnabled() && NativeIO.isDirectIOSupported();
         this.allocatorExecutor = Executors.newSingleThreadExecutor();
 
         // Initialize the entry log header buffer. This cannot be a static object
@@ -165,8 +168,14 @@ class EntryLoggerAllocator {
         File newLogFile = new File(dirForNextEntryLog, logFileName);
         FileChannel channel = new RandomAccessFile(newLogFile, "rw").getChannel();
 
-        BufferedLogChannel logChannel = new BufferedLogChannel(byteBufAllocator, channel, conf.getWriteBufferBytes(),
-                conf.getReadBufferBytes(), preallocatedLogId, newLogFile, conf.getFlushIntervalInBytes());
+        BufferedLogChannel logChannel = null;
+        if (entryLogDirectIOEnabled) {
+            logChannel = newDirectIOLogChannel(channel, newLogFile, preallocatedLogId);
+        }
+        if (logChannel == null) {
+            logChannel = new BufferedLogChannel(byteBufAllocator, channel, conf.getWriteBufferBytes(),
+                    conf.getReadBufferBytes(), preallocatedLogId, newLogFile, conf.getFlushIntervalInBytes());
+        }
         logfileHeader.readerIndex(0);
         logChannel.write(logfileHeader);
 
@@ -182,6 +191,40 @@ class EntryLoggerAllocator {
         return logChannel;
     }
 
+    /**
+     * Reopen the log of a channel that was closed while it was still the current log of a ledger, to append to it.
+     * The log is written with buffered I/O, since its end isn't aligned anymore.
+     */
+    BufferedLogChannel reopenLog(BufferedLogChannel closedLogChannel) throws IOException {
+        FileChannel channel = new RandomAccessFile(closedLogChannel.getLogFile(), "rw").getChannel();
+        try {
+            channel.position(closedLogChannel.position());
+            return new BufferedLogChannel(byteBufAllocator, channel, conf.getWriteBufferBytes(),
+                    conf.getReadBufferBytes(), closedLogChannel, conf.getFlushIntervalInBytes());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a log channel writing with direct I/O, or null if the file system of the log doesn't support it
+     */
+    private BufferedLogChannel newDirectIOLogChannel(FileChannel channel, File logFile, long logId)
+            throws IOException {
+        RandomAccessFile directFile = new RandomAccessFile(logFile, "rw");
+        try {
+            NativeIO.enableDirectIO(directFile.getFD());
+            return new DirectIOLogChannel(byteBufAllocator, channel, directFile.getChannel(),
+                    conf.getWriteBufferBytes(), conf.getReadBufferBytes(), logId, logFile,
+                    conf.getFlushIntervalInBytes());
+        } catch (IOException e) {
+            directFile.close();
+            log.warn("Failed to enable direct I/O on entry log {}, it will be written with buffered I/O", logFile, e);
+            return null;
+        }
+    }
+
     /**
      * writes the given id to the "lastId" file in the given directory.
      */
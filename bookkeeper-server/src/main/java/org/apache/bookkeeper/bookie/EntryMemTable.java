@@ -22,6 +22,7 @@ package org.apache.bookkeeper.bookie;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.PrimitiveIterator;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Semaphore;
@@ -42,16 +43,55 @@ import org.slf4j.LoggerFactory;
 
 /**
  * The EntryMemTable holds in-memory representation to the entries not-yet flushed.
- * When asked to flush, current EntrySkipList is moved to snapshot and is cleared.
- * We continue to serve edits out of new EntrySkipList and backing snapshot until
+ * When asked to flush, current EntryMap is moved to snapshot and is cleared.
+ * We continue to serve edits out of new EntryMap and backing snapshot until
  * flusher reports in that the flush succeeded. At that point we let the snapshot go.
  */
 public class EntryMemTable implements AutoCloseable{
     private static Logger logger = LoggerFactory.getLogger(EntryMemTable.class);
+
+    /**
+     * The entries added to the memtable since a checkpoint.
+     */
+    interface EntryMap {
+
+        Checkpoint getCheckpoint();
+
+        default int compareTo(final Checkpoint cp) {
+            return getCheckpoint().compareTo(cp);
+        }
+
+        boolean isEmpty();
+
+        /**
+         * Add an entry, unless the map already has it.
+         *
+         * @return true if the entry was added
+         */
+        boolean put(long ledgerId, long entryId, byte[] data, int offset, int length);
+
+        EntryKeyValue get(long ledgerId, long entryId);
+
+        /**
+         * @return the entry of the ledger with the highest entry id, or null if the map has no entry of the ledger
+         */
+        EntryKeyValue getLast(long ledgerId);
+
+        /**
+         * @return the ids of the ledgers with entries in the map, in ascending order
+         */
+        PrimitiveIterator.OfLong ledgers();
+
+        /**
+         * @return the entries of a ledger, in ascending order. The iterator is weakly consistent.
+         */
+        Iterator<EntryKeyValue> entriesOfLedger(long ledgerId);
+    }
+
     /**
      * Entry skip list.
      */
-    static class EntrySkipList extends ConcurrentSkipListMap<EntryKey, EntryKeyValue> {
+    static class EntrySkipList extends ConcurrentSkipListMap<EntryKey, EntryKeyValue> implements EntryMap {
         final Checkpoint cp;
         static final EntrySkipList EMPTY_VALUE = new EntrySkipList(Checkpoint.MAX) {
             @Override
@@ -65,8 +105,71 @@ public class EntryMemTable implements AutoCloseable{
             this.cp = cp;
         }
 
-        int compareTo(final Checkpoint cp) {
-            return this.cp.compareTo(cp);
+        @Override
+        public Checkpoint getCheckpoint() {
+            return cp;
+        }
+
+        @Override
+        public boolean put(long ledgerId, long entryId, byte[] data, int offset, int length) {
+            EntryKeyValue kv = new EntryKeyValue(ledgerId, entryId, data, offset, length);
+            return putIfAbsent(kv, kv) == null;
+        }
+
+        @Override
+        public EntryKeyValue get(long ledgerId, long entryId) {
+            return get(new EntryKey(ledgerId, entryId));
+        }
+
+        @Override
+        public EntryKeyValue getLast(long ledgerId) {
+            EntryKey result = floorKey(new EntryKey(ledgerId, Long.MAX_VALUE));
+            if (result == null || result.getLedgerId() != ledgerId) {
+                return null;
+            }
+            return (EntryKeyValue) result;
+        }
+
+        @Override
+        public PrimitiveIterator.OfLong ledgers() {
+            return new PrimitiveIterator.OfLong() {
+                private EntryKey next = isEmpty() ? null : firstKey();
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public long nextLong() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    long ledgerId = next.getLedgerId();
+                    next = higherKey(new EntryKey(ledgerId, Long.MAX_VALUE));
+                    return ledgerId;
+                }
+            };
+        }
+
+        @Override
+        public Iterator<EntryKeyValue> entriesOfLedger(long ledgerId) {
+            /*
+             * Gets a view of the portion of this map that corresponds to
+             * entries of this ledger.
+             *
+             * Here 'subMap' call would return a view of the portion of this
+             * map whose keys range from fromKey to toKey and it would be of
+             * type 'ConcurrentNavigableMap'. Its iterators would be weakly
+             * consistent - https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/
+             * package-summary.html#Weakly.
+             *
+             * 'weakly consistent' would guarantee 'to traverse elements as they
+             * existed upon construction exactly once, and may (but are not
+             * guaranteed to) reflect any modifications subsequent to
+             * construction.'
+             */
+            return subMap(new EntryKey(ledgerId, 0), new EntryKey(ledgerId, Long.MAX_VALUE)).values().iterator();
         }
 
         @Override
@@ -86,10 +189,10 @@ public class EntryMemTable implements AutoCloseable{
         }
     }
 
-    volatile EntrySkipList kvmap;
+    volatile EntryMap kvmap;
 
     // Snapshot of EntryMemTable.  Made for flusher.
-    volatile EntrySkipList snapshot;
+    volatile EntryMap snapshot;
 
     final ServerConfiguration conf;
     final CheckpointSource checkpointSource;
@@ -107,7 +210,13 @@ public class EntryMemTable implements AutoCloseable{
     // flag indicating the status of the previous flush call
     private final AtomicBoolean previousFlushSucceeded;
 
-    private EntrySkipList newSkipList() {
+    // whether the entries are partitioned by ledger rather than kept in a skip list
+    private final boolean ledgerPartitioned;
+
+    private EntryMap newEntryMap() {
+        if (ledgerPartitioned) {
+            return new LedgerPartitionedEntryMap(checkpointSource.newCheckpoint());
+        }
         return new EntrySkipList(checkpointSource.newCheckpoint());
     }
 
@@ -121,7 +230,8 @@ public class EntryMemTable implements AutoCloseable{
     public EntryMemTable(final ServerConfiguration conf, final CheckpointSource source,
                          final StatsLogger statsLogger) {
         this.checkpointSource = source;
-        this.kvmap = newSkipList();
+        this.ledgerPartitioned = conf.isLedgerPartitionedMemtableEnabled();
+        this.kvmap = newEntryMap();
         this.snapshot = EntrySkipList.EMPTY_VALUE;
         this.conf = conf;
         this.size = new AtomicLong(0);
@@ -144,11 +254,17 @@ public class EntryMemTable implements AutoCloseable{
     }
 
     void dump() {
-        for (EntryKey key: this.kvmap.keySet()) {
-            logger.info(key.toString());
-        }
-        for (EntryKey key: this.snapshot.keySet()) {
-            logger.info(key.toString());
+        dump(this.kvmap);
+        dump(this.snapshot);
+    }
+
+    private static void dump(EntryMap keyValues) {
+        PrimitiveIterator.OfLong ledgers = keyValues.ledgers();
+        while (ledgers.hasNext()) {
+            Iterator<EntryKeyValue> entries = keyValues.entriesOfLedger(ledgers.nextLong());
+            while (entries.hasNext()) {
+                logger.info(entries.next().toString());
+            }
         }
     }
 
@@ -175,9 +291,9 @@ public class EntryMemTable implements AutoCloseable{
                 if (this.snapshot.isEmpty() && !this.kvmap.isEmpty()
                         && this.kvmap.compareTo(oldCp) < 0) {
                     this.snapshot = this.kvmap;
-                    this.kvmap = newSkipList();
+                    this.kvmap = newEntryMap();
                     // get the checkpoint of the memtable.
-                    cp = this.kvmap.cp;
+                    cp = this.kvmap.getCheckpoint();
                     // Reset heap to not include any keys
                     this.size.set(0);
                     // Reset allocator so we get a fresh buffer for the new EntryMemTable
@@ -243,19 +359,23 @@ public class EntryMemTable implements AutoCloseable{
     long flushSnapshot(final SkipListFlusher flusher, Checkpoint checkpoint) throws IOException {
         long size = 0;
         if (this.snapshot.compareTo(checkpoint) < 0) {
-            long ledger, ledgerGC = -1;
             synchronized (this) {
-                EntrySkipList keyValues = this.snapshot;
+                EntryMap keyValues = this.snapshot;
                 if (keyValues.compareTo(checkpoint) < 0) {
-                    for (EntryKey key : keyValues.keySet()) {
-                        EntryKeyValue kv = (EntryKeyValue) key;
-                        size += kv.getLength();
-                        ledger = kv.getLedgerId();
-                        if (ledgerGC != ledger) {
-                            try {
-                                flusher.process(ledger, kv.getEntryId(), kv.getValueAsByteBuffer());
-                            } catch (NoLedgerException exception) {
-                                ledgerGC = ledger;
+                    PrimitiveIterator.OfLong ledgers = keyValues.ledgers();
+                    while (ledgers.hasNext()) {
+                        long ledger = ledgers.nextLong();
+                        boolean ledgerDeleted = false;
+                        Iterator<EntryKeyValue> entries = keyValues.entriesOfLedger(ledger);
+                        while (entries.hasNext()) {
+                            EntryKeyValue kv = entries.next();
+                            size += kv.getLength();
+                            if (!ledgerDeleted) {
+                                try {
+                                    flusher.process(ledger, kv.getEntryId(), kv.getValueAsByteBuffer());
+                                } catch (NoLedgerException exception) {
+                                    ledgerDeleted = true;
+                                }
                             }
                         }
                     }
@@ -274,7 +394,7 @@ public class EntryMemTable implements AutoCloseable{
      * @param keyValues The snapshot to clean out.
      * @see {@link #snapshot()}
      */
-    void clearSnapshot(final EntrySkipList keyValues) {
+    void clearSnapshot(final EntryMap keyValues) {
         // Caller makes sure that keyValues not empty
         assert !keyValues.isEmpty();
         this.lock.writeLock().lock();
@@ -318,8 +438,7 @@ public class EntryMemTable implements AutoCloseable{
 
             this.lock.readLock().lock();
             try {
-                EntryKeyValue toAdd = cloneWithAllocator(ledgerId, entryId, entry);
-                size = internalAdd(toAdd);
+                size = internalAdd(ledgerId, entryId, entry);
                 if (size == 0) {
                     skipListSemaphore.release(len);
                 }
@@ -340,41 +459,33 @@ public class EntryMemTable implements AutoCloseable{
     }
 
     /**
-    * Internal version of add() that doesn't clone KVs with the
+    * Internal version of add() that copies the entry with the
     * allocator, and doesn't take the lock.
     * Callers should ensure they already have the read lock taken
     */
-    private long internalAdd(final EntryKeyValue toAdd) throws IOException {
-        long sizeChange = 0;
-        if (kvmap.putIfAbsent(toAdd, toAdd) == null) {
-            sizeChange = toAdd.getLength();
-            size.addAndGet(sizeChange);
-        }
-        return sizeChange;
-    }
-
-    private EntryKeyValue newEntry(long ledgerId, long entryId, final ByteBuffer entry) {
-        byte[] buf;
-        int offset = 0;
-        int length = entry.remaining();
-
-        buf = new byte[length];
-        entry.get(buf);
-        return new EntryKeyValue(ledgerId, entryId, buf, offset, length);
-    }
-
-    private EntryKeyValue cloneWithAllocator(long ledgerId, long entryId, final ByteBuffer entry) {
+    private long internalAdd(long ledgerId, long entryId, final ByteBuffer entry) throws IOException {
         int len = entry.remaining();
+        byte[] data;
+        int offset;
         SkipListArena.MemorySlice alloc = allocator.allocateBytes(len);
         if (alloc == null) {
             // The allocation was too large, allocator decided
             // not to do anything with it.
-            return newEntry(ledgerId, entryId, entry);
+            data = new byte[len];
+            offset = 0;
+        } else {
+            assert alloc.getData() != null;
+            data = alloc.getData();
+            offset = alloc.getOffset();
         }
+        entry.get(data, offset, len);
 
-        assert alloc.getData() != null;
-        entry.get(alloc.getData(), alloc.getOffset(), len);
-        return new EntryKeyValue(ledgerId, entryId, alloc.getData(), alloc.getOffset(), len);
+        long sizeChange = 0;
+        if (kvmap.put(ledgerId, entryId, data, offset, len)) {
+            sizeChange = len;
+            size.addAndGet(sizeChange);
+        }
+        return sizeChange;
     }
 
     /**
@@ -384,15 +495,14 @@ public class EntryMemTable implements AutoCloseable{
      * @return the entry kv or null if none found.
      */
     public EntryKeyValue getEntry(long ledgerId, long entryId) throws IOException {
-        EntryKey key = new EntryKey(ledgerId, entryId);
         EntryKeyValue value = null;
         long startTimeNanos = MathUtils.nowInNano();
         boolean success = false;
         this.lock.readLock().lock();
         try {
-            value = this.kvmap.get(key);
+            value = this.kvmap.get(ledgerId, entryId);
             if (value == null) {
-                value = this.snapshot.get(key);
+                value = this.snapshot.get(ledgerId, entryId);
             }
             success = true;
         } finally {
@@ -415,15 +525,14 @@ public class EntryMemTable implements AutoCloseable{
      * @return the entry kv or null if none found.
      */
     public EntryKeyValue getLastEntry(long ledgerId) throws IOException {
-        EntryKey result = null;
-        EntryKey key = new EntryKey(ledgerId, Long.MAX_VALUE);
+        EntryKeyValue result = null;
         long startTimeNanos = MathUtils.nowInNano();
         boolean success = false;
         this.lock.readLock().lock();
         try {
-            result = this.kvmap.floorKey(key);
-            if (result == null || result.getLedgerId() != ledgerId) {
-                result = this.snapshot.floorKey(key);
+            result = this.kvmap.getLast(ledgerId);
+            if (result == null) {
+                result = this.snapshot.getLast(ledgerId);
             }
             success = true;
         } finally {
@@ -437,10 +546,7 @@ public class EntryMemTable implements AutoCloseable{
             }
         }
 
-        if (result == null || result.getLedgerId() != ledgerId) {
-            return null;
-        }
-        return (EntryKeyValue) result;
+        return result;
     }
 
     /**
@@ -469,40 +575,17 @@ public class EntryMemTable implements AutoCloseable{
      * is weakly consistent.
      */
     PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) {
-        EntryKey thisLedgerFloorEntry = new EntryKey(ledgerId, 0);
-        EntryKey thisLedgerCeilingEntry = new EntryKey(ledgerId, Long.MAX_VALUE);
-        Iterator<EntryKey> thisLedgerEntriesInKVMap;
-        Iterator<EntryKey> thisLedgerEntriesInSnapshot;
+        Iterator<EntryKeyValue> thisLedgerEntriesInKVMap;
+        Iterator<EntryKeyValue> thisLedgerEntriesInSnapshot;
         this.lock.readLock().lock();
         try {
-            /*
-             * Gets a view of the portion of this map that corresponds to
-             * entries of this ledger.
-             *
-             * Here 'kvmap' is of type 'ConcurrentSkipListMap', so its 'subMap'
-             * call would return a view of the portion of this map whose keys
-             * range from fromKey to toKey and it would be of type
-             * 'ConcurrentNavigableMap'. ConcurrentNavigableMap's 'keySet' would
-             * return NavigableSet view of the keys contained in this map. This
-             * view's iterator would be weakly consistent -
-             * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/
-             * package-summary.html#Weakly.
-             *
-             * 'weakly consistent' would guarantee 'to traverse elements as they
-             * existed upon construction exactly once, and may (but are not
-             * guaranteed to) reflect any modifications subsequent to
-             * construction.'
-             *
-             */
-            thisLedgerEntriesInKVMap = this.kvmap.subMap(thisLedgerFloorEntry, thisLedgerCeilingEntry).keySet()
-                    .iterator();
-            thisLedgerEntriesInSnapshot = this.snapshot.subMap(thisLedgerFloorEntry, thisLedgerCeilingEntry).keySet()
-                    .iterator();
+            thisLedgerEntriesInKVMap = this.kvmap.entriesOfLedger(ledgerId);
+            thisLedgerEntriesInSnapshot = this.snapshot.entriesOfLedger(ledgerId);
         } finally {
             this.lock.readLock().unlock();
         }
         return IteratorUtility.mergeIteratorsForPrimitiveLongIterator(thisLedgerEntriesInKVMap,
-                thisLedgerEntriesInSnapshot, EntryKey.COMPARATOR, (entryKey) -> {
+                thisLedgerEntriesInSnapshot, EntryKey.COMPARATOR::compare, (entryKey) -> {
                     return entryKey.entryId;
                 });
     }
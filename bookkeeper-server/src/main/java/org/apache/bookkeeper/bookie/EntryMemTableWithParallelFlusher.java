@@ -20,8 +20,8 @@
 package org.apache.bookkeeper.bookie;
 
 import java.io.IOException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
 import java.util.concurrent.Phaser;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -53,50 +53,40 @@ class EntryMemTableWithParallelFlusher extends EntryMemTable {
      * EntryMemTable's flushSnapshot, but it uses flushExecutor
      * (OrderedExecutor) to process an entry through flusher.
      *
-     * <p>SubMaps of the snapshot corresponding to the entries of the ledgers are
-     * created and submitted to the flushExecutor with ledgerId as the
-     * orderingKey to flush process the entries of a ledger.
+     * <p>The entries of each ledger of the snapshot are submitted to the
+     * flushExecutor with ledgerId as the orderingKey to flush process the
+     * entries of a ledger.
      */
     @Override
     long flushSnapshot(final SkipListFlusher flusher, Checkpoint checkpoint) throws IOException {
         AtomicLong flushedSize = new AtomicLong();
         if (this.snapshot.compareTo(checkpoint) < 0) {
             synchronized (this) {
-                EntrySkipList keyValues = this.snapshot;
+                EntryMap keyValues = this.snapshot;
 
                 Phaser pendingNumOfLedgerFlushes = new Phaser(1);
                 AtomicReference<Exception> exceptionWhileFlushingParallelly = new AtomicReference<Exception>();
 
                 if (keyValues.compareTo(checkpoint) < 0) {
 
-                    Map.Entry<EntryKey, EntryKeyValue> thisLedgerFirstMapEntry = keyValues.firstEntry();
-                    EntryKeyValue thisLedgerFirstEntry;
-                    long thisLedgerId;
-
-                    while (thisLedgerFirstMapEntry != null) {
-                        thisLedgerFirstEntry = thisLedgerFirstMapEntry.getValue();
-                        thisLedgerId = thisLedgerFirstEntry.getLedgerId();
-                        EntryKey thisLedgerCeilingKeyMarker = new EntryKey(thisLedgerId, Long.MAX_VALUE - 1);
-                        /*
-                         * Gets a view of the portion of this map that
-                         * corresponds to entries of this ledger.
-                         */
-                        ConcurrentNavigableMap<EntryKey, EntryKeyValue> thisLedgerEntries = keyValues
-                                .subMap(thisLedgerFirstEntry, thisLedgerCeilingKeyMarker);
+                    PrimitiveIterator.OfLong ledgers = keyValues.ledgers();
+                    while (ledgers.hasNext()) {
+                        long thisLedgerId = ledgers.nextLong();
                         pendingNumOfLedgerFlushes.register();
                         flushExecutor.executeOrdered(thisLedgerId, new SafeRunnable() {
                             @Override
                             public void safeRun() {
                                 try {
-                                    long ledger;
                                     boolean ledgerDeleted = false;
-                                    for (EntryKey key : thisLedgerEntries.keySet()) {
-                                        EntryKeyValue kv = (EntryKeyValue) key;
+                                    Iterator<EntryKeyValue> thisLedgerEntries =
+                                            keyValues.entriesOfLedger(thisLedgerId);
+                                    while (thisLedgerEntries.hasNext()) {
+                                        EntryKeyValue kv = thisLedgerEntries.next();
                                         flushedSize.addAndGet(kv.getLength());
-                                        ledger = kv.getLedgerId();
                                         if (!ledgerDeleted) {
                                             try {
-                                                flusher.process(ledger, kv.getEntryId(), kv.getValueAsByteBuffer());
+                                                flusher.process(thisLedgerId, kv.getEntryId(),
+                                                        kv.getValueAsByteBuffer());
                                             } catch (NoLedgerException exception) {
                                                 ledgerDeleted = true;
                                             }
@@ -116,7 +106,6 @@ class EntryMemTableWithParallelFlusher extends EntryMemTable {
                                 }
                             }
                         });
-                        thisLedgerFirstMapEntry = keyValues.ceilingEntry(thisLedgerCeilingKeyMarker);
                     }
 
                     boolean phaserTerminatedAbruptly = false;
@@ -91,6 +91,8 @@ class FileInfo extends Watchable<LastAddConfirmedUpdateNotification> {
     // bit map for states of the ledger.
     private int stateBits;
     private boolean needFlushHeader = false;
+    // whether data or header were written since the file was last forced
+    private boolean needForce = false;
 
     // lac
     private Long lac = null;
@@ -340,6 +342,7 @@ class FileInfo extends Watchable<LastAddConfirmedUpdateNotification> {
         bb.rewind();
         fc.position(0);
         fc.write(bb);
+        needForce = true;
     }
 
     public synchronized boolean isFenced() throws IOException {
@@ -473,7 +476,19 @@ class FileInfo extends Watchable<LastAddConfirmedUpdateNotification> {
         }
     }
 
-    public synchronized long write(ByteBuffer[] buffs, long position) throws IOException {
+    public long write(ByteBuffer[] buffs, long position) throws IOException {
+        return write(buffs, position, true);
+    }
+
+    /**
+     * Write data at position <i>position</i>.
+     *
+     * @param force
+     *          whether to force the file after the write, otherwise the write is only durable after
+     *          {@link #forceIfNeeded()}
+     * @return number of bytes written
+     */
+    public synchronized long write(ByteBuffer[] buffs, long position, boolean force) throws IOException {
         checkOpen(true);
         long total = 0;
         try {
@@ -486,7 +501,12 @@ class FileInfo extends Watchable<LastAddConfirmedUpdateNotification> {
                 total += rc;
             }
         } finally {
-            fc.force(true);
+            if (force) {
+                fc.force(true);
+                needForce = false;
+            } else {
+                needForce = true;
+            }
             long newsize = position + START_OF_DATA + total;
             if (newsize > size) {
                 size = newsize;
@@ -496,6 +516,20 @@ class FileInfo extends Watchable<LastAddConfirmedUpdateNotification> {
         return total;
     }
 
+    /**
+     * Force the file if data or header were written since it was last forced.
+     *
+     * @return true if the file was forced
+     */
+    public synchronized boolean forceIfNeeded() throws IOException {
+        if (fc == null || !needForce) {
+            return false;
+        }
+        fc.force(true);
+        needForce = false;
+        return true;
+    }
+
     /**
      * Copies current file contents upto specified size to the target file and
      * deletes the current file. If size not known then pass size as
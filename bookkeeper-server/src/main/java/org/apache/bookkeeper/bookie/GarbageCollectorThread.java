@@ -24,23 +24,27 @@ package org.apache.bookkeeper.bookie;
 import com.google.common.annotations.VisibleForTesting;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import lombok.Getter;
 import org.apache.bookkeeper.bookie.GarbageCollector.GarbageCleaner;
 import org.apache.bookkeeper.bookie.stats.GarbageCollectorStats;
+import org.apache.bookkeeper.bookie.storage.ldb.PersistentEntryLogMetadataMap;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -58,7 +62,7 @@ public class GarbageCollectorThread extends SafeRunnable {
     private static final int SECOND = 1000;
 
     // Maps entry log files to the set of ledgers that comprise the file and the size usage per ledger
-    private Map<Long, EntryLogMetadata> entryLogMetaMap = new ConcurrentHashMap<Long, EntryLogMetadata>();
+    private final EntryLogMetadataMap entryLogMetaMap;
 
     private final ScheduledExecutorService gcExecutor;
     Future<?> scheduledFuture = null;
@@ -88,6 +92,11 @@ public class GarbageCollectorThread extends SafeRunnable {
     final EntryLogger entryLogger;
     final AbstractLogCompactor compactor;
 
+    // When several entry logs are compacted concurrently, the compactors not compacting any entry log and the
+    // executor running the compactions, null otherwise
+    private final BlockingQueue<AbstractLogCompactor> idleCompactors;
+    private final ExecutorService compactionExecutor;
+
     // Stats loggers for garbage collection operations
     private final GarbageCollectorStats gcStats;
 
@@ -147,11 +156,32 @@ public class GarbageCollectorThread extends SafeRunnable {
                                   StatsLogger statsLogger,
                                   ScheduledExecutorService gcExecutor)
         throws IOException {
+        this(conf, ledgerManager, ledgerStorage, statsLogger, gcExecutor, null);
+    }
+
+    /**
+     * Create a garbage collector thread.
+     *
+     * @param conf
+     *          Server Configuration Object.
+     * @param compactionRateLimiter
+     *          compaction budget shared with the garbage collectors of the other ledger directories, or null to
+     *          throttle the compaction of this garbage collector on its own
+     * @throws IOException
+     */
+    public GarbageCollectorThread(ServerConfiguration conf,
+                                  LedgerManager ledgerManager,
+                                  final CompactableLedgerStorage ledgerStorage,
+                                  StatsLogger statsLogger,
+                                  ScheduledExecutorService gcExecutor,
+                                  CompactionRateLimiter compactionRateLimiter)
+        throws IOException {
         this.gcExecutor = gcExecutor;
         this.conf = conf;
 
         this.entryLogger = ledgerStorage.getEntryLogger();
         this.ledgerStorage = ledgerStorage;
+        this.entryLogMetaMap = createEntryLogMetadataMap();
         this.gcWaitTime = conf.getGcWaitTime();
 
         this.numActiveEntryLogs = 0;
@@ -193,10 +223,31 @@ public class GarbageCollectorThread extends SafeRunnable {
                 GarbageCollectorThread.this.removeEntryLog(logToRemove);
             }
         };
+        int compactionThreads = conf.getCompactionThreads();
         if (conf.getUseTransactionalCompaction()) {
-            this.compactor = new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
+            this.compactor = new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, remover,
+                    compactionRateLimiter);
+            if (compactionThreads > 1) {
+                LOG.warn("Transactional compaction compacts a single entry log at a time, ignoring {} threads",
+                        compactionThreads);
+            }
+            this.idleCompactors = null;
+            this.compactionExecutor = null;
+        } else if (compactionThreads > 1) {
+            // The compactors share the compaction rate of the directory
+            AbstractLogCompactor.Throttler throttler = new AbstractLogCompactor.Throttler(conf,
+                    compactionRateLimiter);
+            this.idleCompactors = new LinkedBlockingQueue<>();
+            for (int i = 0; i < compactionThreads; i++) {
+                idleCompactors.add(new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover, throttler));
+            }
+            this.compactor = idleCompactors.peek();
+            this.compactionExecutor = Executors.newFixedThreadPool(compactionThreads,
+                    new DefaultThreadFactory("GarbageCollectorCompactionThread"));
         } else {
-            this.compactor = new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
+            this.compactor = new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover, compactionRateLimiter);
+            this.idleCompactors = null;
+            this.compactionExecutor = null;
         }
 
         if (minorCompactionInterval > 0 && minorCompactionThreshold > 0) {
@@ -250,6 +301,31 @@ public class GarbageCollectorThread extends SafeRunnable {
         lastMinorCompactionTime = lastMajorCompactionTime = System.currentTimeMillis();
     }
 
+    private EntryLogMetadataMap createEntryLogMetadataMap() throws IOException {
+        if (!conf.isGcEntryLogMetadataCacheEnabled()) {
+            return new InMemoryEntryLogMetadataMap();
+        }
+
+        // The cache is stored next to the entry logs it describes
+        File baseDir = entryLogger.getLedgerDirsManager().getAllLedgerDirs().get(0);
+        EntryLogMetadataMap map = new PersistentEntryLogMetadataMap(conf, baseDir.toString());
+
+        // Drop the metadata of the entry logs that were deleted before it could be removed from the cache
+        List<Long> removedEntryLogs = new ArrayList<>();
+        map.forEach((entryLogId, meta) -> {
+            if (!entryLogger.logExists(entryLogId)) {
+                removedEntryLogs.add(entryLogId);
+            }
+        });
+        for (long entryLogId : removedEntryLogs) {
+            map.remove(entryLogId);
+        }
+
+        LOG.info("Loaded the metadata of {} entry logs from the cache, dropped {} removed entry logs",
+                map.size(), removedEntryLogs.size());
+        return map;
+    }
+
     public void enableForceGC() {
         if (forceGarbageCollection.compareAndSet(false, true)) {
             LOG.info("Forced garbage collection triggered by thread: {}", Thread.currentThread().getName());
@@ -345,7 +421,7 @@ public class GarbageCollectorThread extends SafeRunnable {
 
         // Extract all of the ledger ID's that comprise all of the entry logs
         // (except for the current new one which is still being written to).
-        entryLogMetaMap = extractMetaFromEntryLogs(entryLogMetaMap);
+        extractMetaFromEntryLogs();
 
         // gc inactive/deleted ledgers
         doGcLedgers();
@@ -408,23 +484,48 @@ public class GarbageCollectorThread extends SafeRunnable {
     private void doGcEntryLogs() {
         // Get a cumulative count, don't update until complete
         AtomicLong totalEntryLogSizeAcc = new AtomicLong(0L);
+        AtomicInteger numActiveEntryLogsAcc = new AtomicInteger(0);
 
         // Loop through all of the entry logs and remove the non-active ledgers.
-        entryLogMetaMap.forEach((entryLogId, meta) -> {
-           removeIfLedgerNotExists(meta);
-           if (meta.isEmpty()) {
-               // This means the entry log is not associated with any active ledgers anymore.
-               // We can remove this entry log file now.
-               LOG.info("Deleting entryLogId " + entryLogId + " as it has no active ledgers!");
-               removeEntryLog(entryLogId);
-               gcStats.getReclaimedSpaceViaDeletes().add(meta.getTotalSize());
-           }
-
-           totalEntryLogSizeAcc.getAndAdd(meta.getRemainingSize());
-        });
+        try {
+            entryLogMetaMap.forEach((entryLogId, meta) -> {
+               long priorRemainingSize = meta.getRemainingSize();
+               removeIfLedgerNotExists(meta);
+               if (meta.isEmpty()) {
+                   // This means the entry log is not associated with any active ledgers anymore.
+                   // We can remove this entry log file now.
+                   LOG.info("Deleting entryLogId " + entryLogId + " as it has no active ledgers!");
+                   if (removeEntryLog(entryLogId)) {
+                       gcStats.getReclaimedSpaceViaDeletes().add(meta.getTotalSize());
+                       gcStats.getReclaimedLogicalBytesViaDeletes().add(meta.getTotalLogicalSize());
+                   } else {
+                       numActiveEntryLogsAcc.incrementAndGet();
+                   }
+               } else {
+                   if (meta.getRemainingSize() != priorRemainingSize) {
+                       // The map might hold a copy of the metadata
+                       updateEntryLogMetadata(meta);
+                   }
+                   numActiveEntryLogsAcc.incrementAndGet();
+               }
+
+               totalEntryLogSizeAcc.getAndAdd(meta.getRemainingSize());
+            });
+        } catch (IOException e) {
+            LOG.error("Error reading the entry log metadata", e);
+            return;
+        }
 
         this.totalEntryLogSize = totalEntryLogSizeAcc.get();
-        this.numActiveEntryLogs = entryLogMetaMap.keySet().size();
+        this.numActiveEntryLogs = numActiveEntryLogsAcc.get();
+    }
+
+    private void updateEntryLogMetadata(EntryLogMetadata meta) {
+        try {
+            entryLogMetaMap.put(meta.getEntryLogId(), meta);
+        } catch (IOException e) {
+            LOG.error("Error updating the metadata of entry log {}", meta.getEntryLogId(), e);
+        }
     }
 
     private void removeIfLedgerNotExists(EntryLogMetadata meta) {
@@ -452,10 +553,21 @@ public class GarbageCollectorThread extends SafeRunnable {
     void doCompactEntryLogs(double threshold, long maxTimeMillis) {
         LOG.info("Do compaction to compact those files lower than {}", threshold);
 
-        // sort the ledger meta by usage in ascending order.
         List<EntryLogMetadata> logsToCompact = new ArrayList<EntryLogMetadata>();
-        logsToCompact.addAll(entryLogMetaMap.values());
-        logsToCompact.sort(Comparator.comparing(EntryLogMetadata::getUsage));
+        try {
+            entryLogMetaMap.forEach((entryLogId, meta) -> logsToCompact.add(meta));
+        } catch (IOException e) {
+            LOG.error("Error reading the entry log metadata", e);
+            return;
+        }
+        logsToCompact.sort(compactionPriority(entryLogger.getLeastUnflushedLogId()));
+
+        if (compactionExecutor != null && !compacting.compareAndSet(false, true)) {
+            // Shutting down
+            return;
+        }
+        List<Future<?>> concurrentCompactions = new ArrayList<>();
+        boolean interrupted = false;
 
         final int numBuckets = 10;
         int[] entryLogUsageBuckets = new int[numBuckets];
@@ -473,7 +585,8 @@ public class GarbageCollectorThread extends SafeRunnable {
                 end = System.currentTimeMillis();
                 timeDiff = end - start;
             }
-            if (meta.getUsage() >= threshold || (maxTimeMillis > 0 && timeDiff > maxTimeMillis) || !running) {
+            if (meta.getUsage() >= threshold || (maxTimeMillis > 0 && timeDiff > maxTimeMillis) || !running
+                    || interrupted) {
                 // We allow the usage limit calculation to continue so that we get a accurate
                 // report of where the usage was prior to running compaction.
                 continue;
@@ -483,11 +596,29 @@ public class GarbageCollectorThread extends SafeRunnable {
                         meta.getEntryLogId(), meta.getUsage(), threshold);
             }
 
-            long priorRemainingSize = meta.getRemainingSize();
-            compactEntryLog(meta);
-            gcStats.getReclaimedSpaceViaCompaction().add(meta.getTotalSize() - priorRemainingSize);
+            if (compactionExecutor != null) {
+                try {
+                    concurrentCompactions.add(submitCompaction(meta));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    interrupted = true;
+                    continue;
+                }
+            } else {
+                long priorRemainingSize = meta.getRemainingSize();
+                long priorRemainingLogicalSize = meta.getRemainingLogicalSize();
+                compactEntryLog(meta);
+                recordReclaimedSpace(meta, priorRemainingSize, priorRemainingLogicalSize);
+            }
             compactedBuckets[bucketIndex]++;
         }
+        if (compactionExecutor != null) {
+            try {
+                waitForCompactions(concurrentCompactions);
+            } finally {
+                compacting.set(false);
+            }
+        }
         if (LOG.isDebugEnabled()) {
             if (!running) {
                 LOG.debug("Compaction exited due to gc not running");
@@ -501,6 +632,73 @@ public class GarbageCollectorThread extends SafeRunnable {
                 entryLogUsageBuckets, compactedBuckets);
     }
 
+    private void recordReclaimedSpace(EntryLogMetadata meta, long priorRemainingSize,
+                                      long priorRemainingLogicalSize) {
+        gcStats.getReclaimedSpaceViaCompaction().add(meta.getTotalSize() - priorRemainingSize);
+        gcStats.getReclaimedLogicalBytesViaCompaction().add(meta.getTotalLogicalSize() - priorRemainingLogicalSize);
+    }
+
+    /**
+     * Compact an entry log with the first idle compactor, waiting for one if they're all busy.
+     */
+    private Future<?> submitCompaction(EntryLogMetadata meta) throws InterruptedException {
+        AbstractLogCompactor idleCompactor = idleCompactors.take();
+        long priorRemainingSize = meta.getRemainingSize();
+        long priorRemainingLogicalSize = meta.getRemainingLogicalSize();
+        return compactionExecutor.submit(() -> {
+            try {
+                idleCompactor.compact(meta);
+                recordReclaimedSpace(meta, priorRemainingSize, priorRemainingLogicalSize);
+            } catch (Exception e) {
+                LOG.error("Failed to compact entry log {} due to unexpected error", meta.getEntryLogId(), e);
+            } finally {
+                idleCompactors.add(idleCompactor);
+            }
+        });
+    }
+
+    private static void waitForCompactions(List<Future<?>> compactions) {
+        boolean interrupted = false;
+        for (Future<?> compaction : compactions) {
+            while (true) {
+                try {
+                    compaction.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // The compactions must be over before the compacting flag is cleared
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    // The failures are logged by the compaction itself
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Order of the entry logs to compact, by decreasing cost-benefit score: the space reclaimed, weighted by the age of
+     * the log, over the I/O the compaction costs. Compacting a log of usage u reads the whole log and writes back its
+     * remaining entries, a cost of 1 + u, to reclaim 1 - u. The entries still alive in an older log are less likely
+     * to be deleted soon, so compacting it reclaims space for longer, while the garbage of a recent log would partly
+     * be collected anyway as its ledgers are deleted. The entry log ids are increasing, so the age of a log is the
+     * number of entry logs created since then. When the score is the same, the larger logs come first.
+     *
+     * @param currentLogId id of the entry log currently being written
+     */
+    static Comparator<EntryLogMetadata> compactionPriority(long currentLogId) {
+        return Comparator.<EntryLogMetadata>comparingDouble(meta -> costBenefit(meta, currentLogId)).reversed()
+                .thenComparing(Comparator.comparingLong(EntryLogMetadata::getTotalSize).reversed());
+    }
+
+    private static double costBenefit(EntryLogMetadata meta, long currentLogId) {
+        double usage = meta.getUsage();
+        long age = Math.max(1, currentLogId - meta.getEntryLogId());
+        return (1 - usage) * age / (1 + usage);
+    }
+
     /**
      * Calculate the index for the batch based on the usage between 0 and 1.
      *
@@ -530,6 +728,21 @@ public class GarbageCollectorThread extends SafeRunnable {
 
         // Interrupt GC executor thread
         gcExecutor.shutdownNow();
+        if (compactionExecutor != null) {
+            // No compaction is running anymore
+            compactionExecutor.shutdown();
+        }
+
+        // The entry log metadata can only be released once the GC thread stopped using it
+        if (gcExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+            try {
+                entryLogMetaMap.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the entry log metadata map", e);
+            }
+        } else {
+            LOG.warn("GC thread did not stop, the entry log metadata map is left open");
+        }
     }
 
     /**
@@ -537,13 +750,21 @@ public class GarbageCollectorThread extends SafeRunnable {
      *
      * @param entryLogId
      *          Entry Log File Id
+     * @return true if the entry log was removed
      */
-    protected void removeEntryLog(long entryLogId) {
+    protected boolean removeEntryLog(long entryLogId) {
         // remove entry log file successfully
         if (entryLogger.removeEntryLog(entryLogId)) {
             LOG.info("Removing entry log metadata for {}", entryLogId);
-            entryLogMetaMap.remove(entryLogId);
+            try {
+                entryLogMetaMap.remove(entryLogId);
+            } catch (IOException e) {
+                // The metadata will be dropped on the next restart, since the entry log doesn't exist anymore
+                LOG.error("Failed to remove the metadata of entry log {}", entryLogId, e);
+            }
+            return true;
         }
+        return false;
     }
 
     /**
@@ -578,20 +799,22 @@ public class GarbageCollectorThread extends SafeRunnable {
      * Method to read in all of the entry logs (those that we haven't done so yet),
      * and find the set of ledger ID's that make up each entry log file.
      *
-     * @param entryLogMetaMap
-     *          Existing EntryLogs to Meta
-     * @throws IOException
      */
-    protected Map<Long, EntryLogMetadata> extractMetaFromEntryLogs(Map<Long, EntryLogMetadata> entryLogMetaMap) {
+    protected void extractMetaFromEntryLogs() {
         // Extract it for every entry log except for the current one.
         // Entry Log ID's are just a long value that starts at 0 and increments
         // by 1 when the log fills up and we roll to a new one.
         long curLogId = entryLogger.getLeastUnflushedLogId();
         boolean hasExceptionWhenScan = false;
         for (long entryLogId = scannedLogId; entryLogId < curLogId; entryLogId++) {
-            // Comb the current entry log file if it has not already been extracted.
-            if (entryLogMetaMap.containsKey(entryLogId)) {
-                continue;
+            try {
+                // Comb the current entry log file if it has not already been extracted.
+                if (entryLogMetaMap.containsKey(entryLogId)) {
+                    continue;
+                }
+            } catch (IOException e) {
+                LOG.error("Error reading the metadata of entry log {}", entryLogId, e);
+                return;
             }
 
             // check whether log file exists or not
@@ -624,7 +847,6 @@ public class GarbageCollectorThread extends SafeRunnable {
                 ++scannedLogId;
             }
         }
-        return entryLogMetaMap;
     }
 
     CompactableLedgerStorage getLedgerStorage() {
@@ -0,0 +1,229 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.bookkeeper.stats.OpStatsLogger;
+
+/**
+ * Buffered channel that writes the buffers passed to {@link #writeImmutable(ByteBuf)} without copying them.
+ *
+ * <p>The buffers are kept, in order with the data copied into the write buffer, until the channel is flushed, and
+ * then written with vectored writes. When the pending data reaches the write capacity, only the data up to the last
+ * offset aligned to the alignment size is written, so that all the writes but the ones issued by {@link #flush()}
+ * start and end at aligned offsets.
+ */
+class GatheringBufferedChannel extends BufferedChannel {
+
+    // Smaller buffers are copied, since keeping a reference to them costs more than copying them
+    static final int MIN_GATHER_BYTES = 512;
+
+    private final int alignSize;
+    private final OpStatsLogger writeBytesStats;
+
+    // The pending data: retained slices of the write buffer and of the buffers written without copy
+    private final List<ByteBuf> segments = new ArrayList<>();
+    private final List<ByteBuffer> nioBuffers = new ArrayList<>();
+    // Index in the write buffer of the data copied since the last segment was added
+    private int copyStartIndex = 0;
+    private long pendingBytes = 0;
+
+    GatheringBufferedChannel(ByteBufAllocator allocator, FileChannel fc, int writeCapacity, int alignSize,
+            OpStatsLogger writeBytesStats) throws IOException {
+        super(fc, allocator.directBuffer(capacity(writeCapacity, alignSize), capacity(writeCapacity, alignSize)),
+                capacity(writeCapacity, alignSize), capacity(writeCapacity, alignSize), 0L);
+        this.alignSize = alignSize;
+        this.writeBytesStats = writeBytesStats;
+    }
+
+    @Override
+    public synchronized void write(ByteBuf src) throws IOException {
+        int len = src.readableBytes();
+        int copied = 0;
+        while (copied < len) {
+            if (!writeBuffer.isWritable()) {
+                // leaves less than an alignment size in the write buffer, which holds at least twice as much
+                flushAligned();
+            }
+            int bytesToCopy = Math.min(len - copied, writeBuffer.writableBytes());
+            writeBuffer.writeBytes(src, src.readerIndex() + copied, bytesToCopy);
+            copied += bytesToCopy;
+            pendingBytes += bytesToCopy;
+        }
+        position += len;
+        if (pendingBytes >= writeCapacity) {
+            flushAligned();
+        }
+    }
+
+    @Override
+    public synchronized void writeImmutable(ByteBuf src) throws IOException {
+        int len = src.readableBytes();
+        if (len < MIN_GATHER_BYTES) {
+            write(src);
+            return;
+        }
+        addCopiedSegment();
+        segments.add(src.retainedSlice());
+        position += len;
+        pendingBytes += len;
+        if (pendingBytes >= writeCapacity) {
+            flushAligned();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        addCopiedSegment();
+        writeSegments(pendingBytes);
+        writeBuffer.clear();
+        copyStartIndex = 0;
+        pendingBytes = 0;
+        writeBufferStartPosition.set(fileChannel.position());
+    }
+
+    /**
+     * Write the pending data up to the last aligned offset, and move the rest into the write buffer.
+     */
+    private void flushAligned() throws IOException {
+        long startPosition = writeBufferStartPosition.get();
+        long alignedBytes = (startPosition + pendingBytes) / alignSize * alignSize - startPosition;
+        if (alignedBytes <= 0) {
+            return;
+        }
+        addCopiedSegment();
+        writeSegments(alignedBytes);
+
+        // The rest is shorter than the alignment size, and may be a part of the write buffer itself
+        byte[] tail = new byte[(int) (pendingBytes - alignedBytes)];
+        int tailOffset = 0;
+        for (ByteBuf segment : segments) {
+            int len = segment.readableBytes();
+            segment.getBytes(segment.readerIndex(), tail, tailOffset, len);
+            tailOffset += len;
+        }
+        releaseSegments();
+        writeBuffer.clear();
+        writeBuffer.writeBytes(tail);
+        copyStartIndex = 0;
+        pendingBytes = tail.length;
+        writeBufferStartPosition.set(startPosition + alignedBytes);
+    }
+
+    private void addCopiedSegment() {
+        int copiedBytes = writeBuffer.writerIndex() - copyStartIndex;
+        if (copiedBytes > 0) {
+            segments.add(writeBuffer.retainedSlice(copyStartIndex, copiedBytes));
+            copyStartIndex = writeBuffer.writerIndex();
+        }
+    }
+
+    /**
+     * Write the given number of bytes from the head of the segments, releasing the segments written completely.
+     */
+    private void writeSegments(long bytes) throws IOException {
+        long remaining = bytes;
+        for (int i = 0; i < segments.size() && remaining > 0; i++) {
+            ByteBuf segment = segments.get(i);
+            int len = (int) Math.min(segment.readableBytes(), remaining);
+            Collections.addAll(nioBuffers, segment.nioBuffers(segment.readerIndex(), len));
+            remaining -= len;
+        }
+        ByteBuffer[] srcs = nioBuffers.toArray(new ByteBuffer[nioBuffers.size()]);
+        nioBuffers.clear();
+
+        int offset = 0;
+        while (offset < srcs.length) {
+            long written = fileChannel.write(srcs, offset, srcs.length - offset);
+            writeBytesStats.registerSuccessfulValue(written);
+            while (offset < srcs.length && !srcs[offset].hasRemaining()) {
+                offset++;
+            }
+        }
+
+        remaining = bytes;
+        int writtenSegments = 0;
+        while (remaining > 0) {
+            ByteBuf segment = segments.get(writtenSegments);
+            if (segment.readableBytes() > remaining) {
+                segment.skipBytes((int) remaining);
+                break;
+            }
+            remaining -= segment.readableBytes();
+            segment.release();
+            writtenSegments++;
+        }
+        segments.subList(0, writtenSegments).clear();
+    }
+
+    private void releaseSegments() {
+        for (ByteBuf segment : segments) {
+            segment.release();
+        }
+        segments.clear();
+    }
+
+    private static int capacity(int writeCapacity, int alignSize) {
+        // room for the unaligned rest of the data after an aligned write, and for an alignment size more
+        return Math.max(writeCapacity, 2 * alignSize);
+    }
+
+    @Override
+    protected boolean isWriteBufferResizable() {
+        // the segments hold slices of the write buffer
+        return false;
+    }
+
+    @Override
+    public synchronized int read(ByteBuf dest, long pos, int length) throws IOException {
+        flush();
+        return super.read(dest, pos, length);
+    }
+
+    @Override
+    public synchronized int getNumOfBytesInWriteBuffer() {
+        return (int) pendingBytes;
+    }
+
+    @Override
+    public synchronized void clear() {
+        releaseSegments();
+        copyStartIndex = 0;
+        pendingBytes = 0;
+        super.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        releaseSegments();
+        super.close();
+    }
+}
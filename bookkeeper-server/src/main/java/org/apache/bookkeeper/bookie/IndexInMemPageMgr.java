@@ -28,19 +28,14 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.NUM_INDEX_PAGES
 
 import com.google.common.base.Stopwatch;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.apache.bookkeeper.bookie.stats.IndexInMemPageMgrStats;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.Counter;
@@ -48,278 +43,323 @@ import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.DirectMemoryUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 class IndexInMemPageMgr {
     private static final Logger LOG = LoggerFactory.getLogger(IndexInMemPageMgr.class);
-    private static final ConcurrentHashMap<Long, LedgerEntryPage> EMPTY_PAGE_MAP =
-            new ConcurrentHashMap<Long, LedgerEntryPage>();
 
+    /**
+     * The pages of the index in memory.
+     *
+     * <p>The pages are slices of direct memory slabs, allocated as the cache grows and never released. Each page has
+     * a fixed slot, and the pages are looked up through primitive maps from ledger id and first entry to slot, so a
+     * cache hit doesn't take any lock nor allocate.
+     *
+     * <p>Once all the slots are taken, the clean pages are reused with the CLOCK algorithm: a hand sweeps the slots,
+     * skipping the pages in use or dirty, and giving a second chance to the pages used since its last pass.
+     */
     private static class InMemPageCollection implements LEPStateChangeCallback {
 
-        final ConcurrentMap<Long, ConcurrentMap<Long, LedgerEntryPage>> pages;
-        final Map<EntryKey, LedgerEntryPage> lruCleanPageMap;
-        final ConcurrentLinkedQueue<LedgerEntryPage> listOfFreePages;
+        // Size of the direct memory slabs the pages are sliced from
+        private static final int SLAB_SIZE = 8 * 1024 * 1024;
+
+        /**
+         * The slots of the pages of a ledger, by first entry. Slots are only added and removed while holding the lock
+         * of the instance, which is retired from the page map once empty, so that no slot is added to a dropped map.
+         */
+        private static class LedgerPages {
+            final ConcurrentLongLongHashMap slots = new ConcurrentLongLongHashMap(16, 1);
+            boolean retired = false;
+        }
+
+        final ConcurrentLongHashMap<LedgerPages> pages;
+        final AtomicReferenceArray<LedgerEntryPage[]> slabs;
+
+        private final int pageSize;
+        private final int entriesPerPage;
+        private final int pageLimit;
+        private final int pagesPerSlab;
+
+        // The number of slots that have been taken
+        private final AtomicInteger pageCount = new AtomicInteger(0);
+        private final AtomicInteger clockHand = new AtomicInteger(0);
 
         // Stats
         private final IndexInMemPageMgrStats inMemPageMgrStats;
 
-        public InMemPageCollection(StatsLogger statsLogger) {
-            pages = new ConcurrentHashMap<>();
-            lruCleanPageMap =
-                    Collections.synchronizedMap(new LinkedHashMap<EntryKey, LedgerEntryPage>(16, 0.75f, true));
-            listOfFreePages = new ConcurrentLinkedQueue<LedgerEntryPage>();
+        public InMemPageCollection(int pageSize, int entriesPerPage, int pageLimit, StatsLogger statsLogger) {
+            this.pageSize = pageSize;
+            this.entriesPerPage = entriesPerPage;
+            this.pageLimit = pageLimit;
+            this.pagesPerSlab = Math.max(1, Math.min(pageLimit, SLAB_SIZE / pageSize));
+            pages = new ConcurrentLongHashMap<>();
+            slabs = new AtomicReferenceArray<>((pageLimit + pagesPerSlab - 1) / pagesPerSlab);
             inMemPageMgrStats = new IndexInMemPageMgrStats(statsLogger);
         }
 
+        int getNumUsedPages() {
+            return Math.min(pageCount.get(), pageLimit);
+        }
+
+        private LedgerEntryPage getPageInSlot(int slot) {
+            LedgerEntryPage[] slab = slabs.get(slot / pagesPerSlab);
+            return slab[slot % pagesPerSlab];
+        }
+
+        private LedgerEntryPage[] getOrAllocateSlab(int slabIndex) {
+            LedgerEntryPage[] slab = slabs.get(slabIndex);
+            if (null != slab) {
+                return slab;
+            }
+            synchronized (slabs) {
+                slab = slabs.get(slabIndex);
+                if (null == slab) {
+                    int numPages = Math.min(pagesPerSlab, pageLimit - slabIndex * pagesPerSlab);
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(numPages * pageSize);
+                    slab = new LedgerEntryPage[numPages];
+                    for (int i = 0; i < numPages; i++) {
+                        ByteBuffer pageBuffer = buffer.duplicate();
+                        pageBuffer.position(i * pageSize);
+                        pageBuffer.limit((i + 1) * pageSize);
+                        slab[i] = new LedgerEntryPage(pageBuffer.slice(), entriesPerPage, this);
+                        // A page is free until first taken
+                        slab[i].markDeleted();
+                    }
+                    slabs.set(slabIndex, slab);
+                }
+                return slab;
+            }
+        }
+
         /**
-         * Retrieve the LedgerEntryPage corresponding to the ledger and firstEntry.
+         * Retrieve the LedgerEntryPage corresponding to the ledger and firstEntry, marked in use.
          *
          * @param ledgerId Ledger id
          * @param firstEntry Id of the first entry in the page
          * @returns LedgerEntryPage if present
          */
         private LedgerEntryPage getPage(long ledgerId, long firstEntry) {
-            ConcurrentMap<Long, LedgerEntryPage> map = pages.get(ledgerId);
-            if (null != map) {
-                return map.get(firstEntry);
+            while (true) {
+                LedgerPages ledgerPages = pages.get(ledgerId);
+                if (null == ledgerPages) {
+                    return null;
+                }
+                long slot = ledgerPages.slots.get(firstEntry);
+                if (slot < 0) {
+                    return null;
+                }
+                LedgerEntryPage lep = getPageInSlot((int) slot);
+                if (lep.tryUsePage()) {
+                    if (lep.getLedger() == ledgerId && lep.getFirstEntry() == firstEntry && !lep.isDeleted()) {
+                        return lep;
+                    }
+                    lep.releasePageNoCallback();
+                }
+                // The page is being reused for another ledger or entry, its slot is about to be removed
+                Thread.yield();
             }
-            return null;
         }
 
         /**
-         * Add a LedgerEntryPage to the page map.
+         * Add a LedgerEntryPage, marked in use, to the page map.
          *
          * @param lep Ledger Entry Page object
+         * @param slot slot of the page
+         * @return the slot of the page already in the page map for the same ledger and first entry, or -1 if the page
+         *         was added
          */
-        private LedgerEntryPage putPage(LedgerEntryPage lep) {
-            // Do a get here to avoid too many new ConcurrentHashMaps() as putIntoTable is called frequently.
-            ConcurrentMap<Long, LedgerEntryPage> map = pages.get(lep.getLedger());
-            if (null == map) {
-                ConcurrentMap<Long, LedgerEntryPage> mapToPut = new ConcurrentHashMap<Long, LedgerEntryPage>();
-                map = pages.putIfAbsent(lep.getLedger(), mapToPut);
-                if (null == map) {
-                    map = mapToPut;
+        private long putPage(LedgerEntryPage lep, int slot) {
+            long ledgerId = lep.getLedger();
+            while (true) {
+                LedgerPages ledgerPages = pages.computeIfAbsent(ledgerId, k -> new LedgerPages());
+                synchronized (ledgerPages) {
+                    if (!ledgerPages.retired) {
+                        return ledgerPages.slots.putIfAbsent(lep.getFirstEntry(), slot);
+                    }
                 }
             }
-            LedgerEntryPage oldPage = map.putIfAbsent(lep.getFirstEntry(), lep);
-            if (null == oldPage) {
-                oldPage = lep;
-                // Also include this in the clean page map if it qualifies.
-                // Note: This is done for symmetry and correctness, however it should never
-                // get exercised since we shouldn't attempt a put without the page being in use
-                addToCleanPagesList(lep);
-            }
-            return oldPage;
         }
 
         /**
-         * Traverse the pages for a given ledger in memory and find the highest entry amongst these pages.
-         *
-         * @param ledgerId Ledger id
-         * @returns last entry in the in memory pages
+         * Remove the slot of a page locked for reuse from the page map.
          */
-        private long getLastEntryInMem(long ledgerId) {
-            long lastEntry = 0;
-            // Find the last entry in the cache
-            ConcurrentMap<Long, LedgerEntryPage> map = pages.get(ledgerId);
-            if (map != null) {
-                for (LedgerEntryPage lep: map.values()) {
-                    if (lep.getMaxPossibleEntry() < lastEntry) {
-                        continue;
-                    }
-                    lep.usePage();
-                    long highest = lep.getLastEntry();
-                    if (highest > lastEntry) {
-                        lastEntry = highest;
-                    }
-                    lep.releasePage();
+        private void removePage(LedgerEntryPage lep, int slot) {
+            long ledgerId = lep.getLedger();
+            LedgerPages ledgerPages = pages.get(ledgerId);
+            if (null == ledgerPages) {
+                return;
+            }
+            synchronized (ledgerPages) {
+                ledgerPages.slots.remove(lep.getFirstEntry(), slot);
+                if (ledgerPages.slots.isEmpty() && !ledgerPages.retired) {
+                    ledgerPages.retired = true;
+                    pages.remove(ledgerId, ledgerPages);
                 }
             }
-            return lastEntry;
         }
 
         /**
-         * Removes ledger entry pages for a given ledger.
-         *
-         * @param ledgerId Ledger id
-         * @returns number of pages removed
+         * Return a page marked in use, that isn't in the page map, to be reused.
          */
-        private void removeEntriesForALedger(long ledgerId) {
-            // remove pages first to avoid page flushed when deleting file info
-            ConcurrentMap<Long, LedgerEntryPage> lPages = pages.remove(ledgerId);
-            if (null != lPages) {
-                for (Map.Entry<Long, LedgerEntryPage> pageEntry: lPages.entrySet()) {
-                    LedgerEntryPage lep = pageEntry.getValue();
-                    lep.usePage();
-                    lep.markDeleted();
-                    lep.releasePage();
-                }
+        private void freePage(LedgerEntryPage lep) {
+            lep.markDeleted();
+            lep.releasePageNoCallback();
+            if (lep.inUse()) {
+                inMemPageMgrStats.getIllegalStateResetCounter().inc();
             }
         }
 
         /**
-         * Gets the list of pages in memory that have been changed and hence need to
-         * be written as a part of the flush operation that is being issued.
-         *
-         * @param ledgerId Ledger id
-         * @returns last entry in the in memory pages.
+         * Get the pages in memory of a ledger, marked in use.
          */
-        private LinkedList<Long> getFirstEntryListToBeFlushed(long ledgerId) {
-            ConcurrentMap<Long, LedgerEntryPage> pageMap = pages.get(ledgerId);
-            if (pageMap == null || pageMap.isEmpty()) {
-                return null;
+        private List<LedgerEntryPage> getPagesOfLedger(long ledgerId, boolean onlyDirty) {
+            LedgerPages ledgerPages = pages.get(ledgerId);
+            if (null == ledgerPages) {
+                return Collections.emptyList();
             }
-
-            LinkedList<Long> firstEntryList = new LinkedList<Long>();
-            for (ConcurrentMap.Entry<Long, LedgerEntryPage> entry: pageMap.entrySet()) {
-                LedgerEntryPage lep = entry.getValue();
-                if (lep.isClean()) {
-                    if (!lep.inUse()) {
-                        addToCleanPagesList(lep);
-                    }
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("Page is clean " + lep);
-                    }
-                } else {
-                    firstEntryList.add(lep.getFirstEntry());
+            List<LedgerEntryPage> ledgerEntryPages = new ArrayList<>();
+            ledgerPages.slots.forEach((firstEntry, slot) -> {
+                LedgerEntryPage lep = getPageInSlot((int) slot);
+                if (!lep.tryUsePage()) {
+                    return;
                 }
-            }
-            return firstEntryList;
+                if (lep.getLedger() != ledgerId || lep.getFirstEntry() != firstEntry || lep.isDeleted()
+                        || (onlyDirty && lep.isClean())) {
+                    lep.releasePage();
+                    return;
+                }
+                ledgerEntryPages.add(lep);
+            });
+            return ledgerEntryPages;
         }
 
         /**
-         * Add the LedgerEntryPage to the clean page LRU map.
+         * Traverse the pages for a given ledger in memory and find the highest entry amongst these pages.
          *
-         * @param lep Ledger Entry Page object
+         * @param ledgerId Ledger id
+         * @returns last entry in the in memory pages
          */
-        private void addToCleanPagesList(LedgerEntryPage lep) {
-            synchronized (lruCleanPageMap) {
-                if (lep.isClean() && !lep.inUse()) {
-                    lruCleanPageMap.put(lep.getEntryKey(), lep);
+        private long getLastEntryInMem(long ledgerId) {
+            long lastEntry = 0;
+            for (LedgerEntryPage lep : getPagesOfLedger(ledgerId, false)) {
+                long highest = lep.getLastEntry();
+                if (highest > lastEntry) {
+                    lastEntry = highest;
                 }
+                lep.releasePage();
             }
+            return lastEntry;
         }
 
         /**
-         * Remove the LedgerEntryPage from the clean page LRU map.
+         * Removes ledger entry pages for a given ledger.
          *
-         * @param lep Ledger Entry Page object
+         * @param ledgerId Ledger id
          */
-        private void removeFromCleanPageList(LedgerEntryPage lep) {
-            synchronized (lruCleanPageMap) {
-                if (!lep.isClean() || lep.inUse()) {
-                    lruCleanPageMap.remove(lep.getEntryKey());
-                }
+        private void removeEntriesForALedger(long ledgerId) {
+            // remove pages first to avoid page flushed when deleting file info
+            LedgerPages ledgerPages = pages.remove(ledgerId);
+            if (null == ledgerPages) {
+                return;
+            }
+            synchronized (ledgerPages) {
+                ledgerPages.retired = true;
             }
+            ledgerPages.slots.forEach((firstEntry, slot) -> {
+                LedgerEntryPage lep = getPageInSlot((int) slot);
+                if (lep.tryUsePage()) {
+                    if (lep.getLedger() == ledgerId && lep.getFirstEntry() == firstEntry) {
+                        // deleted pages are reused first, even when dirty
+                        lep.markDeleted();
+                    }
+                    lep.releasePage();
+                }
+            });
         }
 
         /**
          * Get the set of active ledgers.
          *
          */
-        Set<Long> getActiveLedgers() {
-            return pages.keySet();
+        List<Long> getActiveLedgers() {
+            return pages.keys();
         }
 
         /**
-         * Get a clean page and provision it for the specified ledger and firstEntry within the ledger.
+         * Get a page, marked in use, and provision it for the specified ledger and firstEntry within the ledger.
+         * A new slot is taken until the page limit is reached, then a clean page is reused.
          *
          * @param ledgerId Ledger id
          * @param firstEntry Id of the first entry in the page
-         * @returns LedgerEntryPage if present
+         * @returns slot of the page, or -1 if no page can be reused
          */
-        LedgerEntryPage grabCleanPage(long ledgerId, long firstEntry) {
-            LedgerEntryPage lep = listOfFreePages.poll();
-            if (null != lep) {
-                lep.resetPage();
-                lep.setLedgerAndFirstEntry(ledgerId, firstEntry);
-                lep.usePage();
-                return lep;
-            }
-            while (lruCleanPageMap.size() > 0) {
-                lep = null;
-                synchronized (lruCleanPageMap) {
-                    Iterator<Map.Entry<EntryKey, LedgerEntryPage>> iterator = lruCleanPageMap.entrySet().iterator();
-
-                    Map.Entry<EntryKey, LedgerEntryPage> entry = null;
-                    while (iterator.hasNext()) {
-                        entry = iterator.next();
-                        iterator.remove();
-                        if (entry.getValue().isClean() && !entry.getValue().inUse()) {
-                            lep = entry.getValue();
-                            break;
-                        }
-                    }
-
-                    if (null == lep) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Did not find eligible page in the first pass");
-                        }
-                        return null;
+        int grabCleanPage(long ledgerId, long firstEntry) {
+            if (pageCount.get() < pageLimit) {
+                int slot = pageCount.getAndIncrement();
+                if (slot < pageLimit) {
+                    LedgerEntryPage lep = getOrAllocateSlab(slot / pagesPerSlab)[slot % pagesPerSlab];
+                    // The clock hand may have reused the page already
+                    if (lep.tryLockForReuse()) {
+                        lep.reuse(ledgerId, firstEntry);
+                        return slot;
                     }
                 }
+            }
 
-                // We found a candidate page, lets see if we can reclaim it before its re-used
-                ConcurrentMap<Long, LedgerEntryPage> pageMap = pages.get(lep.getLedger());
-                // Remove from map only if nothing has changed since we checked this lep.
-                // Its possible for the ledger to have been deleted or the page to have already
-                // been reclaimed. The page map is the definitive source of information, if anything
-                // has changed we should leave this page along and continue iterating to find
-                // another suitable page.
-                if ((null != pageMap) && (pageMap.remove(lep.getFirstEntry(), lep))) {
+            int numPages = getNumUsedPages();
+            // The first pass of the hand resets the reference bits, so two passes find any clean page not in use
+            for (int i = 0; i < 2 * numPages; i++) {
+                int slot = Math.floorMod(clockHand.getAndIncrement(), numPages);
+                LedgerEntryPage[] slab = slabs.get(slot / pagesPerSlab);
+                if (null == slab) {
+                    // Slab still being allocated
+                    continue;
+                }
+                LedgerEntryPage lep = slab[slot % pagesPerSlab];
+                if (lep.inUse()) {
+                    continue;
+                }
+                if (!lep.isDeleted() && (!lep.isClean() || lep.resetReferenced())) {
+                    continue;
+                }
+                if (!lep.tryLockForReuse()) {
+                    continue;
+                }
+                if (!lep.isDeleted()) {
                     if (!lep.isClean()) {
-                        // Someone wrote to this page while we were reclaiming it.
-                        pageMap.put(lep.getFirstEntry(), lep);
-                        lep = null;
-                    } else {
-                        // Do some bookkeeping on the page table
-                        pages.remove(lep.getLedger(), EMPTY_PAGE_MAP);
-                        // We can now safely reset this lep and return it.
-                        lep.usePage();
-                        lep.zeroPage();
-                        lep.setLedgerAndFirstEntry(ledgerId, firstEntry);
-                        return lep;
+                        // Someone wrote to this page before we locked it
+                        lep.unlockForReuse();
+                        continue;
                     }
-                } else {
-                    lep = null;
+                    removePage(lep, slot);
                 }
+                lep.reuse(ledgerId, firstEntry);
+                return slot;
             }
-            return lep;
-        }
-
-        public void addToListOfFreePages(LedgerEntryPage lep) {
-            if ((null == lep) || lep.inUse()) {
-                inMemPageMgrStats.getIllegalStateResetCounter().inc();
-            }
-            if (null != lep) {
-                listOfFreePages.add(lep);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Did not find eligible page in two passes");
             }
+            return -1;
         }
 
         @Override
         public void onSetInUse(LedgerEntryPage lep) {
-            removeFromCleanPageList(lep);
         }
 
         @Override
         public void onResetInUse(LedgerEntryPage lep) {
-            if (!lep.isDeleted()) {
-                addToCleanPagesList(lep);
-            } else {
-                addToListOfFreePages(lep);
-            }
+            lep.markReferenced();
         }
 
         @Override
         public void onSetClean(LedgerEntryPage lep) {
-            addToCleanPagesList(lep);
         }
 
         @Override
         public void onSetDirty(LedgerEntryPage lep) {
-            removeFromCleanPageList(lep);
         }
     }
 
@@ -328,8 +368,8 @@ class IndexInMemPageMgr {
     final int pageLimit;
     final InMemPageCollection pageMapAndList;
 
-    // The number of pages that have actually been used
-    private final AtomicInteger pageCount = new AtomicInteger(0);
+    // Min number of pages flushed when no clean page can be reused
+    private final int minPagesToFlush;
 
     // The persistence manager that this page manager uses to
     // flush and read pages
@@ -348,7 +388,6 @@ class IndexInMemPageMgr {
         this.pageSize = pageSize;
         this.entriesPerPage = entriesPerPage;
         this.indexPersistenceManager = indexPersistenceManager;
-        this.pageMapAndList = new InMemPageCollection(statsLogger);
 
         long maxDirectMemory = DirectMemoryUtils.maxDirectMemory();
 
@@ -358,6 +397,8 @@ class IndexInMemPageMgr {
         } else {
             this.pageLimit = conf.getPageLimit();
         }
+        this.pageMapAndList = new InMemPageCollection(pageSize, entriesPerPage, pageLimit, statsLogger);
+        this.minPagesToFlush = Math.max(1, pageLimit / 16);
         LOG.info("maxDirectMemory = {}, pageSize = {}, pageLimit = {}",
                 maxDirectMemory, pageSize, pageLimit);
         // Expose Stats
@@ -391,7 +432,7 @@ class IndexInMemPageMgr {
      * @return number of page used in ledger cache
      */
     private int getNumUsedPages() {
-        return pageCount.get();
+        return pageMapAndList.getNumUsedPages();
     }
 
     /**
@@ -421,11 +462,9 @@ class IndexInMemPageMgr {
                                                        boolean onlyDirty) {
         LedgerEntryPage lep = pageMapAndList.getPage(ledger, firstEntry);
         if (onlyDirty && null != lep && lep.isClean()) {
+            lep.releasePage();
             return null;
         }
-        if (null != lep) {
-            lep.usePage();
-        }
         return lep;
     }
 
@@ -438,38 +477,37 @@ class IndexInMemPageMgr {
      * @param pageEntry Start entry of this entry page.
      */
     private LedgerEntryPage grabLedgerEntryPage(long ledger, long pageEntry) throws IOException {
-        LedgerEntryPage lep = grabCleanPage(ledger, pageEntry);
-        try {
-            // should get the up to date page from the persistence manager
-            // before we put it into table otherwise we would put
-            // an empty page in it
-            Stopwatch readPageStopwatch = Stopwatch.createStarted();
-            boolean isNewPage = indexPersistenceManager.updatePage(lep);
-            if (!isNewPage) {
-                ledgerCacheReadPageStats.registerSuccessfulEvent(
-                        readPageStopwatch.elapsed(TimeUnit.MICROSECONDS),
-                        TimeUnit.MICROSECONDS);
+        while (true) {
+            int slot = grabCleanPage(ledger, pageEntry);
+            LedgerEntryPage lep = pageMapAndList.getPageInSlot(slot);
+            try {
+                // should get the up to date page from the persistence manager
+                // before we put it into table otherwise we would put
+                // an empty page in it
+                Stopwatch readPageStopwatch = Stopwatch.createStarted();
+                boolean isNewPage = indexPersistenceManager.updatePage(lep);
+                if (!isNewPage) {
+                    ledgerCacheReadPageStats.registerSuccessfulEvent(
+                            readPageStopwatch.elapsed(TimeUnit.MICROSECONDS),
+                            TimeUnit.MICROSECONDS);
+                }
+            } catch (IOException ie) {
+                // if we grab a clean page, but failed to update the page
+                // we should free this page so that it can be reassigned
+                // to the next grabPage request
+                pageMapAndList.freePage(lep);
+                throw ie;
+            }
+            if (pageMapAndList.putPage(lep, slot) < 0) {
+                return lep;
+            }
+            // Another thread loaded the same page in the meantime, use it instead
+            pageMapAndList.freePage(lep);
+            lep = pageMapAndList.getPage(ledger, pageEntry);
+            if (null != lep) {
+                return lep;
             }
-        } catch (IOException ie) {
-            // if we grab a clean page, but failed to update the page
-            // we should put this page in the free page list so that it
-            // can be reassigned to the next grabPage request
-            lep.releasePageNoCallback();
-            pageMapAndList.addToListOfFreePages(lep);
-            throw ie;
-        }
-        LedgerEntryPage oldLep;
-        if (lep != (oldLep = pageMapAndList.putPage(lep))) {
-            // if we grab a clean page, but failed to put it in the cache
-            // we should put this page in the free page list so that it
-            // can be reassigned to the next grabPage request
-            lep.releasePageNoCallback();
-            pageMapAndList.addToListOfFreePages(lep);
-            // Increment the use count of the old lep because this is unexpected
-            oldLep.usePage();
-            lep = oldLep;
         }
-        return lep;
     }
 
     void removePagesForLedger(long ledgerId) {
@@ -480,29 +518,15 @@ class IndexInMemPageMgr {
         return pageMapAndList.getLastEntryInMem(ledgerId);
     }
 
-    private LedgerEntryPage grabCleanPage(long ledger, long entry) throws IOException {
+    private int grabCleanPage(long ledger, long entry) throws IOException {
         if (entry % entriesPerPage != 0) {
             throw new IllegalArgumentException(entry + " is not a multiple of " + entriesPerPage);
         }
 
         while (true) {
-            boolean canAllocate = false;
-            if (pageCount.incrementAndGet() <= pageLimit) {
-                canAllocate = true;
-            } else {
-                pageCount.decrementAndGet();
-            }
-
-            if (canAllocate) {
-                LedgerEntryPage lep = new LedgerEntryPage(pageSize, entriesPerPage, pageMapAndList);
-                lep.setLedgerAndFirstEntry(ledger, entry);
-                lep.usePage();
-                return lep;
-            }
-
-            LedgerEntryPage lep = pageMapAndList.grabCleanPage(ledger, entry);
-            if (null != lep) {
-                return lep;
+            int slot = pageMapAndList.grabCleanPage(ledger, entry);
+            if (slot >= 0) {
+                return slot;
             }
             LOG.info("Could not grab a clean page for ledger {}, entry {}, force flushing dirty ledgers.",
                     ledger, entry);
@@ -510,54 +534,29 @@ class IndexInMemPageMgr {
         }
     }
 
-    void flushOneOrMoreLedgers(boolean doAll) throws IOException {
-        List<Long> ledgersToFlush = new ArrayList<>(pageMapAndList.getActiveLedgers());
-        for (Long potentiallyDirtyLedger : ledgersToFlush) {
-            try {
-                flushSpecificLedger(potentiallyDirtyLedger);
-            } catch (Bookie.NoLedgerException e) {
-                continue;
-            }
-            if (!doAll) {
-                break;
-            }
-        }
-    }
-
     /**
-     * Flush a specified ledger.
+     * Flush the dirty pages of the ledgers in memory, or, unless <i>doAll</i>, of enough ledgers to flush
+     * a batch of pages.
      *
-     * @param ledger Ledger Id
+     * <p>The ledgers are flushed in a single batch, so that each index file is forced once.
+     *
+     * @param doAll whether to flush all the ledgers
      * @throws IOException
      */
-    private void flushSpecificLedger(long ledger) throws IOException {
-        LinkedList<Long> firstEntryList = pageMapAndList.getFirstEntryListToBeFlushed(ledger);
-
-        // flush ledger index file header if necessary
-        indexPersistenceManager.flushLedgerHeader(ledger);
-
-        if (null == firstEntryList || firstEntryList.size() == 0) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Nothing to flush for ledger {}.", ledger);
-            }
-            // nothing to do
-            return;
-        }
-
-        // Now flush all the pages of a ledger
-        List<LedgerEntryPage> entries = new ArrayList<LedgerEntryPage>(firstEntryList.size());
-        try {
-            for (Long firstEntry: firstEntryList) {
-                LedgerEntryPage lep = getLedgerEntryPageFromCache(ledger, firstEntry, true);
-                if (lep != null) {
-                    entries.add(lep);
+    void flushOneOrMoreLedgers(boolean doAll) throws IOException {
+        List<Long> ledgersToFlush = pageMapAndList.getActiveLedgers();
+        Collections.sort(ledgersToFlush);
+        int flushedPages = 0;
+        try (IndexPersistenceMgr.FlushBatch batch = indexPersistenceManager.newFlushBatch(ledgersToFlush)) {
+            for (Long potentiallyDirtyLedger : ledgersToFlush) {
+                // Grab all the dirty pages of the ledger in a single pass, the batch releases them
+                flushedPages += batch.flush(potentiallyDirtyLedger,
+                        pageMapAndList.getPagesOfLedger(potentiallyDirtyLedger, true));
+                if (!doAll && flushedPages >= minPagesToFlush) {
+                    break;
                 }
             }
-            indexPersistenceManager.flushLedgerEntries(ledger, entries);
-        } finally {
-            for (LedgerEntryPage lep: entries) {
-                lep.releasePage();
-            }
+            batch.sync();
         }
     }
 
@@ -27,14 +27,21 @@ import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.FileInfoBackingCache.CachedFileInfo;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
@@ -42,6 +49,7 @@ import org.apache.bookkeeper.bookie.stats.IndexPersistenceMgrStats;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.SnapshotMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +63,9 @@ public class IndexPersistenceMgr {
     private static final String IDX = ".idx";
     static final String RLOC = ".rloc";
 
+    // Number of index files opened ahead of a flush batch
+    private static final int FLUSH_OPEN_AHEAD_FILES = 8;
+
     @VisibleForTesting
     public static final String getLedgerName(long ledgerId) {
         int parent = (int) (ledgerId & 0xff);
@@ -77,6 +88,10 @@ public class IndexPersistenceMgr {
     final int openFileLimit;
     final int pageSize;
     final int entriesPerPage;
+    // Max number of index files a flush batch keeps open before syncing them
+    final int flushBatchMaxFiles;
+    // Opens the index files ahead of the flush batches
+    final ExecutorService indexFileOpener;
 
     // Manage all active ledgers in LedgerManager
     // so LedgerManager has knowledge to garbage collect inactive/deleted ledgers
@@ -96,6 +111,7 @@ public class IndexPersistenceMgr {
         this.ledgerDirsManager = ledgerDirsManager;
         this.pageSize = pageSize;
         this.entriesPerPage = entriesPerPage;
+        this.flushBatchMaxFiles = Math.max(1, openFileLimit / 4);
         LOG.info("openFileLimit = {}", openFileLimit);
         // Retrieve all of the active ledgers.
         getActiveLedgers();
@@ -124,6 +140,7 @@ public class IndexPersistenceMgr {
             () -> writeFileInfoCache.size(),
             () -> readFileInfoCache.size()
         );
+        indexFileOpener = Executors.newSingleThreadExecutor(new DefaultThreadFactory("IndexFileOpener", true));
     }
 
     private static Cache<Long, CachedFileInfo> buildCache(int concurrencyLevel,
@@ -182,7 +199,20 @@ public class IndexPersistenceMgr {
             CachedFileInfo fi;
             persistenceMgrStats.getPendingGetFileInfoCounter().inc();
             Callable<CachedFileInfo> loader = () -> {
+                long startTimeNanos = MathUtils.nowInNano();
                 CachedFileInfo fileInfo = fileInfoBackingCache.loadFileInfo(ledger, masterKey);
+                try {
+                    // Open the index file now rather than on first use, so that the cache misses are accounted
+                    // with the cost of opening the file and reading its header
+                    fileInfo.checkOpen(false);
+                } catch (IOException ioe) {
+                    fileInfo.release();
+                    persistenceMgrStats.getIndexFileOpenStats().registerFailedEvent(
+                            MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+                    throw ioe;
+                }
+                persistenceMgrStats.getIndexFileOpenStats().registerSuccessfulEvent(
+                        MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
                 activeLedgers.put(ledger, true);
                 return fileInfo;
             };
@@ -343,6 +373,7 @@ public class IndexPersistenceMgr {
         // Don't force create the file. We may have many dirty ledgers and file create/flush
         // can be quite expensive as a result. We can use this optimization in this case
         // because metadata will be recovered from the journal when we restart anyway.
+        indexFileOpener.shutdown();
         fileInfoBackingCache.closeAllWithoutFlushing();
         writeFileInfoCache.invalidateAll();
         readFileInfoCache.invalidateAll();
@@ -518,73 +549,213 @@ public class IndexPersistenceMgr {
         }
     }
 
-    void flushLedgerHeader(long ledger) throws IOException {
-        CachedFileInfo fi = null;
-        try {
-            fi = getFileInfo(ledger, null);
-            relocateIndexFileAndFlushHeader(ledger, fi);
-        } catch (Bookie.NoLedgerException nle) {
-            // ledger has been deleted
-            LOG.info("No ledger {} found when flushing header.", ledger);
-            return;
-        } finally {
-            if (null != fi) {
-                fi.release();
+    /**
+     * Create a batch to flush the given ledgers, in this order.
+     *
+     * @param ledgers the ledgers to flush, whose index files are opened ahead of the flushes
+     */
+    FlushBatch newFlushBatch(List<Long> ledgers) {
+        return new FlushBatch(ledgers);
+    }
+
+    /**
+     * A batch of flushes of index pages and headers.
+     *
+     * <p>The pages of each ledger are written in file order without forcing the index file, then the index files are
+     * forced once each when the batch is synced, so a checkpoint costs a single fsync per index file. Meanwhile,
+     * the index files of the next ledgers are opened in the background. The batch is synced every
+     * {@code flushBatchMaxFiles} index files, to bound the number of index files it keeps open.
+     */
+    class FlushBatch implements AutoCloseable {
+
+        private final Iterator<Long> ledgersToOpen;
+        private final Map<Long, Future<CachedFileInfo>> openingFileInfos = new LinkedHashMap<>();
+        private final List<PendingFlush> pendingFlushes = new ArrayList<>();
+        private long startTimeNanos = MathUtils.nowInNano();
+
+        private FlushBatch(List<Long> ledgers) {
+            this.ledgersToOpen = ledgers.iterator();
+            openAhead();
+        }
+
+        private void openAhead() {
+            while (openingFileInfos.size() < FLUSH_OPEN_AHEAD_FILES && ledgersToOpen.hasNext()) {
+                Long ledger = ledgersToOpen.next();
+                openingFileInfos.put(ledger, indexFileOpener.submit(() -> getFileInfo(ledger, null)));
             }
         }
-    }
 
-    void flushLedgerEntries(long l, List<LedgerEntryPage> entries) throws IOException {
-        CachedFileInfo fi = null;
-        try {
-            Collections.sort(entries, new Comparator<LedgerEntryPage>() {
-                @Override
-                public int compare(LedgerEntryPage o1, LedgerEntryPage o2) {
-                    return (int) (o1.getFirstEntry() - o2.getFirstEntry());
+        private CachedFileInfo openFileInfo(long ledger) throws IOException {
+            Future<CachedFileInfo> opening = openingFileInfos.remove(ledger);
+            openAhead();
+            if (null == opening) {
+                return getFileInfo(ledger, null);
+            }
+            try {
+                return opening.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                // the file info may still be retained by the opener
+                openingFileInfos.put(ledger, opening);
+                throw new IOException("Interrupted while opening index file of ledger " + ledger, ie);
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof IOException) {
+                    throw (IOException) ee.getCause();
                 }
-            });
-            int[] versions = new int[entries.size()];
+                throw new IOException("Failed to open index file of ledger " + ledger, ee.getCause());
+            }
+        }
+
+        /**
+         * Write the header and the given dirty pages of a ledger, without forcing its index file.
+         *
+         * <p>The batch takes over the use of the pages, which are marked clean and released once the index file
+         * is synced.
+         *
+         * @return the number of pages written
+         */
+        int flush(long ledger, List<LedgerEntryPage> entries) throws IOException {
+            CachedFileInfo fi = null;
+            boolean pending = false;
             try {
-                fi = getFileInfo(l, null);
+                fi = openFileInfo(ledger);
+                // flush the header if necessary
+                relocateIndexFileAndFlushHeader(ledger, fi);
+                int[] versions = writeLedgerEntries(ledger, entries, fi);
+                pendingFlushes.add(new PendingFlush(fi, entries, versions));
+                pending = true;
             } catch (Bookie.NoLedgerException nle) {
                 // ledger has been deleted
-                LOG.info("No ledger {} found when flushing entries.", l);
-                return;
+                LOG.info("No ledger {} found when flushing.", ledger);
+                return 0;
+            } finally {
+                if (!pending) {
+                    for (LedgerEntryPage lep : entries) {
+                        lep.releasePage();
+                    }
+                    if (null != fi) {
+                        fi.release();
+                    }
+                }
             }
+            if (pendingFlushes.size() >= flushBatchMaxFiles) {
+                sync();
+            }
+            return entries.size();
+        }
 
-            // flush the header if necessary
-            relocateIndexFileAndFlushHeader(l, fi);
-            int start = 0;
-            long lastOffset = -1;
-            for (int i = 0; i < entries.size(); i++) {
-                versions[i] = entries.get(i).getVersion();
-                if (lastOffset != -1 && (entries.get(i).getFirstEntry() - lastOffset) != entriesPerPage) {
-                    // send up a sequential list
-                    int count = i - start;
-                    if (count == 0) {
-                        LOG.warn("Count cannot possibly be zero!");
+        /**
+         * Force the index files written since the last sync, and mark their pages clean.
+         */
+        void sync() throws IOException {
+            Iterator<PendingFlush> iterator = pendingFlushes.iterator();
+            boolean success = false;
+            try {
+                while (iterator.hasNext()) {
+                    PendingFlush pendingFlush = iterator.next();
+                    long syncStartTimeNanos = MathUtils.nowInNano();
+                    try {
+                        if (pendingFlush.fileInfo.forceIfNeeded()) {
+                            persistenceMgrStats.getIndexFileSyncStats().registerSuccessfulEvent(
+                                    MathUtils.elapsedNanos(syncStartTimeNanos), TimeUnit.NANOSECONDS);
+                        }
+                    } catch (IOException ioe) {
+                        persistenceMgrStats.getIndexFileSyncStats().registerFailedEvent(
+                                MathUtils.elapsedNanos(syncStartTimeNanos), TimeUnit.NANOSECONDS);
+                        throw ioe;
                     }
-                    writeBuffers(l, entries, fi, start, count);
-                    start = i;
+                    pendingFlush.complete(true);
+                    iterator.remove();
+                }
+                success = true;
+            } finally {
+                if (success) {
+                    persistenceMgrStats.getIndexFlushStats().registerSuccessfulEvent(
+                            MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+                } else {
+                    persistenceMgrStats.getIndexFlushStats().registerFailedEvent(
+                            MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
                 }
-                lastOffset = entries.get(i).getFirstEntry();
+                startTimeNanos = MathUtils.nowInNano();
             }
-            if (entries.size() - start == 0 && entries.size() != 0) {
-                LOG.warn("Nothing to write, but there were entries!");
+        }
+
+        /**
+         * Release the pages and the index files not synced, leaving the pages dirty.
+         */
+        @Override
+        public void close() {
+            for (PendingFlush pendingFlush : pendingFlushes) {
+                pendingFlush.complete(false);
+            }
+            pendingFlushes.clear();
+            for (Map.Entry<Long, Future<CachedFileInfo>> opening : openingFileInfos.entrySet()) {
+                if (opening.getValue().cancel(false)) {
+                    continue;
+                }
+                try {
+                    opening.getValue().get().release();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    LOG.warn("Interrupted while waiting for index file of ledger {} to be opened", opening.getKey());
+                } catch (ExecutionException ee) {
+                    // nothing to release
+                }
             }
-            writeBuffers(l, entries, fi, start, entries.size() - start);
+            openingFileInfos.clear();
+        }
+    }
+
+    private static class PendingFlush {
+        final CachedFileInfo fileInfo;
+        final List<LedgerEntryPage> entries;
+        final int[] versions;
+
+        PendingFlush(CachedFileInfo fileInfo, List<LedgerEntryPage> entries, int[] versions) {
+            this.fileInfo = fileInfo;
+            this.entries = entries;
+            this.versions = versions;
+        }
+
+        void complete(boolean synced) {
             for (int i = 0; i < entries.size(); i++) {
                 LedgerEntryPage lep = entries.get(i);
-                lep.setClean(versions[i]);
-            }
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Flushed ledger {} with {} pages.", l, entries.size());
-            }
-        } finally {
-            if (fi != null) {
-                fi.release();
+                if (synced) {
+                    lep.setClean(versions[i]);
+                }
+                lep.releasePage();
             }
+            fileInfo.release();
+        }
+    }
+
+    /**
+     * Write the given pages of a ledger, in file order, without forcing the index file.
+     *
+     * @return the versions of the pages written
+     */
+    private int[] writeLedgerEntries(long l, List<LedgerEntryPage> entries, FileInfo fi) throws IOException {
+        entries.sort(Comparator.comparingLong(LedgerEntryPage::getFirstEntry));
+        int[] versions = new int[entries.size()];
+        if (entries.isEmpty()) {
+            return versions;
+        }
+        int start = 0;
+        long lastOffset = -1;
+        for (int i = 0; i < entries.size(); i++) {
+            versions[i] = entries.get(i).getVersion();
+            if (lastOffset != -1 && (entries.get(i).getFirstEntry() - lastOffset) != entriesPerPage) {
+                // send up a sequential list
+                writeBuffers(l, entries, fi, start, i - start);
+                start = i;
+            }
+            lastOffset = entries.get(i).getFirstEntry();
+        }
+        writeBuffers(l, entries, fi, start, entries.size() - start);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Flushed ledger {} with {} pages.", l, entries.size());
         }
+        return versions;
     }
 
     private void writeBuffers(Long ledger,
@@ -608,7 +779,7 @@ public class IndexPersistenceMgr {
         while (buffs[buffs.length - 1].remaining() > 0) {
             long rc = 0;
             try {
-                rc = fi.write(buffs, entries.get(start + 0).getFirstEntryPosition());
+                rc = fi.write(buffs, entries.get(start + 0).getFirstEntryPosition(), false);
             } catch (FileInfo.FileInfoDeletedException e) {
                 throw new Bookie.NoLedgerException(ledger);
             }
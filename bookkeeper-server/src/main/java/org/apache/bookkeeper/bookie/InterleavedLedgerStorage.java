@@ -88,6 +88,9 @@ public class InterleavedLedgerStorage implements CompactableLedgerStorage, Entry
     private static final Logger LOG = LoggerFactory.getLogger(InterleavedLedgerStorage.class);
     public static final long INVALID_ENTRYID = -1;
 
+    // Max size of the single reads used to fetch sequences of entries from the entry logs
+    private static final int MAX_BULK_READ_SIZE = 1024 * 1024;
+
     EntryLogger entryLogger;
     @Getter
     LedgerCache ledgerCache;
@@ -104,6 +107,9 @@ public class InterleavedLedgerStorage implements CompactableLedgerStorage, Entry
     // has lower remaining percentage to reclaim disk space.
     GarbageCollectorThread gcThread;
 
+    // Moves the entry logs between the ledger dirs and their capacity tier dirs, null if the tiering is disabled
+    EntryLogTieringThread tieringThread;
+
     // this indicates that a write has happened since the last flush
     private final AtomicBoolean somethingWritten = new AtomicBoolean(false);
 
@@ -197,6 +203,9 @@ public class InterleavedLedgerStorage implements CompactableLedgerStorage, Entry
         ledgerCache = new LedgerCacheImpl(conf, activeLedgers,
                 null == indexDirsManager ? ledgerDirsManager : indexDirsManager, statsLogger);
         gcThread = new GarbageCollectorThread(conf, ledgerManager, this, statsLogger.scope("gc"));
+        if (conf.isEntryLogTieringEnabled()) {
+            tieringThread = new EntryLogTieringThread(conf, entryLogger, statsLogger.scope("tiering"));
+        }
         pageSize = conf.getPageSize();
         ledgerDirsManager.addLedgerDirsListener(getLedgerDirsListener());
         // Expose Stats
@@ -277,6 +286,9 @@ public class InterleavedLedgerStorage implements CompactableLedgerStorage, Entry
     @Override
     public void start() {
         gcThread.start();
+        if (tieringThread != null) {
+            tieringThread.start();
+        }
     }
 
     @Override
@@ -286,6 +298,9 @@ public class InterleavedLedgerStorage implements CompactableLedgerStorage, Entry
         LOG.info("Shutting down InterleavedLedgerStorage");
         LOG.info("Shutting down GC thread");
         gcThread.shutdown();
+        if (tieringThread != null) {
+            tieringThread.shutdown();
+        }
         LOG.info("Shutting down entry logger");
         entryLogger.shutdown();
         try {
@@ -420,6 +435,73 @@ public class InterleavedLedgerStorage implements CompactableLedgerStorage, Entry
         }
     }
 
+    @Override
+    public List<ByteBuf> getEntries(long ledgerId, long firstEntryId, long lastEntryId, long maxBytes)
+            throws IOException {
+        if (firstEntryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+            // Only the last written entry
+            firstEntryId = ledgerCache.getLastEntry(ledgerId);
+            lastEntryId = firstEntryId;
+        }
+
+        List<ByteBuf> entries = new ArrayList<>();
+        long size = 0;
+        long entryId = firstEntryId;
+
+        try {
+            while (entryId <= lastEntryId) {
+                long startTimeNanos = MathUtils.nowInNano();
+                long offset = ledgerCache.getEntryOffset(ledgerId, entryId);
+                if (offset == 0) {
+                    getOffsetStats.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+                    break;
+                }
+                getOffsetStats.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+
+                // Entries of the same ledger are often added back to back in the entry log, fetch all the ones
+                // following this entry with a single read (plus the 4 bytes size header of each entry)
+                startTimeNanos = MathUtils.nowInNano();
+                int readSize = (int) Math.min(MAX_BULK_READ_SIZE, Math.max(0, maxBytes - size) + 4);
+                List<ByteBuf> readEntries;
+                try {
+                    readEntries = entryLogger.readEntries(ledgerId, entryId, lastEntryId, offset, readSize);
+                } catch (IOException e) {
+                    getEntryStats.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+                    throw e;
+                }
+                // The time of the read is shared by the entries it returned
+                long entryReadNanos = MathUtils.elapsedNanos(startTimeNanos) / Math.max(1, readEntries.size());
+
+                int entriesCountBefore = entries.size();
+                for (ByteBuf entry : readEntries) {
+                    if (entry.getLong(8) == entryId
+                            && (entries.isEmpty() || size + entry.readableBytes() <= maxBytes)) {
+                        getEntryStats.registerSuccessfulEvent(entryReadNanos, TimeUnit.NANOSECONDS);
+                        entries.add(entry);
+                        size += entry.readableBytes();
+                        entryId++;
+                    } else {
+                        entry.release();
+                    }
+                }
+
+                if (entries.size() == entriesCountBefore) {
+                    // Either the size limit was reached or the next entry is not stored
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            entries.forEach(ByteBuf::release);
+            throw e;
+        }
+
+        if (entries.isEmpty()) {
+            throw new Bookie.NoEntryException(ledgerId, firstEntryId);
+        }
+
+        return entries;
+    }
+
     private void flushOrCheckpoint(boolean isCheckpointFlush)
             throws IOException {
 
@@ -657,6 +739,12 @@ public class InterleavedLedgerStorage implements CompactableLedgerStorage, Entry
         return Collections.singletonList(gcThread.getGarbageCollectionStatus());
     }
 
+    @Override
+    public List<EntryLogTieringStatus> getEntryLogTieringStatus() {
+        return tieringThread != null
+                ? Collections.singletonList(tieringThread.getEntryLogTieringStatus()) : Collections.emptyList();
+    }
+
     @Override
     public OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException {
         return ledgerCache.getEntriesIterator(ledgerId);
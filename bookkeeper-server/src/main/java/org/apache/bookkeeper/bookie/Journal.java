@@ -62,6 +62,7 @@ import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.IOUtils;
 import org.apache.bookkeeper.util.MathUtils;
+import org.apache.bookkeeper.util.NativeIO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -96,6 +97,16 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
 
 
+    /**
+     * Check the name of a journal sync mode, as configured with {@code journalSyncModes}.
+     *
+     * @param name journal sync mode name
+     * @throws IllegalArgumentException if the name is not the one of a journal sync mode
+     */
+    public static void checkJournalSyncMode(String name) {
+        JournalChannel.SyncMode.fromName(name);
+    }
+
     /**
      * List all journal ids by a specified journal id filer.
      *
@@ -380,8 +391,11 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 if (shouldForceWrite) {
                     long startTime = MathUtils.nowInNano();
                     this.logFile.forceWrite(false);
-                    journalStats.getJournalSyncStats()
-                        .registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    long syncNanos = MathUtils.elapsedNanos(startTime);
+                    journalStats.getJournalSyncStats().registerSuccessfulEvent(syncNanos, TimeUnit.NANOSECONDS);
+                    if (null != groupCommitController) {
+                        groupCommitController.recordSync(syncNanos);
+                    }
                 }
                 lastLogMark.setCurLogMark(this.logId, this.lastFlushedPosition);
 
@@ -604,10 +618,15 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     private final long bufferedWritesThreshold;
     // should we flush if the queue is empty
     private final boolean flushWhenQueueEmpty;
+    // chooses the group wait and buffered writes threshold to meet the latency target, if one is configured
+    private final JournalGroupCommitController groupCommitController;
     // should we hint the filesystem to remove pages from cache after force write
     private final boolean removePagesFromCache;
     private final int journalFormatVersionToWrite;
     private final int journalAlignmentSize;
+    // write the entries to the journal files without copying them into the write buffer
+    private final boolean journalGatherWrites;
+    private final JournalChannel.SyncMode journalSyncMode;
     // control PageCache flush interval when syncData disabled to reduce disk io util
     private final long journalPageCacheFlushIntervalMSec;
 
@@ -636,6 +655,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
     // Expose Stats
     private final JournalStats journalStats;
+    // the old journal files kept to be reused, null if they're deleted
+    private final JournalFilePool journalFilePool;
 
     public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
             LedgerDirsManager ledgerDirsManager) {
@@ -674,6 +695,13 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         this.bufferedEntriesThreshold = conf.getJournalBufferedEntriesThreshold();
         this.journalFormatVersionToWrite = conf.getJournalFormatVersionToWrite();
         this.journalAlignmentSize = conf.getJournalAlignmentSize();
+        this.journalGatherWrites = conf.isJournalGatherWritesEnabled();
+        String[] journalSyncModes = conf.getJournalSyncModes();
+        this.journalSyncMode = JournalChannel.SyncMode.fromName(
+                journalSyncModes.length == 1 ? journalSyncModes[0] : journalSyncModes[journalIndex]);
+        if (journalSyncMode == JournalChannel.SyncMode.SYNC_FILE_RANGE && !NativeIO.isSyncFileRangeSupported()) {
+            LOG.warn("sync_file_range is not supported, journal {} only syncs the journal files", journalDirectory);
+        }
         this.journalPageCacheFlushIntervalMSec = conf.getJournalPageCacheFlushIntervalMSec();
         if (conf.getNumJournalCallbackThreads() > 0) {
             this.cbThreadPool = Executors.newFixedThreadPool(conf.getNumJournalCallbackThreads(),
@@ -700,6 +728,20 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
         // Expose Stats
         this.journalStats = new JournalStats(statsLogger);
+
+        if (conf.getJournalFilePoolSize() > 0) {
+            this.journalFilePool = new JournalFilePool(journalDirectory, conf.getJournalFilePoolSize(), journalStats);
+        } else {
+            this.journalFilePool = null;
+        }
+
+        if (conf.getJournalGroupCommitLatencyTargetMSec() > 0) {
+            this.groupCommitController = new JournalGroupCommitController(
+                    TimeUnit.MILLISECONDS.toNanos(conf.getJournalGroupCommitLatencyTargetMSec()),
+                    maxGroupWaitInNanos, bufferedWritesThreshold, journalWriteBufferSize, journalStats);
+        } else {
+            this.groupCommitController = null;
+        }
     }
 
     JournalStats getJournalStats() {
@@ -759,6 +801,10 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     // make sure the journal id is smaller than marked journal id
                     if (id < mark.getCurMark().getLogFileId()) {
                         File journalFile = new File(journalDirectory, Long.toHexString(id) + ".txn");
+                        if (journalFilePool != null && recycleJournalFile(journalFile)) {
+                            LOG.info("recycled journal " + journalFile.getName());
+                            continue;
+                        }
                         if (!journalFile.delete()) {
                             LOG.warn("Could not delete old journal file {}", journalFile);
                         }
@@ -769,6 +815,18 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         }
     }
 
+    /**
+     * @return true if the journal file was added to the journal file pool, false if it should be deleted
+     */
+    private boolean recycleJournalFile(File journalFile) {
+        try {
+            return journalFilePool.recycle(journalFile);
+        } catch (IOException e) {
+            LOG.warn("Could not recycle old journal file {}, deleting it", journalFile, e);
+            return false;
+        }
+    }
+
     /**
      * Scan the journal.
      *
@@ -820,11 +878,35 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             continue;
                         }
                         isPaddingRecord = true;
+                    } else if (journalVersion >= JournalChannel.V7) {
+                        // the old records of a recycled file
+                        recLog.fc.position(offset);
+                        break;
                     } else {
                         LOG.error("Invalid record found with negative length: {}", len);
                         throw new IOException("Invalid record found with negative length " + len);
                     }
                 }
+                if (journalVersion >= JournalChannel.V7) {
+                    // The length may come from the old records of a recycled file, so it's checked before reading
+                    // the record, and the records of other epochs end the journal
+                    if (len < 0 || len > recLog.fc.size() - recLog.fc.position()) {
+                        recLog.fc.position(offset);
+                        break;
+                    }
+                    if (isPaddingRecord) {
+                        recLog.fc.position(recLog.fc.position() + len);
+                        continue;
+                    }
+                    lenBuff.clear();
+                    fullRead(recLog, lenBuff);
+                    lenBuff.flip();
+                    if (lenBuff.remaining() != 4 || lenBuff.getInt() != recLog.getEpoch()
+                            || len > recLog.fc.size() - recLog.fc.position()) {
+                        recLog.fc.position(offset);
+                        break;
+                    }
+                }
                 recBuff.clear();
                 if (recBuff.remaining() < len) {
                     recBuff = ByteBuffer.allocate(len);
@@ -928,7 +1010,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
         RecyclableArrayList<QueueEntry> toFlush = entryListRecycler.newInstance();
         int numEntriesToFlush = 0;
-        ByteBuf lenBuff = Unpooled.buffer(4);
+        ByteBuf lenBuff = Unpooled.buffer(8);
         ByteBuf paddingBuff = Unpooled.buffer(2 * conf.getJournalAlignmentSize());
         paddingBuff.writeZero(paddingBuff.capacity());
 
@@ -958,9 +1040,11 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     logId = logId + 1;
 
                     journalCreationWatcher.reset().start();
+                    File recycledFile = journalFilePool == null ? null : journalFilePool.take();
                     logFile = new JournalChannel(journalDirectory, logId, journalPreAllocSize, journalWriteBufferSize,
                                         journalAlignmentSize, removePagesFromCache,
-                                        journalFormatVersionToWrite, getBufferedChannelBuilder());
+                                        journalFormatVersionToWrite, getBufferedChannelBuilder(), journalSyncMode,
+                                        recycledFile);
 
                     journalStats.getJournalCreationStats().registerSuccessfulEvent(
                             journalCreationWatcher.stop().elapsed(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
@@ -983,9 +1067,19 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                         journalStats.getJournalQueueStats()
                             .registerSuccessfulEvent(MathUtils.elapsedNanos(qe.enqueueTime), TimeUnit.NANOSECONDS);
                     } else {
-                        long pollWaitTimeNanos = maxGroupWaitInNanos
+                        long groupWaitNanos = maxGroupWaitInNanos;
+                        long writesThreshold = bufferedWritesThreshold;
+                        boolean flushIfQueueEmpty = flushWhenQueueEmpty;
+                        if (null != groupCommitController) {
+                            groupCommitController.updateIfNeeded(MathUtils.nowInNano());
+                            groupWaitNanos = groupCommitController.getGroupWaitNanos();
+                            writesThreshold = groupCommitController.getBatchBytes();
+                            flushIfQueueEmpty = flushWhenQueueEmpty || groupWaitNanos <= 0;
+                        }
+
+                        long pollWaitTimeNanos = groupWaitNanos
                                 - MathUtils.elapsedNanos(toFlush.get(0).enqueueTime);
-                        if (flushWhenQueueEmpty || pollWaitTimeNanos < 0) {
+                        if (flushIfQueueEmpty || pollWaitTimeNanos < 0) {
                             pollWaitTimeNanos = 0;
                         }
                         qe = queue.poll(pollWaitTimeNanos, TimeUnit.NANOSECONDS);
@@ -1000,12 +1094,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                         boolean shouldFlush = false;
                         // We should issue a forceWrite if any of the three conditions below holds good
                         // 1. If the oldest pending entry has been pending for longer than the max wait time
-                        if (maxGroupWaitInNanos > 0 && !groupWhenTimeout && (MathUtils
-                                .elapsedNanos(toFlush.get(0).enqueueTime) > maxGroupWaitInNanos)) {
+                        if (groupWaitNanos > 0 && !groupWhenTimeout && (MathUtils
+                                .elapsedNanos(toFlush.get(0).enqueueTime) > groupWaitNanos)) {
                             groupWhenTimeout = true;
-                        } else if (maxGroupWaitInNanos > 0 && groupWhenTimeout
+                        } else if (groupWaitNanos > 0 && groupWhenTimeout
                             && (qe == null // no entry to group
-                                || MathUtils.elapsedNanos(qe.enqueueTime) < maxGroupWaitInNanos)) {
+                                || MathUtils.elapsedNanos(qe.enqueueTime) < groupWaitNanos)) {
                             // when group timeout, it would be better to look forward, as there might be lots of
                             // entries already timeout
                             // due to a previous slow write (writing to filesystem which impacted by force write).
@@ -1017,12 +1111,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             journalStats.getFlushMaxWaitCounter().inc();
                         } else if (qe != null
                                 && ((bufferedEntriesThreshold > 0 && toFlush.size() > bufferedEntriesThreshold)
-                                || (bc.position() > lastFlushPosition + bufferedWritesThreshold))) {
+                                || (bc.position() > lastFlushPosition + writesThreshold))) {
                             // 2. If we have buffered more than the buffWriteThreshold or bufferedEntriesThreshold
                             groupWhenTimeout = false;
                             shouldFlush = true;
                             journalStats.getFlushMaxOutstandingBytesCounter().inc();
-                        } else if (qe == null && flushWhenQueueEmpty) {
+                        } else if (qe == null && flushIfQueueEmpty) {
                             // We should get here only if we flushWhenQueueEmpty is true else we would wait
                             // for timeout that would put is past the maxWait threshold
                             // 3. If the queue is empty i.e. no benefit of grouping. This happens when we have one
@@ -1039,6 +1133,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             }
                             journalFlushWatcher.reset().start();
                             bc.flush();
+                            logFile.startWriteback();
 
                             for (int i = 0; i < toFlush.size(); i++) {
                                 QueueEntry entry = toFlush.get(i);
@@ -1123,17 +1218,23 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 } else if (qe.entryId != Bookie.METAENTRY_ID_FORCE_LEDGER) {
                     int entrySize = qe.entry.readableBytes();
                     journalStats.getJournalWriteBytes().add(entrySize);
-
-                    batchSize += (4 + entrySize);
+                    if (null != groupCommitController) {
+                        groupCommitController.recordEntry(entrySize);
+                    }
 
                     lenBuff.clear();
                     lenBuff.writeInt(entrySize);
+                    if (journalFormatVersionToWrite >= JournalChannel.V7) {
+                        lenBuff.writeInt(logFile.getEpoch());
+                    }
+
+                    batchSize += (lenBuff.readableBytes() + entrySize);
 
                     // preAlloc based on size
-                    logFile.preAllocIfNeeded(4 + entrySize);
+                    logFile.preAllocIfNeeded(lenBuff.readableBytes() + entrySize);
 
                     bc.write(lenBuff);
-                    bc.write(qe.entry);
+                    bc.writeImmutable(qe.entry);
                     memoryLimitController.releaseMemory(qe.entry.readableBytes());
                     qe.entry.release();
                 }
@@ -1159,6 +1260,10 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     }
 
     public BufferedChannelBuilder getBufferedChannelBuilder() {
+        if (journalGatherWrites) {
+            return (FileChannel fc, int capacity) -> new GatheringBufferedChannel(allocator, fc, capacity,
+                    journalAlignmentSize, journalStats.getJournalWriteSyscallBytesStats());
+        }
         return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
     }
 
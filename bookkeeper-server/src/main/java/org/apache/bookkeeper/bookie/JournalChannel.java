@@ -32,6 +32,8 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.bookkeeper.util.NativeIO;
 import org.apache.bookkeeper.util.ZeroBuffer;
@@ -52,7 +54,9 @@ class JournalChannel implements Closeable {
     final int formatVersion;
     long nextPrealloc = 0;
 
-    final byte[] magicWord = "BKLG".getBytes(UTF_8);
+    final int epoch;
+
+    static final byte[] MAGIC_WORD = "BKLG".getBytes(UTF_8);
 
     static final int SECTOR_SIZE = 512;
     private static final int START_OF_FILE = -12345;
@@ -71,19 +75,44 @@ class JournalChannel implements Closeable {
     static final int V5 = 5;
     // Adding explicitlac entry
     public static final int V6 = 6;
+    // Adding the epoch of the file to the header and to each record, so that the file can be recycled
+    public static final int V7 = 7;
 
     static final int HEADER_SIZE = SECTOR_SIZE; // align header to sector size
     static final int VERSION_HEADER_SIZE = 8; // 4byte magic word, 4 byte version
     static final int MIN_COMPAT_JOURNAL_FORMAT_VERSION = V1;
-    static final int CURRENT_JOURNAL_FORMAT_VERSION = V6;
+    static final int CURRENT_JOURNAL_FORMAT_VERSION = V7;
+
+    /**
+     * How the data written to a journal file is made durable.
+     */
+    enum SyncMode {
+        // force writes sync the file, i.e. fdatasync
+        FORCE,
+        // the writeback of each flushed range is started as soon as it's flushed, and force writes sync the file
+        SYNC_FILE_RANGE,
+        // the file is opened with O_DSYNC, so the writes are durable when they return and force writes do nothing
+        DSYNC;
+
+        static SyncMode fromName(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown journal sync mode: " + name);
+            }
+        }
+    }
 
     private final long preAllocSize;
     private final int journalAlignSize;
     private final boolean fRemoveFromPageCache;
+    private final SyncMode syncMode;
     public final ByteBuffer zeros;
 
     // The position of the file channel's last drop position
     private long lastDropPosition = 0L;
+    // The position up to which the writeback of the file was started
+    private long writebackPosition = 0L;
 
     // Mostly used by tests
     JournalChannel(File journalDirectory, long logId) throws IOException {
@@ -99,7 +128,7 @@ class JournalChannel implements Closeable {
     JournalChannel(File journalDirectory, long logId,
                    long preAllocSize, int writeBufferSize, long position) throws IOException {
          this(journalDirectory, logId, preAllocSize, writeBufferSize, SECTOR_SIZE,
-                 position, false, V5, Journal.BufferedChannelBuilder.DEFAULT_BCBUILDER);
+                 position, false, V5, Journal.BufferedChannelBuilder.DEFAULT_BCBUILDER, SyncMode.FORCE, null);
     }
 
     // Open journal to write
@@ -115,7 +144,16 @@ class JournalChannel implements Closeable {
                    boolean fRemoveFromPageCache, int formatVersionToWrite,
                    Journal.BufferedChannelBuilder bcBuilder) throws IOException {
         this(journalDirectory, logId, preAllocSize, writeBufferSize, journalAlignSize,
-                START_OF_FILE, fRemoveFromPageCache, formatVersionToWrite, bcBuilder);
+                fRemoveFromPageCache, formatVersionToWrite, bcBuilder, SyncMode.FORCE, null);
+    }
+
+    JournalChannel(File journalDirectory, long logId,
+                   long preAllocSize, int writeBufferSize, int journalAlignSize,
+                   boolean fRemoveFromPageCache, int formatVersionToWrite,
+                   Journal.BufferedChannelBuilder bcBuilder, SyncMode syncMode, File recycledFile)
+            throws IOException {
+        this(journalDirectory, logId, preAllocSize, writeBufferSize, journalAlignSize,
+                START_OF_FILE, fRemoveFromPageCache, formatVersionToWrite, bcBuilder, syncMode, recycledFile);
     }
 
     /**
@@ -138,13 +176,19 @@ class JournalChannel implements Closeable {
      *          whether to remove cached pages from page cache.
      * @param formatVersionToWrite
      *          format version to write
+     * @param syncMode
+     *          how the data written to the journal file is made durable
+     * @param recycledFile
+     *          the file to reuse as the new journal file, or null to create it
      * @throws IOException
      */
     private JournalChannel(File journalDirectory, long logId,
                            long preAllocSize, int writeBufferSize, int journalAlignSize,
                            long position, boolean fRemoveFromPageCache,
-                           int formatVersionToWrite, Journal.BufferedChannelBuilder bcBuilder) throws IOException {
+                           int formatVersionToWrite, Journal.BufferedChannelBuilder bcBuilder,
+                           SyncMode syncMode, File recycledFile) throws IOException {
         this.journalAlignSize = journalAlignSize;
+        this.syncMode = syncMode;
         this.zeros = ByteBuffer.allocate(journalAlignSize);
         this.preAllocSize = preAllocSize - preAllocSize % journalAlignSize;
         this.fRemoveFromPageCache = fRemoveFromPageCache;
@@ -156,29 +200,41 @@ class JournalChannel implements Closeable {
 
         LOG.info("Opening journal {}", fn);
         if (!fn.exists()) { // new file, write version
-            if (!fn.createNewFile()) {
+            if (null != recycledFile) {
+                if (!recycledFile.renameTo(fn)) {
+                    throw new IOException("Failed to rename recycled journal file " + recycledFile + " to " + fn);
+                }
+            } else if (!fn.createNewFile()) {
                 LOG.error("Journal file {}, that shouldn't exist, already exists. "
                           + " is there another bookie process running?", fn);
                 throw new IOException("File " + fn
                         + " suddenly appeared, is another bookie process running?");
             }
-            randomAccessFile = new RandomAccessFile(fn, "rw");
+            randomAccessFile = new RandomAccessFile(fn, syncMode == SyncMode.DSYNC ? "rwd" : "rw");
             fc = openFileChannel(randomAccessFile);
             formatVersion = formatVersionToWrite;
+            epoch = formatVersion >= V7 ? ThreadLocalRandom.current().nextInt() : 0;
 
             int headerSize = (V4 == formatVersion) ? VERSION_HEADER_SIZE : HEADER_SIZE;
             ByteBuffer bb = ByteBuffer.allocate(headerSize);
             ZeroBuffer.put(bb);
             bb.clear();
-            bb.put(magicWord);
+            bb.put(MAGIC_WORD);
             bb.putInt(formatVersion);
+            if (formatVersion >= V7) {
+                bb.putInt(epoch);
+            }
             bb.clear();
             fc.write(bb);
 
             bc = bcBuilder.create(fc, writeBufferSize);
             forceWrite(true);
-            nextPrealloc = this.preAllocSize;
-            fc.write(zeros, nextPrealloc - journalAlignSize);
+            // a recycled file is already extended
+            long fileSize = fc.size();
+            nextPrealloc = Math.max(this.preAllocSize, fileSize - fileSize % journalAlignSize);
+            if (nextPrealloc > fileSize) {
+                fc.write(zeros, nextPrealloc - journalAlignSize);
+            }
         } else {  // open an existing file
             randomAccessFile = new RandomAccessFile(fn, "r");
             fc = openFileChannel(randomAccessFile);
@@ -192,7 +248,7 @@ class JournalChannel implements Closeable {
                 byte[] first4 = new byte[4];
                 bb.get(first4);
 
-                if (Arrays.equals(first4, magicWord)) {
+                if (Arrays.equals(first4, MAGIC_WORD)) {
                     formatVersion = bb.getInt();
                 } else {
                     // pre magic word journal, reset to 0;
@@ -213,6 +269,17 @@ class JournalChannel implements Closeable {
                 throw new IOException(err);
             }
 
+            if (formatVersion >= V7) {
+                ByteBuffer epochBuffer = ByteBuffer.allocate(4);
+                if (fc.read(epochBuffer, VERSION_HEADER_SIZE) != 4) {
+                    throw new IOException("Failed to read the epoch of journal file " + fn);
+                }
+                epochBuffer.flip();
+                epoch = epochBuffer.getInt();
+            } else {
+                epoch = 0;
+            }
+
             try {
                 if (position == START_OF_FILE) {
                     if (formatVersion >= V5) {
@@ -230,7 +297,7 @@ class JournalChannel implements Closeable {
                 throw e;
             }
         }
-        if (fRemoveFromPageCache) {
+        if (fRemoveFromPageCache || (bc != null && syncMode == SyncMode.SYNC_FILE_RANGE)) {
             this.fd = NativeIO.getSysFileDescriptor(randomAccessFile.getFD());
         } else {
             this.fd = -1;
@@ -241,6 +308,13 @@ class JournalChannel implements Closeable {
         return formatVersion;
     }
 
+    /**
+     * @return the epoch carried by the records of a {@link #V7} journal file, which changes each time it's recycled
+     */
+    int getEpoch() {
+        return epoch;
+    }
+
     BufferedChannel getBufferedChannel() throws IOException {
         if (bc == null) {
             throw new IOException("Read only journal channel");
@@ -256,6 +330,21 @@ class JournalChannel implements Closeable {
         }
     }
 
+    /**
+     * Start the writeback of the data flushed since the last call, in {@link SyncMode#SYNC_FILE_RANGE}, so that it
+     * overlaps with the next writes and the next force write mostly waits for writes already in flight.
+     */
+    void startWriteback() {
+        if (syncMode != SyncMode.SYNC_FILE_RANGE) {
+            return;
+        }
+        long flushedPosition = bc.getFileChannelPosition();
+        if (flushedPosition > writebackPosition) {
+            NativeIO.bestEffortStartWriteback(fd, writebackPosition, flushedPosition - writebackPosition);
+            writebackPosition = flushedPosition;
+        }
+    }
+
     int read(ByteBuffer dst)
             throws IOException {
         return fc.read(dst);
@@ -272,7 +361,10 @@ class JournalChannel implements Closeable {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Journal ForceWrite");
         }
-        long newForceWritePosition = bc.forceWrite(forceMetadata);
+        long newForceWritePosition = syncMode == SyncMode.DSYNC && !forceMetadata
+                // the data flushed to the file is already durable
+                ? bc.getFileChannelPosition()
+                : bc.forceWrite(forceMetadata);
         //
         // For POSIX_FADV_DONTNEED, we want to drop from the beginning
         // of the file to a position prior to the current position.
@@ -0,0 +1,129 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import org.apache.bookkeeper.bookie.stats.JournalStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of the journal files of a journal directory that are no longer needed, kept to be reused as new journal files.
+ *
+ * <p>Reusing a journal file saves creating and extending a new file at each journal rotation, and the writes to a
+ * reused file overwrite blocks that are already allocated. The pooled files keep their old records, which the replay
+ * tells apart from the new ones since the records of a {@link JournalChannel#V7} journal file carry the epoch written
+ * in its header. So only such files are pooled, and their header is cleared before they're pooled: a pooled file
+ * renamed to a journal file whose new header wasn't written has no records.
+ */
+class JournalFilePool {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalFilePool.class);
+
+    static final String POOL_FILE_SUFFIX = ".pool";
+
+    private final File journalDirectory;
+    private final int maxSize;
+    private final JournalStats journalStats;
+    private final Deque<File> files = new ArrayDeque<>();
+
+    JournalFilePool(File journalDirectory, int maxSize, JournalStats journalStats) {
+        this.journalDirectory = journalDirectory;
+        this.maxSize = maxSize;
+        this.journalStats = journalStats;
+
+        File[] pooledFiles = journalDirectory.listFiles((dir, name) -> name.endsWith(".txn" + POOL_FILE_SUFFIX));
+        if (pooledFiles != null) {
+            for (File pooledFile : pooledFiles) {
+                if (files.size() < maxSize) {
+                    files.add(pooledFile);
+                } else if (!pooledFile.delete()) {
+                    LOG.warn("Could not delete pooled journal file {}", pooledFile);
+                }
+            }
+        }
+        journalStats.getJournalFilePoolSize().add(files.size());
+    }
+
+    /**
+     * Take a pooled file, to be renamed to a new journal file.
+     *
+     * @return the pooled file, or null if the pool is empty
+     */
+    synchronized File take() {
+        File pooledFile = files.poll();
+        if (null == pooledFile) {
+            journalStats.getJournalFilePoolMisses().inc();
+        } else {
+            journalStats.getJournalFilePoolHits().inc();
+            journalStats.getJournalFilePoolSize().dec();
+        }
+        return pooledFile;
+    }
+
+    /**
+     * Add a journal file that is no longer needed to the pool.
+     *
+     * @param journalFile the journal file
+     * @return true if the file was pooled, false if it should be deleted: the pool is full, or it's not a
+     *         {@link JournalChannel#V7} journal file
+     */
+    synchronized boolean recycle(File journalFile) throws IOException {
+        if (files.size() >= maxSize) {
+            return false;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            ByteBuffer header = ByteBuffer.allocate(JournalChannel.VERSION_HEADER_SIZE);
+            raf.getChannel().read(header, 0);
+            header.flip();
+            if (header.remaining() < JournalChannel.VERSION_HEADER_SIZE) {
+                return false;
+            }
+            byte[] magicWord = new byte[JournalChannel.MAGIC_WORD.length];
+            header.get(magicWord);
+            if (!Arrays.equals(magicWord, JournalChannel.MAGIC_WORD) || header.getInt() < JournalChannel.V7) {
+                return false;
+            }
+
+            ByteBuffer zeros = ByteBuffer.allocate(JournalChannel.HEADER_SIZE);
+            while (zeros.hasRemaining()) {
+                raf.getChannel().write(zeros, zeros.position());
+            }
+            raf.getChannel().force(false);
+        }
+
+        File pooledFile = new File(journalDirectory, journalFile.getName() + POOL_FILE_SUFFIX);
+        if (!journalFile.renameTo(pooledFile)) {
+            throw new IOException("Failed to rename journal file " + journalFile + " to " + pooledFile);
+        }
+        files.add(pooledFile);
+        journalStats.getJournalFilePoolSize().inc();
+        return true;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.bookie.stats.JournalStats;
+
+/**
+ * Chooses when the journal flushes the entries it groups, to meet a target latency of the journal adds while
+ * syncing as many bytes as possible at once.
+ *
+ * <p>An entry flushed while the journal is synced waits for that sync, then for the sync of its own group, so
+ * the entries can be grouped for the target latency minus twice the 99th percentile of the recent sync times. They
+ * are only grouped if other entries are expected to arrive meanwhile, since grouping a lone entry only delays it.
+ * The bytes grouped are bounded by the bytes expected to arrive in that time, or during a sync, so that bursts
+ * are flushed as soon as they're buffered. The static group wait and buffered writes thresholds bound both
+ * decisions, which are used until the first syncs are measured.
+ *
+ * <p>The syncs are recorded by the force write thread; everything else is only called by the journal thread.
+ */
+class JournalGroupCommitController {
+
+    // Number of the most recent sync times the percentile is computed from
+    private static final int SYNC_SAMPLES = 256;
+    private static final long UPDATE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // Weight of the last update interval in the arrival rates
+    private static final double RATE_SMOOTHING = 0.2;
+
+    private final long targetLatencyNanos;
+    private final long maxGroupWaitNanos;
+    private final long maxBatchBytes;
+    private final long minBatchBytes;
+    private final JournalStats journalStats;
+
+    private final long[] syncSamples = new long[SYNC_SAMPLES];
+    private int numSyncSamples = 0;
+    private int nextSyncSample = 0;
+
+    private long lastUpdateNanos;
+    private long entriesSinceUpdate = 0;
+    private long bytesSinceUpdate = 0;
+    // entries and bytes per nanosecond
+    private double entryRate = 0;
+    private double byteRate = 0;
+
+    private long groupWaitNanos;
+    private long batchBytes;
+
+    JournalGroupCommitController(long targetLatencyNanos, long maxGroupWaitNanos, long maxBatchBytes,
+                                 long minBatchBytes, JournalStats journalStats) {
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.maxGroupWaitNanos = maxGroupWaitNanos;
+        this.maxBatchBytes = maxBatchBytes;
+        this.minBatchBytes = Math.min(minBatchBytes, maxBatchBytes);
+        this.journalStats = journalStats;
+        this.groupWaitNanos = maxGroupWaitNanos;
+        this.batchBytes = maxBatchBytes;
+        this.lastUpdateNanos = System.nanoTime();
+    }
+
+    synchronized void recordSync(long syncNanos) {
+        syncSamples[nextSyncSample] = syncNanos;
+        nextSyncSample = (nextSyncSample + 1) % SYNC_SAMPLES;
+        numSyncSamples = Math.min(numSyncSamples + 1, SYNC_SAMPLES);
+    }
+
+    void recordEntry(int entrySize) {
+        entriesSinceUpdate++;
+        bytesSinceUpdate += entrySize;
+    }
+
+    private synchronized long syncTimePercentile99() {
+        if (numSyncSamples == 0) {
+            return -1;
+        }
+        long[] samples = Arrays.copyOf(syncSamples, numSyncSamples);
+        Arrays.sort(samples);
+        return samples[(int) Math.ceil(numSyncSamples * 0.99) - 1];
+    }
+
+    /**
+     * Update the decisions if they're older than the update interval.
+     */
+    void updateIfNeeded(long nowNanos) {
+        long elapsedNanos = nowNanos - lastUpdateNanos;
+        if (elapsedNanos < UPDATE_INTERVAL_NANOS) {
+            return;
+        }
+        entryRate += RATE_SMOOTHING * ((double) entriesSinceUpdate / elapsedNanos - entryRate);
+        byteRate += RATE_SMOOTHING * ((double) bytesSinceUpdate / elapsedNanos - byteRate);
+        entriesSinceUpdate = 0;
+        bytesSinceUpdate = 0;
+        lastUpdateNanos = nowNanos;
+
+        long syncNanos = syncTimePercentile99();
+        if (syncNanos < 0) {
+            return;
+        }
+
+        long budgetNanos = Math.min(targetLatencyNanos - 2 * syncNanos, maxGroupWaitNanos);
+        if (budgetNanos > 0 && entryRate * budgetNanos >= 1) {
+            groupWaitNanos = budgetNanos;
+        } else {
+            groupWaitNanos = 0;
+        }
+        long expectedBytes = (long) (byteRate * Math.max(groupWaitNanos, syncNanos));
+        batchBytes = Math.max(minBatchBytes, Math.min(expectedBytes, maxBatchBytes));
+
+        journalStats.getGroupCommitWaitStats().registerSuccessfulEvent(groupWaitNanos, TimeUnit.NANOSECONDS);
+        journalStats.getGroupCommitBatchBytesStats().registerSuccessfulValue(batchBytes);
+    }
+
+    /**
+     * @return how long the oldest buffered entry may wait for more entries before the journal flushes
+     */
+    long getGroupWaitNanos() {
+        return groupWaitNanos;
+    }
+
+    /**
+     * @return the bytes buffered since the last flush beyond which the journal flushes
+     */
+    long getBatchBytes() {
+        return batchBytes;
+    }
+}
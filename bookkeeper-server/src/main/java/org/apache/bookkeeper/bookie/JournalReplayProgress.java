@@ -0,0 +1,103 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * Progress of the replay of the journals at bookie startup.
+ */
+public class JournalReplayProgress {
+
+    private final LongAdder replayedEntries = new LongAdder();
+    private final LongAdder replayedBytes = new LongAdder();
+    private volatile long startNanos = -1;
+    private volatile long endNanos = -1;
+
+    void start() {
+        startNanos = MathUtils.nowInNano();
+    }
+
+    void finish() {
+        endNanos = MathUtils.nowInNano();
+    }
+
+    void recordReplayed(int bytes) {
+        replayedEntries.increment();
+        replayedBytes.add(bytes);
+    }
+
+    /**
+     * @return true if the journals are being replayed
+     */
+    public boolean isReplaying() {
+        return startNanos >= 0 && endNanos < 0;
+    }
+
+    /**
+     * @return the number of journal records replayed
+     */
+    public long getReplayedEntries() {
+        return replayedEntries.sum();
+    }
+
+    /**
+     * @return the number of bytes of journal records replayed
+     */
+    public long getReplayedBytes() {
+        return replayedBytes.sum();
+    }
+
+    /**
+     * @return the time spent replaying the journals so far, or replaying them if the replay is over
+     */
+    public long getElapsedMillis() {
+        long start = startNanos;
+        if (start < 0) {
+            return 0;
+        }
+        long end = endNanos;
+        return TimeUnit.NANOSECONDS.toMillis((end < 0 ? MathUtils.nowInNano() : end) - start);
+    }
+
+    public long getEntriesPerSecond() {
+        return perSecond(getReplayedEntries());
+    }
+
+    public long getBytesPerSecond() {
+        return perSecond(getReplayedBytes());
+    }
+
+    private long perSecond(long count) {
+        long elapsedMillis = getElapsedMillis();
+        return elapsedMillis == 0 ? 0 : count * 1000 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return getReplayedEntries() + " entries, " + getReplayedBytes() + " bytes in " + getElapsedMillis()
+                + " ms (" + getEntriesPerSecond() + " entries/s, " + getBytesPerSecond() + " bytes/s)";
+    }
+}
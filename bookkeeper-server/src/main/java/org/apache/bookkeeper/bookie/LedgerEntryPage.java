@@ -40,6 +40,8 @@ public class LedgerEntryPage implements AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(LedgerEntryPage.class);
 
     private static final int indexEntrySize = 8;
+    // Use count of a page locked to be reused for another ledger or entry
+    private static final int LOCKED_FOR_REUSE = Integer.MIN_VALUE;
     private final int pageSize;
     private final int entriesPerPage;
     private volatile EntryKey entryKey = new EntryKey(-1, BookieProtocol.INVALID_ENTRY_ID);
@@ -49,7 +51,9 @@ public class LedgerEntryPage implements AutoCloseable {
     private final AtomicInteger version = new AtomicInteger(0);
     private volatile int last = -1; // Last update position
     private final LEPStateChangeCallback callback;
-    private boolean deleted;
+    private volatile boolean deleted;
+    // Whether the page was used since the last time it was considered for reuse
+    private volatile boolean referenced;
 
     public static int getIndexEntrySize() {
         return indexEntrySize;
@@ -60,9 +64,16 @@ public class LedgerEntryPage implements AutoCloseable {
     }
 
     public LedgerEntryPage(int pageSize, int entriesPerPage, LEPStateChangeCallback callback) {
-        this.pageSize = pageSize;
+        this(ByteBuffer.allocateDirect(pageSize), entriesPerPage, callback);
+    }
+
+    /**
+     * Create a page backed by the given zeroed buffer, usually a slice of a larger slab of direct memory.
+     */
+    LedgerEntryPage(ByteBuffer page, int entriesPerPage, LEPStateChangeCallback callback) {
+        this.pageSize = page.capacity();
         this.entriesPerPage = entriesPerPage;
-        page = ByteBuffer.allocateDirect(pageSize);
+        this.page = page;
         this.callback = callback;
         if (null != this.callback) {
             callback.onResetInUse(this);
@@ -111,6 +122,80 @@ public class LedgerEntryPage implements AutoCloseable {
         }
     }
 
+    /**
+     * Mark the page in use, unless it is locked to be reused.
+     *
+     * @return true if the page is now in use
+     */
+    boolean tryUsePage() {
+        while (true) {
+            int oldVal = useCount.get();
+            if (oldVal < 0) {
+                return false;
+            }
+            if (useCount.compareAndSet(oldVal, oldVal + 1)) {
+                if ((0 == oldVal) && (null != callback)) {
+                    callback.onSetInUse(this);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Lock the page to reuse it, if it is not in use. The page can't be used until it is reset by
+     * {@link #reuse(long, long)}.
+     *
+     * @return true if the page is locked
+     */
+    boolean tryLockForReuse() {
+        return useCount.compareAndSet(0, LOCKED_FOR_REUSE);
+    }
+
+    /**
+     * Unlock a page locked by {@link #tryLockForReuse()}, without reusing it.
+     */
+    void unlockForReuse() {
+        if (!useCount.compareAndSet(LOCKED_FOR_REUSE, 0)) {
+            throw new IllegalStateException("Page not locked for reuse");
+        }
+    }
+
+    /**
+     * Reset a page locked by {@link #tryLockForReuse()} for the given ledger and first entry. The page is returned
+     * in use.
+     */
+    void reuse(long ledgerId, long firstEntry) {
+        if (useCount.get() != LOCKED_FOR_REUSE) {
+            throw new IllegalStateException("Page not locked for reuse");
+        }
+        page.clear();
+        ZeroBuffer.put(page);
+        last = -1;
+        clean = true;
+        deleted = false;
+        referenced = false;
+        setLedgerAndFirstEntry(ledgerId, firstEntry);
+        useCount.set(1);
+    }
+
+    void markReferenced() {
+        if (!referenced) {
+            referenced = true;
+        }
+    }
+
+    /**
+     * @return whether the page was referenced since the last call
+     */
+    boolean resetReferenced() {
+        if (referenced) {
+            referenced = false;
+            return true;
+        }
+        return false;
+    }
+
     public void releasePageNoCallback() {
         releasePageInternal(false);
     }
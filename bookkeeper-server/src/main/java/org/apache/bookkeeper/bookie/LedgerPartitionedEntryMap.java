@@ -0,0 +1,224 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.TreeMap;
+
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * An {@link EntryMemTable.EntryMap} partitioned by ledger.
+ *
+ * <p>The entries of a ledger are appended to arrays, which stay sorted as long as the entries of the ledger are
+ * added in order, as they mostly are. Only the entries added out of order go to a small sorted map. So adding an
+ * entry costs no allocation but the growth of the arrays, and the entries are flushed without sorting them.
+ */
+class LedgerPartitionedEntryMap implements EntryMemTable.EntryMap {
+
+    private static final int INITIAL_LEDGER_CAPACITY = 16;
+
+    private final Checkpoint cp;
+    private final ConcurrentLongHashMap<LedgerEntries> ledgers = new ConcurrentLongHashMap<>(256, 16);
+
+    LedgerPartitionedEntryMap(Checkpoint cp) {
+        this.cp = cp;
+    }
+
+    @Override
+    public Checkpoint getCheckpoint() {
+        return cp;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return ledgers.isEmpty();
+    }
+
+    @Override
+    public boolean put(long ledgerId, long entryId, byte[] data, int offset, int length) {
+        return ledgers.computeIfAbsent(ledgerId, LedgerEntries::new).put(entryId, data, offset, length);
+    }
+
+    @Override
+    public EntryKeyValue get(long ledgerId, long entryId) {
+        LedgerEntries entries = ledgers.get(ledgerId);
+        return null == entries ? null : entries.get(entryId);
+    }
+
+    @Override
+    public EntryKeyValue getLast(long ledgerId) {
+        LedgerEntries entries = ledgers.get(ledgerId);
+        return null == entries ? null : entries.getLast();
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong ledgers() {
+        List<Long> ledgerIds = ledgers.keys();
+        Collections.sort(ledgerIds);
+        return ledgerIds.stream().mapToLong(Long::longValue).iterator();
+    }
+
+    @Override
+    public Iterator<EntryKeyValue> entriesOfLedger(long ledgerId) {
+        LedgerEntries entries = ledgers.get(ledgerId);
+        return null == entries ? Collections.emptyIterator() : entries.iterator();
+    }
+
+    /**
+     * The entries of a ledger.
+     *
+     * <p>The arrays are only appended to, so the first <i>size</i> slots of the arrays seen under the lock never
+     * change, which lets the iterators go through them without holding the lock.
+     */
+    private static class LedgerEntries {
+        private final long ledgerId;
+
+        private long[] entryIds = new long[INITIAL_LEDGER_CAPACITY];
+        private byte[][] buffers = new byte[INITIAL_LEDGER_CAPACITY][];
+        private int[] offsets = new int[INITIAL_LEDGER_CAPACITY];
+        private int[] lengths = new int[INITIAL_LEDGER_CAPACITY];
+        private int size = 0;
+
+        // Entries lower than the last appended entry when added
+        private TreeMap<Long, EntryKeyValue> outOfOrderEntries = null;
+
+        LedgerEntries(long ledgerId) {
+            this.ledgerId = ledgerId;
+        }
+
+        synchronized boolean put(long entryId, byte[] data, int offset, int length) {
+            if (size > 0 && entryId <= entryIds[size - 1]) {
+                if (indexOf(entryId) >= 0) {
+                    return false;
+                }
+                if (null == outOfOrderEntries) {
+                    outOfOrderEntries = new TreeMap<>();
+                }
+                return null == outOfOrderEntries.putIfAbsent(entryId,
+                        new EntryKeyValue(ledgerId, entryId, data, offset, length));
+            }
+
+            if (size == entryIds.length) {
+                int capacity = size * 2;
+                entryIds = Arrays.copyOf(entryIds, capacity);
+                buffers = Arrays.copyOf(buffers, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            entryIds[size] = entryId;
+            buffers[size] = data;
+            offsets[size] = offset;
+            lengths[size] = length;
+            size++;
+            return true;
+        }
+
+        synchronized EntryKeyValue get(long entryId) {
+            int idx = indexOf(entryId);
+            if (idx >= 0) {
+                return entryAt(idx);
+            }
+            return null == outOfOrderEntries ? null : outOfOrderEntries.get(entryId);
+        }
+
+        synchronized EntryKeyValue getLast() {
+            // out of order entries are all lower than the last appended entry
+            return size == 0 ? null : entryAt(size - 1);
+        }
+
+        private int indexOf(long entryId) {
+            // the entries of a ledger are usually contiguous
+            if (size > 0) {
+                long idx = entryId - entryIds[0];
+                if (idx >= 0 && idx < size && entryIds[(int) idx] == entryId) {
+                    return (int) idx;
+                }
+            }
+            return Arrays.binarySearch(entryIds, 0, size, entryId);
+        }
+
+        private EntryKeyValue entryAt(int idx) {
+            return new EntryKeyValue(ledgerId, entryIds[idx], buffers[idx], offsets[idx], lengths[idx]);
+        }
+
+        synchronized Iterator<EntryKeyValue> iterator() {
+            List<EntryKeyValue> outOfOrder = null == outOfOrderEntries
+                    ? Collections.emptyList() : new ArrayList<>(outOfOrderEntries.values());
+            return new LedgerEntriesIterator(ledgerId, entryIds, buffers, offsets, lengths, size,
+                    outOfOrder.iterator());
+        }
+    }
+
+    /**
+     * Merge the appended entries and the out of order entries of a ledger, in entry order.
+     */
+    private static class LedgerEntriesIterator implements Iterator<EntryKeyValue> {
+        private final long ledgerId;
+        private final long[] entryIds;
+        private final byte[][] buffers;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final int size;
+        private final Iterator<EntryKeyValue> outOfOrderEntries;
+
+        private int idx = 0;
+        private EntryKeyValue nextOutOfOrder;
+
+        LedgerEntriesIterator(long ledgerId, long[] entryIds, byte[][] buffers, int[] offsets, int[] lengths,
+                              int size, Iterator<EntryKeyValue> outOfOrderEntries) {
+            this.ledgerId = ledgerId;
+            this.entryIds = entryIds;
+            this.buffers = buffers;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.size = size;
+            this.outOfOrderEntries = outOfOrderEntries;
+            this.nextOutOfOrder = outOfOrderEntries.hasNext() ? outOfOrderEntries.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return idx < size || null != nextOutOfOrder;
+        }
+
+        @Override
+        public EntryKeyValue next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (null != nextOutOfOrder && (idx == size || nextOutOfOrder.getEntryId() < entryIds[idx])) {
+                EntryKeyValue kv = nextOutOfOrder;
+                nextOutOfOrder = outOfOrderEntries.hasNext() ? outOfOrderEntries.next() : null;
+                return kv;
+            }
+            EntryKeyValue kv = new EntryKeyValue(ledgerId, entryIds[idx], buffers[idx], offsets[idx], lengths[idx]);
+            idx++;
+            return kv;
+        }
+    }
+}
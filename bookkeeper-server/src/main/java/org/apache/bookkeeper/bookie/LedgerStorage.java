@@ -36,6 +36,7 @@ import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.stats.StatsLogger;
 
 /**
@@ -117,6 +118,53 @@ public interface LedgerStorage {
      */
     ByteBuf getEntry(long ledgerId, long entryId) throws IOException;
 
+    /**
+     * Read a range of consecutive entries from storage.
+     *
+     * <p>The entries are returned in order, starting from firstEntryId. The read stops at the first entry that is not
+     * stored or once the next entry would make the total size exceed maxBytes. The first entry is always returned,
+     * whatever its size. Each of the returned buffers must be released by the caller.
+     *
+     * <p>If firstEntryId is {@link BookieProtocol#LAST_ADD_CONFIRMED}, only the last written entry is returned, like
+     * {@link #getEntry(long, long)} does.
+     *
+     * @throws Bookie.NoEntryException if the first entry is not stored
+     */
+    default List<ByteBuf> getEntries(long ledgerId, long firstEntryId, long lastEntryId, long maxBytes)
+            throws IOException {
+        List<ByteBuf> entries = new ArrayList<>();
+        entries.add(getEntry(ledgerId, firstEntryId));
+        if (firstEntryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+            // Only the last written entry
+            return entries;
+        }
+        long size = entries.get(0).readableBytes();
+
+        try {
+            for (long entryId = firstEntryId + 1; entryId <= lastEntryId; entryId++) {
+                ByteBuf entry;
+                try {
+                    entry = getEntry(ledgerId, entryId);
+                } catch (Bookie.NoEntryException e) {
+                    break;
+                }
+
+                if (size + entry.readableBytes() > maxBytes) {
+                    entry.release();
+                    break;
+                }
+
+                entries.add(entry);
+                size += entry.readableBytes();
+            }
+        } catch (IOException e) {
+            entries.forEach(ByteBuf::release);
+            throw e;
+        }
+
+        return entries;
+    }
+
     /**
      * Get last add confirmed.
      *
@@ -261,6 +309,14 @@ public interface LedgerStorage {
         return Collections.emptyList();
     }
 
+    /**
+     * Get the entry log tiering status, empty if the tiering is disabled.
+     * Since DbLedgerStorage is a list of storage instances, we should return a list.
+     */
+    default List<EntryLogTieringStatus> getEntryLogTieringStatus() {
+        return Collections.emptyList();
+    }
+
     /**
      * Returns the primitive long iterator for entries of the ledger, stored in
      * this LedgerStorage. The returned iterator provide weakly consistent state
@@ -0,0 +1,223 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded cache of memory mapped regions of entry logs.
+ *
+ * <p>Only entry logs that were rotated and flushed can be mapped, since their content will never change. Each entry
+ * log is split in fixed size regions, mapped on first access. Reads are served as slices of the mapped regions,
+ * without any copy or syscall, and the slices retain the region they belong to: a region that is evicted from the
+ * cache, or whose entry log is deleted, is only unmapped once all the slices are released.
+ *
+ * <p>The entry logs are opened and mapped read only, and so are the slices: a write to a slice fails instead of
+ * reaching the entry log file.
+ */
+class MappedEntryLogRegions {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedEntryLogRegions.class);
+
+    /**
+     * Find the file of an entry log.
+     */
+    interface EntryLogFileResolver {
+        File find(long entryLogId) throws IOException;
+    }
+
+    private final int regionSize;
+    private final int maxRegions;
+    private final EntryLogFileResolver fileResolver;
+
+    // Regions keyed by (entryLogId, region index), encoded the same way as the entry locations
+    private final ConcurrentMap<Long, MappedRegion> regions = new ConcurrentHashMap<>();
+    private final AtomicLong accessClock = new AtomicLong();
+
+    // Entry logs whose regions were dropped, so that a region mapped concurrently is not cached again. Guarded by
+    // this object, together with the insertion of the mapped regions. Entry log ids are never reused
+    private final ConcurrentLongHashSet removedEntryLogs = new ConcurrentLongHashSet();
+
+    MappedEntryLogRegions(int regionSize, int maxRegions, EntryLogFileResolver fileResolver) {
+        this.regionSize = regionSize;
+        this.maxRegions = maxRegions;
+        this.fileResolver = fileResolver;
+    }
+
+    /**
+     * Get a slice of a rotated entry log. The slice is truncated at the end of the region holding the position, or
+     * at the end of the entry log.
+     *
+     * @return a slice with at most maxLength bytes, which must be released, or null if the region could not be mapped
+     */
+    ByteBuf slice(long entryLogId, long pos, int maxLength) {
+        long regionIdx = pos / regionSize;
+        long key = (entryLogId << 32) | regionIdx;
+
+        MappedRegion region = regions.get(key);
+        if (region == null) {
+            region = mapRegion(entryLogId, regionIdx, key);
+            if (region == null) {
+                return null;
+            }
+        }
+
+        region.lastAccess = accessClock.incrementAndGet();
+        int offset = (int) (pos - regionIdx * regionSize);
+        int length = Math.min(maxLength, region.capacity() - offset);
+        if (length <= 0) {
+            return null;
+        }
+
+        try {
+            return region.retainedSlice(offset, length);
+        } catch (IllegalReferenceCountException e) {
+            // The region was concurrently evicted and unmapped
+            return null;
+        }
+    }
+
+    /**
+     * Drop all the regions of an entry log, typically before it gets deleted.
+     */
+    synchronized void removeEntryLog(long entryLogId) {
+        removedEntryLogs.add(entryLogId);
+        regions.entrySet().removeIf(e -> {
+            if ((e.getKey() >>> 32) == entryLogId) {
+                e.getValue().release();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    synchronized void close() {
+        regions.values().forEach(MappedRegion::release);
+        regions.clear();
+    }
+
+    private MappedRegion mapRegion(long entryLogId, long regionIdx, long key) {
+        MappedByteBuffer mapped;
+        try {
+            File file = fileResolver.find(entryLogId);
+            try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long regionStart = regionIdx * regionSize;
+                long length = Math.min(regionSize, fc.size() - regionStart);
+                if (length <= 0) {
+                    return null;
+                }
+
+                // The mapping stays valid after the channel is closed
+                mapped = fc.map(FileChannel.MapMode.READ_ONLY, regionStart, length);
+            }
+        } catch (IOException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to map region {} of entry log {}", regionIdx, entryLogId, e);
+            }
+            return null;
+        }
+
+        MappedRegion region = new MappedRegion(mapped);
+        synchronized (this) {
+            if (removedEntryLogs.contains(entryLogId)) {
+                // The entry log was removed while it was being mapped
+                region.release();
+                return null;
+            }
+
+            MappedRegion existing = regions.putIfAbsent(key, region);
+            if (existing != null) {
+                // Mapped concurrently by another thread
+                region.release();
+                return existing;
+            }
+        }
+
+        if (regions.size() > maxRegions) {
+            evictLeastRecentlyUsed(key);
+        }
+        return region;
+    }
+
+    private void evictLeastRecentlyUsed(long keyToKeep) {
+        while (regions.size() > maxRegions) {
+            Long victimKey = null;
+            long victimAccess = Long.MAX_VALUE;
+            for (Map.Entry<Long, MappedRegion> e : regions.entrySet()) {
+                if (e.getKey() != keyToKeep && e.getValue().lastAccess < victimAccess) {
+                    victimKey = e.getKey();
+                    victimAccess = e.getValue().lastAccess;
+                }
+            }
+
+            if (victimKey == null) {
+                return;
+            }
+
+            MappedRegion victim = regions.remove(victimKey);
+            if (victim != null) {
+                victim.release();
+            }
+        }
+    }
+
+    /**
+     * A mapped region of an entry log, which is unmapped when its reference count drops to 0.
+     *
+     * <p>The read only mapping is wrapped as the single component of a composite buffer, which is the reference
+     * counted buffer that can be extended to hook the deallocation.
+     */
+    private static final class MappedRegion extends CompositeByteBuf {
+        private final MappedByteBuffer mapped;
+        private volatile long lastAccess;
+
+        MappedRegion(MappedByteBuffer mapped) {
+            super(UnpooledByteBufAllocator.DEFAULT, true, 1, Unpooled.wrappedBuffer(mapped));
+            this.mapped = mapped;
+        }
+
+        @Override
+        protected void deallocate() {
+            super.deallocate();
+            PlatformDependent.freeDirectBuffer(mapped);
+        }
+    }
+}
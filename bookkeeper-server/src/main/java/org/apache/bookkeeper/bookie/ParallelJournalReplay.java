@@ -0,0 +1,159 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.util.SafeRunnable;
+
+/**
+ * Replays the journals of a bookie in parallel.
+ *
+ * <p>Each journal is read by a thread of its own, which reads ahead of the records being applied. The records are
+ * applied by the scanner on the threads of an {@link OrderedExecutor}, with the ledger id as the ordering key, so
+ * the records of a ledger are applied in the order they were journaled. A journal is read at most
+ * {@link #MAX_BYTES_IN_FLIGHT} ahead of the records applied, and its last log mark is only moved past a journal
+ * file once all the records of the file are applied.
+ */
+@Slf4j
+class ParallelJournalReplay {
+
+    static final int MAX_BYTES_IN_FLIGHT = 32 * 1024 * 1024;
+
+    private final JournalScanner scanner;
+    private final JournalReplayProgress progress;
+    private final OrderedExecutor applyExecutor;
+    private final AtomicReference<Exception> exceptionWhileApplying = new AtomicReference<>();
+
+    ParallelJournalReplay(JournalScanner scanner, int numApplyThreads, JournalReplayProgress progress) {
+        this.scanner = scanner;
+        this.progress = progress;
+        this.applyExecutor = OrderedExecutor.newBuilder().numThreads(numApplyThreads)
+                .name("JournalReplayThreads").build();
+    }
+
+    void replay(List<Journal> journals) throws IOException {
+        ExecutorService readers = Executors.newFixedThreadPool(journals.size(),
+                new DefaultThreadFactory("JournalReplayReader"));
+        try {
+            List<Future<?>> replays = new ArrayList<>(journals.size());
+            for (Journal journal : journals) {
+                replays.add(readers.submit(() -> {
+                    replay(journal);
+                    return null;
+                }));
+            }
+            for (Future<?> replay : replays) {
+                replay.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to replay journals", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying journals", e);
+        } finally {
+            readers.shutdownNow();
+            applyExecutor.shutdownNow();
+        }
+    }
+
+    private void replay(Journal journal) throws IOException {
+        Semaphore bytesInFlight = new Semaphore(MAX_BYTES_IN_FLIGHT);
+        JournalScanner reader = (journalVersion, offset, recBuff) -> {
+            checkApplied();
+            // the journal scan reuses its buffer for the next record
+            int len = recBuff.remaining();
+            ByteBuffer record = ByteBuffer.allocate(len);
+            record.put(recBuff).flip();
+            long ledgerId = record.getLong(0);
+
+            int permits = Math.max(1, Math.min(len, MAX_BYTES_IN_FLIGHT));
+            acquire(bytesInFlight, permits);
+            applyExecutor.executeOrdered(ledgerId, new SafeRunnable() {
+                @Override
+                public void safeRun() {
+                    try {
+                        if (null == exceptionWhileApplying.get()) {
+                            scanner.process(journalVersion, offset, record);
+                            progress.recordReplayed(len);
+                        }
+                    } catch (Exception e) {
+                        log.error("Got exception while replaying an entry of ledger {}: ", ledgerId, e);
+                        exceptionWhileApplying.compareAndSet(null, e);
+                    } finally {
+                        bytesInFlight.release(permits);
+                    }
+                }
+            });
+        };
+
+        LogMark markedLog = journal.getLastLogMark().getCurMark();
+        for (Long id : Bookie.listJournalsToReplay(journal, markedLog)) {
+            long logPosition = 0L;
+            if (id == markedLog.getLogFileId()) {
+                logPosition = markedLog.getLogFileOffset();
+            }
+            log.info("Replaying journal {} from position {}, replayed {}", id, logPosition, progress);
+            long scanOffset = journal.scanJournal(id, logPosition, reader);
+
+            // wait for all the records of the journal file to be applied
+            acquire(bytesInFlight, MAX_BYTES_IN_FLIGHT);
+            bytesInFlight.release(MAX_BYTES_IN_FLIGHT);
+            checkApplied();
+            journal.setLastLogMark(id, scanOffset);
+        }
+    }
+
+    private void checkApplied() throws IOException {
+        Exception e = exceptionWhileApplying.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (null != e) {
+            throw new IOException("Failed to replay journal entry", e);
+        }
+    }
+
+    private static void acquire(Semaphore semaphore, int permits) throws IOException {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying journals", e);
+        }
+    }
+}
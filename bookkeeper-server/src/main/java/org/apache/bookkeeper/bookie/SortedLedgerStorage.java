@@ -28,6 +28,8 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.PrimitiveIterator;
@@ -218,6 +220,70 @@ public class SortedLedgerStorage
         return buffToRet;
     }
 
+    /**
+     * Read a range of entries. The entries that were flushed are read in bulk from the interleaved ledger storage, the
+     * ones that are still in the memtable are read from it.
+     */
+    @Override
+    public List<ByteBuf> getEntries(long ledgerId, long firstEntryId, long lastEntryId, long maxBytes)
+            throws IOException {
+        List<ByteBuf> entries = new ArrayList<>();
+        if (firstEntryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+            // Only the last written entry
+            entries.add(getLastEntryId(ledgerId));
+            return entries;
+        }
+
+        long size = 0;
+        long entryId = firstEntryId;
+        try {
+            while (entryId <= lastEntryId && (entries.isEmpty() || size < maxBytes)) {
+                List<ByteBuf> readEntries;
+                try {
+                    readEntries = interleavedLedgerStorage.getEntries(ledgerId, entryId, lastEntryId,
+                            entries.isEmpty() ? maxBytes : maxBytes - size);
+                } catch (Bookie.NoEntryException nee) {
+                    EntryKeyValue kv = memTable.getEntry(ledgerId, entryId);
+                    ByteBuf entry;
+                    if (null != kv) {
+                        entry = kv.getValueAsByteBuffer();
+                    } else {
+                        // The entry might have been flushed since we last checked
+                        try {
+                            entry = interleavedLedgerStorage.getEntry(ledgerId, entryId);
+                        } catch (Bookie.NoEntryException e) {
+                            break;
+                        }
+                    }
+                    readEntries = Collections.singletonList(entry);
+                }
+
+                boolean sizeLimitReached = false;
+                for (ByteBuf entry : readEntries) {
+                    if (!sizeLimitReached && (entries.isEmpty() || size + entry.readableBytes() <= maxBytes)) {
+                        entries.add(entry);
+                        size += entry.readableBytes();
+                        entryId++;
+                    } else {
+                        sizeLimitReached = true;
+                        entry.release();
+                    }
+                }
+                if (sizeLimitReached) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            entries.forEach(ByteBuf::release);
+            throw e;
+        }
+
+        if (entries.isEmpty()) {
+            throw new Bookie.NoEntryException(ledgerId, firstEntryId);
+        }
+        return entries;
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException {
         return interleavedLedgerStorage.getLastAddConfirmed(ledgerId);
@@ -366,6 +432,11 @@ public class SortedLedgerStorage
         return interleavedLedgerStorage.getGarbageCollectionStatus();
     }
 
+    @Override
+    public List<EntryLogTieringStatus> getEntryLogTieringStatus() {
+        return interleavedLedgerStorage.getEntryLogTieringStatus();
+    }
+
     @Override
     public PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException {
         PrimitiveIterator.OfLong entriesInMemtableItr = memTable.getListOfEntriesOfLedger(ledgerId);
@@ -28,7 +28,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.bookkeeper.bookie.EntryLogger.EntryLogScanner;
+import org.apache.bookkeeper.bookie.EntryLogger.StoredEntryScanner;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.util.HardLink;
 import org.slf4j.Logger;
@@ -59,7 +59,16 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
             EntryLogger entryLogger,
             CompactableLedgerStorage ledgerStorage,
             LogRemovalListener logRemover) {
-        super(conf, logRemover);
+        this(conf, entryLogger, ledgerStorage, logRemover, null);
+    }
+
+    public TransactionalEntryLogCompactor(
+            ServerConfiguration conf,
+            EntryLogger entryLogger,
+            CompactableLedgerStorage ledgerStorage,
+            LogRemovalListener logRemover,
+            CompactionRateLimiter sharedRateLimiter) {
+        super(conf, logRemover, sharedRateLimiter);
         this.entryLogger = entryLogger;
         this.ledgerStorage = ledgerStorage;
     }
@@ -171,14 +180,15 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
         void start() throws IOException {
             // scan entry log into compaction log and offset list
             entryLogger.createNewCompactionLog();
-            entryLogger.scanEntryLog(metadata.getEntryLogId(), new EntryLogScanner() {
+            scanEntryLog(entryLogger, metadata.getEntryLogId(), new StoredEntryScanner() {
                 @Override
                 public boolean accept(long ledgerId) {
                     return metadata.containsLedger(ledgerId);
                 }
 
                 @Override
-                public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                public void process(long ledgerId, long offset, ByteBuf entry, boolean compressed)
+                        throws IOException {
                     throttler.acquire(entry.readableBytes());
                     synchronized (TransactionalEntryLogCompactor.this) {
                         long lid = entry.getLong(entry.readerIndex());
@@ -189,7 +199,7 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
                                     ledgerId, lid, entryId, offset);
                             throw new IOException("Invalid entry found @ offset " + offset);
                         }
-                        long newOffset = entryLogger.addEntryForCompaction(ledgerId, entry);
+                        long newOffset = entryLogger.addEntryForCompaction(ledgerId, entry, compressed);
                         offsets.add(new EntryLocation(ledgerId, entryId, newOffset));
 
                         if (LOG.isDebugEnabled()) {
@@ -354,14 +364,15 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
          * Scan entry log to recover entry locations.
          */
         private void recoverEntryLocations(long compactedLogId) throws IOException {
-            entryLogger.scanEntryLog(compactedLogId, new EntryLogScanner() {
+            entryLogger.scanStoredEntries(compactedLogId, new StoredEntryScanner() {
                 @Override
                 public boolean accept(long ledgerId) {
                     return true;
                 }
 
                 @Override
-                public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                public void process(long ledgerId, long offset, ByteBuf entry, boolean compressed)
+                        throws IOException {
                     long lid = entry.getLong(entry.readerIndex());
                     long entryId = entry.getLong(entry.readerIndex() + 8);
                     if (lid != ledgerId || entryId < -1) {
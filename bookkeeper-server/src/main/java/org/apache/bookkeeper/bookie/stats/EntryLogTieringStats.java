@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.bookie.stats;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CAPACITY_TIER_ENTRY_LOG_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CAPACITY_TIER_ENTRY_LOG_COUNT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.DEMOTED_ENTRY_LOG_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.DEMOTED_ENTRY_LOG_COUNT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.PROMOTED_ENTRY_LOG_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.PROMOTED_ENTRY_LOG_COUNT;
+
+import java.util.function.Supplier;
+import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * A umbrella class for entry log tiering stats.
+ */
+@StatsDoc(
+    name = BOOKIE_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Entry log tiering related stats"
+)
+@Getter
+public class EntryLogTieringStats {
+
+    @StatsDoc(
+        name = DEMOTED_ENTRY_LOG_COUNT,
+        help = "Number of entry logs moved to the capacity tier"
+    )
+    private final Counter demotedEntryLogCounter;
+    @StatsDoc(
+        name = DEMOTED_ENTRY_LOG_BYTES,
+        help = "Number of bytes of the entry logs moved to the capacity tier"
+    )
+    private final Counter demotedEntryLogBytes;
+    @StatsDoc(
+        name = PROMOTED_ENTRY_LOG_COUNT,
+        help = "Number of entry logs moved back from the capacity tier to their ledger dir"
+    )
+    private final Counter promotedEntryLogCounter;
+    @StatsDoc(
+        name = PROMOTED_ENTRY_LOG_BYTES,
+        help = "Number of bytes of the entry logs moved back from the capacity tier to their ledger dir"
+    )
+    private final Counter promotedEntryLogBytes;
+    @StatsDoc(
+        name = CAPACITY_TIER_ENTRY_LOG_COUNT,
+        help = "Current number of entry logs in the capacity tier"
+    )
+    private final Gauge<Integer> capacityTierEntryLogCountGauge;
+    @StatsDoc(
+        name = CAPACITY_TIER_ENTRY_LOG_BYTES,
+        help = "Current number of bytes of the entry logs in the capacity tier"
+    )
+    private final Gauge<Long> capacityTierEntryLogBytesGauge;
+
+    public EntryLogTieringStats(StatsLogger statsLogger,
+                                Supplier<Integer> capacityTierEntryLogCountSupplier,
+                                Supplier<Long> capacityTierEntryLogBytesSupplier) {
+        this.demotedEntryLogCounter = statsLogger.getCounter(DEMOTED_ENTRY_LOG_COUNT);
+        this.demotedEntryLogBytes = statsLogger.getCounter(DEMOTED_ENTRY_LOG_BYTES);
+        this.promotedEntryLogCounter = statsLogger.getCounter(PROMOTED_ENTRY_LOG_COUNT);
+        this.promotedEntryLogBytes = statsLogger.getCounter(PROMOTED_ENTRY_LOG_BYTES);
+
+        this.capacityTierEntryLogCountGauge = new Gauge<Integer>() {
+            @Override
+            public Integer getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Integer getSample() {
+                return capacityTierEntryLogCountSupplier.get();
+            }
+        };
+        statsLogger.registerGauge(CAPACITY_TIER_ENTRY_LOG_COUNT, capacityTierEntryLogCountGauge);
+        this.capacityTierEntryLogBytesGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return capacityTierEntryLogBytesSupplier.get();
+            }
+        };
+        statsLogger.registerGauge(CAPACITY_TIER_ENTRY_LOG_BYTES, capacityTierEntryLogBytesGauge);
+    }
+
+}
@@ -27,7 +27,9 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.DELETED_LEDGER_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.MAJOR_COMPACTION_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.MINOR_COMPACTION_COUNT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RECLAIMED_COMPACTION_LOGICAL_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RECLAIMED_COMPACTION_SPACE_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RECLAIMED_DELETION_LOGICAL_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RECLAIMED_DELETION_SPACE_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.THREAD_RUNTIME;
 
@@ -71,6 +73,16 @@ public class GarbageCollectorStats {
         help = "Number of disk space bytes reclaimed via compacting entry log files"
     )
     private final Counter reclaimedSpaceViaCompaction;
+    @StatsDoc(
+        name = RECLAIMED_DELETION_LOGICAL_BYTES,
+        help = "Number of bytes of entries, once decompressed, reclaimed via deleting entry log files"
+    )
+    private final Counter reclaimedLogicalBytesViaDeletes;
+    @StatsDoc(
+        name = RECLAIMED_COMPACTION_LOGICAL_BYTES,
+        help = "Number of bytes of entries, once decompressed, reclaimed via compacting entry log files"
+    )
+    private final Counter reclaimedLogicalBytesViaCompaction;
     @StatsDoc(
         name = DELETED_LEDGER_COUNT,
         help = "Number of ledgers deleted by garbage collection"
@@ -107,6 +119,8 @@ public class GarbageCollectorStats {
         this.majorCompactionCounter = statsLogger.getCounter(MAJOR_COMPACTION_COUNT);
         this.reclaimedSpaceViaCompaction = statsLogger.getCounter(RECLAIMED_COMPACTION_SPACE_BYTES);
         this.reclaimedSpaceViaDeletes = statsLogger.getCounter(RECLAIMED_DELETION_SPACE_BYTES);
+        this.reclaimedLogicalBytesViaCompaction = statsLogger.getCounter(RECLAIMED_COMPACTION_LOGICAL_BYTES);
+        this.reclaimedLogicalBytesViaDeletes = statsLogger.getCounter(RECLAIMED_DELETION_LOGICAL_BYTES);
         this.gcThreadRuntime = statsLogger.getOpStatsLogger(THREAD_RUNTIME);
         this.deletedLedgerCounter = statsLogger.getCounter(DELETED_LEDGER_COUNT);
 
@@ -21,6 +21,9 @@ package org.apache.bookkeeper.bookie.stats;
 
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.INDEX_FILE_OPEN;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.INDEX_FILE_SYNC;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.INDEX_FLUSH;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_CACHE_NUM_EVICTED_LEDGERS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.PENDING_GET_FILE_INFO;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_FILE_INFO_CACHE_SIZE;
@@ -30,6 +33,7 @@ import java.util.function.Supplier;
 import lombok.Getter;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.annotations.StatsDoc;
 
@@ -65,6 +69,21 @@ public class IndexPersistenceMgrStats {
         help = "Current read file info cache size"
     )
     private final Gauge<Number> readFileInfoCacheSizeGauge;
+    @StatsDoc(
+        name = INDEX_FILE_OPEN,
+        help = "Operation stats of loading the file info of a ledger and opening its index file"
+    )
+    private final OpStatsLogger indexFileOpenStats;
+    @StatsDoc(
+        name = INDEX_FILE_SYNC,
+        help = "Operation stats of forcing an index file to disk when flushing index pages"
+    )
+    private final OpStatsLogger indexFileSyncStats;
+    @StatsDoc(
+        name = INDEX_FLUSH,
+        help = "Operation stats of flushing a batch of index pages and headers, until their index files are synced"
+    )
+    private final OpStatsLogger indexFlushStats;
 
     public IndexPersistenceMgrStats(StatsLogger statsLogger,
                                     Supplier<Number> writeFileInfoCacheSizeSupplier,
@@ -95,6 +114,9 @@ public class IndexPersistenceMgrStats {
             }
         };
         statsLogger.registerGauge(READ_FILE_INFO_CACHE_SIZE, readFileInfoCacheSizeGauge);
+        indexFileOpenStats = statsLogger.getOpStatsLogger(INDEX_FILE_OPEN);
+        indexFileSyncStats = statsLogger.getOpStatsLogger(INDEX_FILE_SYNC);
+        indexFlushStats = statsLogger.getOpStatsLogger(INDEX_FLUSH);
     }
 
 
@@ -25,6 +25,9 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_CB_QUEUE_SIZE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_CREATION_LATENCY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FILE_POOL_HITS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FILE_POOL_MISSES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FILE_POOL_SIZE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FLUSH_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_BATCH_BYTES;
@@ -32,6 +35,8 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_W
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_ENQUEUE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_GROUPING_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_QUEUE_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_BATCH_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_WAIT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_OUTSTANDING_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_WAIT;
@@ -41,6 +46,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_QUEUE_S
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SYNC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_WRITE_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_WRITE_SYSCALL_BYTES;
 
 import lombok.Getter;
 import org.apache.bookkeeper.bookie.BookKeeperServerStats;
@@ -127,6 +133,23 @@ public class JournalStats {
         help = "The distribution of number of bytes grouped together into a force write request"
     )
     private final OpStatsLogger forceWriteBatchBytesStats;
+    @StatsDoc(
+        name = JOURNAL_WRITE_SYSCALL_BYTES,
+        help = "The distribution of number of bytes written to the journal file per write system call,"
+            + " when journal gather writes are enabled"
+    )
+    private final OpStatsLogger journalWriteSyscallBytesStats;
+    @StatsDoc(
+        name = JOURNAL_GROUP_COMMIT_WAIT,
+        help = "The distribution of the group wait times chosen to meet the journal group commit latency target"
+    )
+    private final OpStatsLogger groupCommitWaitStats;
+    @StatsDoc(
+        name = JOURNAL_GROUP_COMMIT_BATCH_BYTES,
+        help = "The distribution of the flush thresholds in bytes chosen to meet the journal group commit"
+            + " latency target"
+    )
+    private final OpStatsLogger groupCommitBatchBytesStats;
     @StatsDoc(
         name = JOURNAL_QUEUE_SIZE,
         help = "The journal queue size"
@@ -162,6 +185,21 @@ public class JournalStats {
         help = "The number of bytes appended to the journal"
     )
     private final Counter journalWriteBytes;
+    @StatsDoc(
+        name = JOURNAL_FILE_POOL_SIZE,
+        help = "The number of journal files kept in the journal file pool to be reused"
+    )
+    private final Counter journalFilePoolSize;
+    @StatsDoc(
+        name = JOURNAL_FILE_POOL_HITS,
+        help = "The number of journal files reused from the journal file pool"
+    )
+    private final Counter journalFilePoolHits;
+    @StatsDoc(
+        name = JOURNAL_FILE_POOL_MISSES,
+        help = "The number of journal files created because the journal file pool was empty"
+    )
+    private final Counter journalFilePoolMisses;
 
     public JournalStats(StatsLogger statsLogger) {
         journalAddEntryStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_ENTRY);
@@ -177,6 +215,10 @@ public class JournalStats {
         forceWriteBatchEntriesStats =
                 statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_FORCE_WRITE_BATCH_ENTRIES);
         forceWriteBatchBytesStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_FORCE_WRITE_BATCH_BYTES);
+        journalWriteSyscallBytesStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_WRITE_SYSCALL_BYTES);
+        groupCommitWaitStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_GROUP_COMMIT_WAIT);
+        groupCommitBatchBytesStats =
+                statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_GROUP_COMMIT_BATCH_BYTES);
         journalQueueSize = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_QUEUE_SIZE);
         forceWriteQueueSize = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_FORCE_WRITE_QUEUE_SIZE);
         journalCbQueueSize = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_CB_QUEUE_SIZE);
@@ -185,6 +227,9 @@ public class JournalStats {
                 statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_OUTSTANDING_BYTES);
         flushEmptyQueueCounter = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE);
         journalWriteBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_WRITE_BYTES);
+        journalFilePoolSize = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_FILE_POOL_SIZE);
+        journalFilePoolHits = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_FILE_POOL_HITS);
+        journalFilePoolMisses = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_FILE_POOL_MISSES);
     }
 
 }
@@ -66,6 +66,19 @@ class ArrayUtil {
         }
     }
 
+    public static boolean hasSamePrefix(byte[] array1, byte[] array2, int prefixLength) {
+        if (array1.length < prefixLength || array2.length < prefixLength) {
+            return false;
+        }
+
+        for (int i = 0; i < prefixLength; i++) {
+            if (array1[i] != array2[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static final boolean isArrayAllZeros(final byte[] array) {
         return PlatformDependent.isZero(array, 0, array.length);
     }
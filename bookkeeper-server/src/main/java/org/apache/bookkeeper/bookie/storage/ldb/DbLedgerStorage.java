@@ -25,6 +25,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
@@ -48,6 +49,8 @@ import org.apache.bookkeeper.bookie.BookieException;
 import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
+import org.apache.bookkeeper.bookie.CompactionRateLimiter;
+import org.apache.bookkeeper.bookie.EntryLogTieringStatus;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.LastAddConfirmedUpdateNotification;
 import org.apache.bookkeeper.bookie.LedgerCache;
@@ -91,6 +94,12 @@ public class DbLedgerStorage implements LedgerStorage {
     private ScheduledExecutorService gcExecutor;
     private DbLedgerStorageStats stats;
 
+    // Compaction budget shared by all the directories, null if each directory is throttled on its own
+    private CompactionRateLimiter compactionRateLimiter;
+
+    // Entry log tiering bandwidth shared by all the directories, null if the tiering is disabled
+    private RateLimiter tieringRateLimiter;
+
     protected ByteBufAllocator allocator;
 
     @Override
@@ -119,6 +128,16 @@ public class DbLedgerStorage implements LedgerStorage {
 
         gcExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("GarbageCollector"));
 
+        if (conf.getCompactionGlobalRateByBytes() > 0) {
+            compactionRateLimiter = new CompactionRateLimiter(conf.getCompactionGlobalRateByBytes(),
+                    conf.getCompactionLatencyBackoffThresholdMillis());
+            log.info(" - Compaction rate shared by all directories: {} bytes/s", conf.getCompactionGlobalRateByBytes());
+        }
+
+        if (conf.isEntryLogTieringEnabled()) {
+            tieringRateLimiter = RateLimiter.create(conf.getEntryLogTieringRateByBytes());
+        }
+
         ledgerStorageList = Lists.newArrayList();
         for (File ledgerDir : ledgerDirsManager.getAllLedgerDirs()) {
             // Create a ledger dirs manager for the single directory
@@ -149,7 +168,7 @@ public class DbLedgerStorage implements LedgerStorage {
             throws IOException {
         return new SingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager, indexDirsManager,
                 stateManager, checkpointSource, checkpointer, statsLogger, allocator, gcExecutor, writeCacheSize,
-                readCacheSize);
+                readCacheSize, compactionRateLimiter, tieringRateLimiter);
     }
 
     @Override
@@ -192,12 +211,43 @@ public class DbLedgerStorage implements LedgerStorage {
     @Override
     public long addEntry(ByteBuf entry) throws IOException, BookieException {
         long ledgerId = entry.getLong(entry.readerIndex());
-        return getLedgerSorage(ledgerId).addEntry(entry);
+        if (!isForegroundLatencyTracked()) {
+            return getLedgerSorage(ledgerId).addEntry(entry);
+        }
+
+        long startTime = MathUtils.nowInNano();
+        long location = getLedgerSorage(ledgerId).addEntry(entry);
+        compactionRateLimiter.recordForegroundLatency(MathUtils.elapsedNanos(startTime));
+        return location;
     }
 
     @Override
     public ByteBuf getEntry(long ledgerId, long entryId) throws IOException {
-        return getLedgerSorage(ledgerId).getEntry(ledgerId, entryId);
+        if (!isForegroundLatencyTracked()) {
+            return getLedgerSorage(ledgerId).getEntry(ledgerId, entryId);
+        }
+
+        long startTime = MathUtils.nowInNano();
+        ByteBuf entry = getLedgerSorage(ledgerId).getEntry(ledgerId, entryId);
+        compactionRateLimiter.recordForegroundLatency(MathUtils.elapsedNanos(startTime));
+        return entry;
+    }
+
+    @Override
+    public List<ByteBuf> getEntries(long ledgerId, long firstEntryId, long lastEntryId, long maxBytes)
+            throws IOException {
+        if (!isForegroundLatencyTracked()) {
+            return getLedgerSorage(ledgerId).getEntries(ledgerId, firstEntryId, lastEntryId, maxBytes);
+        }
+
+        long startTime = MathUtils.nowInNano();
+        List<ByteBuf> entries = getLedgerSorage(ledgerId).getEntries(ledgerId, firstEntryId, lastEntryId, maxBytes);
+        compactionRateLimiter.recordForegroundLatency(MathUtils.elapsedNanos(startTime));
+        return entries;
+    }
+
+    private boolean isForegroundLatencyTracked() {
+        return compactionRateLimiter != null && compactionRateLimiter.isLatencyBackoffEnabled();
     }
 
     @Override
@@ -350,6 +400,12 @@ public class DbLedgerStorage implements LedgerStorage {
             .map(single -> single.getGarbageCollectionStatus().get(0)).collect(Collectors.toList());
     }
 
+    @Override
+    public List<EntryLogTieringStatus> getEntryLogTieringStatus() {
+        return ledgerStorageList.stream()
+            .flatMap(single -> single.getEntryLogTieringStatus().stream()).collect(Collectors.toList());
+    }
+
     static long getLongVariableOrDefault(ServerConfiguration conf, String keyName, long defaultValue) {
         Object obj = conf.getProperty(keyName);
         if (obj instanceof Number) {
@@ -46,8 +46,11 @@ class DbLedgerStorageStats {
     private static final String READ_ENTRY = "read-entry";
     private static final String READ_CACHE_HITS = "read-cache-hits";
     private static final String READ_CACHE_MISSES = "read-cache-misses";
+    private static final String READAHEAD_CACHE_ADMISSION_REJECTS = "readahead-cache-admission-rejects";
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
+    private static final String READAHEAD_PREFETCHED_BYTES = "readahead-prefetched-bytes";
+    private static final String READAHEAD_SERVED_BYTES = "readahead-served-bytes";
     private static final String FLUSH = "flush";
     private static final String FLUSH_SIZE = "flush-size";
     private static final String THROTTLED_WRITE_REQUESTS = "throttled-write-requests";
@@ -81,6 +84,21 @@ class DbLedgerStorageStats {
         parent = READ_ENTRY
     )
     private final OpStatsLogger readCacheMissStats;
+    @StatsDoc(
+        name = READAHEAD_CACHE_ADMISSION_REJECTS,
+        help = "The number of entries not inserted in the read-ahead cache by its admission policy"
+    )
+    private final Counter readAheadCacheAdmissionRejects;
+    @StatsDoc(
+        name = READAHEAD_PREFETCHED_BYTES,
+        help = "The number of bytes read ahead and inserted in the read-ahead cache"
+    )
+    private final Counter readAheadPrefetchedBytes;
+    @StatsDoc(
+        name = READAHEAD_SERVED_BYTES,
+        help = "The number of bytes of the read-ahead entries served from the read-ahead cache"
+    )
+    private final Counter readAheadServedBytes;
     @StatsDoc(
         name = READAHEAD_BATCH_COUNT,
         help = "the distribution of num of entries to read in one readahead batch"
@@ -142,6 +160,9 @@ class DbLedgerStorageStats {
         readEntryStats = stats.getOpStatsLogger(READ_ENTRY);
         readCacheHitStats = stats.getOpStatsLogger(READ_CACHE_HITS);
         readCacheMissStats = stats.getOpStatsLogger(READ_CACHE_MISSES);
+        readAheadCacheAdmissionRejects = stats.getCounter(READAHEAD_CACHE_ADMISSION_REJECTS);
+        readAheadPrefetchedBytes = stats.getCounter(READAHEAD_PREFETCHED_BYTES);
+        readAheadServedBytes = stats.getCounter(READAHEAD_SERVED_BYTES);
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
         flushStats = stats.getOpStatsLogger(FLUSH);
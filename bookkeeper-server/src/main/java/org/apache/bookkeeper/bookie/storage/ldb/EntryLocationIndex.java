@@ -22,11 +22,16 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 
 import com.google.common.collect.Iterables;
 
+import io.netty.buffer.ByteBufAllocator;
+
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.EntryLocation;
@@ -34,6 +39,7 @@ import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,15 +52,41 @@ import org.slf4j.LoggerFactory;
  */
 public class EntryLocationIndex implements Closeable {
 
+    static final String RANGE_INDEX_MAX_SIZE_MB = "dbStorage_entryLocationRangeIndexMaxSizeMb";
+
+    // The keys are (ledgerId, entryId) pairs
+    private static final int LEDGER_ID_LENGTH = 8;
+
     private final KeyValueStorage locationsDb;
     private final ConcurrentLongHashSet deletedLedgers = new ConcurrentLongHashSet();
 
+    // In-memory index of the contiguous runs of entries, null if disabled
+    private final EntryLocationRangeIndex rangeIndex;
+
     private final EntryLocationIndexStats stats;
 
+    // Number of key ranges of deleted ledgers that are still to be compacted
+    private final AtomicInteger pendingCompactionRanges = new AtomicInteger();
+
     public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
             StatsLogger stats) throws IOException {
+        this(conf, storageFactory, basePath, stats, null);
+    }
+
+    /**
+     * @param allocator the allocator for the in-memory range index. If null, the range index is disabled
+     */
+    public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
+            StatsLogger stats, ByteBufAllocator allocator) throws IOException {
         locationsDb = storageFactory.newKeyValueStorage(basePath, "locations", DbConfigType.Huge, conf);
 
+        long rangeIndexMaxSize = conf.getLong(RANGE_INDEX_MAX_SIZE_MB, 0) * 1024 * 1024;
+        if (allocator != null && rangeIndexMaxSize > 0) {
+            rangeIndex = new EntryLocationRangeIndex(allocator, rangeIndexMaxSize);
+        } else {
+            rangeIndex = null;
+        }
+
         this.stats = new EntryLocationIndexStats(
             stats,
             () -> {
@@ -63,15 +95,31 @@ public class EntryLocationIndex implements Closeable {
                 } catch (IOException e) {
                     return -1L;
                 }
-            });
+            },
+            () -> rangeIndex != null ? rangeIndex.size() : 0L,
+            () -> deletedLedgers.size(),
+            () -> (long) pendingCompactionRanges.get());
     }
 
     @Override
     public void close() throws IOException {
         locationsDb.close();
+        if (rangeIndex != null) {
+            rangeIndex.close();
+        }
     }
 
     public long getLocation(long ledgerId, long entryId) throws IOException {
+        if (rangeIndex != null) {
+            long location = rangeIndex.getLocation(ledgerId, entryId);
+            if (location != 0) {
+                stats.getRangeIndexHits().inc();
+                return location;
+            }
+
+            stats.getRangeIndexMisses().inc();
+        }
+
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get();
 
@@ -103,7 +151,7 @@ public class EntryLocationIndex implements Closeable {
         LongPairWrapper maxEntryId = LongPairWrapper.get(ledgerId, Long.MAX_VALUE);
 
         // Search the last entry in storage
-        Entry<byte[], byte[]> entry = locationsDb.getFloor(maxEntryId.array);
+        Entry<byte[], byte[]> entry = locationsDb.getFloorInPrefix(maxEntryId.array, LEDGER_ID_LENGTH);
         maxEntryId.recycle();
 
         if (entry == null) {
@@ -130,10 +178,27 @@ public class EntryLocationIndex implements Closeable {
         batch.close();
     }
 
+    /**
+     * Make durable all the locations written so far.
+     */
+    public void flush() throws IOException {
+        locationsDb.sync();
+    }
+
     public Batch newBatch() {
         return locationsDb.newBatch();
     }
 
+    /**
+     * Get a builder to record in the in-memory range index the locations of the entries appended by a write cache
+     * flush. The locations must still be added to the db as well.
+     *
+     * @return the builder or null if the range index is disabled
+     */
+    EntryLocationRangeIndex.RunsBuilder newRangeIndexBuilder() {
+        return rangeIndex != null ? rangeIndex.newRunsBuilder() : null;
+    }
+
     public void addLocation(Batch batch, long ledgerId, long entryId, long location) throws IOException {
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get(location);
@@ -162,6 +227,11 @@ public class EntryLocationIndex implements Closeable {
                 log.debug("Update location - ledger: {} -- entry: {}", e.ledger, e.entry);
             }
 
+            if (rangeIndex != null) {
+                // The entry was moved, the recorded runs for the ledger are stale
+                rangeIndex.invalidate(e.ledger);
+            }
+
             addLocation(batch, e.ledger, e.entry, e.location);
         }
 
@@ -173,15 +243,22 @@ public class EntryLocationIndex implements Closeable {
         // We need to find all the LedgerIndexPage records belonging to one specific
         // ledgers
         deletedLedgers.add(ledgerId);
-    }
 
-    private static final int DELETE_ENTRIES_BATCH_SIZE = 100000;
+        if (rangeIndex != null) {
+            rangeIndex.invalidate(ledgerId);
+        }
+    }
 
+    /**
+     * Remove the locations of the entries of the deleted ledgers.
+     *
+     * <p>The keys are sorted by (ledgerId, entryId), so the entries of each deleted ledger are removed with a single
+     * range tombstone covering [(ledgerId, 0), (ledgerId + 1, 0)) instead of one tombstone per entry. A range never
+     * spans more than one ledger: live ledgers with no locations yet may get some from a concurrent flush. Then only
+     * the key ranges of the ledgers that had entries are compacted, to drop the tombstones and reclaim the space. The
+     * ledgers with no entries of other ledgers between them are compacted together, with a single range.
+     */
     public void removeOffsetFromDeletedLedgers() throws IOException {
-        LongPairWrapper firstKeyWrapper = LongPairWrapper.get(-1, -1);
-        LongPairWrapper lastKeyWrapper = LongPairWrapper.get(-1, -1);
-        LongPairWrapper keyToDelete = LongPairWrapper.get(-1, -1);
-
         Set<Long> ledgersToDelete = deletedLedgers.items();
 
         if (ledgersToDelete.isEmpty()) {
@@ -189,87 +266,90 @@ public class EntryLocationIndex implements Closeable {
         }
 
         log.info("Deleting indexes for ledgers: {}", ledgersToDelete);
-        long startTime = System.nanoTime();
-        long deletedEntries = 0;
-        long deletedEntriesInBatch = 0;
+        long startTime = MathUtils.nowInNano();
 
-        Batch batch = locationsDb.newBatch();
-        final byte[] firstDeletedKey = new byte[keyToDelete.array.length];
+        long[] sortedLedgers = ledgersToDelete.stream().mapToLong(Long::longValue).sorted().toArray();
+        List<Long> ledgersToCompact = new ArrayList<>();
 
+        LongPairWrapper firstKey = LongPairWrapper.get(-1, -1);
+        LongPairWrapper endKey = LongPairWrapper.get(-1, -1);
         try {
-            for (long ledgerId : ledgersToDelete) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Deleting indexes from ledger {}", ledgerId);
-                }
-
-                firstKeyWrapper.set(ledgerId, 0);
-                lastKeyWrapper.set(ledgerId, Long.MAX_VALUE);
-
-                Entry<byte[], byte[]> firstKeyRes = locationsDb.getCeil(firstKeyWrapper.array);
-                if (firstKeyRes == null || ArrayUtil.getLong(firstKeyRes.getKey(), 0) != ledgerId) {
-                    // No entries found for ledger
-                    if (log.isDebugEnabled()) {
+            try (Batch batch = locationsDb.newBatch()) {
+                for (long ledgerId : sortedLedgers) {
+                    firstKey.set(ledgerId, 0);
+                    Entry<byte[], byte[]> firstKeyRes = locationsDb.getCeilInPrefix(firstKey.array, LEDGER_ID_LENGTH);
+                    if (firstKeyRes != null && ArrayUtil.getLong(firstKeyRes.getKey(), 0) == ledgerId) {
+                        ledgersToCompact.add(ledgerId);
+                    } else if (log.isDebugEnabled()) {
                         log.debug("No entries found for ledger {}", ledgerId);
                     }
-                    continue;
-                }
 
-                long firstEntryId = ArrayUtil.getLong(firstKeyRes.getKey(), 8);
-                long lastEntryId;
-                try {
-                    lastEntryId = getLastEntryInLedgerInternal(ledgerId);
-                } catch (Bookie.NoEntryException nee) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("No last entry id found for ledger {}", ledgerId);
-                    }
-                    continue;
-                }
-                if (log.isDebugEnabled()) {
-                    log.debug("Deleting index for ledger {} entries ({} -> {})",
-                            ledgerId, firstEntryId, lastEntryId);
+                    // The range is deleted even if no entries were found, in case a flush is adding some
+                    endKey.set(ledgerId + 1, 0);
+                    batch.deleteRange(firstKey.array, endKey.array);
                 }
-
-                // Iterate over all the keys and remove each of them
-                for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
-                    keyToDelete.set(ledgerId, entryId);
-                    if (log.isDebugEnabled()) {
-                        log.debug("Deleting index for ({}, {})", keyToDelete.getFirst(), keyToDelete.getSecond());
-                    }
-                    batch.remove(keyToDelete.array);
-                    ++deletedEntriesInBatch;
-                    if (deletedEntries++ == 0) {
-                        System.arraycopy(keyToDelete.array, 0, firstDeletedKey, 0, firstDeletedKey.length);
-                    }
-                }
-
-                if (deletedEntriesInBatch > DELETE_ENTRIES_BATCH_SIZE) {
-                    batch.flush();
-                    batch.clear();
-                    deletedEntriesInBatch = 0;
-                }
-            }
-        } finally {
-            try {
                 batch.flush();
-                batch.clear();
-                if (deletedEntries != 0) {
-                    locationsDb.compact(firstDeletedKey, keyToDelete.array);
+            }
+            // The index is written without WAL, the deletes must be durable before the ledgers are forgotten
+            locationsDb.sync();
+            stats.getDeletedLedgersCleanupStats().registerSuccessfulEvent(MathUtils.elapsedNanos(startTime),
+                    TimeUnit.NANOSECONDS);
+
+            // The entries are not visible anymore, the ledgers can be removed from the pending set while compacting
+            for (long ledgerId : sortedLedgers) {
+                deletedLedgers.remove(ledgerId);
+                if (rangeIndex != null) {
+                    // A flush might have recorded runs for the ledger after it was deleted
+                    rangeIndex.invalidate(ledgerId);
                 }
-            } finally {
-                firstKeyWrapper.recycle();
-                lastKeyWrapper.recycle();
-                keyToDelete.recycle();
-                batch.close();
             }
+            stats.getDeletedLedgersCleaned().add(sortedLedgers.length);
+
+            log.info("Deleted indexes for {} ledgers, {} with entries, in {} seconds", sortedLedgers.length,
+                    ledgersToCompact.size(), MathUtils.elapsedNanos(startTime) / (double) TimeUnit.SECONDS.toNanos(1));
+
+            long compactionStartTime = MathUtils.nowInNano();
+            List<long[]> compactionRanges = getCompactionRanges(ledgersToCompact, firstKey);
+            pendingCompactionRanges.set(compactionRanges.size());
+            for (long[] range : compactionRanges) {
+                firstKey.set(range[0], 0);
+                endKey.set(range[1] + 1, 0);
+                locationsDb.compact(firstKey.array, endKey.array);
+                pendingCompactionRanges.decrementAndGet();
+            }
+            stats.getDeletedLedgersCompactionStats().registerSuccessfulEvent(
+                    MathUtils.elapsedNanos(compactionStartTime), TimeUnit.NANOSECONDS);
+        } finally {
+            pendingCompactionRanges.set(0);
+            firstKey.recycle();
+            endKey.recycle();
         }
+    }
 
-        log.info("Deleted indexes for {} entries from {} ledgers in {} seconds", deletedEntries, ledgersToDelete.size(),
-                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) / 1000.0);
-
-        // Removed from pending set
-        for (long ledgerId : ledgersToDelete) {
-            deletedLedgers.remove(ledgerId);
+    /**
+     * Group the deleted ledgers into ranges to compact, so that the ledgers with no entries of other ledgers between
+     * them are compacted at once.
+     *
+     * @param sortedLedgers the deleted ledgers, in ascending order
+     * @return the first and last ledger ids of each range
+     */
+    private List<long[]> getCompactionRanges(List<Long> sortedLedgers, LongPairWrapper key) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        long[] range = null;
+        for (long ledgerId : sortedLedgers) {
+            if (range != null) {
+                // The entries of the ledgers in the range are deleted, so the next key is the first one after it
+                key.set(range[1] + 1, 0);
+                Entry<byte[], byte[]> nextKey = locationsDb.getCeil(key.array);
+                if (nextKey == null || ArrayUtil.getLong(nextKey.getKey(), 0) >= ledgerId) {
+                    range[1] = ledgerId;
+                    continue;
+                }
+            }
+            range = new long[] { ledgerId, ledgerId };
+            ranges.add(range);
         }
+        return ranges;
     }
 
     private static final Logger log = LoggerFactory.getLogger(EntryLocationIndex.class);
@@ -24,7 +24,9 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 
 import java.util.function.Supplier;
 import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.annotations.StatsDoc;
 
@@ -40,15 +42,66 @@ import org.apache.bookkeeper.stats.annotations.StatsDoc;
 class EntryLocationIndexStats {
 
     private static final String ENTRIES_COUNT = "entries-count";
+    private static final String RANGE_INDEX_HITS = "location-range-index-hits";
+    private static final String RANGE_INDEX_MISSES = "location-range-index-misses";
+    private static final String RANGE_INDEX_SIZE = "location-range-index-size";
+    private static final String DELETED_LEDGERS_PENDING = "deleted-ledgers-index-pending";
+    private static final String DELETED_LEDGERS_CLEANED = "deleted-ledgers-index-cleaned";
+    private static final String DELETED_LEDGERS_CLEANUP = "deleted-ledgers-index-cleanup";
+    private static final String DELETED_LEDGERS_COMPACTION = "deleted-ledgers-index-compaction";
+    private static final String DELETED_LEDGERS_COMPACTION_PENDING = "deleted-ledgers-index-compaction-pending";
 
     @StatsDoc(
         name = ENTRIES_COUNT,
         help = "Current number of entries"
     )
     private final Gauge<Long> entriesCountGauge;
+    @StatsDoc(
+        name = RANGE_INDEX_HITS,
+        help = "The number of entry locations found in the in-memory range index"
+    )
+    private final Counter rangeIndexHits;
+    @StatsDoc(
+        name = RANGE_INDEX_MISSES,
+        help = "The number of entry locations not found in the in-memory range index"
+    )
+    private final Counter rangeIndexMisses;
+    @StatsDoc(
+        name = RANGE_INDEX_SIZE,
+        help = "Current number of bytes used by the in-memory range index"
+    )
+    private final Gauge<Long> rangeIndexSizeGauge;
+    @StatsDoc(
+        name = DELETED_LEDGERS_PENDING,
+        help = "Current number of deleted ledgers whose entry locations are still to be removed"
+    )
+    private final Gauge<Long> deletedLedgersPendingGauge;
+    @StatsDoc(
+        name = DELETED_LEDGERS_CLEANED,
+        help = "The number of deleted ledgers whose entry locations were removed"
+    )
+    private final Counter deletedLedgersCleaned;
+    @StatsDoc(
+        name = DELETED_LEDGERS_CLEANUP,
+        help = "operation stats of removing the entry locations of the deleted ledgers"
+    )
+    private final OpStatsLogger deletedLedgersCleanupStats;
+    @StatsDoc(
+        name = DELETED_LEDGERS_COMPACTION,
+        help = "operation stats of compacting the key ranges of the deleted ledgers"
+    )
+    private final OpStatsLogger deletedLedgersCompactionStats;
+    @StatsDoc(
+        name = DELETED_LEDGERS_COMPACTION_PENDING,
+        help = "Current number of key ranges of deleted ledgers that are still to be compacted"
+    )
+    private final Gauge<Long> deletedLedgersCompactionPendingGauge;
 
     EntryLocationIndexStats(StatsLogger statsLogger,
-                            Supplier<Long> entriesCountSupplier) {
+                            Supplier<Long> entriesCountSupplier,
+                            Supplier<Long> rangeIndexSizeSupplier,
+                            Supplier<Long> deletedLedgersPendingSupplier,
+                            Supplier<Long> deletedLedgersCompactionPendingSupplier) {
         entriesCountGauge = new Gauge<Long>() {
             @Override
             public Long getDefaultValue() {
@@ -61,6 +114,49 @@ class EntryLocationIndexStats {
             }
         };
         statsLogger.registerGauge(ENTRIES_COUNT, entriesCountGauge);
+
+        rangeIndexHits = statsLogger.getCounter(RANGE_INDEX_HITS);
+        rangeIndexMisses = statsLogger.getCounter(RANGE_INDEX_MISSES);
+        rangeIndexSizeGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return rangeIndexSizeSupplier.get();
+            }
+        };
+        statsLogger.registerGauge(RANGE_INDEX_SIZE, rangeIndexSizeGauge);
+
+        deletedLedgersPendingGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return deletedLedgersPendingSupplier.get();
+            }
+        };
+        statsLogger.registerGauge(DELETED_LEDGERS_PENDING, deletedLedgersPendingGauge);
+        deletedLedgersCleaned = statsLogger.getCounter(DELETED_LEDGERS_CLEANED);
+        deletedLedgersCleanupStats = statsLogger.getOpStatsLogger(DELETED_LEDGERS_CLEANUP);
+        deletedLedgersCompactionStats = statsLogger.getOpStatsLogger(DELETED_LEDGERS_COMPACTION);
+        deletedLedgersCompactionPendingGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return deletedLedgersCompactionPendingSupplier.get();
+            }
+        };
+        statsLogger.registerGauge(DELETED_LEDGERS_COMPACTION_PENDING, deletedLedgersCompactionPendingGauge);
     }
 
 }
@@ -0,0 +1,362 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the locations of entries that were written contiguously in an entry log.
+ *
+ * <p>When the write cache is flushed, the entries are sorted by (ledgerId, entryId) and appended one after the other
+ * in the entry log. Each sequence of consecutive entries of a ledger, written back to back in the same entry log, is
+ * recorded as a single run: the location of the first entry plus the relative offset of every following entry. All
+ * the runs of a ledger are kept in direct memory.
+ *
+ * <p>This index is only a cache in front of the locations stored in RocksDB: an entry that is not covered by any run
+ * will need to be looked up there. The memory used by the runs is bounded and, when it's exceeded, the ledgers that
+ * were least recently accessed are dropped from the index.
+ */
+class EntryLocationRangeIndex implements Closeable {
+
+    // Runs shorter than this are not worth being tracked
+    private static final int MIN_RUN_LENGTH = 2;
+
+    // Each run is stored as: firstEntryId (8), location (8), entriesCount (4), offsetsIdx (4)
+    private static final int RUN_SIZE = 24;
+
+    // When evicting, free up memory until this ratio of the max size
+    private static final double EVICTION_TARGET_RATIO = 0.9;
+
+    private final ConcurrentLongHashMap<LedgerRuns> ledgers = new ConcurrentLongHashMap<>(16 * 1024,
+            Runtime.getRuntime().availableProcessors());
+    private final AtomicLong memorySize = new AtomicLong();
+    private final AtomicLong accessClock = new AtomicLong();
+
+    private final long maxSize;
+    private final ByteBufAllocator allocator;
+
+    EntryLocationRangeIndex(ByteBufAllocator allocator, long maxSize) {
+        this.allocator = allocator;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the location of the entry or 0 if the entry is not covered by any run
+     */
+    long getLocation(long ledgerId, long entryId) {
+        LedgerRuns runs = ledgers.get(ledgerId);
+        if (runs == null) {
+            return 0;
+        }
+
+        return runs.getLocation(entryId);
+    }
+
+    /**
+     * Drop all the runs of a ledger, because its entries were deleted or moved to a different location.
+     */
+    void invalidate(long ledgerId) {
+        LedgerRuns runs = ledgers.remove(ledgerId);
+        if (runs != null) {
+            runs.release();
+        }
+    }
+
+    /**
+     * @return the amount of direct memory used by the index
+     */
+    long size() {
+        return memorySize.get();
+    }
+
+    @Override
+    public void close() {
+        ledgers.forEach((ledgerId, runs) -> runs.release());
+        ledgers.clear();
+    }
+
+    /**
+     * @return a builder for the runs of entries appended, in order, by a single flush
+     */
+    RunsBuilder newRunsBuilder() {
+        return new RunsBuilder();
+    }
+
+    /**
+     * Detects the runs in a sequence of entries appended to the entry logs. Not thread safe.
+     */
+    class RunsBuilder {
+        private long ledgerId = -1;
+        private long firstEntryId = -1;
+        private long firstLocation = -1;
+        private int[] offsets = new int[1024];
+        private int entriesCount = 0;
+
+        // Location where the next entry of the current run is expected
+        private long nextLocation = -1;
+
+        void add(long ledgerId, long entryId, long location, int entrySize) {
+            if (ledgerId != this.ledgerId
+                    || entryId != firstEntryId + entriesCount
+                    || location != nextLocation) {
+                // The entry is not contiguous with the current run. Since entries are appended back to back, a
+                // different location means that the entry log was rotated in between
+                finishRun();
+                this.ledgerId = ledgerId;
+                this.firstEntryId = entryId;
+                this.firstLocation = location;
+            }
+
+            if (entriesCount == offsets.length) {
+                int[] newOffsets = new int[offsets.length * 2];
+                System.arraycopy(offsets, 0, newOffsets, 0, entriesCount);
+                offsets = newOffsets;
+            }
+
+            offsets[entriesCount++] = (int) (location - firstLocation);
+            // Each entry is prefixed by its size in the entry log
+            nextLocation = location + 4 + entrySize;
+        }
+
+        /**
+         * Make the last run visible and enforce the memory limit.
+         */
+        void finish() {
+            finishRun();
+            if (memorySize.get() > maxSize) {
+                evict();
+            }
+        }
+
+        private void finishRun() {
+            if (entriesCount >= MIN_RUN_LENGTH) {
+                LedgerRuns runs = ledgers.computeIfAbsent(ledgerId, LedgerRuns::new);
+                if (!runs.addRun(firstEntryId, firstLocation, offsets, entriesCount)) {
+                    // The ledger was concurrently dropped from the index
+                    ledgers.remove(ledgerId, runs);
+                }
+            } else if (entriesCount > 0) {
+                // Not worth tracking, though it might supersede previously recorded locations
+                LedgerRuns runs = ledgers.get(ledgerId);
+                if (runs != null) {
+                    runs.truncate(firstEntryId);
+                }
+            }
+
+            entriesCount = 0;
+            nextLocation = -1;
+        }
+    }
+
+    /**
+     * Drop the least recently accessed ledgers until the memory used is back under the limit.
+     */
+    private void evict() {
+        List<LedgerRuns> candidates = new ArrayList<>((int) ledgers.size());
+        ledgers.forEach((ledgerId, runs) -> candidates.add(runs));
+        candidates.sort((r1, r2) -> Long.compare(r1.lastAccess, r2.lastAccess));
+
+        long targetSize = (long) (maxSize * EVICTION_TARGET_RATIO);
+        int evicted = 0;
+        for (LedgerRuns runs : candidates) {
+            if (memorySize.get() <= targetSize) {
+                break;
+            }
+
+            if (ledgers.remove(runs.ledgerId, runs)) {
+                runs.release();
+                ++evicted;
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Evicted {} ledgers from the entry location range index. Size: {}", evicted, memorySize.get());
+        }
+    }
+
+    /**
+     * The runs of a single ledger, sorted by entry id.
+     */
+    private final class LedgerRuns {
+        private final long ledgerId;
+        private final StampedLock lock = new StampedLock();
+
+        private ByteBuf runs;
+        private ByteBuf offsets;
+        private int runsCount = 0;
+        private boolean released = false;
+
+        private volatile long lastAccess;
+
+        LedgerRuns(long ledgerId) {
+            this.ledgerId = ledgerId;
+            this.lastAccess = accessClock.incrementAndGet();
+        }
+
+        long getLocation(long entryId) {
+            lastAccess = accessClock.incrementAndGet();
+
+            long stamp = lock.readLock();
+            try {
+                if (released || runsCount == 0) {
+                    return 0;
+                }
+
+                // Binary search for the last run starting at or before the entry
+                int low = 0;
+                int high = runsCount - 1;
+                while (low < high) {
+                    int mid = (low + high + 1) >>> 1;
+                    if (runs.getLong(mid * RUN_SIZE) <= entryId) {
+                        low = mid;
+                    } else {
+                        high = mid - 1;
+                    }
+                }
+
+                int runOffset = low * RUN_SIZE;
+                long firstEntryId = runs.getLong(runOffset);
+                int entriesCount = runs.getInt(runOffset + 16);
+                if (entryId < firstEntryId || entryId >= firstEntryId + entriesCount) {
+                    return 0;
+                }
+
+                long location = runs.getLong(runOffset + 8);
+                int offsetsIdx = runs.getInt(runOffset + 20);
+                return location + Integer.toUnsignedLong(
+                        offsets.getInt((offsetsIdx + (int) (entryId - firstEntryId)) * Integer.BYTES));
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * @return false if the ledger runs were already released
+         */
+        boolean addRun(long firstEntryId, long location, int[] entryOffsets, int entriesCount) {
+            long stamp = lock.writeLock();
+            try {
+                if (released) {
+                    return false;
+                }
+
+                long sizeBefore = capacity();
+                if (runs == null) {
+                    runs = allocator.directBuffer(RUN_SIZE * 4);
+                    offsets = allocator.directBuffer(entriesCount * Integer.BYTES);
+                } else {
+                    truncateRuns(firstEntryId);
+                }
+
+                runs.writeLong(firstEntryId);
+                runs.writeLong(location);
+                runs.writeInt(entriesCount);
+                runs.writeInt(offsets.writerIndex() / Integer.BYTES);
+                for (int i = 0; i < entriesCount; i++) {
+                    offsets.writeInt(entryOffsets[i]);
+                }
+                ++runsCount;
+
+                memorySize.addAndGet(capacity() - sizeBefore);
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Drop the recorded locations of all the entries starting from the given one, since they were written
+         * again. This is typically just the last entries of the previous run, when an entry was added twice.
+         */
+        void truncate(long firstEntryId) {
+            long stamp = lock.writeLock();
+            try {
+                if (!released) {
+                    truncateRuns(firstEntryId);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void truncateRuns(long firstEntryId) {
+            while (runsCount > 0) {
+                int runOffset = (runsCount - 1) * RUN_SIZE;
+                long runFirstEntryId = runs.getLong(runOffset);
+                int runEntriesCount = runs.getInt(runOffset + 16);
+                int runOffsetsIdx = runs.getInt(runOffset + 20);
+
+                if (runFirstEntryId + runEntriesCount <= firstEntryId) {
+                    // No overlap
+                    return;
+                }
+
+                if (runFirstEntryId < firstEntryId) {
+                    // Keep the entries of the run that precede the new ones
+                    int newEntriesCount = (int) (firstEntryId - runFirstEntryId);
+                    runs.setInt(runOffset + 16, newEntriesCount);
+                    offsets.writerIndex((runOffsetsIdx + newEntriesCount) * Integer.BYTES);
+                    return;
+                }
+
+                // The whole run is superseded
+                --runsCount;
+                runs.writerIndex(runOffset);
+                offsets.writerIndex(runOffsetsIdx * Integer.BYTES);
+            }
+        }
+
+        void release() {
+            long stamp = lock.writeLock();
+            try {
+                if (released) {
+                    return;
+                }
+
+                released = true;
+                memorySize.addAndGet(-capacity());
+                if (runs != null) {
+                    runs.release();
+                    offsets.release();
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private long capacity() {
+            return runs != null ? runs.capacity() + offsets.capacity() : 0;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(EntryLocationRangeIndex.class);
+}
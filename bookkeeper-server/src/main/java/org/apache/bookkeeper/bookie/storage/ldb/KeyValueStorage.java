@@ -89,6 +89,36 @@ public interface KeyValueStorage extends Closeable {
      */
     Entry<byte[], byte[]> getCeil(byte[] key) throws IOException;
 
+    /**
+     * Same as {@link #getFloor(byte[])}, restricted to the entries whose key starts with the same prefix as the
+     * supplied key. Storages that index the key prefixes can skip the data that has no key with this prefix.
+     *
+     * @param key
+     *            the non-inclusive upper limit key
+     * @param prefixLength
+     *            the number of bytes of the key prefix
+     * @return the entry before with the same key prefix, or null if there's none
+     */
+    default Entry<byte[], byte[]> getFloorInPrefix(byte[] key, int prefixLength) throws IOException {
+        Entry<byte[], byte[]> entry = getFloor(key);
+        return entry != null && ArrayUtil.hasSamePrefix(entry.getKey(), key, prefixLength) ? entry : null;
+    }
+
+    /**
+     * Same as {@link #getCeil(byte[])}, restricted to the entries whose key starts with the same prefix as the
+     * supplied key. Storages that index the key prefixes can skip the data that has no key with this prefix.
+     *
+     * @param key
+     *            the lower limit key
+     * @param prefixLength
+     *            the number of bytes of the key prefix
+     * @return the entry after with the same key prefix, or null if there's none
+     */
+    default Entry<byte[], byte[]> getCeilInPrefix(byte[] key, int prefixLength) throws IOException {
+        Entry<byte[], byte[]> entry = getCeil(key);
+        return entry != null && ArrayUtil.hasSamePrefix(entry.getKey(), key, prefixLength) ? entry : null;
+    }
+
     /**
      *
      * @param key
@@ -26,10 +26,13 @@ import static com.google.common.base.Preconditions.checkState;
 import io.netty.util.internal.PlatformDependent;
 //CHECKSTYLE.ON: IllegalImport
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
 
@@ -40,7 +43,10 @@ import org.rocksdb.BloomFilter;
 import org.rocksdb.Cache;
 import org.rocksdb.ChecksumType;
 import org.rocksdb.CompressionType;
+import org.rocksdb.EnvOptions;
+import org.rocksdb.FlushOptions;
 import org.rocksdb.InfoLogLevel;
+import org.rocksdb.IngestExternalFileOptions;
 import org.rocksdb.LRUCache;
 import org.rocksdb.Options;
 import org.rocksdb.ReadOptions;
@@ -48,7 +54,11 @@ import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
 import org.rocksdb.Slice;
+import org.rocksdb.SstFileReader;
+import org.rocksdb.SstFileReaderIterator;
+import org.rocksdb.SstFileWriter;
 import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteBufferManager;
 import org.rocksdb.WriteOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -71,6 +81,13 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
 
     private final WriteBatch emptyBatch;
 
+    // With the tuned profile, the length of the key prefix indexed by the bloom filters, 0 otherwise
+    private final int keyPrefixLength;
+    // With the tuned profile, the writes skip the WAL and are only persisted when the memtables are flushed
+    private final boolean walDisabled;
+    // With the tuned profile, the block cache and write buffer manager shared with the other dbs, null otherwise
+    private final SharedResources sharedResources;
+
     private static final String ROCKSDB_LOG_PATH = "dbStorage_rocksDB_logPath";
     private static final String ROCKSDB_LOG_LEVEL = "dbStorage_rocksDB_logLevel";
     private static final String ROCKSDB_LZ4_COMPRESSION_ENABLED = "dbStorage_rocksDB_lz4CompressionEnabled";
@@ -82,12 +99,52 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
     private static final String ROCKSDB_NUM_LEVELS = "dbStorage_rocksDB_numLevels";
     private static final String ROCKSDB_NUM_FILES_IN_LEVEL0 = "dbStorage_rocksDB_numFilesInLevel0";
     private static final String ROCKSDB_MAX_SIZE_IN_LEVEL1_MB = "dbStorage_rocksDB_maxSizeInLevel1MB";
+    private static final String ROCKSDB_TUNED_PROFILE_ENABLED = "dbStorage_rocksDB_tunedProfileEnabled";
+    private static final String ROCKSDB_SHARED_CACHE_SIZE = "dbStorage_rocksDB_sharedCacheSize";
+
+    private static final int MAX_WRITE_BUFFER_NUMBER = 4;
+
+    // Share of the shared cache the memtables can be charged before they're flushed
+    private static final int SHARED_CACHE_WRITE_BUFFER_RATIO = 4;
+
+    // The keys of the huge dbs start with the ledger id
+    private static final int LEDGER_ID_PREFIX_LENGTH = 8;
 
     public KeyValueStorageRocksDB(String basePath, String subPath, DbConfigType dbConfigType, ServerConfiguration conf)
             throws IOException {
         this(basePath, subPath, dbConfigType, conf, false);
     }
 
+    /**
+     * Set the options that define the format of the files of a huge db: compression, blocks, bloom filters and, with
+     * the tuned profile, the key prefix. They must be the same for the files written with a {@link SortedFileWriter}
+     * and for the db they're ingested in.
+     *
+     * @return the table options, to be completed with the block cache before they're set in the options
+     */
+    private static BlockBasedTableConfig setHugeDbFileOptions(Options options, ServerConfiguration conf) {
+        int blockSize = conf.getInt(ROCKSDB_BLOCK_SIZE, 64 * 1024);
+        int bloomFilterBitsPerKey = conf.getInt(ROCKSDB_BLOOM_FILTERS_BITS_PER_KEY, 10);
+        boolean lz4CompressionEnabled = conf.getBoolean(ROCKSDB_LZ4_COMPRESSION_ENABLED, true);
+        boolean tunedProfileEnabled = conf.getBoolean(ROCKSDB_TUNED_PROFILE_ENABLED, false);
+
+        if (lz4CompressionEnabled) {
+            options.setCompressionType(CompressionType.LZ4_COMPRESSION);
+        }
+        if (tunedProfileEnabled) {
+            options.useFixedLengthPrefixExtractor(LEDGER_ID_PREFIX_LENGTH);
+        }
+
+        BlockBasedTableConfig tableOptions = new BlockBasedTableConfig();
+        tableOptions.setBlockSize(blockSize);
+        tableOptions.setFormatVersion(2);
+        tableOptions.setChecksumType(ChecksumType.kxxHash);
+        if (bloomFilterBitsPerKey > 0) {
+            tableOptions.setFilterPolicy(new BloomFilter(bloomFilterBitsPerKey, false));
+        }
+        return tableOptions;
+    }
+
     public KeyValueStorageRocksDB(String basePath, String subPath, DbConfigType dbConfigType, ServerConfiguration conf,
                                   boolean readOnly)
             throws IOException {
@@ -103,6 +160,10 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
         this.optionDontCache = new ReadOptions();
         this.emptyBatch = new WriteBatch();
 
+        int keyPrefixLength = 0;
+        boolean walDisabled = false;
+        SharedResources sharedResources = null;
+
         try (Options options = new Options()) {
             options.setCreateIfMissing(true);
 
@@ -118,15 +179,11 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
                 int numLevels = conf.getInt(ROCKSDB_NUM_LEVELS, -1);
                 int numFilesInLevel0 = conf.getInt(ROCKSDB_NUM_FILES_IN_LEVEL0, 4);
                 long maxSizeInLevel1MB = conf.getLong(ROCKSDB_MAX_SIZE_IN_LEVEL1_MB, 256);
-                int blockSize = conf.getInt(ROCKSDB_BLOCK_SIZE, 64 * 1024);
-                int bloomFilterBitsPerKey = conf.getInt(ROCKSDB_BLOOM_FILTERS_BITS_PER_KEY, 10);
-                boolean lz4CompressionEnabled = conf.getBoolean(ROCKSDB_LZ4_COMPRESSION_ENABLED, true);
+                boolean tunedProfileEnabled = conf.getBoolean(ROCKSDB_TUNED_PROFILE_ENABLED, false);
 
-                if (lz4CompressionEnabled) {
-                    options.setCompressionType(CompressionType.LZ4_COMPRESSION);
-                }
+                BlockBasedTableConfig tableOptions = setHugeDbFileOptions(options, conf);
                 options.setWriteBufferSize(writeBufferSizeMB * 1024 * 1024);
-                options.setMaxWriteBufferNumber(4);
+                options.setMaxWriteBufferNumber(MAX_WRITE_BUFFER_NUMBER);
                 if (numLevels > 0) {
                     options.setNumLevels(numLevels);
                 }
@@ -139,15 +196,28 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
                 options.setTargetFileSizeBase(sstSizeMB * 1024 * 1024);
                 options.setDeleteObsoleteFilesPeriodMicros(TimeUnit.HOURS.toMicros(1));
 
-                final Cache cache = new LRUCache(blockCacheSize);
-                BlockBasedTableConfig tableOptions = new BlockBasedTableConfig();
-                tableOptions.setBlockSize(blockSize);
-                tableOptions.setBlockCache(cache);
-                tableOptions.setFormatVersion(2);
-                tableOptions.setChecksumType(ChecksumType.kxxHash);
-                if (bloomFilterBitsPerKey > 0) {
-                    tableOptions.setFilterPolicy(new BloomFilter(bloomFilterBitsPerKey, false));
+                final Cache cache;
+                if (tunedProfileEnabled) {
+                    // A single cache for all the ledger directories. The memtables are charged to the same cache, so
+                    // that its capacity caps the whole memory used by the dbs
+                    long sharedCacheSize = DbLedgerStorage.getLongVariableOrDefault(conf, ROCKSDB_SHARED_CACHE_SIZE,
+                            PlatformDependent.maxDirectMemory() / 10);
+                    sharedResources = SharedResources.acquire(sharedCacheSize);
+                    cache = sharedResources.cache;
+                    options.setWriteBufferManager(sharedResources.writeBufferManager);
+
+                    // Bloom filters on the ledger id, so that the seeks within a ledger skip the files that don't
+                    // have any entry of the ledger
+                    keyPrefixLength = LEDGER_ID_PREFIX_LENGTH;
+                    options.setMemtablePrefixBloomSizeRatio(0.1);
+
+                    // The journal already makes the index updates durable until the next checkpoint, which flushes
+                    // the memtables
+                    walDisabled = true;
+                } else {
+                    cache = new LRUCache(blockCacheSize);
                 }
+                tableOptions.setBlockCache(cache);
 
                 // Options best suited for HDDs
                 tableOptions.setCacheIndexAndFilterBlocks(true);
@@ -196,20 +266,40 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
                     db = RocksDB.open(options, path);
                 }
             } catch (RocksDBException e) {
+                if (sharedResources != null) {
+                    SharedResources.release();
+                }
                 throw new IOException("Error open RocksDB database", e);
             }
         }
 
-        optionSync.setSync(true);
+        this.keyPrefixLength = keyPrefixLength;
+        this.walDisabled = walDisabled;
+        this.sharedResources = sharedResources;
+
+        if (walDisabled) {
+            optionSync.setDisableWAL(true);
+            optionDontSync.setDisableWAL(true);
+        } else {
+            optionSync.setSync(true);
+        }
         optionDontSync.setSync(false);
 
         optionCache.setFillCache(true);
         optionDontCache.setFillCache(false);
+        if (keyPrefixLength > 0) {
+            // The generic lookups and iterators can cross the prefixes
+            optionCache.setTotalOrderSeek(true);
+            optionDontCache.setTotalOrderSeek(true);
+        }
     }
 
     @Override
     public void close() throws IOException {
         db.close();
+        if (sharedResources != null) {
+            SharedResources.release();
+        }
         optionSync.close();
         optionDontSync.close();
         optionCache.close();
@@ -278,6 +368,44 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
         }
     }
 
+    @Override
+    public Entry<byte[], byte[]> getFloorInPrefix(byte[] key, int prefixLength) throws IOException {
+        if (prefixLength != keyPrefixLength) {
+            return KeyValueStorage.super.getFloorInPrefix(key, prefixLength);
+        }
+
+        // Prefix seek, which is able to use the bloom filters
+        try (ReadOptions option = new ReadOptions(optionCache).setTotalOrderSeek(false).setPrefixSameAsStart(true);
+                RocksIterator iterator = db.newIterator(option)) {
+            iterator.seekForPrev(key);
+            if (iterator.isValid() && Arrays.equals(iterator.key(), key)) {
+                // The supplied key is not included
+                iterator.prev();
+            }
+            if (iterator.isValid() && ArrayUtil.hasSamePrefix(iterator.key(), key, prefixLength)) {
+                return new EntryWrapper(iterator.key(), iterator.value());
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getCeilInPrefix(byte[] key, int prefixLength) throws IOException {
+        if (prefixLength != keyPrefixLength) {
+            return KeyValueStorage.super.getCeilInPrefix(key, prefixLength);
+        }
+
+        // Prefix seek, which is able to use the bloom filters
+        try (ReadOptions option = new ReadOptions(optionCache).setTotalOrderSeek(false).setPrefixSameAsStart(true);
+                RocksIterator iterator = db.newIterator(option)) {
+            iterator.seek(key);
+            if (iterator.isValid() && ArrayUtil.hasSamePrefix(iterator.key(), key, prefixLength)) {
+                return new EntryWrapper(iterator.key(), iterator.value());
+            }
+        }
+        return null;
+    }
+
     @Override
     public void delete(byte[] key) throws IOException {
         try {
@@ -296,8 +424,33 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
         }
     }
 
+    /**
+     * Bulk load files written with a {@link SortedFileWriter}, bypassing the memtables. The key ranges of the files
+     * must not overlap, so that they're all loaded at once, in the last level of an empty db.
+     *
+     * <p>The files are moved into the db instead of being copied: they must not be used anymore once loaded.
+     */
+    public void ingestSortedFiles(List<String> paths) throws IOException {
+        try (IngestExternalFileOptions ingestOptions = new IngestExternalFileOptions()) {
+            ingestOptions.setMoveFiles(true);
+            db.ingestExternalFile(paths, ingestOptions);
+        } catch (RocksDBException e) {
+            throw new IOException("Error in RocksDB ingest", e);
+        }
+    }
+
     @Override
     public void sync() throws IOException {
+        if (walDisabled) {
+            // Nothing was logged, all the writes are in the memtables
+            try (FlushOptions flushOptions = new FlushOptions().setWaitForFlush(true)) {
+                db.flush(flushOptions);
+            } catch (RocksDBException e) {
+                throw new IOException("Error in RocksDB flush", e);
+            }
+            return;
+        }
+
         try {
             db.write(optionSync, emptyBatch);
         } catch (RocksDBException e) {
@@ -453,6 +606,184 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
         }
     }
 
+    /**
+     * Writer of a file of key/values that can be bulk loaded in a db with {@link #ingestSortedFiles(List)}. The keys
+     * must be added in strictly increasing order.
+     */
+    public static class SortedFileWriter implements Closeable {
+        private final EnvOptions envOptions;
+        private final Options options;
+        private final SstFileWriter writer;
+
+        /**
+         * Create a file to be ingested in a huge db opened with the same configuration.
+         */
+        public SortedFileWriter(String path, ServerConfiguration conf) throws IOException {
+            try {
+                RocksDB.loadLibrary();
+            } catch (Throwable t) {
+                throw new IOException("Failed to load RocksDB JNI library", t);
+            }
+
+            this.envOptions = new EnvOptions();
+            this.options = new Options();
+            options.setTableFormatConfig(setHugeDbFileOptions(options, conf));
+            this.writer = new SstFileWriter(envOptions, options);
+            try {
+                writer.open(path);
+            } catch (RocksDBException e) {
+                close();
+                throw new IOException("Error opening RocksDB sorted file " + path, e);
+            }
+        }
+
+        public void put(byte[] key, byte[] value) throws IOException {
+            try {
+                writer.put(key, value);
+            } catch (RocksDBException e) {
+                throw new IOException("Error in RocksDB sorted file put", e);
+            }
+        }
+
+        /**
+         * Complete and sync the file. At least one key must have been added.
+         */
+        public void finish() throws IOException {
+            try {
+                writer.finish();
+            } catch (RocksDBException e) {
+                throw new IOException("Error finishing RocksDB sorted file", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            writer.close();
+            options.close();
+            envOptions.close();
+        }
+    }
+
+    /**
+     * Reader of a file written with a {@link SortedFileWriter}, positioned on its first key and moving through its
+     * keys in increasing order.
+     */
+    public static class SortedFileReader implements Closeable {
+        private final Options options;
+        private final ReadOptions readOptions;
+        private final SstFileReader reader;
+        private SstFileReaderIterator iterator;
+        private byte[] key;
+        private byte[] value;
+
+        public SortedFileReader(String path) throws IOException {
+            try {
+                RocksDB.loadLibrary();
+            } catch (Throwable t) {
+                throw new IOException("Failed to load RocksDB JNI library", t);
+            }
+
+            this.options = new Options();
+            this.readOptions = new ReadOptions();
+            this.reader = new SstFileReader(options);
+            try {
+                reader.open(path);
+                iterator = reader.newIterator(readOptions);
+                iterator.seekToFirst();
+                readCurrent();
+            } catch (RocksDBException e) {
+                close();
+                throw new IOException("Error opening RocksDB sorted file " + path, e);
+            }
+        }
+
+        /**
+         * @return true if the reader is positioned on a key, false once all the keys were read
+         */
+        public boolean isValid() {
+            return key != null;
+        }
+
+        public byte[] key() {
+            return key;
+        }
+
+        public byte[] value() {
+            return value;
+        }
+
+        public void next() throws IOException {
+            iterator.next();
+            try {
+                readCurrent();
+            } catch (RocksDBException e) {
+                throw new IOException("Error reading RocksDB sorted file", e);
+            }
+        }
+
+        private void readCurrent() throws RocksDBException {
+            if (iterator.isValid()) {
+                key = iterator.key();
+                value = iterator.value();
+            } else {
+                // Tell the end of the file from a read error
+                iterator.status();
+                key = null;
+                value = null;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (iterator != null) {
+                iterator.close();
+            }
+            reader.close();
+            readOptions.close();
+            options.close();
+        }
+    }
+
+    /**
+     * Block cache and write buffer manager shared by the huge dbs of all the ledger directories, with the tuned
+     * profile. They're released when the last db using them is closed.
+     */
+    private static final class SharedResources {
+        private static SharedResources instance;
+        private static int refCount;
+
+        final long cacheSize;
+        final Cache cache;
+        final WriteBufferManager writeBufferManager;
+
+        private SharedResources(long cacheSize) {
+            this.cacheSize = cacheSize;
+            this.cache = new LRUCache(cacheSize);
+            this.writeBufferManager = new WriteBufferManager(cacheSize / SHARED_CACHE_WRITE_BUFFER_RATIO, cache);
+        }
+
+        static synchronized SharedResources acquire(long cacheSize) {
+            if (instance == null) {
+                log.info("RocksDB shared cache size: {} -- write buffer limit: {}", cacheSize,
+                        cacheSize / SHARED_CACHE_WRITE_BUFFER_RATIO);
+                instance = new SharedResources(cacheSize);
+            } else if (instance.cacheSize != cacheSize) {
+                log.warn("RocksDB shared cache already created with size {}, ignoring size {}", instance.cacheSize,
+                        cacheSize);
+            }
+            ++refCount;
+            return instance;
+        }
+
+        static synchronized void release() {
+            if (--refCount == 0) {
+                instance.writeBufferManager.close();
+                instance.cache.close();
+                instance = null;
+            }
+        }
+    }
+
     private static final class EntryWrapper implements Entry<byte[], byte[]> {
         // This is not final since the iterator will reuse the same EntryWrapper
         // instance at each step
@@ -29,9 +29,11 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.BookieException;
@@ -41,6 +43,7 @@ import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigT
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,12 +51,35 @@ import org.slf4j.LoggerFactory;
  * Maintains an index for the ledgers metadata.
  *
  * <p>The key is the ledgerId and the value is the {@link LedgerData} content.
+ *
+ * <p>By default, the {@link LedgerData} of all the ledgers are kept in memory. When the hot set is bounded, only the
+ * flags of all the ledgers are kept in memory, in a primitive map, and the {@link LedgerData} are read from the db
+ * when needed. Only the most recently used ones are kept in memory, and the least recently used ones are evicted
+ * once they are persisted, when the index is flushed.
  */
 public class LedgerMetadataIndex implements Closeable {
-    // Contains all ledgers stored in the bookie
+
+    static final String HOT_SET_MAX_SIZE = "dbStorage_ledgerMetadataIndexHotSetMaxSize";
+
+    private static final long FENCED_FLAG = 1;
+    // Set whenever the ledger is accessed, and cleared by the eviction of the hot set
+    private static final long REFERENCED_FLAG = 2;
+
+    // When evicting, remove ledgers from the hot set until this ratio of the max size
+    private static final double EVICTION_TARGET_RATIO = 0.9;
+
+    // Contains all ledgers stored in the bookie, or only the hot set if bounded
     private final ConcurrentLongHashMap<LedgerData> ledgers;
     private final AtomicInteger ledgersCount;
 
+    // When the hot set is bounded, contains the flags of all ledgers stored in the bookie. Null otherwise
+    private final ConcurrentLongLongHashMap ledgerFlags;
+    private final long hotSetMaxSize;
+
+    // Updates hold the read lock, while the hot set eviction holds the write lock, so that it only evicts ledgers
+    // whose updates were all persisted
+    private final ReentrantReadWriteLock hotSetLock = new ReentrantReadWriteLock();
+
     private final KeyValueStorage ledgersDb;
     private final LedgerMetadataIndexStats stats;
 
@@ -70,6 +96,9 @@ public class LedgerMetadataIndex implements Closeable {
         ledgers = new ConcurrentLongHashMap<>();
         ledgersCount = new AtomicInteger();
 
+        hotSetMaxSize = conf.getLong(HOT_SET_MAX_SIZE, 0);
+        ledgerFlags = hotSetMaxSize > 0 ? new ConcurrentLongLongHashMap() : null;
+
         // Read all ledgers from db
         CloseableIterator<Entry<byte[], byte[]>> iterator = ledgersDb.iterator();
         try {
@@ -77,7 +106,11 @@ public class LedgerMetadataIndex implements Closeable {
                 Entry<byte[], byte[]> entry = iterator.next();
                 long ledgerId = ArrayUtil.getLong(entry.getKey(), 0);
                 LedgerData ledgerData = LedgerData.parseFrom(entry.getValue());
-                ledgers.put(ledgerId, ledgerData);
+                if (ledgerFlags != null) {
+                    ledgerFlags.put(ledgerId, ledgerData.getFenced() ? FENCED_FLAG : 0);
+                } else {
+                    ledgers.put(ledgerId, ledgerData);
+                }
                 ledgersCount.incrementAndGet();
             }
         } finally {
@@ -89,7 +122,8 @@ public class LedgerMetadataIndex implements Closeable {
 
         this.stats = new LedgerMetadataIndexStats(
             stats,
-            () -> (long) ledgersCount.get());
+            () -> (long) ledgersCount.get(),
+            () -> ledgers.size());
     }
 
     @Override
@@ -98,7 +132,7 @@ public class LedgerMetadataIndex implements Closeable {
     }
 
     public LedgerData get(long ledgerId) throws IOException {
-        LedgerData ledgerData = ledgers.get(ledgerId);
+        LedgerData ledgerData = getIfExists(ledgerId);
         if (ledgerData == null) {
             if (log.isDebugEnabled()) {
                 log.debug("Ledger not found {}", ledgerId);
@@ -109,35 +143,81 @@ public class LedgerMetadataIndex implements Closeable {
         return ledgerData;
     }
 
-    public void set(long ledgerId, LedgerData ledgerData) throws IOException {
-        ledgerData = LedgerData.newBuilder(ledgerData).setExists(true).build();
+    /**
+     * Check whether a ledger is fenced, without reading its {@link LedgerData} from the db.
+     */
+    public boolean isFenced(long ledgerId) throws IOException {
+        if (ledgerFlags == null) {
+            return get(ledgerId).getFenced();
+        }
 
-        if (ledgers.put(ledgerId, ledgerData) == null) {
+        long flags = ledgerFlags.get(ledgerId);
+        if (flags < 0) {
             if (log.isDebugEnabled()) {
-                log.debug("Added new ledger {}", ledgerId);
+                log.debug("Ledger not found {}", ledgerId);
             }
-            ledgersCount.incrementAndGet();
+            throw new Bookie.NoLedgerException(ledgerId);
         }
+        return (flags & FENCED_FLAG) != 0;
+    }
 
-        pendingLedgersUpdates.add(new SimpleEntry<Long, LedgerData>(ledgerId, ledgerData));
-        pendingDeletedLedgers.remove(ledgerId);
+    /**
+     * Check whether a ledger is stored in the bookie, without reading its {@link LedgerData} from the db.
+     */
+    public boolean exists(long ledgerId) throws IOException {
+        if (ledgerFlags == null) {
+            LedgerData ledgerData = ledgers.get(ledgerId);
+            return ledgerData != null && ledgerData.getExists();
+        }
+
+        return ledgerFlags.containsKey(ledgerId);
     }
 
-    public void delete(long ledgerId) throws IOException {
-        if (ledgers.remove(ledgerId) != null) {
-            if (log.isDebugEnabled()) {
-                log.debug("Removed ledger {}", ledgerId);
+    public void set(long ledgerId, LedgerData ledgerData) throws IOException {
+        ledgerData = LedgerData.newBuilder(ledgerData).setExists(true).build();
+
+        hotSetLock.readLock().lock();
+        try {
+            if (putLedgerData(ledgerId, ledgerData)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Added new ledger {}", ledgerId);
+                }
+                ledgersCount.incrementAndGet();
             }
-            ledgersCount.decrementAndGet();
+
+            pendingLedgersUpdates.add(new SimpleEntry<Long, LedgerData>(ledgerId, ledgerData));
+            pendingDeletedLedgers.remove(ledgerId);
+        } finally {
+            hotSetLock.readLock().unlock();
         }
+    }
 
-        pendingDeletedLedgers.add(ledgerId);
-        pendingLedgersUpdates.removeIf(e -> e.getKey() == ledgerId);
+    public void delete(long ledgerId) throws IOException {
+        hotSetLock.readLock().lock();
+        try {
+            boolean removed = ledgers.remove(ledgerId) != null;
+            if (ledgerFlags != null) {
+                removed = ledgerFlags.remove(ledgerId) >= 0;
+            }
+
+            if (removed) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Removed ledger {}", ledgerId);
+                }
+                ledgersCount.decrementAndGet();
+            }
+
+            pendingDeletedLedgers.add(ledgerId);
+            pendingLedgersUpdates.removeIf(e -> e.getKey() == ledgerId);
+        } finally {
+            hotSetLock.readLock().unlock();
+        }
     }
 
     public Iterable<Long> getActiveLedgersInRange(final long firstLedgerId, final long lastLedgerId)
             throws IOException {
-        return Iterables.filter(ledgers.keys(), new Predicate<Long>() {
+        List<Long> ledgerIds = ledgerFlags != null ? ledgerFlags.keys() : ledgers.keys();
+        return Iterables.filter(ledgerIds, new Predicate<Long>() {
             @Override
             public boolean apply(Long ledgerId) {
                 return ledgerId >= firstLedgerId && ledgerId < lastLedgerId;
@@ -146,82 +226,87 @@ public class LedgerMetadataIndex implements Closeable {
     }
 
     public boolean setFenced(long ledgerId) throws IOException {
-        LedgerData ledgerData = get(ledgerId);
-        if (ledgerData.getFenced()) {
-            return false;
-        }
+        hotSetLock.readLock().lock();
+        try {
+            LedgerData ledgerData = get(ledgerId);
+            if (ledgerData.getFenced()) {
+                return false;
+            }
 
-        LedgerData newLedgerData = LedgerData.newBuilder(ledgerData).setFenced(true).build();
+            LedgerData newLedgerData = LedgerData.newBuilder(ledgerData).setFenced(true).build();
 
-        if (ledgers.put(ledgerId, newLedgerData) == null) {
-            // Ledger had been deleted
-            if (log.isDebugEnabled()) {
-                log.debug("Re-inserted fenced ledger {}", ledgerId);
-            }
-            ledgersCount.incrementAndGet();
-        } else {
-            if (log.isDebugEnabled()) {
-                log.debug("Set fenced ledger {}", ledgerId);
+            if (putLedgerData(ledgerId, newLedgerData)) {
+                // Ledger had been deleted
+                if (log.isDebugEnabled()) {
+                    log.debug("Re-inserted fenced ledger {}", ledgerId);
+                }
+                ledgersCount.incrementAndGet();
+            } else {
+                if (log.isDebugEnabled()) {
+                    log.debug("Set fenced ledger {}", ledgerId);
+                }
             }
-        }
 
-        pendingLedgersUpdates.add(new SimpleEntry<Long, LedgerData>(ledgerId, newLedgerData));
-        pendingDeletedLedgers.remove(ledgerId);
-        return true;
+            pendingLedgersUpdates.add(new SimpleEntry<Long, LedgerData>(ledgerId, newLedgerData));
+            pendingDeletedLedgers.remove(ledgerId);
+            return true;
+        } finally {
+            hotSetLock.readLock().unlock();
+        }
     }
 
     public void setMasterKey(long ledgerId, byte[] masterKey) throws IOException {
-        LedgerData ledgerData = ledgers.get(ledgerId);
-        if (ledgerData == null) {
-            // New ledger inserted
-            ledgerData = LedgerData.newBuilder().setExists(true).setFenced(false)
-                    .setMasterKey(ByteString.copyFrom(masterKey)).build();
-            if (log.isDebugEnabled()) {
-                log.debug("Inserting new ledger {}", ledgerId);
-            }
-        } else {
-            byte[] storedMasterKey = ledgerData.getMasterKey().toByteArray();
-            if (ArrayUtil.isArrayAllZeros(storedMasterKey)) {
-                // update master key of the ledger
-                ledgerData = LedgerData.newBuilder(ledgerData).setMasterKey(ByteString.copyFrom(masterKey)).build();
+        hotSetLock.readLock().lock();
+        try {
+            LedgerData ledgerData = getIfExists(ledgerId);
+            if (ledgerData == null) {
+                // New ledger inserted
+                ledgerData = LedgerData.newBuilder().setExists(true).setFenced(false)
+                        .setMasterKey(ByteString.copyFrom(masterKey)).build();
                 if (log.isDebugEnabled()) {
-                    log.debug("Replace old master key {} with new master key {}", storedMasterKey, masterKey);
+                    log.debug("Inserting new ledger {}", ledgerId);
+                }
+            } else {
+                byte[] storedMasterKey = ledgerData.getMasterKey().toByteArray();
+                if (ArrayUtil.isArrayAllZeros(storedMasterKey)) {
+                    // update master key of the ledger
+                    ledgerData = LedgerData.newBuilder(ledgerData).setMasterKey(ByteString.copyFrom(masterKey))
+                            .build();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Replace old master key {} with new master key {}", storedMasterKey, masterKey);
+                    }
+                } else if (!Arrays.equals(storedMasterKey, masterKey) && !ArrayUtil.isArrayAllZeros(masterKey)) {
+                    log.warn("Ledger {} masterKey in db can only be set once.", ledgerId);
+                    throw new IOException(BookieException.create(BookieException.Code.IllegalOpException));
                 }
-            } else if (!Arrays.equals(storedMasterKey, masterKey) && !ArrayUtil.isArrayAllZeros(masterKey)) {
-                log.warn("Ledger {} masterKey in db can only be set once.", ledgerId);
-                throw new IOException(BookieException.create(BookieException.Code.IllegalOpException));
             }
-        }
 
-        if (ledgers.put(ledgerId, ledgerData) == null) {
-            ledgersCount.incrementAndGet();
-        }
+            if (putLedgerData(ledgerId, ledgerData)) {
+                ledgersCount.incrementAndGet();
+            }
 
-        pendingLedgersUpdates.add(new SimpleEntry<Long, LedgerData>(ledgerId, ledgerData));
-        pendingDeletedLedgers.remove(ledgerId);
+            pendingLedgersUpdates.add(new SimpleEntry<Long, LedgerData>(ledgerId, ledgerData));
+            pendingDeletedLedgers.remove(ledgerId);
+        } finally {
+            hotSetLock.readLock().unlock();
+        }
     }
 
     /**
      * Flushes all pending changes.
      */
     public void flush() throws IOException {
-        LongWrapper key = LongWrapper.get();
-
-        int updatedLedgers = 0;
-        while (!pendingLedgersUpdates.isEmpty()) {
-            Entry<Long, LedgerData> entry = pendingLedgersUpdates.poll();
-            key.set(entry.getKey());
-            byte[] value = entry.getValue().toByteArray();
-            ledgersDb.put(key.array, value);
-            ++updatedLedgers;
-        }
+        int updatedLedgers = persistPendingUpdates();
 
         if (log.isDebugEnabled()) {
             log.debug("Persisting updates to {} ledgers", updatedLedgers);
         }
 
         ledgersDb.sync();
-        key.recycle();
+
+        if (ledgerFlags != null && ledgers.size() > hotSetMaxSize) {
+            evictHotSet();
+        }
     }
 
     public void removeDeletedLedgers() throws IOException {
@@ -252,23 +337,143 @@ public class LedgerMetadataIndex implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(LedgerMetadataIndex.class);
 
     void setExplicitLac(long ledgerId, ByteBuf lac) throws IOException {
+        hotSetLock.readLock().lock();
+        try {
+            LedgerData ledgerData = getIfExists(ledgerId);
+            if (ledgerData != null) {
+                LedgerData newLedgerData = LedgerData.newBuilder(ledgerData)
+                        .setExplicitLac(ByteString.copyFrom(lac.nioBuffer())).build();
+
+                if (putLedgerData(ledgerId, newLedgerData)) {
+                    // Ledger had been deleted
+                    return;
+                } else {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Set explicitLac on ledger {}", ledgerId);
+                    }
+                }
+                pendingLedgersUpdates.add(new SimpleEntry<Long, LedgerData>(ledgerId, newLedgerData));
+            } else {
+                // unknown ledger here
+            }
+        } finally {
+            hotSetLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the ledger data, or null if the ledger is not stored in the bookie
+     */
+    private LedgerData getIfExists(long ledgerId) throws IOException {
         LedgerData ledgerData = ledgers.get(ledgerId);
+        if (ledgerFlags == null) {
+            return ledgerData;
+        }
+
+        long flags = ledgerFlags.get(ledgerId);
+        if (flags < 0) {
+            return null;
+        }
+        if ((flags & REFERENCED_FLAG) == 0) {
+            ledgerFlags.compareAndSet(ledgerId, flags, flags | REFERENCED_FLAG);
+        }
+
         if (ledgerData != null) {
-            LedgerData newLedgerData = LedgerData.newBuilder(ledgerData)
-                    .setExplicitLac(ByteString.copyFrom(lac.nioBuffer())).build();
+            return ledgerData;
+        }
 
-            if (ledgers.put(ledgerId, newLedgerData) == null) {
-                // Ledger had been deleted
-                return;
-            } else {
-                if (log.isDebugEnabled()) {
-                    log.debug("Set explicitLac on ledger {}", ledgerId);
-                }
+        // Hold the read lock while loading, so that the hot set eviction cannot drop a newer version of the ledger
+        // data before the one read from the db is inserted
+        hotSetLock.readLock().lock();
+        try {
+            stats.getHotSetMisses().inc();
+
+            LongWrapper key = LongWrapper.get(ledgerId);
+            byte[] value;
+            try {
+                value = ledgersDb.get(key.array);
+            } finally {
+                key.recycle();
             }
-            pendingLedgersUpdates.add(new SimpleEntry<Long, LedgerData>(ledgerId, newLedgerData));
-        } else {
-            // unknown ledger here
+
+            if (value == null) {
+                // Ledger was concurrently deleted
+                return null;
+            }
+
+            ledgerData = LedgerData.parseFrom(value);
+            LedgerData existingLedgerData = ledgers.putIfAbsent(ledgerId, ledgerData);
+            return existingLedgerData != null ? existingLedgerData : ledgerData;
+        } finally {
+            hotSetLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the ledger was not stored in the bookie
+     */
+    private boolean putLedgerData(long ledgerId, LedgerData ledgerData) {
+        LedgerData previousLedgerData = ledgers.put(ledgerId, ledgerData);
+        if (ledgerFlags == null) {
+            return previousLedgerData == null;
+        }
+
+        long flags = (ledgerData.getFenced() ? FENCED_FLAG : 0) | REFERENCED_FLAG;
+        return ledgerFlags.put(ledgerId, flags) < 0;
+    }
+
+    private int persistPendingUpdates() throws IOException {
+        LongWrapper key = LongWrapper.get();
+
+        int updatedLedgers = 0;
+        while (!pendingLedgersUpdates.isEmpty()) {
+            Entry<Long, LedgerData> entry = pendingLedgersUpdates.poll();
+            key.set(entry.getKey());
+            byte[] value = entry.getValue().toByteArray();
+            ledgersDb.put(key.array, value);
+            ++updatedLedgers;
         }
+
+        key.recycle();
+        return updatedLedgers;
     }
 
+    /**
+     * Evict the least recently used ledgers from the hot set, with a CLOCK policy: the ledgers accessed since the
+     * previous eviction are given a second chance.
+     */
+    private void evictHotSet() throws IOException {
+        hotSetLock.writeLock().lock();
+        try {
+            // No update can be in progress. Persist the ones that were queued since the flush started, so that the
+            // ledger data of all the ledgers in the hot set are in the db
+            if (persistPendingUpdates() > 0) {
+                ledgersDb.sync();
+            }
+
+            long targetSize = (long) (hotSetMaxSize * EVICTION_TARGET_RATIO);
+            List<Long> candidates = ledgers.keys();
+            int evicted = 0;
+            for (int pass = 0; pass < 2 && ledgers.size() > targetSize; pass++) {
+                for (long ledgerId : candidates) {
+                    if (ledgers.size() <= targetSize) {
+                        break;
+                    }
+
+                    long flags = ledgerFlags.get(ledgerId);
+                    if (flags >= 0 && (flags & REFERENCED_FLAG) != 0) {
+                        ledgerFlags.compareAndSet(ledgerId, flags, flags & ~REFERENCED_FLAG);
+                    } else if (ledgers.remove(ledgerId) != null) {
+                        ++evicted;
+                    }
+                }
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("Evicted {} ledgers from the ledger metadata hot set. Size: {}", evicted, ledgers.size());
+            }
+        } finally {
+            hotSetLock.writeLock().unlock();
+        }
+    }
 }
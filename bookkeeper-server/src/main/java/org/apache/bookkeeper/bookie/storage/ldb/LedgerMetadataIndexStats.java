@@ -24,6 +24,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 
 import java.util.function.Supplier;
 import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.annotations.StatsDoc;
@@ -40,15 +41,28 @@ import org.apache.bookkeeper.stats.annotations.StatsDoc;
 class LedgerMetadataIndexStats {
 
     private static final String LEDGERS_COUNT = "ledgers-count";
+    private static final String HOT_SET_SIZE = "ledgers-hot-set-size";
+    private static final String HOT_SET_MISSES = "ledgers-hot-set-misses";
 
     @StatsDoc(
         name = LEDGERS_COUNT,
         help = "Current number of ledgers"
     )
     private final Gauge<Long> ledgersCountGauge;
+    @StatsDoc(
+        name = HOT_SET_SIZE,
+        help = "Current number of ledgers whose metadata is kept in memory"
+    )
+    private final Gauge<Long> hotSetSizeGauge;
+    @StatsDoc(
+        name = HOT_SET_MISSES,
+        help = "The number of ledgers whose metadata had to be read from the db"
+    )
+    private final Counter hotSetMisses;
 
     LedgerMetadataIndexStats(StatsLogger statsLogger,
-                             Supplier<Long> ledgersCountSupplier) {
+                             Supplier<Long> ledgersCountSupplier,
+                             Supplier<Long> hotSetSizeSupplier) {
         ledgersCountGauge = new Gauge<Long>() {
             @Override
             public Long getDefaultValue() {
@@ -61,6 +75,20 @@ class LedgerMetadataIndexStats {
             }
         };
         statsLogger.registerGauge(LEDGERS_COUNT, ledgersCountGauge);
+
+        hotSetSizeGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return hotSetSizeSupplier.get();
+            }
+        };
+        statsLogger.registerGauge(HOT_SET_SIZE, hotSetSizeGauge);
+        hotSetMisses = statsLogger.getCounter(HOT_SET_MISSES);
     }
 
 }
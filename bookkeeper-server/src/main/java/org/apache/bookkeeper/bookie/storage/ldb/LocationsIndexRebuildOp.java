@@ -20,105 +20,470 @@
  */
 package org.apache.bookkeeper.bookie.storage.ldb;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.common.collect.Sets;
+import com.google.common.primitives.UnsignedBytes;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.EntryLogger;
 import org.apache.bookkeeper.bookie.EntryLogger.EntryLogScanner;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageRocksDB.SortedFileReader;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageRocksDB.SortedFileWriter;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.time.DurationFormatUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Scan all entries in the entry log and rebuild the ledgerStorageIndex.
+ * Scan all entries in the entry logs and rebuild the locations index of each ledger directory.
+ *
+ * <p>The entry logs of all the ledger directories are scanned in parallel by a pool of threads. The locations found
+ * in each entry log are sorted in memory and written to sorted files, staged next to the index. Once all the entry
+ * logs are scanned, the sorted files are merged into sorted files that don't overlap with each other, which are bulk
+ * loaded in the new index at once, instead of inserting the locations one by one.
+ *
+ * <p>Each entry log that was fully scanned is recorded with a marker file in the staging directory. If the rebuild is
+ * interrupted, running it again resumes it: only the entry logs that were not completed are scanned again.
  */
 public class LocationsIndexRebuildOp {
+
+    // Directory, next to the index, where the sorted files are staged until they're loaded in the new index
+    private static final String STAGING_DIR = "locations.rebuild";
+    private static final String SORTED_FILE_SUFFIX = ".sst";
+    private static final String COMPLETED_SUFFIX = ".done";
+    // Directory, in the staging directory, of the files written by the merge of the sorted files
+    private static final String MERGE_DIR = "merge";
+
+    // Max number of sorted files merged at once. When there are more, they're merged in multiple passes
+    private static final int MAX_MERGED_FILES = 256;
+
+    // Max number of locations sorted in memory by each thread, before being written to a sorted file
+    private static final int MAX_LOCATIONS_PER_FILE = 1024 * 1024;
+
+    private static final Comparator<EntryLocation> LOCATIONS_ORDER = Comparator
+            .comparingLong(EntryLocation::getLedger)
+            .thenComparingLong(EntryLocation::getEntry);
+
     private final ServerConfiguration conf;
+    private final int numThreads;
+
+    private final AtomicInteger totalEntryLogs = new AtomicInteger();
+    private final AtomicInteger completedEntryLogs = new AtomicInteger();
 
     public LocationsIndexRebuildOp(ServerConfiguration conf) {
+        this(conf, Runtime.getRuntime().availableProcessors());
+    }
+
+    public LocationsIndexRebuildOp(ServerConfiguration conf, int numThreads) {
+        checkArgument(numThreads > 0, "The number of threads must be positive");
         this.conf = conf;
+        this.numThreads = numThreads;
     }
 
     public void initiate() throws IOException {
-        LOG.info("Starting index rebuilding");
+        LOG.info("Starting index rebuilding with {} threads", numThreads);
 
-        // Move locations index to a backup directory
-        String basePath = Bookie.getCurrentDirectory(conf.getLedgerDirs()[0]).toString();
-        Path currentPath = FileSystems.getDefault().getPath(basePath, "locations");
-        String timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date());
-        Path backupPath = FileSystems.getDefault().getPath(basePath, "locations.BACKUP-" + timestamp);
-        Files.move(currentPath, backupPath);
+        long startTime = System.nanoTime();
 
-        LOG.info("Created locations index backup at {}", backupPath);
+        DiskChecker diskChecker = new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold());
+        List<LedgerDirRebuild> ledgerDirs = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+                new DefaultThreadFactory("locations-index-rebuild"));
+        try {
+            for (File ledgerDir : conf.getLedgerDirs()) {
+                ledgerDirs.add(new LedgerDirRebuild(ledgerDir, diskChecker));
+            }
 
-        long startTime = System.nanoTime();
+            LOG.info("Scanning {} entry logs", totalEntryLogs.get());
+
+            // Interleave the entry logs of the ledger directories, to spread the reads on all the disks
+            List<Callable<Void>> scanTasks = new ArrayList<>();
+            int maxPendingEntryLogs = ledgerDirs.stream().mapToInt(dir -> dir.pendingEntryLogs.size()).max().orElse(0);
+            for (int i = 0; i < maxPendingEntryLogs; i++) {
+                for (LedgerDirRebuild dir : ledgerDirs) {
+                    if (i < dir.pendingEntryLogs.size()) {
+                        long entryLogId = dir.pendingEntryLogs.get(i);
+                        scanTasks.add(() -> {
+                            dir.scanEntryLog(entryLogId);
+                            return null;
+                        });
+                    }
+                }
+            }
+            runAll(executor, scanTasks);
+
+            List<Callable<Void>> loadTasks = new ArrayList<>();
+            for (LedgerDirRebuild dir : ledgerDirs) {
+                loadTasks.add(() -> {
+                    dir.loadIndex();
+                    return null;
+                });
+            }
+            runAll(executor, loadTasks);
+        } finally {
+            executor.shutdownNow();
+            ledgerDirs.forEach(LedgerDirRebuild::close);
+        }
+
+        LOG.info("Rebuilding index is done. Total time: {}",
+                DurationFormatUtils.formatDurationHMS(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)));
+    }
+
+    private static void runAll(ExecutorService executor, List<Callable<Void>> tasks) throws IOException {
+        try {
+            // Wait for all the tasks, even if some failed, so that the progress of the others is recorded
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rebuilding the locations index", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to rebuild the locations index", e.getCause());
+        }
+    }
 
-        EntryLogger entryLogger = new EntryLogger(conf, new LedgerDirsManager(conf, conf.getLedgerDirs(),
-                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold())));
-        Set<Long> entryLogs = entryLogger.getEntryLogsSet();
+    /**
+     * Rebuild of the locations index of a single ledger directory, from its own entry logs.
+     */
+    private class LedgerDirRebuild {
+        private final String basePath;
+        private final Path stagingPath;
+        private final EntryLogger entryLogger;
+        private final Set<Long> activeLedgers;
+        private final List<Long> pendingEntryLogs = new ArrayList<>();
 
-        Set<Long> activeLedgers = getActiveLedgers(conf, KeyValueStorageRocksDB.factory, basePath);
-        LOG.info("Found {} active ledgers in ledger manager", activeLedgers.size());
+        LedgerDirRebuild(File ledgerDir, DiskChecker diskChecker) throws IOException {
+            basePath = Bookie.getCurrentDirectory(ledgerDir).toString();
+            stagingPath = FileSystems.getDefault().getPath(basePath, STAGING_DIR);
+            Path currentPath = FileSystems.getDefault().getPath(basePath, "locations");
 
-        KeyValueStorage newIndex = KeyValueStorageRocksDB.factory.newKeyValueStorage(basePath, "locations",
-                DbConfigType.Huge, conf);
+            Set<Long> completedEntryLogs;
+            if (Files.exists(stagingPath)) {
+                // Resume an interrupted rebuild, the previous index was already moved to a backup directory
+                completedEntryLogs = cleanupStagingDirectory();
+                if (Files.exists(currentPath)) {
+                    // Partial index left by an interrupted bulk load
+                    FileUtils.deleteDirectory(currentPath.toFile());
+                }
+                LOG.info("Resuming index rebuilding of {}, {} entry logs were already scanned", basePath,
+                        completedEntryLogs.size());
+            } else {
+                // Move locations index to a backup directory
+                if (Files.exists(currentPath)) {
+                    String timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date());
+                    Path backupPath = FileSystems.getDefault().getPath(basePath, "locations.BACKUP-" + timestamp);
+                    Files.move(currentPath, backupPath);
+                    LOG.info("Created locations index backup at {}", backupPath);
+                }
 
-        int totalEntryLogs = entryLogs.size();
-        int completedEntryLogs = 0;
-        LOG.info("Scanning {} entry logs", totalEntryLogs);
+                Files.createDirectories(stagingPath);
+                completedEntryLogs = new HashSet<>();
+            }
 
-        for (long entryLogId : entryLogs) {
-            entryLogger.scanEntryLog(entryLogId, new EntryLogScanner() {
-                @Override
-                public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
-                    long entryId = entry.getLong(8);
+            activeLedgers = getActiveLedgers(conf, KeyValueStorageRocksDB.factory, basePath);
+            LOG.info("Found {} active ledgers in {}", activeLedgers.size(), basePath);
 
-                    // Actual location indexed is pointing past the entry size
-                    long location = (entryLogId << 32L) | (offset + 4);
+            entryLogger = new EntryLogger(conf, new LedgerDirsManager(conf, new File[] { ledgerDir }, diskChecker));
+            for (long entryLogId : entryLogger.getEntryLogsSet()) {
+                if (!completedEntryLogs.contains(entryLogId)) {
+                    pendingEntryLogs.add(entryLogId);
+                }
+            }
+
+            totalEntryLogs.addAndGet(pendingEntryLogs.size());
+        }
+
+        /**
+         * @return the entry logs that were completely scanned, after removing the partial sorted files of the others
+         */
+        private Set<Long> cleanupStagingDirectory() throws IOException {
+            Set<Long> completed = new HashSet<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(stagingPath, "*" + COMPLETED_SUFFIX)) {
+                for (Path file : files) {
+                    completed.add(parseEntryLogId(file));
+                }
+            }
 
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Rebuilding {}:{} at location {} / {}", ledgerId, entryId, location >> 32,
-                                location & (Integer.MAX_VALUE - 1));
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(stagingPath, "*" + SORTED_FILE_SUFFIX)) {
+                for (Path file : files) {
+                    if (!completed.contains(parseEntryLogId(file))) {
+                        Files.delete(file);
                     }
+                }
+            }
+            return completed;
+        }
+
+        void scanEntryLog(long entryLogId) throws IOException {
+            EntryLogLocations locations = new EntryLogLocations(entryLogId);
+            entryLogger.scanEntryLog(entryLogId, locations);
+            locations.writeSortedFile();
+
+            Files.createFile(stagingPath.resolve(Long.toHexString(entryLogId) + COMPLETED_SUFFIX));
+
+            LOG.info("Completed scanning of log {}.log -- {} / {}", Long.toHexString(entryLogId),
+                    completedEntryLogs.incrementAndGet(), totalEntryLogs.get());
+        }
+
+        /**
+         * Merge all the sorted files and bulk load them in a new index, then drop the staging directory.
+         */
+        void loadIndex() throws IOException {
+            List<Path> sortedFiles = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(stagingPath, "*" + SORTED_FILE_SUFFIX)) {
+                files.forEach(sortedFiles::add);
+            }
+
+            // When an entry was found in multiple entry logs, the location in the most recent one wins
+            sortedFiles.sort(Comparator.comparingLong(LocationsIndexRebuildOp::parseEntryLogId)
+                    .thenComparingInt(LocationsIndexRebuildOp::parseSortedFileIndex));
 
-                    // Update the ledger index page
-                    LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
-                    LongWrapper value = LongWrapper.get(location);
-                    newIndex.put(key.array, value.array);
+            // The sorted files of the scan are kept until the new index is complete, so that an interrupted load can
+            // be resumed, while the files written by an interrupted merge are discarded
+            Path mergePath = stagingPath.resolve(MERGE_DIR);
+            if (Files.exists(mergePath)) {
+                FileUtils.deleteDirectory(mergePath.toFile());
+            }
+            Files.createDirectories(mergePath);
+
+            LOG.info("Merging {} sorted files of {}", sortedFiles.size(), basePath);
+            List<Path> runs = sortedFiles;
+            for (int pass = 0; runs.size() > MAX_MERGED_FILES; pass++) {
+                // Merge consecutive groups of files, so that the most recent location still comes from the last file
+                List<Path> mergedRuns = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += MAX_MERGED_FILES) {
+                    List<Path> group = runs.subList(i, Math.min(i + MAX_MERGED_FILES, runs.size()));
+                    mergedRuns.addAll(mergeSortedFiles(group, mergePath, "pass" + pass + "-" + mergedRuns.size(),
+                            Long.MAX_VALUE));
                 }
+                if (pass > 0) {
+                    for (Path run : runs) {
+                        Files.delete(run);
+                    }
+                }
+                runs = mergedRuns;
+            }
+            List<Path> indexFiles = mergeSortedFiles(runs, mergePath, "index", MAX_LOCATIONS_PER_FILE);
 
-                @Override
-                public boolean accept(long ledgerId) {
-                    return activeLedgers.contains(ledgerId);
+            LOG.info("Loading {} sorted files in the locations index of {}", indexFiles.size(), basePath);
+            KeyValueStorageRocksDB newIndex = new KeyValueStorageRocksDB(basePath, "locations", DbConfigType.Huge,
+                    conf);
+            try {
+                if (!indexFiles.isEmpty()) {
+                    List<String> paths = new ArrayList<>(indexFiles.size());
+                    indexFiles.forEach(file -> paths.add(file.toString()));
+                    newIndex.ingestSortedFiles(paths);
                 }
-            });
+                newIndex.sync();
+            } finally {
+                newIndex.close();
+            }
 
-            ++completedEntryLogs;
-            LOG.info("Completed scanning of log {}.log -- {} / {}", Long.toHexString(entryLogId), completedEntryLogs,
-                    totalEntryLogs);
+            FileUtils.deleteDirectory(stagingPath.toFile());
+            LOG.info("Rebuilt locations index of {}", basePath);
         }
 
-        newIndex.sync();
-        newIndex.close();
+        /**
+         * Merge sorted files into new sorted files that don't overlap with each other. When a key is in multiple
+         * files, the value from the last one wins.
+         *
+         * @param maxKeysPerFile number of keys after which a new merged file is started
+         * @return the merged files, in increasing order of their keys
+         */
+        private List<Path> mergeSortedFiles(List<Path> files, Path mergePath, String name, long maxKeysPerFile)
+                throws IOException {
+            List<Path> mergedFiles = new ArrayList<>();
+            List<SortedFileReader> readers = new ArrayList<>(files.size());
+            SortedFileWriter writer = null;
+            try {
+                // The readers positioned on the same key are polled in the order of their files
+                Comparator<byte[]> keyOrder = UnsignedBytes.lexicographicalComparator();
+                PriorityQueue<Integer> heads = new PriorityQueue<>(Math.max(1, files.size()),
+                        (a, b) -> {
+                            int c = keyOrder.compare(readers.get(a).key(), readers.get(b).key());
+                            return c != 0 ? c : Integer.compare(a, b);
+                        });
+                for (Path file : files) {
+                    SortedFileReader reader = new SortedFileReader(file.toString());
+                    readers.add(reader);
+                    if (reader.isValid()) {
+                        heads.add(readers.size() - 1);
+                    }
+                }
+
+                long keysInFile = 0;
+                while (!heads.isEmpty()) {
+                    int head = heads.poll();
+                    SortedFileReader reader = readers.get(head);
+                    byte[] key = reader.key();
+                    byte[] value = reader.value();
+                    advance(reader, heads, head);
 
-        LOG.info("Rebuilding index is done. Total time: {}",
-                DurationFormatUtils.formatDurationHMS(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)));
+                    while (!heads.isEmpty() && Arrays.equals(readers.get(heads.peek()).key(), key)) {
+                        // Older copy of the location, replaced by a more recent one
+                        int next = heads.poll();
+                        value = readers.get(next).value();
+                        advance(readers.get(next), heads, next);
+                    }
+
+                    if (writer == null) {
+                        Path path = mergePath.resolve(name + "-" + mergedFiles.size() + SORTED_FILE_SUFFIX);
+                        writer = new SortedFileWriter(path.toString(), conf);
+                        mergedFiles.add(path);
+                    }
+                    writer.put(key, value);
+                    if (++keysInFile >= maxKeysPerFile) {
+                        writer.finish();
+                        writer.close();
+                        writer = null;
+                        keysInFile = 0;
+                    }
+                }
+
+                if (writer != null) {
+                    writer.finish();
+                }
+            } finally {
+                if (writer != null) {
+                    writer.close();
+                }
+                readers.forEach(SortedFileReader::close);
+            }
+            return mergedFiles;
+        }
+
+        private void advance(SortedFileReader reader, PriorityQueue<Integer> heads, int index) throws IOException {
+            reader.next();
+            if (reader.isValid()) {
+                heads.add(index);
+            }
+        }
+
+        void close() {
+            if (entryLogger != null) {
+                entryLogger.shutdown();
+            }
+        }
+
+        /**
+         * Locations of the entries of an entry log, sorted and written in batches.
+         */
+        private class EntryLogLocations implements EntryLogScanner {
+            private final long entryLogId;
+            private final List<EntryLocation> locations = new ArrayList<>();
+            private int sortedFilesCount = 0;
+
+            EntryLogLocations(long entryLogId) {
+                this.entryLogId = entryLogId;
+            }
+
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                long entryId = entry.getLong(8);
+
+                // Actual location indexed is pointing past the entry size
+                long location = (entryLogId << 32L) | (offset + 4);
+
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Rebuilding {}:{} at location {} / {}", ledgerId, entryId, location >> 32,
+                            location & (Integer.MAX_VALUE - 1));
+                }
+
+                locations.add(new EntryLocation(ledgerId, entryId, location));
+                if (locations.size() >= MAX_LOCATIONS_PER_FILE) {
+                    writeSortedFile();
+                }
+            }
+
+            @Override
+            public boolean accept(long ledgerId) {
+                return activeLedgers.contains(ledgerId);
+            }
+
+            void writeSortedFile() throws IOException {
+                if (locations.isEmpty()) {
+                    return;
+                }
+
+                // The sort is stable, so the last copy of an entry is still the last one within its key
+                locations.sort(LOCATIONS_ORDER);
+
+                Path path = stagingPath.resolve(Long.toHexString(entryLogId) + "-" + sortedFilesCount
+                        + SORTED_FILE_SUFFIX);
+                try (SortedFileWriter writer = new SortedFileWriter(path.toString(), conf)) {
+                    int size = locations.size();
+                    for (int i = 0; i < size; i++) {
+                        EntryLocation l = locations.get(i);
+                        if (i + 1 < size && LOCATIONS_ORDER.compare(l, locations.get(i + 1)) == 0) {
+                            // The entry was added again later in the same entry log
+                            continue;
+                        }
+
+                        LongPairWrapper key = LongPairWrapper.get(l.ledger, l.entry);
+                        LongWrapper value = LongWrapper.get(l.location);
+                        try {
+                            writer.put(key.array, value.array);
+                        } finally {
+                            key.recycle();
+                            value.recycle();
+                        }
+                    }
+                    writer.finish();
+                }
+
+                ++sortedFilesCount;
+                locations.clear();
+            }
+        }
+    }
+
+    // Sorted files are named <entryLogId>-<index>.sst and completion markers <entryLogId>.done
+    private static long parseEntryLogId(Path file) {
+        String name = file.getFileName().toString();
+        int end = name.indexOf('-');
+        return Long.parseLong(name.substring(0, end >= 0 ? end : name.indexOf('.')), 16);
+    }
+
+    private static int parseSortedFileIndex(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(name.indexOf('-') + 1, name.indexOf('.')));
     }
 
     private Set<Long> getActiveLedgers(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath)
@@ -0,0 +1,111 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.util.Map.Entry;
+import java.util.function.BiConsumer;
+
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.EntryLogMetadataMap;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entry log metadata map persisted in a local key-value store, so that the garbage collector doesn't need to read
+ * again all the entry logs after a restart.
+ *
+ * <p>The key is the entry log id and the value is the serialized {@link EntryLogMetadata}. Nothing is kept in memory:
+ * the metadata is read from the store every time it's needed.
+ */
+public class PersistentEntryLogMetadataMap implements EntryLogMetadataMap {
+
+    private final KeyValueStorage metadataDb;
+
+    public PersistentEntryLogMetadataMap(ServerConfiguration conf, String basePath) throws IOException {
+        this(conf, KeyValueStorageRocksDB.factory, basePath);
+    }
+
+    PersistentEntryLogMetadataMap(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath)
+            throws IOException {
+        log.info("Loading the entry log metadata cache from {}", basePath);
+        metadataDb = storageFactory.newKeyValueStorage(basePath, "entrylogIndexCache", DbConfigType.Small, conf);
+    }
+
+    @Override
+    public boolean containsKey(long entryLogId) throws IOException {
+        return metadataDb.get(toKey(entryLogId)) != null;
+    }
+
+    @Override
+    public void put(long entryLogId, EntryLogMetadata entryLogMeta) throws IOException {
+        ByteBuf buf = Unpooled.buffer(entryLogMeta.getSerializedSize());
+        try {
+            entryLogMeta.serialize(buf);
+            metadataDb.put(toKey(entryLogId), buf.array());
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<Long, EntryLogMetadata> action) throws IOException {
+        CloseableIterator<Entry<byte[], byte[]>> iterator = metadataDb.iterator();
+        try {
+            while (iterator.hasNext()) {
+                Entry<byte[], byte[]> entry = iterator.next();
+                long entryLogId = ArrayUtil.getLong(entry.getKey(), 0);
+                action.accept(entryLogId, EntryLogMetadata.deserialize(Unpooled.wrappedBuffer(entry.getValue())));
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+
+    @Override
+    public void remove(long entryLogId) throws IOException {
+        metadataDb.delete(toKey(entryLogId));
+    }
+
+    @Override
+    public int size() throws IOException {
+        return (int) metadataDb.count();
+    }
+
+    @Override
+    public void close() throws IOException {
+        metadataDb.close();
+    }
+
+    private static byte[] toKey(long entryLogId) {
+        byte[] key = new byte[Long.BYTES];
+        ArrayUtil.setLong(key, 0, entryLogId);
+        return key;
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(PersistentEntryLogMetadataMap.class);
+}
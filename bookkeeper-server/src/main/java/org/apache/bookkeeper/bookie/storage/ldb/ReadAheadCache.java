@@ -0,0 +1,70 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.Closeable;
+
+/**
+ * Cache used by {@link SingleDirectoryDbLedgerStorage} to hold entries read speculatively from the entry logs.
+ */
+interface ReadAheadCache extends Closeable {
+
+    /**
+     * Listener of the reads served by the entries that were offered with {@link #putReadAhead}.
+     */
+    interface ReadAheadHitListener {
+        void onReadAheadHit(long ledgerId, int entrySize);
+    }
+
+    /**
+     * Offer an entry to the cache.
+     *
+     * <p>The implementation is free to not retain the entry. The passed buffer is not retained and it's still owned
+     * by the caller.
+     */
+    void put(long ledgerId, long entryId, ByteBuf entry);
+
+    /**
+     * Offer an entry that was read ahead, before any reader asked for it. The reads it serves are reported to the
+     * {@link ReadAheadHitListener} of the cache.
+     */
+    void putReadAhead(long ledgerId, long entryId, ByteBuf entry);
+
+    /**
+     * @return a copy of the cached entry or null if the entry is not in the cache
+     */
+    ByteBuf get(long ledgerId, long entryId);
+
+    /**
+     * @return the total size of cached entries
+     */
+    long size();
+
+    /**
+     * @return the total number of cached entries
+     */
+    long count();
+
+    @Override
+    void close();
+}
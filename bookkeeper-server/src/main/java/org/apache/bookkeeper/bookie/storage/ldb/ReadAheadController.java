@@ -0,0 +1,174 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Decides, on each read-ahead cache miss, how many entries should be read ahead for a ledger.
+ *
+ * <p>The access pattern of each ledger is tracked across misses. When a miss happens right after the entries that
+ * were read ahead, and most of them were served from the cache, the reader is sequential and the batch size is
+ * doubled, up to the max batch size. Any other miss shrinks the batch size, until read-ahead is disabled for the
+ * ledger. It's enabled again as soon as the ledger is read sequentially.
+ *
+ * <p>The read-ahead windows of all the ledgers, estimated in bytes from the average size of their entries, are
+ * capped by a global budget, so that many sequential readers cannot thrash the read cache.
+ */
+class ReadAheadController {
+
+    // Ledgers not read for this time are forgotten
+    private static final long IDLE_LEDGER_TIME_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final int initialBatchSize;
+    private final int maxBatchSize;
+    private final long maxBytes;
+
+    private final ConcurrentLongHashMap<LedgerReadAhead> ledgers = new ConcurrentLongHashMap<>(16 * 1024,
+            Runtime.getRuntime().availableProcessors());
+
+    // Sum of the read-ahead windows of all the ledgers
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    ReadAheadController(int initialBatchSize, int maxBatchSize, long maxBytes) {
+        this.initialBatchSize = initialBatchSize;
+        this.maxBatchSize = Math.max(initialBatchSize, maxBatchSize);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Record a read-ahead cache miss.
+     *
+     * @param entrySize the size of the entry that was read from the entry log
+     * @return the number of entries to read ahead after this one
+     */
+    int onCacheMiss(long ledgerId, long entryId, int entrySize) {
+        LedgerReadAhead ledger = ledgers.computeIfAbsent(ledgerId, id -> new LedgerReadAhead());
+        return ledger.onCacheMiss(entryId, entrySize);
+    }
+
+    /**
+     * Record the entries inserted in the read-ahead cache after a miss.
+     *
+     * @param nextEntryId the entry following the last one that was read ahead
+     */
+    void onReadAhead(long ledgerId, long nextEntryId, long bytes) {
+        LedgerReadAhead ledger = ledgers.get(ledgerId);
+        if (ledger != null) {
+            ledger.onReadAhead(nextEntryId, bytes);
+        }
+    }
+
+    /**
+     * Record an entry that was read ahead, served from the read-ahead cache.
+     */
+    void onCacheHit(long ledgerId, int entrySize) {
+        LedgerReadAhead ledger = ledgers.get(ledgerId);
+        if (ledger != null) {
+            ledger.onCacheHit(entrySize);
+        }
+    }
+
+    void removeLedger(long ledgerId) {
+        LedgerReadAhead ledger = ledgers.remove(ledgerId);
+        if (ledger != null) {
+            ledger.release();
+        }
+    }
+
+    void removeIdleLedgers() {
+        long now = System.nanoTime();
+        ledgers.removeIf((ledgerId, ledger) -> {
+            if (now - ledger.lastAccessNanos > IDLE_LEDGER_TIME_NANOS) {
+                ledger.release();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private final class LedgerReadAhead {
+        private int batchSize = initialBatchSize;
+        private long windowBytes = 0;
+        private long averageEntrySize = 0;
+
+        // First entry after the last read-ahead batch, where a sequential reader will miss next
+        private long nextEntryId = -1;
+        private long prefetchedBytes = 0;
+        private long servedBytes = 0;
+        private boolean released = false;
+
+        private volatile long lastAccessNanos = System.nanoTime();
+
+        synchronized int onCacheMiss(long entryId, int entrySize) {
+            lastAccessNanos = System.nanoTime();
+            averageEntrySize = averageEntrySize == 0 ? entrySize : (averageEntrySize * 7 + entrySize) / 8;
+
+            if (nextEntryId != -1) {
+                boolean sequential = entryId == nextEntryId;
+                // At least half of the bytes read ahead were actually read
+                boolean efficient = servedBytes * 2 >= prefetchedBytes;
+
+                if (sequential && efficient) {
+                    batchSize = batchSize == 0 ? initialBatchSize : Math.min(batchSize * 2, maxBatchSize);
+                } else {
+                    batchSize /= 4;
+                }
+            }
+
+            // Fit the read-ahead window of the ledger in the global budget
+            long newWindowBytes = batchSize * averageEntrySize;
+            long availableBytes = maxBytes - reservedBytes.get() + windowBytes;
+            if (newWindowBytes > availableBytes) {
+                batchSize = (int) Math.max(0, availableBytes / Math.max(1, averageEntrySize));
+                newWindowBytes = batchSize * averageEntrySize;
+            }
+            if (!released) {
+                reservedBytes.addAndGet(newWindowBytes - windowBytes);
+                windowBytes = newWindowBytes;
+            }
+
+            nextEntryId = entryId + 1;
+            prefetchedBytes = 0;
+            servedBytes = 0;
+            return batchSize;
+        }
+
+        synchronized void onReadAhead(long nextEntryId, long bytes) {
+            this.nextEntryId = nextEntryId;
+            this.prefetchedBytes += bytes;
+        }
+
+        synchronized void onCacheHit(int entrySize) {
+            lastAccessNanos = System.nanoTime();
+            servedBytes += entrySize;
+        }
+
+        synchronized void release() {
+            released = true;
+            reservedBytes.addAndGet(-windowBytes);
+            windowBytes = 0;
+        }
+    }
+}
@@ -26,7 +26,6 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 
-import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -45,10 +44,13 @@ import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.Long
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
  */
-public class ReadCache implements Closeable {
+public class ReadCache implements ReadAheadCache {
 
     private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
+    // Set in the indexed size of the entries that were read ahead
+    private static final long READ_AHEAD_FLAG = 1L << 32;
+
     private final List<ByteBuf> cacheSegments;
     private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
 
@@ -58,6 +60,7 @@ public class ReadCache implements Closeable {
     private final int segmentSize;
 
     private ByteBufAllocator allocator;
+    private final ReadAheadHitListener readAheadHitListener;
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
@@ -65,7 +68,20 @@ public class ReadCache implements Closeable {
     }
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, null);
+    }
+
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, ReadAheadHitListener readAheadHitListener) {
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE, readAheadHitListener);
+    }
+
+    /**
+     * @param readAheadHitListener notified of the reads of the entries put with {@link #putReadAhead}, or null
+     */
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize,
+                     ReadAheadHitListener readAheadHitListener) {
         this.allocator = allocator;
+        this.readAheadHitListener = readAheadHitListener;
         int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
         segmentSize = (int) (maxCacheSize / segmentsCount);
 
@@ -83,7 +99,17 @@ public class ReadCache implements Closeable {
         cacheSegments.forEach(ByteBuf::release);
     }
 
+    @Override
     public void put(long ledgerId, long entryId, ByteBuf entry) {
+        put(ledgerId, entryId, entry, 0);
+    }
+
+    @Override
+    public void putReadAhead(long ledgerId, long entryId, ByteBuf entry) {
+        put(ledgerId, entryId, entry, READ_AHEAD_FLAG);
+    }
+
+    private void put(long ledgerId, long entryId, ByteBuf entry, long flags) {
         int entrySize = entry.readableBytes();
         int alignedSize = align64(entrySize);
 
@@ -97,7 +123,7 @@ public class ReadCache implements Closeable {
                 // Copy entry into read cache segment
                 cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(),
                         entry.readableBytes());
-                cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
+                cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize | flags);
                 return;
             }
         } finally {
@@ -120,12 +146,13 @@ public class ReadCache implements Closeable {
 
             // Copy entry into read cache segment
             cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
-            cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
+            cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize | flags);
         } finally {
             lock.writeLock().unlock();
         }
     }
 
+    @Override
     public ByteBuf get(long ledgerId, long entryId) {
         lock.readLock().lock();
 
@@ -144,6 +171,9 @@ public class ReadCache implements Closeable {
 
                     ByteBuf entry = allocator.directBuffer(entryLen, entryLen);
                     entry.writeBytes(cacheSegments.get(segmentIdx), entryOffset, entryLen);
+                    if ((res.second & READ_AHEAD_FLAG) != 0 && readAheadHitListener != null) {
+                        readAheadHitListener.onReadAheadHit(ledgerId, entryLen);
+                    }
                     return entry;
                 }
             }
@@ -158,6 +188,7 @@ public class ReadCache implements Closeable {
     /**
      * @return the total size of cached entries
      */
+    @Override
     public long size() {
         lock.readLock().lock();
 
@@ -182,6 +213,7 @@ public class ReadCache implements Closeable {
     /**
      * @return the total number of cached entries
      */
+    @Override
     public long count() {
         lock.readLock().lock();
 
@@ -0,0 +1,350 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.align64;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+
+/**
+ * Read cache implementation that is resistant to sequential scans.
+ *
+ * <p>The memory is splitted in multiple independent stripes, selected by hashing the (ledgerId, entryId) pair. Each
+ * stripe is a ring of segments, exactly like {@link ReadCache}, with its own lock, so that readers and writers
+ * touching different stripes never contend with each other.
+ *
+ * <p>Once a stripe is about to reuse a segment, every new entry is subject to a TinyLFU admission policy: the
+ * estimated access frequency of the candidate is compared with the ones of a sample of the entries in the segment
+ * that will be evicted next, and the candidate is only admitted if it's accessed at least as often as all of them.
+ * Entries brought in by the read-ahead of a long catch-up read are not accessed before being inserted, so they're
+ * admitted as if they were accessed once: they keep replacing the entries that were read at most once, like the
+ * previous read-ahead entries, but they cannot wipe out the entries that are frequently read by tailing readers.
+ */
+public class ScanResistantReadCache implements ReadAheadCache {
+
+    private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
+
+    // Number of entries sampled per segment, used to pick admission victims
+    private static final int VICTIM_SAMPLES = 16;
+
+    // Expected average entry size, used to size the frequency sketch
+    private static final int EXPECTED_ENTRY_SIZE = 1024;
+
+    // Frequency a read-ahead entry is admitted with, if it wasn't accessed yet
+    private static final int READ_AHEAD_FREQUENCY = 1;
+
+    // Set in the indexed size of the entries that were read ahead
+    private static final long READ_AHEAD_FLAG = 1L << 32;
+
+    private final Stripe[] stripes;
+    private final int stripesMask;
+    private final FrequencySketch sketch;
+    private final Counter admissionRejects;
+    private final ReadAheadHitListener readAheadHitListener;
+
+    private final ByteBufAllocator allocator;
+
+    public ScanResistantReadCache(ByteBufAllocator allocator, long maxCacheSize, int stripesCount,
+                                  Counter admissionRejects, ReadAheadHitListener readAheadHitListener) {
+        this(allocator, maxCacheSize, stripesCount, DEFAULT_MAX_SEGMENT_SIZE, admissionRejects, readAheadHitListener);
+    }
+
+    /**
+     * @param readAheadHitListener notified of the reads of the entries put with {@link #putReadAhead}, or null
+     */
+    public ScanResistantReadCache(ByteBufAllocator allocator, long maxCacheSize, int stripesCount,
+                                  int maxSegmentSize, Counter admissionRejects,
+                                  ReadAheadHitListener readAheadHitListener) {
+        checkArgument(stripesCount > 0);
+
+        this.allocator = allocator;
+        this.admissionRejects = admissionRejects;
+        this.readAheadHitListener = readAheadHitListener;
+
+        int alignedStripesCount = (int) WriteCache.alignToPowerOfTwo(stripesCount);
+        this.stripes = new Stripe[alignedStripesCount];
+        this.stripesMask = alignedStripesCount - 1;
+
+        long stripeSize = maxCacheSize / alignedStripesCount;
+        for (int i = 0; i < alignedStripesCount; i++) {
+            stripes[i] = new Stripe(stripeSize, maxSegmentSize);
+        }
+
+        this.sketch = new FrequencySketch(Math.max(1, maxCacheSize / EXPECTED_ENTRY_SIZE));
+    }
+
+    @Override
+    public void close() {
+        for (Stripe stripe : stripes) {
+            stripe.close();
+        }
+    }
+
+    @Override
+    public void put(long ledgerId, long entryId, ByteBuf entry) {
+        put(ledgerId, entryId, entry, 0, 0);
+    }
+
+    @Override
+    public void putReadAhead(long ledgerId, long entryId, ByteBuf entry) {
+        put(ledgerId, entryId, entry, READ_AHEAD_FREQUENCY, READ_AHEAD_FLAG);
+    }
+
+    private void put(long ledgerId, long entryId, ByteBuf entry, int minFrequency, long flags) {
+        Stripe stripe = stripeFor(ledgerId, entryId);
+        if (!stripe.admit(ledgerId, entryId, minFrequency)) {
+            admissionRejects.inc();
+            return;
+        }
+
+        stripe.put(ledgerId, entryId, entry, flags);
+    }
+
+    @Override
+    public ByteBuf get(long ledgerId, long entryId) {
+        // Every lookup counts as an access, whether it's a hit or a miss, so that an entry that was read
+        // from the entry log after a miss will have an history when it's offered to the cache
+        sketch.increment(ledgerId, entryId);
+        return stripeFor(ledgerId, entryId).get(ledgerId, entryId);
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    @Override
+    public long count() {
+        long count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.count();
+        }
+        return count;
+    }
+
+    private Stripe stripeFor(long ledgerId, long entryId) {
+        long h = ledgerId * 31 + entryId;
+        h ^= h >>> 32;
+        h ^= h >>> 16;
+        return stripes[(int) h & stripesMask];
+    }
+
+    private final class Stripe {
+        private final ByteBuf[] cacheSegments;
+        private final ConcurrentLongLongPairHashMap[] cacheIndexes;
+
+        // For each segment, a sample of the (ledgerId, entryId) pairs stored in it
+        private final long[][] victimSamples;
+
+        private int currentSegmentIdx;
+        private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+
+        private final int segmentSize;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        Stripe(long maxStripeSize, int maxSegmentSize) {
+            int segmentsCount = Math.max(2, (int) (maxStripeSize / maxSegmentSize));
+            segmentSize = (int) (maxStripeSize / segmentsCount);
+
+            cacheSegments = new ByteBuf[segmentsCount];
+            cacheIndexes = new ConcurrentLongLongPairHashMap[segmentsCount];
+            victimSamples = new long[segmentsCount][];
+
+            for (int i = 0; i < segmentsCount; i++) {
+                cacheSegments[i] = Unpooled.directBuffer(segmentSize, segmentSize);
+                cacheIndexes[i] = new ConcurrentLongLongPairHashMap(1024, 4);
+                victimSamples[i] = newVictimSamples();
+            }
+        }
+
+        void close() {
+            for (ByteBuf segment : cacheSegments) {
+                segment.release();
+            }
+        }
+
+        /**
+         * TinyLFU admission check. As long as the next segment in the ring is empty, there is nothing to evict and
+         * every entry is admitted.
+         *
+         * @param minFrequency frequency the candidate is compared with, if it was accessed less often
+         */
+        boolean admit(long ledgerId, long entryId, int minFrequency) {
+            long[] samples;
+            lock.readLock().lock();
+            try {
+                int nextSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.length;
+                if (cacheIndexes[nextSegmentIdx].isEmpty()) {
+                    return true;
+                }
+
+                samples = victimSamples[nextSegmentIdx];
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            // The whole segment is going to be evicted at once, so the candidate is compared with the most
+            // frequently accessed entry among the sampled ones
+            int candidateFrequency = Math.max(minFrequency, sketch.frequency(ledgerId, entryId));
+            for (int i = 0; i < samples.length; i += 2) {
+                long victimLedgerId = samples[i];
+                long victimEntryId = samples[i + 1];
+                if (victimLedgerId >= 0 && sketch.frequency(victimLedgerId, victimEntryId) > candidateFrequency) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        void put(long ledgerId, long entryId, ByteBuf entry, long flags) {
+            int entrySize = entry.readableBytes();
+            int alignedSize = align64(entrySize);
+
+            lock.readLock().lock();
+
+            try {
+                int offset = currentSegmentOffset.getAndAdd(alignedSize);
+                if (offset + entrySize <= segmentSize) {
+                    insert(currentSegmentIdx, offset, ledgerId, entryId, entry, flags);
+                    return;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            // We could not insert in segment, we need to get the write lock and roll-over to next segment
+            lock.writeLock().lock();
+
+            try {
+                int offset = currentSegmentOffset.getAndAdd(alignedSize);
+                if (offset + entrySize > segmentSize) {
+                    // Rollover to next segment
+                    currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.length;
+                    currentSegmentOffset.set(alignedSize);
+                    cacheIndexes[currentSegmentIdx].clear();
+                    victimSamples[currentSegmentIdx] = newVictimSamples();
+                    offset = 0;
+                }
+
+                insert(currentSegmentIdx, offset, ledgerId, entryId, entry, flags);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void insert(int segmentIdx, int offset, long ledgerId, long entryId, ByteBuf entry, long flags) {
+            int entrySize = entry.readableBytes();
+            cacheSegments[segmentIdx].setBytes(offset, entry, entry.readerIndex(), entrySize);
+            cacheIndexes[segmentIdx].put(ledgerId, entryId, offset, entrySize | flags);
+
+            // Keep the sample spread over the whole segment. Racing writers might leave a torn pair in a slot, which
+            // only results in a less accurate victim
+            int sampleIdx = (int) ((long) offset * VICTIM_SAMPLES / segmentSize) * 2;
+            long[] samples = victimSamples[segmentIdx];
+            samples[sampleIdx] = ledgerId;
+            samples[sampleIdx + 1] = entryId;
+        }
+
+        ByteBuf get(long ledgerId, long entryId) {
+            lock.readLock().lock();
+
+            try {
+                // Check all the segments, starting from the current one and looking backward to minimize the checks
+                // for recently inserted entries
+                int size = cacheSegments.length;
+                for (int i = 0; i < size; i++) {
+                    int segmentIdx = (currentSegmentIdx + (size - i)) % size;
+
+                    LongPair res = cacheIndexes[segmentIdx].get(ledgerId, entryId);
+                    if (res != null) {
+                        int entryOffset = (int) res.first;
+                        int entryLen = (int) res.second;
+
+                        ByteBuf entry = allocator.directBuffer(entryLen, entryLen);
+                        entry.writeBytes(cacheSegments[segmentIdx], entryOffset, entryLen);
+                        if ((res.second & READ_AHEAD_FLAG) != 0 && readAheadHitListener != null) {
+                            readAheadHitListener.onReadAheadHit(ledgerId, entryLen);
+                        }
+                        return entry;
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            return null;
+        }
+
+        long size() {
+            lock.readLock().lock();
+
+            try {
+                long size = 0;
+                for (int i = 0; i < cacheIndexes.length; i++) {
+                    if (i == currentSegmentIdx) {
+                        size += Math.min(segmentSize, currentSegmentOffset.get());
+                    } else if (!cacheIndexes[i].isEmpty()) {
+                        size += segmentSize;
+                    }
+                }
+                return size;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        long count() {
+            lock.readLock().lock();
+
+            try {
+                long count = 0;
+                for (ConcurrentLongLongPairHashMap index : cacheIndexes) {
+                    count += index.size();
+                }
+                return count;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    private static long[] newVictimSamples() {
+        long[] samples = new long[VICTIM_SAMPLES * 2];
+        Arrays.fill(samples, -1L);
+        return samples;
+    }
+}
@@ -24,6 +24,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
 import com.google.protobuf.ByteString;
 
 import io.netty.buffer.ByteBuf;
@@ -33,19 +34,21 @@ import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.StampedLock;
 
-import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
 import org.apache.bookkeeper.bookie.BookieException;
 import org.apache.bookkeeper.bookie.BookieException.OperationRejectedException;
@@ -53,7 +56,10 @@ import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
 import org.apache.bookkeeper.bookie.CompactableLedgerStorage;
+import org.apache.bookkeeper.bookie.CompactionRateLimiter;
 import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.bookie.EntryLogTieringStatus;
+import org.apache.bookkeeper.bookie.EntryLogTieringThread;
 import org.apache.bookkeeper.bookie.EntryLogger;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.GarbageCollectorThread;
@@ -73,7 +79,7 @@ import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
-import org.apache.commons.lang.mutable.MutableLong;
+import org.apache.commons.lang3.mutable.MutableLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -92,6 +98,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final ConcurrentLongHashMap<TransientLedgerInfo> transientLedgerInfoCache;
 
     private final GarbageCollectorThread gcThread;
+    // Null if the entry log tiering is disabled
+    private final EntryLogTieringThread tieringThread;
 
     // Write cache where all new entries are inserted into
     protected volatile WriteCache writeCache;
@@ -99,8 +107,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     // Write cache that is used to swap with writeCache during flushes
     protected volatile WriteCache writeCacheBeingFlushed;
 
+    // Write cache that was filled up while a flush was ongoing and that is waiting to be flushed next, or an empty
+    // spare cache. This is only used when triple buffering is enabled, and it's null otherwise
+    protected volatile WriteCache writeCacheQueuedForFlush;
+
     // Cache where we insert entries for speculative reading
-    private final ReadCache readCache;
+    private final ReadAheadCache readCache;
 
     private final StampedLock writeCacheRotationLock = new StampedLock();
 
@@ -111,6 +123,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private final ExecutorService executor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("db-storage"));
 
+    // Executors for the flush stages that are overlapped with the appends to the entry log
+    private final ExecutorService flushIndexExecutor = Executors
+            .newSingleThreadExecutor(new DefaultThreadFactory("db-storage-flush-index"));
+    private final ExecutorService flushMetadataExecutor = Executors
+            .newSingleThreadExecutor(new DefaultThreadFactory("db-storage-flush-metadata"));
+
+    // Executor used to sort the write cache queued for flush, while the ongoing flush is still running
+    private final ExecutorService sortQueuedWriteCacheExecutor = Executors
+            .newSingleThreadExecutor(new DefaultThreadFactory("db-storage-sort-queued-write-cache"));
+
     // Executor used to for db index cleanup
     private final ScheduledExecutorService cleanupExecutor = Executors
             .newSingleThreadScheduledExecutor(new DefaultThreadFactory("db-storage-cleanup"));
@@ -132,15 +154,42 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
 
+    static final String READ_AHEAD_CACHE_ADAPTIVE_ENABLED = "dbStorage_readAheadCacheAdaptiveEnabled";
+    static final String READ_AHEAD_CACHE_MAX_BATCH_SIZE = "dbStorage_readAheadCacheMaxBatchSize";
+
+    static final String READ_AHEAD_CACHE_ADMISSION_POLICY_ENABLED = "dbStorage_readAheadCacheAdmissionPolicyEnabled";
+    static final String READ_AHEAD_CACHE_STRIPES = "dbStorage_readAheadCacheStripes";
+
+    static final String WRITE_CACHE_TRIPLE_BUFFERING_ENABLED = "dbStorage_writeCacheTripleBufferingEnabled";
+
+    // Number of entry locations handed over at once to the flush-index thread
+    private static final int FLUSH_LOCATIONS_CHUNK_SIZE = 4096;
+
+    // Bounds for the size of the single reads used to fetch sequences of entries from the entry logs
+    private static final int MIN_BULK_READ_SIZE = 64 * 1024;
+    private static final int MAX_BULK_READ_SIZE = 1024 * 1024;
+
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
     private final long maxReadAheadBytesSize;
 
+    // Null unless the read-ahead is adaptive
+    private final ReadAheadController readAheadController;
+
     public SingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
             LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager, StateManager stateManager,
             CheckpointSource checkpointSource, Checkpointer checkpointer, StatsLogger statsLogger,
             ByteBufAllocator allocator, ScheduledExecutorService gcExecutor, long writeCacheSize, long readCacheSize)
             throws IOException {
+        this(conf, ledgerManager, ledgerDirsManager, indexDirsManager, stateManager, checkpointSource, checkpointer,
+                statsLogger, allocator, gcExecutor, writeCacheSize, readCacheSize, null, null);
+    }
+
+    public SingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
+            LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager, StateManager stateManager,
+            CheckpointSource checkpointSource, Checkpointer checkpointer, StatsLogger statsLogger,
+            ByteBufAllocator allocator, ScheduledExecutorService gcExecutor, long writeCacheSize, long readCacheSize,
+            CompactionRateLimiter compactionRateLimiter, RateLimiter tieringRateLimiter) throws IOException {
 
         checkArgument(ledgerDirsManager.getAllLedgerDirs().size() == 1,
                 "Db implementation only allows for one storage dir");
@@ -149,8 +198,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         log.info("Creating single directory db ledger storage on {}", baseDir);
 
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        boolean tripleBuffering = conf.getBoolean(WRITE_CACHE_TRIPLE_BUFFERING_ENABLED, false);
+        long writeCacheBufferSize = writeCacheMaxSize / (tripleBuffering ? 3 : 2);
+        this.writeCache = new WriteCache(allocator, writeCacheBufferSize);
+        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheBufferSize);
+        this.writeCacheQueuedForFlush = tripleBuffering ? new WriteCache(allocator, writeCacheBufferSize) : null;
 
         this.checkpointSource = checkpointSource;
 
@@ -160,14 +212,21 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // Do not attempt to perform read-ahead more than half the total size of the cache
         maxReadAheadBytesSize = readCacheMaxSize / 2;
 
+        if (conf.getBoolean(READ_AHEAD_CACHE_ADAPTIVE_ENABLED, false)) {
+            int maxBatchSize = conf.getInt(READ_AHEAD_CACHE_MAX_BATCH_SIZE, 10 * readAheadCacheBatchSize);
+            readAheadController = new ReadAheadController(readAheadCacheBatchSize, maxBatchSize,
+                    maxReadAheadBytesSize);
+        } else {
+            readAheadController = null;
+        }
+
         long maxThrottleTimeMillis = conf.getLong(DbLedgerStorage.MAX_THROTTLE_TIME_MILLIS,
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
-
         ledgerIndex = new LedgerMetadataIndex(conf, KeyValueStorageRocksDB.factory, baseDir, statsLogger);
-        entryLocationIndex = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, baseDir, statsLogger);
+        entryLocationIndex = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, baseDir, statsLogger,
+                allocator);
 
         transientLedgerInfoCache = new ConcurrentLongHashMap<>(16 * 1024,
                 Runtime.getRuntime().availableProcessors() * 2);
@@ -176,15 +235,30 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
 
         entryLogger = new EntryLogger(conf, ledgerDirsManager, null, statsLogger, allocator);
-        gcThread = new GarbageCollectorThread(conf, ledgerManager, this, statsLogger);
+        gcThread = new GarbageCollectorThread(conf, ledgerManager, this, statsLogger,
+                Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("GarbageCollectorThread")),
+                compactionRateLimiter);
+        tieringThread = conf.isEntryLogTieringEnabled()
+                ? new EntryLogTieringThread(conf, entryLogger, tieringRateLimiter, statsLogger.scope("tiering"))
+                : null;
 
         dbLedgerStorageStats = new DbLedgerStorageStats(
             statsLogger,
-            () -> writeCache.size() + writeCacheBeingFlushed.size(),
-            () -> writeCache.count() + writeCacheBeingFlushed.count(),
-            () -> readCache.size(),
-            () -> readCache.count()
+            this::getWriteCacheSize,
+            this::getWriteCacheCount,
+            this::getReadCacheSize,
+            this::getReadCacheCount
         );
+
+        if (conf.getBoolean(READ_AHEAD_CACHE_ADMISSION_POLICY_ENABLED, false)) {
+            int stripes = conf.getInt(READ_AHEAD_CACHE_STRIPES, Runtime.getRuntime().availableProcessors());
+            log.info("Using scan resistant read cache with {} stripes", stripes);
+            readCache = new ScanResistantReadCache(allocator, readCacheMaxSize, stripes,
+                    dbLedgerStorageStats.getReadAheadCacheAdmissionRejects(), this::onReadAheadHit);
+        } else {
+            readCache = new ReadCache(allocator, readCacheMaxSize, this::onReadAheadHit);
+        }
+
         ledgerDirsManager.addLedgerDirsListener(getLedgerDirsListener());
     }
 
@@ -208,11 +282,18 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             return isStale;
         });
+
+        if (readAheadController != null) {
+            readAheadController.removeIdleLedgers();
+        }
     }
 
     @Override
     public void start() {
         gcThread.start();
+        if (tieringThread != null) {
+            tieringThread.start();
+        }
     }
 
     @Override
@@ -231,6 +312,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             flush();
 
             gcThread.shutdown();
+            if (tieringThread != null) {
+                tieringThread.shutdown();
+            }
             entryLogger.shutdown();
 
             cleanupExecutor.shutdown();
@@ -241,8 +325,14 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             writeCache.close();
             writeCacheBeingFlushed.close();
+            if (writeCacheQueuedForFlush != null) {
+                writeCacheQueuedForFlush.close();
+            }
             readCache.close();
             executor.shutdown();
+            flushIndexExecutor.shutdown();
+            flushMetadataExecutor.shutdown();
+            sortQueuedWriteCacheExecutor.shutdown();
 
         } catch (IOException e) {
             log.error("Error closing db storage", e);
@@ -251,16 +341,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     @Override
     public boolean ledgerExists(long ledgerId) throws IOException {
-        try {
-            LedgerData ledgerData = ledgerIndex.get(ledgerId);
-            if (log.isDebugEnabled()) {
-                log.debug("Ledger exists. ledger: {} : {}", ledgerId, ledgerData.getExists());
-            }
-            return ledgerData.getExists();
-        } catch (Bookie.NoLedgerException nle) {
-            // ledger does not exist
-            return false;
+        boolean exists = ledgerIndex.exists(ledgerId);
+        if (log.isDebugEnabled()) {
+            log.debug("Ledger exists. ledger: {} : {}", ledgerId, exists);
         }
+        return exists;
     }
 
     @Override
@@ -268,7 +353,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         if (log.isDebugEnabled()) {
             log.debug("isFenced. ledger: {}", ledgerId);
         }
-        return ledgerIndex.get(ledgerId).getFenced();
+        return ledgerIndex.isFenced(ledgerId);
     }
 
     @Override
@@ -357,13 +442,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             if (!isFlushOngoing.get() && hasFlushBeenTriggered.compareAndSet(false, true)) {
                 // Trigger an early flush in background
                 log.info("Write cache is full, triggering flush");
-                executor.execute(() -> {
-                        try {
-                            flush();
-                        } catch (IOException e) {
-                            log.error("Error during flush", e);
-                        }
-                    });
+                triggerFlush();
             }
 
             long stamp = writeCacheRotationLock.readLock();
@@ -376,6 +455,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 writeCacheRotationLock.unlockRead(stamp);
             }
 
+            if (queueFullWriteCache()) {
+                // There is an empty write cache now, try again right away
+                continue;
+            }
+
             // Wait some time and try again
             try {
                 Thread.sleep(1);
@@ -390,6 +474,54 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         throw new OperationRejectedException();
     }
 
+    /**
+     * When triple buffering is enabled, park the full write cache so that it gets flushed next and replace it with the
+     * spare one, so that writes don't need to wait for the ongoing flush to complete.
+     *
+     * @return true if the write cache was replaced
+     */
+    private boolean queueFullWriteCache() {
+        if (writeCacheQueuedForFlush == null) {
+            return false;
+        }
+
+        WriteCache queuedWriteCache;
+        long stamp = writeCacheRotationLock.writeLock();
+        try {
+            if (!writeCacheQueuedForFlush.isEmpty() || writeCache.isEmpty()) {
+                // There is already a write cache waiting to be flushed or the write cache was just rotated
+                return false;
+            }
+
+            queuedWriteCache = writeCache;
+            writeCache = writeCacheQueuedForFlush;
+            writeCacheQueuedForFlush = queuedWriteCache;
+        } finally {
+            writeCacheRotationLock.unlockWrite(stamp);
+        }
+
+        log.info("Write cache is full, queueing it for flush");
+
+        // Sort the queued entries while the ongoing flush is still writing and syncing
+        sortQueuedWriteCacheExecutor.execute(queuedWriteCache::sort);
+
+        // Make sure the queued write cache gets flushed as soon as the ongoing flush is done, rather than waiting for
+        // the next checkpoint or for the current write cache to fill up. The flush executor is single-threaded, so
+        // this runs after the flush that is currently ongoing
+        triggerFlush();
+        return true;
+    }
+
+    private void triggerFlush() {
+        executor.execute(() -> {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    log.error("Error during flush", e);
+                }
+            });
+    }
+
     @Override
     public ByteBuf getEntry(long ledgerId, long entryId) throws IOException {
         long startTime = MathUtils.nowInNano();
@@ -406,12 +538,14 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
         long stamp = writeCacheRotationLock.tryOptimisticRead();
         WriteCache localWriteCache = writeCache;
+        WriteCache localWriteCacheQueuedForFlush = writeCacheQueuedForFlush;
         WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
         if (!writeCacheRotationLock.validate(stamp)) {
             // Fallback to regular read lock approach
             stamp = writeCacheRotationLock.readLock();
             try {
                 localWriteCache = writeCache;
+                localWriteCacheQueuedForFlush = writeCacheQueuedForFlush;
                 localWriteCacheBeingFlushed = writeCacheBeingFlushed;
             } finally {
                 writeCacheRotationLock.unlockRead(stamp);
@@ -426,6 +560,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return entry;
         }
 
+        // The entry might be in a full write cache waiting for the ongoing flush to complete
+        if (localWriteCacheQueuedForFlush != null) {
+            entry = localWriteCacheQueuedForFlush.get(ledgerId, entryId);
+            if (entry != null) {
+                recordSuccessfulEvent(dbLedgerStorageStats.getReadCacheHitStats(), startTime);
+                recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+                return entry;
+            }
+        }
+
         // If there's a flush going on, the entry might be in the flush buffer
         entry = localWriteCacheBeingFlushed.get(ledgerId, entryId);
         if (entry != null) {
@@ -443,9 +587,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
 
         // Read from main storage
-        long entryLocation;
         try {
-            entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
+            long entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
             if (entryLocation == 0) {
                 throw new NoEntryException(ledgerId, entryId);
             }
@@ -458,51 +601,54 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         readCache.put(ledgerId, entryId, entry);
 
         // Try to read more entries
-        long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        int readAheadBatchSize = readAheadController != null
+                ? readAheadController.onCacheMiss(ledgerId, entryId, entry.readableBytes())
+                : readAheadCacheBatchSize;
+        if (readAheadBatchSize > 0) {
+            fillReadAheadCache(ledgerId, entryId + 1, readAheadBatchSize);
+        }
 
         recordSuccessfulEvent(dbLedgerStorageStats.getReadCacheMissStats(), startTime);
         recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
         return entry;
     }
 
-    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
+    private void onReadAheadHit(long ledgerId, int entrySize) {
+        dbLedgerStorageStats.getReadAheadServedBytes().add(entrySize);
+        if (readAheadController != null) {
+            readAheadController.onCacheHit(ledgerId, entrySize);
+        }
+    }
+
+    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, int batchSize) {
         try {
-            long firstEntryLogId = (firstEntryLocation >> 32);
-            long currentEntryLogId = firstEntryLogId;
-            long currentEntryLocation = firstEntryLocation;
             int count = 0;
             long size = 0;
+            long nextEntryId = firstEntryId;
 
-            while (count < readAheadCacheBatchSize
-                    && size < maxReadAheadBytesSize
-                    && currentEntryLogId == firstEntryLogId) {
-                ByteBuf entry = entryLogger.internalReadEntry(orginalLedgerId, firstEntryId, currentEntryLocation,
-                        false /* validateEntry */);
-
-                try {
-                    long currentEntryLedgerId = entry.getLong(0);
-                    long currentEntryId = entry.getLong(8);
-
-                    if (currentEntryLedgerId != orginalLedgerId) {
-                        // Found an entry belonging to a different ledger, stopping read-ahead
-                        break;
+            try {
+                for (ByteBuf entry : getEntries(orginalLedgerId, firstEntryId, firstEntryId + batchSize - 1,
+                        maxReadAheadBytesSize)) {
+                    try {
+                        // Insert entry in read cache
+                        readCache.putReadAhead(orginalLedgerId, nextEntryId, entry);
+
+                        count++;
+                        nextEntryId++;
+                        size += entry.readableBytes();
+                    } finally {
+                        entry.release();
                     }
-
-                    // Insert entry in read cache
-                    readCache.put(orginalLedgerId, currentEntryId, entry);
-
-                    count++;
-                    firstEntryId++;
-                    size += entry.readableBytes();
-
-                    currentEntryLocation += 4 + entry.readableBytes();
-                    currentEntryLogId = currentEntryLocation >> 32;
-                } finally {
-                    entry.release();
                 }
+            } catch (NoEntryException e) {
+                // The next entry is not stored yet, there's nothing to read ahead
+            }
+
+            if (readAheadController != null) {
+                readAheadController.onReadAhead(orginalLedgerId, nextEntryId, size);
             }
 
+            dbLedgerStorageStats.getReadAheadPrefetchedBytes().add(size);
             dbLedgerStorageStats.getReadAheadBatchCountStats().registerSuccessfulValue(count);
             dbLedgerStorageStats.getReadAheadBatchSizeStats().registerSuccessfulValue(size);
         } catch (Exception e) {
@@ -512,6 +658,124 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    @Override
+    public List<ByteBuf> getEntries(long ledgerId, long firstEntryId, long lastEntryId, long maxBytes)
+            throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("Get Entries: {}@{}-{}", ledgerId, firstEntryId, lastEntryId);
+        }
+
+        List<ByteBuf> entries = new ArrayList<>();
+        if (firstEntryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+            // Only the last written entry
+            entries.add(getLastEntry(ledgerId));
+            return entries;
+        }
+
+        long size = 0;
+        long entryId = firstEntryId;
+
+        // Location of the next entry, when it's expected to be stored right after the last ones read
+        long nextEntryLocation = 0;
+        MutableLong locationAfterRead = new MutableLong();
+
+        // Start with a small read, since the following entries might belong to a different ledger, and increase
+        // the size of the reads as long as the entries are found
+        int readSize = MIN_BULK_READ_SIZE;
+
+        try {
+            while (entryId <= lastEntryId && (entries.isEmpty() || size < maxBytes)) {
+                ByteBuf entry = getCachedEntry(ledgerId, entryId);
+                if (entry != null) {
+                    if (!entries.isEmpty() && size + entry.readableBytes() > maxBytes) {
+                        entry.release();
+                        break;
+                    }
+
+                    entries.add(entry);
+                    size += entry.readableBytes();
+                    entryId++;
+                    nextEntryLocation = 0;
+                    continue;
+                }
+
+                long entryLocation = nextEntryLocation;
+                if (entryLocation == 0) {
+                    entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
+                    if (entryLocation == 0) {
+                        break;
+                    }
+                }
+
+                // The entries flushed together are stored back to back in the entry log, fetch all of them with a
+                // single read (plus the 4 bytes size header of each entry)
+                int entriesCountBefore = entries.size();
+                boolean allAdded = true;
+                for (ByteBuf readEntry : entryLogger.readEntries(ledgerId, entryId, lastEntryId, entryLocation,
+                        (int) Math.min(readSize, Math.max(0, maxBytes - size) + 4), locationAfterRead)) {
+                    if (allAdded && readEntry.getLong(8) == entryId
+                            && (entries.isEmpty() || size + readEntry.readableBytes() <= maxBytes)) {
+                        entries.add(readEntry);
+                        size += readEntry.readableBytes();
+                        entryId++;
+                    } else {
+                        allAdded = false;
+                        readEntry.release();
+                    }
+                }
+
+                if (entries.size() > entriesCountBefore) {
+                    nextEntryLocation = allAdded ? locationAfterRead.longValue() : 0;
+                    readSize = Math.min(readSize * 2, MAX_BULK_READ_SIZE);
+                } else if (nextEntryLocation != 0) {
+                    // The entry is not stored right after the previous ones, look up its location
+                    nextEntryLocation = 0;
+                } else {
+                    // Either the size limit was reached or the next entry is not stored
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            entries.forEach(ByteBuf::release);
+            throw e;
+        }
+
+        if (entries.isEmpty()) {
+            throw new NoEntryException(ledgerId, firstEntryId);
+        }
+
+        return entries;
+    }
+
+    /**
+     * @return the entry if it's found in the write caches or in the read-ahead cache, otherwise null
+     */
+    private ByteBuf getCachedEntry(long ledgerId, long entryId) {
+        WriteCache localWriteCache;
+        WriteCache localWriteCacheQueuedForFlush;
+        WriteCache localWriteCacheBeingFlushed;
+        long stamp = writeCacheRotationLock.readLock();
+        try {
+            localWriteCache = writeCache;
+            localWriteCacheQueuedForFlush = writeCacheQueuedForFlush;
+            localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+        } finally {
+            writeCacheRotationLock.unlockRead(stamp);
+        }
+
+        ByteBuf entry = localWriteCache.get(ledgerId, entryId);
+        if (entry == null && localWriteCacheQueuedForFlush != null) {
+            entry = localWriteCacheQueuedForFlush.get(ledgerId, entryId);
+        }
+        if (entry == null) {
+            entry = localWriteCacheBeingFlushed.get(ledgerId, entryId);
+        }
+        if (entry == null) {
+            entry = readCache.get(ledgerId, entryId);
+        }
+        return entry;
+    }
+
     public ByteBuf getLastEntry(long ledgerId) throws IOException {
         long startTime = MathUtils.nowInNano();
 
@@ -535,6 +799,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 return entry;
             }
 
+            // The entry might be in a full write cache waiting for the ongoing flush to complete
+            if (writeCacheQueuedForFlush != null) {
+                entry = writeCacheQueuedForFlush.getLastEntry(ledgerId);
+                if (entry != null) {
+                    recordSuccessfulEvent(dbLedgerStorageStats.getReadCacheHitStats(), startTime);
+                    recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+                    return entry;
+                }
+            }
+
             // If there's a flush going on, the entry might be in the flush buffer
             entry = writeCacheBeingFlushed.getLastEntry(ledgerId);
             if (entry != null) {
@@ -573,7 +847,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     boolean isFlushRequired() {
         long stamp = writeCacheRotationLock.readLock();
         try {
-            return !writeCache.isEmpty();
+            return !writeCache.isEmpty()
+                    || (writeCacheQueuedForFlush != null && !writeCacheQueuedForFlush.isEmpty());
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
         }
@@ -592,40 +867,25 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         flushMutex.lock();
 
         try {
-            // Swap the write cache so that writes can continue to happen while the flush is
-            // ongoing
-            swapWriteCache();
-
-            long sizeToFlush = writeCacheBeingFlushed.size();
-            if (log.isDebugEnabled()) {
-                log.debug("Flushing entries. count: {} -- size {} Mb", writeCacheBeingFlushed.count(),
-                        sizeToFlush / 1024.0 / 1024);
-            }
-
-            // Write all the pending entries into the entry logger and collect the offset
-            // position for each entry
-
-            Batch batch = entryLocationIndex.newBatch();
-            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
-                try {
-                    long location = entryLogger.addEntry(ledgerId, entry, true);
-                    entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+            // Keep flushing the oldest write cache, until the current one, holding the most recent entries added
+            // before this checkpoint, is persisted. A write cache queued for flush is always older than the
+            // current one and it might get queued itself while the previous one is being flushed
+            WriteCache lastWriteCacheToFlush = writeCache;
+            WriteCache flushedWriteCache;
+            long sizeToFlush = 0;
+            do {
+                if (!swapQueuedWriteCache()) {
+                    // Swap the write cache so that writes can continue to happen while the flush is
+                    // ongoing
+                    swapWriteCache();
                 }
-            });
-
-            entryLogger.flush();
 
-            long batchFlushStarTime = System.nanoTime();
-            batch.flush();
-            batch.close();
-            if (log.isDebugEnabled()) {
-                log.debug("DB batch flushed time : {} s",
-                        MathUtils.elapsedNanos(batchFlushStarTime) / (double) TimeUnit.SECONDS.toNanos(1));
-            }
+                flushedWriteCache = writeCacheBeingFlushed;
+                sizeToFlush += flushWriteCacheBeingFlushed();
+            } while (flushedWriteCache != lastWriteCacheToFlush);
 
-            ledgerIndex.flush();
+            // The locations index is written without WAL, sync it once for all the write caches flushed
+            entryLocationIndex.flush();
 
             cleanupExecutor.execute(() -> {
                 // There can only be one single cleanup task running because the cleanupExecutor
@@ -644,9 +904,6 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             lastCheckpoint = thisCheckpoint;
 
-            // Discard all the entry from the write cache, since they're now persisted
-            writeCacheBeingFlushed.clear();
-
             double flushTimeSeconds = MathUtils.elapsedNanos(startTime) / (double) TimeUnit.SECONDS.toNanos(1);
             double flushThroughput = sizeToFlush / 1024.0 / 1024.0 / flushTimeSeconds;
 
@@ -671,6 +928,174 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    /**
+     * Write the content of {@link #writeCacheBeingFlushed} into the entry log and the locations index, then clear it.
+     *
+     * <p>The flush is a pipeline: while this thread appends the sorted entries to the entry log, the locations are
+     * handed over in chunks to the flush-index thread that builds the index batch, and the ledgers metadata is
+     * flushed in parallel. The index batch is only written once the entry log is synced, so that the index never
+     * points to entries that are not persisted.
+     *
+     * @return the number of bytes flushed
+     */
+    private long flushWriteCacheBeingFlushed() throws IOException {
+        WriteCache cache = writeCacheBeingFlushed;
+        long sizeToFlush = cache.size();
+        if (log.isDebugEnabled()) {
+            log.debug("Flushing entries. count: {} -- size {} Mb", cache.count(), sizeToFlush / 1024.0 / 1024);
+        }
+
+        Future<?> ledgerIndexFlush = flushMetadataExecutor.submit(() -> {
+            ledgerIndex.flush();
+            return null;
+        });
+        LocationsIndexFlushStage indexStage = new LocationsIndexFlushStage();
+
+        try {
+            // Write all the pending entries into the entry logger and collect the offset
+            // position for each entry
+            cache.forEach((ledgerId, entryId, entry) -> {
+                try {
+                    int entrySize = entry.readableBytes();
+                    long location = entryLogger.addEntry(ledgerId, entry, true);
+                    indexStage.addLocation(ledgerId, entryId, location, entrySize);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            entryLogger.flush();
+
+            long batchFlushStartTime = System.nanoTime();
+            waitForFlushStage(indexStage.flush());
+            if (log.isDebugEnabled()) {
+                log.debug("DB batch flushed, waited : {} s",
+                        MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+            }
+        } finally {
+            indexStage.close();
+            waitForFlushStage(ledgerIndexFlush);
+        }
+
+        // Discard all the entry from the write cache, since they're now persisted
+        cache.clear();
+        return sizeToFlush;
+    }
+
+    private static void waitForFlushStage(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for flush", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else {
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Stage of the flush that adds the entry locations to the index batch, from the flush-index thread.
+     */
+    private final class LocationsIndexFlushStage {
+        private final Batch batch = entryLocationIndex.newBatch();
+        private final EntryLocationRangeIndex.RunsBuilder rangeIndexBuilder = entryLocationIndex.newRangeIndexBuilder();
+        private long[] locations = new long[FLUSH_LOCATIONS_CHUNK_SIZE * 4];
+        private int locationsIdx = 0;
+
+        private Future<?> lastChunk = null;
+
+        void addLocation(long ledgerId, long entryId, long location, int entrySize) {
+            locations[locationsIdx++] = ledgerId;
+            locations[locationsIdx++] = entryId;
+            locations[locationsIdx++] = location;
+            locations[locationsIdx++] = entrySize;
+
+            if (locationsIdx == locations.length) {
+                submitChunk();
+            }
+        }
+
+        private void submitChunk() {
+            final long[] chunk = locations;
+            final int chunkSize = locationsIdx;
+            lastChunk = flushIndexExecutor.submit(() -> {
+                for (int i = 0; i < chunkSize; i += 4) {
+                    entryLocationIndex.addLocation(batch, chunk[i], chunk[i + 1], chunk[i + 2]);
+                    if (rangeIndexBuilder != null) {
+                        rangeIndexBuilder.add(chunk[i], chunk[i + 1], chunk[i + 2], (int) chunk[i + 3]);
+                    }
+                }
+                return null;
+            });
+
+            locations = new long[FLUSH_LOCATIONS_CHUNK_SIZE * 4];
+            locationsIdx = 0;
+        }
+
+        /**
+         * Submit the remaining locations and the write of the batch, once the entry log they point to is synced.
+         */
+        Future<?> flush() {
+            submitChunk();
+            return flushIndexExecutor.submit(() -> {
+                // The chunks are processed in order by the single flush-index thread, though a failure in one of
+                // them must prevent the batch from being written
+                lastChunk.get();
+                if (rangeIndexBuilder != null) {
+                    rangeIndexBuilder.finish();
+                }
+                batch.flush();
+                return null;
+            });
+        }
+
+        /**
+         * Release the batch, once all the submitted tasks are done.
+         */
+        void close() throws IOException {
+            waitForFlushStage(flushIndexExecutor.submit(() -> {
+                batch.close();
+                return null;
+            }));
+        }
+    }
+
+    /**
+     * Swap the write cache queued for flush with the replacement cache.
+     *
+     * @return true if there was a queued write cache to flush
+     */
+    private boolean swapQueuedWriteCache() {
+        if (writeCacheQueuedForFlush == null) {
+            return false;
+        }
+
+        long stamp = writeCacheRotationLock.writeLock();
+        try {
+            if (writeCacheQueuedForFlush.isEmpty()) {
+                return false;
+            }
+
+            WriteCache tmp = writeCacheBeingFlushed;
+            writeCacheBeingFlushed = writeCacheQueuedForFlush;
+            writeCacheQueuedForFlush = tmp;
+
+            // The current write cache might fill up before this flush is done, it will need a new flush
+            hasFlushBeenTriggered.set(false);
+            return true;
+        } finally {
+            try {
+                isFlushOngoing.set(true);
+            } finally {
+                writeCacheRotationLock.unlockWrite(stamp);
+            }
+        }
+    }
+
     /**
      * Swap the current write cache with the replacement cache.
      */
@@ -711,6 +1136,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         long stamp = writeCacheRotationLock.readLock();
         try {
             writeCache.deleteLedger(ledgerId);
+            if (writeCacheQueuedForFlush != null) {
+                writeCacheQueuedForFlush.deleteLedger(ledgerId);
+            }
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
         }
@@ -727,6 +1155,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         if (tli != null) {
             tli.close();
         }
+
+        if (readAheadController != null) {
+            readAheadController.removeLedger(ledgerId);
+        }
     }
 
     @Override
@@ -829,7 +1261,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     @Override
     public void flushEntriesLocationsIndex() throws IOException {
-        // No-op. Location index is already flushed in updateEntriesLocations() call
+        // The locations were written in updateEntriesLocations(), make sure they're durable
+        entryLocationIndex.flush();
     }
 
     /**
@@ -886,11 +1319,13 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     }
 
     long getWriteCacheSize() {
-        return writeCache.size() + writeCacheBeingFlushed.size();
+        WriteCache queued = writeCacheQueuedForFlush;
+        return writeCache.size() + writeCacheBeingFlushed.size() + (queued != null ? queued.size() : 0);
     }
 
     long getWriteCacheCount() {
-        return writeCache.count() + writeCacheBeingFlushed.count();
+        WriteCache queued = writeCacheQueuedForFlush;
+        return writeCache.count() + writeCacheBeingFlushed.count() + (queued != null ? queued.count() : 0);
     }
 
     long getReadCacheSize() {
@@ -906,6 +1341,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return Collections.singletonList(gcThread.getGarbageCollectionStatus());
     }
 
+    @Override
+    public List<EntryLogTieringStatus> getEntryLogTieringStatus() {
+        return tieringThread != null
+                ? Collections.singletonList(tieringThread.getEntryLogTieringStatus()) : Collections.emptyList();
+    }
+
     /**
      * Interface which process ledger logger.
      */
@@ -27,6 +27,7 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 
 import java.io.Closeable;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
@@ -113,12 +114,19 @@ public class WriteCache implements Closeable {
     }
 
     public void clear() {
-        cacheSize.set(0L);
-        cacheOffset.set(0L);
-        cacheCount.reset();
-        index.clear();
-        lastEntryMap.clear();
-        deletedLedgers.clear();
+        sortedEntriesLock.lock();
+
+        try {
+            sortedEntriesCount = -1;
+            cacheSize.set(0L);
+            cacheOffset.set(0L);
+            cacheCount.reset();
+            index.clear();
+            lastEntryMap.clear();
+            deletedLedgers.clear();
+        } finally {
+            sortedEntriesLock.unlock();
+        }
     }
 
     @Override
@@ -208,47 +216,83 @@ public class WriteCache implements Closeable {
 
     public void deleteLedger(long ledgerId) {
         deletedLedgers.add(ledgerId);
+        // Bumped after adding to the set, so that a sort that reads the new version also sees the deleted ledger
+        deletedLedgersVersion.incrementAndGet();
     }
 
     private static final ArrayGroupSort groupSorter = new ArrayGroupSort(2, 4);
 
-    public void forEach(EntryConsumer consumer) {
+    /**
+     * Sort the entries of the cache by (ledgerId, entryId), so that a following {@link #forEach(EntryConsumer)} can
+     * iterate over them without having to sort them again.
+     *
+     * <p>This is meant to be called on a cache that is not receiving new entries anymore.
+     */
+    public void sort() {
         sortedEntriesLock.lock();
 
         try {
-            int entriesToSort = (int) index.size();
-            int arrayLen = entriesToSort * 4;
-            if (sortedEntries == null || sortedEntries.length < arrayLen) {
-                sortedEntries = new long[(int) (arrayLen * 2)];
-            }
+            sortEntries();
+        } finally {
+            sortedEntriesLock.unlock();
+        }
+    }
 
-            long startTime = MathUtils.nowInNano();
+    private void sortEntries() {
+        long entriesCount = index.size();
+        long deletedVersion = deletedLedgersVersion.get();
+        if (sortedEntriesCount == entriesCount && sortedDeletedLedgersVersion == deletedVersion) {
+            // The entries were already sorted and nothing has changed since then
+            return;
+        }
 
-            sortedEntriesIdx = 0;
-            index.forEach((ledgerId, entryId, offset, length) -> {
-                if (deletedLedgers.contains(ledgerId)) {
-                    // Ignore deleted ledgers
-                    return;
-                }
+        int arrayLen = (int) entriesCount * 4;
+        if (sortedEntries == null || sortedEntries.length < arrayLen) {
+            sortedEntries = new long[(int) (arrayLen * 2)];
+        }
 
-                sortedEntries[sortedEntriesIdx] = ledgerId;
-                sortedEntries[sortedEntriesIdx + 1] = entryId;
-                sortedEntries[sortedEntriesIdx + 2] = offset;
-                sortedEntries[sortedEntriesIdx + 3] = length;
-                sortedEntriesIdx += 4;
-            });
+        long startTime = MathUtils.nowInNano();
 
-            if (log.isDebugEnabled()) {
-                log.debug("iteration took {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+        sortedEntriesIdx = 0;
+        index.forEach((ledgerId, entryId, offset, length) -> {
+            if (deletedLedgers.contains(ledgerId)) {
+                // Ignore deleted ledgers
+                return;
             }
-            startTime = MathUtils.nowInNano();
 
-            // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
-            groupSorter.sort(sortedEntries, 0, sortedEntriesIdx);
-            if (log.isDebugEnabled()) {
-                log.debug("sorting {} ms", (MathUtils.elapsedNanos(startTime) / 1e6));
+            if (sortedEntriesIdx + 4 > sortedEntries.length) {
+                // More entries were added while iterating
+                sortedEntries = Arrays.copyOf(sortedEntries, Math.max(64, sortedEntries.length * 2));
             }
-            startTime = MathUtils.nowInNano();
+
+            sortedEntries[sortedEntriesIdx] = ledgerId;
+            sortedEntries[sortedEntriesIdx + 1] = entryId;
+            sortedEntries[sortedEntriesIdx + 2] = offset;
+            sortedEntries[sortedEntriesIdx + 3] = length;
+            sortedEntriesIdx += 4;
+        });
+
+        if (log.isDebugEnabled()) {
+            log.debug("iteration took {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+        }
+        startTime = MathUtils.nowInNano();
+
+        // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
+        groupSorter.sort(sortedEntries, 0, sortedEntriesIdx);
+        if (log.isDebugEnabled()) {
+            log.debug("sorting {} ms", (MathUtils.elapsedNanos(startTime) / 1e6));
+        }
+
+        sortedEntriesCount = entriesCount;
+        sortedDeletedLedgersVersion = deletedVersion;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        sortedEntriesLock.lock();
+
+        try {
+            sortEntries();
+            long startTime = MathUtils.nowInNano();
 
             ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
             for (int i = 0; i < segmentsCount; i++) {
@@ -294,13 +338,18 @@ public class WriteCache implements Closeable {
         return (size + 64 - 1) & ALIGN_64_MASK;
     }
 
-    private static long alignToPowerOfTwo(long n) {
+    static long alignToPowerOfTwo(long n) {
         return (long) Math.pow(2, 64 - Long.numberOfLeadingZeros(n - 1));
     }
 
     private final ReentrantLock sortedEntriesLock = new ReentrantLock();
     private long[] sortedEntries;
     private int sortedEntriesIdx;
+    // Number of entries in the index and deleted ledgers version when the sorted entries were built, guarded by
+    // sortedEntriesLock. A count of -1 means they need to be rebuilt
+    private long sortedEntriesCount = -1;
+    private long sortedDeletedLedgersVersion = -1;
+    private final AtomicLong deletedLedgersVersion = new AtomicLong();
 
     private static final Logger log = LoggerFactory.getLogger(WriteCache.class);
 }
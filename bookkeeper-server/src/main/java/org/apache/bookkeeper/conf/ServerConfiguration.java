@@ -28,6 +28,7 @@ import io.netty.util.internal.PlatformDependent;
 import java.io.File;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.InterleavedLedgerStorage;
+import org.apache.bookkeeper.bookie.Journal;
 import org.apache.bookkeeper.bookie.LedgerStorage;
 import org.apache.bookkeeper.bookie.SortedLedgerStorage;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorage;
@@ -105,13 +106,18 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String COMPACTION_RATE = "compactionRate";
     protected static final String COMPACTION_RATE_BY_ENTRIES = "compactionRateByEntries";
     protected static final String COMPACTION_RATE_BY_BYTES = "compactionRateByBytes";
+    protected static final String COMPACTION_GLOBAL_RATE_BY_BYTES = "compactionGlobalRateByBytes";
+    protected static final String COMPACTION_LATENCY_BACKOFF_THRESHOLD_MS = "compactionLatencyBackoffThresholdMs";
+    protected static final String COMPACTION_THREADS = "compactionThreads";
 
     // Gc Parameters
     protected static final String GC_WAIT_TIME = "gcWaitTime";
     protected static final String IS_FORCE_GC_ALLOW_WHEN_NO_SPACE = "isForceGCAllowWhenNoSpace";
     protected static final String GC_OVERREPLICATED_LEDGER_WAIT_TIME = "gcOverreplicatedLedgerWaitTime";
     protected static final String USE_TRANSACTIONAL_COMPACTION = "useTransactionalCompaction";
+    protected static final String COMPACTION_CLUSTERED_BY_LEDGER = "compactionClusteredByLedger";
     protected static final String VERIFY_METADATA_ON_GC = "verifyMetadataOnGC";
+    protected static final String GC_ENTRYLOG_METADATA_CACHE_ENABLED = "gcEntryLogMetadataCacheEnabled";
     // Scrub Parameters
     protected static final String LOCAL_SCRUB_PERIOD = "localScrubInterval";
     protected static final String LOCAL_SCRUB_RATE_LIMIT = "localScrubRateLimit";
@@ -130,17 +136,22 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     // Journal Parameters
     protected static final String MAX_JOURNAL_SIZE = "journalMaxSizeMB";
     protected static final String MAX_BACKUP_JOURNALS = "journalMaxBackups";
+    protected static final String JOURNAL_FILE_POOL_SIZE = "journalFilePoolSize";
+    protected static final String JOURNAL_REPLAY_THREADS = "journalReplayThreads";
     protected static final String JOURNAL_SYNC_DATA = "journalSyncData";
     protected static final String JOURNAL_WRITE_DATA = "journalWriteData";
     protected static final String JOURNAL_ADAPTIVE_GROUP_WRITES = "journalAdaptiveGroupWrites";
     protected static final String JOURNAL_MAX_GROUP_WAIT_MSEC = "journalMaxGroupWaitMSec";
     protected static final String JOURNAL_BUFFERED_WRITES_THRESHOLD = "journalBufferedWritesThreshold";
+    protected static final String JOURNAL_GROUP_COMMIT_LATENCY_TARGET_MSEC = "journalGroupCommitLatencyTargetMSec";
     protected static final String JOURNAL_BUFFERED_ENTRIES_THRESHOLD = "journalBufferedEntriesThreshold";
     protected static final String JOURNAL_FLUSH_WHEN_QUEUE_EMPTY = "journalFlushWhenQueueEmpty";
     protected static final String JOURNAL_REMOVE_FROM_PAGE_CACHE = "journalRemoveFromPageCache";
     protected static final String JOURNAL_PRE_ALLOC_SIZE = "journalPreAllocSizeMB";
     protected static final String JOURNAL_WRITE_BUFFER_SIZE = "journalWriteBufferSizeKB";
     protected static final String JOURNAL_ALIGNMENT_SIZE = "journalAlignmentSize";
+    protected static final String JOURNAL_GATHER_WRITES_ENABLED = "journalGatherWritesEnabled";
+    protected static final String JOURNAL_SYNC_MODES = "journalSyncModes";
     protected static final String NUM_JOURNAL_CALLBACK_THREADS = "numJournalCallbackThreads";
     protected static final String JOURNAL_FORMAT_VERSION_TO_WRITE = "journalFormatVersionToWrite";
     protected static final String JOURNAL_QUEUE_SIZE = "journalQueueSize";
@@ -222,6 +233,19 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
 
     protected static final String READ_BUFFER_SIZE = "readBufferSizeBytes";
     protected static final String WRITE_BUFFER_SIZE = "writeBufferSizeBytes";
+    protected static final String ENTRY_LOG_MMAP_READ_ENABLED = "entryLogMmapReadEnabled";
+    protected static final String ENTRY_LOG_MMAP_REGION_SIZE = "entryLogMmapRegionSizeBytes";
+    protected static final String ENTRY_LOG_MMAP_MAX_REGIONS = "entryLogMmapMaxRegions";
+    protected static final String ENTRY_LOG_DIRECT_IO_ENABLED = "entryLogDirectIOEnabled";
+    protected static final String ENTRY_LOG_COMPRESSION_CODEC = "entryLogCompressionCodec";
+    protected static final String ENTRY_LOG_COMPRESSION_MAX_RATIO = "entryLogCompressionMaxRatio";
+    protected static final String CAPACITY_TIER_LEDGER_DIRS = "capacityTierLedgerDirectories";
+    protected static final String ENTRY_LOG_TIERING_ENABLED = "entryLogTieringEnabled";
+    protected static final String ENTRY_LOG_TIERING_INTERVAL = "entryLogTieringIntervalSeconds";
+    protected static final String ENTRY_LOG_TIERING_COLD_THRESHOLD = "entryLogTieringColdThresholdSeconds";
+    protected static final String ENTRY_LOG_TIERING_RATE_BY_BYTES = "entryLogTieringRateByBytes";
+    protected static final String ENTRY_LOG_TIERING_PROMOTION_READS_THRESHOLD =
+            "entryLogTieringPromotionReadsThreshold";
     // Whether the bookie should use its hostname or ipaddress for the
     // registration.
     protected static final String USE_HOST_NAME_AS_BOOKIE_ID = "useHostNameAsBookieID";
@@ -233,6 +257,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String SKIP_LIST_SIZE_LIMIT = "skipListSizeLimit";
     protected static final String SKIP_LIST_CHUNK_SIZE_ENTRY = "skipListArenaChunkSize";
     protected static final String SKIP_LIST_MAX_ALLOC_ENTRY = "skipListArenaMaxAllocSize";
+    protected static final String LEDGER_PARTITIONED_MEMTABLE_ENABLED = "ledgerPartitionedMemtableEnabled";
 
     // Statistics Parameters
     protected static final String ENABLE_STATISTICS = "enableStatistics";
@@ -300,6 +325,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String ENTRY_LOG_PER_LEDGER_COUNTER_LIMITS_MULT_FACTOR =
             "entryLogPerLedgerCounterLimitsMultFactor";
 
+    /*
+     * in entryLogPerLedger feature, if positive, the write buffer of a new
+     * entrylog starts from this size and doubles each time it fills up, up to
+     * writeBufferSizeBytes.
+     */
+    protected static final String ENTRY_LOG_PER_LEDGER_MIN_WRITE_BUFFER_SIZE =
+            "entryLogPerLedgerMinWriteBufferSizeBytes";
+
+    /*
+     * in entryLogPerLedger feature, if positive, the limit of the memory used
+     * by the write buffers of the active entrylogs, beyond which the entrylogs
+     * of the least recently written ledgers are parked.
+     */
+    protected static final String ENTRY_LOG_PER_LEDGER_WRITE_BUFFER_MEMORY_LIMIT =
+            "entryLogPerLedgerWriteBufferMemoryLimitBytes";
+
+    /*
+     * in entryLogPerLedger feature, if positive, the maximum number of
+     * entrylogs open for writing, beyond which the entrylogs of the least
+     * recently written ledgers are parked.
+     */
+    protected static final String ENTRY_LOG_PER_LEDGER_MAX_OPEN_ENTRY_LOGS = "entryLogPerLedgerMaxOpenEntryLogs";
+
     // Perform local consistency check on bookie startup
     protected static final String LOCAL_CONSISTENCY_CHECK_ON_STARTUP = "localConsistencyCheckOnStartup";
 
@@ -435,6 +483,49 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get whether the compaction writes back the entries of an entry log grouped by ledger, and sorted by entry id,
+     * instead of in the order they're stored in the entry log.
+     *
+     * @return whether compacted entries are clustered by ledger
+     */
+    public boolean isCompactionClusteredByLedger() {
+        return this.getBoolean(COMPACTION_CLUSTERED_BY_LEDGER, false);
+    }
+
+    /**
+     * Set whether the compaction writes back the entries of an entry log grouped by ledger.
+     *
+     * @param clusteredByLedger
+     * @return server configuration
+     */
+    public ServerConfiguration setCompactionClusteredByLedger(boolean clusteredByLedger) {
+        this.setProperty(COMPACTION_CLUSTERED_BY_LEDGER, clusteredByLedger);
+        return this;
+    }
+
+    /**
+     * Get whether the garbage collector persists the metadata of the entry logs in a local RocksDB store, so that
+     * it doesn't need to read again all the entry logs after a restart.
+     *
+     * @return true if the entry log metadata cache is enabled
+     */
+    public boolean isGcEntryLogMetadataCacheEnabled() {
+        return this.getBoolean(GC_ENTRYLOG_METADATA_CACHE_ENABLED, false);
+    }
+
+    /**
+     * Set whether the garbage collector persists the metadata of the entry logs.
+     *
+     * @param enabled
+     *          whether to enable the entry log metadata cache
+     * @return server configuration
+     */
+    public ServerConfiguration setGcEntryLogMetadataCacheEnabled(boolean enabled) {
+        this.setProperty(GC_ENTRYLOG_METADATA_CACHE_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Get whether the bookie is configured to double check prior to gc.
      *
@@ -764,6 +855,51 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Max number of old journal files kept in each journal dir to be reused as new journal files, instead of being
+     * deleted. It requires the journal format version 7. Default is 0, which disables the reuse of journal files.
+     *
+     * @return max number of journal files kept to be reused
+     */
+    public int getJournalFilePoolSize() {
+        return this.getInt(JOURNAL_FILE_POOL_SIZE, 0);
+    }
+
+    /**
+     * Set max number of old journal files kept in each journal dir to be reused as new journal files.
+     *
+     * @param journalFilePoolSize
+     *          max number of journal files kept to be reused
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalFilePoolSize(int journalFilePoolSize) {
+        this.setProperty(JOURNAL_FILE_POOL_SIZE, Integer.toString(journalFilePoolSize));
+        return this;
+    }
+
+    /**
+     * Number of threads applying the journal entries replayed at startup. When set, the journal dirs are read in
+     * parallel, each by a thread of its own, and the entries are applied by these threads, the entries of a ledger
+     * by the same thread. Default is 0, which replays the journal dirs one after another on the bookie thread.
+     *
+     * @return number of threads applying the replayed journal entries
+     */
+    public int getJournalReplayThreads() {
+        return this.getInt(JOURNAL_REPLAY_THREADS, 0);
+    }
+
+    /**
+     * Set the number of threads applying the journal entries replayed at startup.
+     *
+     * @param journalReplayThreads
+     *          number of threads applying the replayed journal entries, or 0 to replay the journals serially
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalReplayThreads(int journalReplayThreads) {
+        this.setProperty(JOURNAL_REPLAY_THREADS, Integer.toString(journalReplayThreads));
+        return this;
+    }
+
     /**
      * All the journal writes and commits should be aligned to given size. If not,
      * zeros will be padded to align to given size.
@@ -786,6 +922,61 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the journal writes the entries to the journal files straight from their buffers, with vectored
+     * writes, instead of copying them into the journal write buffer first. The journal write buffer size still
+     * bounds the data held before it's written.
+     *
+     * @return true if the journal gather writes are enabled
+     */
+    public boolean isJournalGatherWritesEnabled() {
+        return this.getBoolean(JOURNAL_GATHER_WRITES_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the journal gather writes.
+     *
+     * @param enabled
+     *          whether to write the journal entries without copying them into the journal write buffer.
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalGatherWritesEnabled(boolean enabled) {
+        this.setProperty(JOURNAL_GATHER_WRITES_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get how the journal files are made durable, either one mode for all the journal dirs or one mode per journal
+     * dir. The modes are:
+     * <ul>
+     * <li>force: the journal files are synced with fdatasync
+     * <li>sync_file_range: the writeback of the journal writes is started as soon as they're flushed, with
+     * sync_file_range, and the journal files are synced with fdatasync
+     * <li>dsync: the journal files are opened with O_DSYNC, so they don't need to be synced
+     * </ul>
+     *
+     * @return journal sync modes
+     */
+    public String[] getJournalSyncModes() {
+        String[] modes = this.getStringArray(JOURNAL_SYNC_MODES);
+        if (modes == null || modes.length == 0) {
+            return new String[] { "force" };
+        }
+        return modes;
+    }
+
+    /**
+     * Set how the journal files are made durable.
+     *
+     * @param modes
+     *          journal sync mode for all the journal dirs, or one per journal dir
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalSyncModes(String[] modes) {
+        this.setProperty(JOURNAL_SYNC_MODES, modes);
+        return this;
+    }
+
     /**
      * Get journal format version to write.
      *
@@ -1776,6 +1967,279 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the entry logs that were rotated and flushed are read through memory mapped regions, instead of
+     * org.apache.bookkeeper.bookie.BufferedReadChannel. Default is false
+     *
+     * @return true if the rotated entry logs are memory mapped for reads
+     */
+    public boolean isEntryLogMmapReadEnabled() {
+        return getBoolean(ENTRY_LOG_MMAP_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable reading the rotated entry logs through memory mapped regions.
+     *
+     * @param enabled
+     *          whether to memory map the rotated entry logs for reads
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogMmapReadEnabled(boolean enabled) {
+        setProperty(ENTRY_LOG_MMAP_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the size of the regions in which the entry logs are memory mapped. Default is 64MB
+     *
+     * @return memory mapped region size
+     */
+    public int getEntryLogMmapRegionSize() {
+        return getInt(ENTRY_LOG_MMAP_REGION_SIZE, 64 * 1024 * 1024);
+    }
+
+    /**
+     * Set the size of the regions in which the entry logs are memory mapped.
+     *
+     * @param regionSize
+     *          memory mapped region size
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogMmapRegionSize(int regionSize) {
+        setProperty(ENTRY_LOG_MMAP_REGION_SIZE, regionSize);
+        return this;
+    }
+
+    /**
+     * Get the max number of entry log regions kept memory mapped. Default is 256
+     *
+     * @return max number of memory mapped regions
+     */
+    public int getEntryLogMmapMaxRegions() {
+        return getInt(ENTRY_LOG_MMAP_MAX_REGIONS, 256);
+    }
+
+    /**
+     * Set the max number of entry log regions kept memory mapped.
+     *
+     * @param maxRegions
+     *          max number of memory mapped regions
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogMmapMaxRegions(int maxRegions) {
+        setProperty(ENTRY_LOG_MMAP_MAX_REGIONS, maxRegions);
+        return this;
+    }
+
+    /**
+     * Whether the entry logs are written and read with direct I/O (O_DIRECT), bypassing the OS page cache.
+     * Default is false
+     *
+     * @return true if direct I/O is used for the entry logs
+     */
+    public boolean isEntryLogDirectIOEnabled() {
+        return getBoolean(ENTRY_LOG_DIRECT_IO_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable direct I/O for the entry logs. It's only effective on Linux, where the entry log files are
+     * opened with O_DIRECT; on other platforms, or when the file system doesn't support it, the regular buffered
+     * I/O is used.
+     *
+     * @param enabled
+     *          whether to use direct I/O for the entry logs
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogDirectIOEnabled(boolean enabled) {
+        setProperty(ENTRY_LOG_DIRECT_IO_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the codec used to compress the entries written in the entry logs: none, snappy or deflate. Default is
+     * none. The compressed entries are always decompressed when read, whatever the codec currently configured.
+     *
+     * @return the entry log compression codec
+     */
+    public String getEntryLogCompressionCodec() {
+        return getString(ENTRY_LOG_COMPRESSION_CODEC, "none");
+    }
+
+    /**
+     * Set the codec used to compress the entries written in the entry logs.
+     *
+     * <p>Once entries are compressed, the entry logs can no longer be read by bookies that don't support
+     * compression.
+     *
+     * @param codec
+     *          none, snappy or deflate
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogCompressionCodec(String codec) {
+        setProperty(ENTRY_LOG_COMPRESSION_CODEC, codec);
+        return this;
+    }
+
+    /**
+     * Get the max ratio between the compressed and the original size of an entry, above which the entry is stored
+     * uncompressed. Default is 0.9
+     *
+     * @return max compression ratio
+     */
+    public double getEntryLogCompressionMaxRatio() {
+        return getDouble(ENTRY_LOG_COMPRESSION_MAX_RATIO, 0.9);
+    }
+
+    /**
+     * Set the max ratio between the compressed and the original size of an entry, above which the entry is stored
+     * uncompressed.
+     *
+     * @param maxRatio
+     *          max compression ratio
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogCompressionMaxRatio(double maxRatio) {
+        setProperty(ENTRY_LOG_COMPRESSION_MAX_RATIO, maxRatio);
+        return this;
+    }
+
+    /**
+     * Get the dir names of the capacity tier, where the cold entry logs are moved. The entry logs of the i-th
+     * ledger dir are moved to the i-th capacity tier dir.
+     *
+     * @return capacity tier dir names, empty if there's no capacity tier
+     */
+    public String[] getCapacityTierLedgerDirNames() {
+        return this.getStringArray(CAPACITY_TIER_LEDGER_DIRS);
+    }
+
+    /**
+     * Set the dir names of the capacity tier, where the cold entry logs are moved.
+     *
+     * @param capacityTierDirs
+     *          capacity tier dir names, one per ledger dir
+     * @return server configuration
+     */
+    public ServerConfiguration setCapacityTierLedgerDirNames(String[] capacityTierDirs) {
+        this.setProperty(CAPACITY_TIER_LEDGER_DIRS, capacityTierDirs);
+        return this;
+    }
+
+    /**
+     * Whether the entry logs are moved between the ledger dirs and the capacity tier dirs, depending on how often
+     * they're read. Default is false.
+     *
+     * @return true if the entry log tiering is enabled
+     */
+    public boolean isEntryLogTieringEnabled() {
+        return getBoolean(ENTRY_LOG_TIERING_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the entry log tiering.
+     *
+     * <p>Even when the tiering is disabled, the entry logs already moved to the capacity tier dirs are read from
+     * there, as long as the capacity tier dirs are configured.
+     *
+     * @param enabled
+     *          whether to enable the entry log tiering
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogTieringEnabled(boolean enabled) {
+        setProperty(ENTRY_LOG_TIERING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the interval between two runs of the entry log tiering, in seconds. Default is 600.
+     *
+     * @return tiering interval in seconds
+     */
+    public long getEntryLogTieringIntervalSeconds() {
+        return getLong(ENTRY_LOG_TIERING_INTERVAL, 600);
+    }
+
+    /**
+     * Set the interval between two runs of the entry log tiering, in seconds.
+     *
+     * @param interval
+     *          tiering interval in seconds
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogTieringIntervalSeconds(long interval) {
+        setProperty(ENTRY_LOG_TIERING_INTERVAL, interval);
+        return this;
+    }
+
+    /**
+     * Get the time, in seconds, after which an entry log that wasn't read is moved to the capacity tier. Default is
+     * 86400, a day.
+     *
+     * <p>The reads are tracked in memory, so after a restart the entry logs are considered as just read.
+     *
+     * @return cold threshold in seconds
+     */
+    public long getEntryLogTieringColdThresholdSeconds() {
+        return getLong(ENTRY_LOG_TIERING_COLD_THRESHOLD, TimeUnit.DAYS.toSeconds(1));
+    }
+
+    /**
+     * Set the time, in seconds, after which an entry log that wasn't read is moved to the capacity tier.
+     *
+     * @param threshold
+     *          cold threshold in seconds
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogTieringColdThresholdSeconds(long threshold) {
+        setProperty(ENTRY_LOG_TIERING_COLD_THRESHOLD, threshold);
+        return this;
+    }
+
+    /**
+     * Get the max rate, in bytes per second, at which the entry logs of all the ledger dirs are copied between the
+     * tiers. Default is 50MB.
+     *
+     * @return tiering rate in bytes per second
+     */
+    public int getEntryLogTieringRateByBytes() {
+        return getInt(ENTRY_LOG_TIERING_RATE_BY_BYTES, 50 * 1024 * 1024);
+    }
+
+    /**
+     * Set the max rate, in bytes per second, at which the entry logs are copied between the tiers.
+     *
+     * @param rate
+     *          tiering rate in bytes per second
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogTieringRateByBytes(int rate) {
+        setProperty(ENTRY_LOG_TIERING_RATE_BY_BYTES, rate);
+        return this;
+    }
+
+    /**
+     * Get the number of reads of an entry log of the capacity tier, during a tiering interval, from which the entry
+     * log is moved back to its ledger dir. Default is 0, the entry logs are never moved back.
+     *
+     * @return promotion reads threshold
+     */
+    public int getEntryLogTieringPromotionReadsThreshold() {
+        return getInt(ENTRY_LOG_TIERING_PROMOTION_READS_THRESHOLD, 0);
+    }
+
+    /**
+     * Set the number of reads of an entry log of the capacity tier, during a tiering interval, above which the entry
+     * log is moved back to its ledger dir.
+     *
+     * @param threshold
+     *          promotion reads threshold, 0 to disable the promotions
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogTieringPromotionReadsThreshold(int threshold) {
+        setProperty(ENTRY_LOG_TIERING_PROMOTION_READS_THRESHOLD, threshold);
+        return this;
+    }
+
     /**
      * Set the number of threads that would handle write requests.
      *
@@ -2101,6 +2565,30 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the entries of the EntryMemTable are partitioned by ledger, rather than kept in a skip list.
+     * The entries of each ledger are appended to arrays, which are already sorted when the entries are
+     * added in order.
+     *
+     * <p>Default is false
+     *
+     * @return true if the entries of the memtable are partitioned by ledger
+     */
+    public boolean isLedgerPartitionedMemtableEnabled() {
+        return getBoolean(LEDGER_PARTITIONED_MEMTABLE_ENABLED, false);
+    }
+
+    /**
+     * Set whether the entries of the EntryMemTable are partitioned by ledger, rather than kept in a skip list.
+     *
+     * @param enabled whether the entries of the memtable are partitioned by ledger
+     * @return server configuration object.
+     */
+    public ServerConfiguration setLedgerPartitionedMemtableEnabled(boolean enabled) {
+        setProperty(LEDGER_PARTITIONED_MEMTABLE_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Should the data be fsynced on journal before acknowledgment.
      *
@@ -2214,6 +2702,30 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Target for the 99th percentile of the journal write latency, which the journal meets by choosing the time
+     * to wait and the bytes to buffer to achieve grouping from the measured sync times and arrival rate of the
+     * entries. {@link #getJournalMaxGroupWaitMSec()} and {@link #getJournalBufferedWritesThreshold()} bound the
+     * chosen values. Default is 0, which disables the latency target.
+     *
+     * @return the journal write latency target in milliseconds
+     */
+    public long getJournalGroupCommitLatencyTargetMSec() {
+        return getLong(JOURNAL_GROUP_COMMIT_LATENCY_TARGET_MSEC, 0);
+    }
+
+    /**
+     * Set the target for the 99th percentile of the journal write latency.
+     *
+     * @param latencyTargetMSec
+     *          the journal write latency target in milliseconds, or 0 to disable it
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalGroupCommitLatencyTargetMSec(long latencyTargetMSec) {
+        setProperty(JOURNAL_GROUP_COMMIT_LATENCY_TARGET_MSEC, latencyTargetMSec);
+        return this;
+    }
+
     /**
      * Maximum entries to buffer to impose on a journal write to achieve grouping.
      * Use {@link #getJournalBufferedWritesThreshold()} if this is set to zero or
@@ -2762,6 +3274,74 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the compaction rate, in bytes per second, shared by the compactions of all the ledger directories. Only
+     * used by DbLedgerStorage, which compacts each ledger directory in its own thread. When set, it replaces the
+     * compaction rate of each directory. Default is 0, disabled.
+     *
+     * @return compaction rate shared by all the ledger directories (bytes per second)
+     */
+    public long getCompactionGlobalRateByBytes() {
+        return getLong(COMPACTION_GLOBAL_RATE_BY_BYTES, 0);
+    }
+
+    /**
+     * Set the compaction rate shared by the compactions of all the ledger directories.
+     *
+     * @param rate compaction rate shared by all the ledger directories (bytes per second)
+     *
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionGlobalRateByBytes(long rate) {
+        setProperty(COMPACTION_GLOBAL_RATE_BY_BYTES, rate);
+        return this;
+    }
+
+    /**
+     * Get the average latency of the foreground reads and writes above which the compaction rate shared by all the
+     * ledger directories is reduced. Default is 0, the compaction rate doesn't depend on the foreground latency.
+     *
+     * @return latency threshold in milliseconds
+     */
+    public long getCompactionLatencyBackoffThresholdMillis() {
+        return getLong(COMPACTION_LATENCY_BACKOFF_THRESHOLD_MS, 0);
+    }
+
+    /**
+     * Set the average latency of the foreground reads and writes above which the compaction rate is reduced.
+     *
+     * @param thresholdMillis latency threshold in milliseconds
+     *
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionLatencyBackoffThresholdMillis(long thresholdMillis) {
+        setProperty(COMPACTION_LATENCY_BACKOFF_THRESHOLD_MS, thresholdMillis);
+        return this;
+    }
+
+    /**
+     * Get the number of entry logs of a ledger directory that are compacted concurrently. The compactions of a
+     * directory share its compaction rate. Only used by the non transactional compaction. Default is 1, the entry
+     * logs are compacted one at a time.
+     *
+     * @return number of compaction threads of each ledger directory
+     */
+    public int getCompactionThreads() {
+        return getInt(COMPACTION_THREADS, 1);
+    }
+
+    /**
+     * Set the number of entry logs of a ledger directory that are compacted concurrently.
+     *
+     * @param numThreads number of compaction threads of each ledger directory
+     *
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionThreads(int numThreads) {
+        setProperty(COMPACTION_THREADS, numThreads);
+        return this;
+    }
+
     /**
      * Should we remove pages from page cache after force write.
      *
@@ -2974,6 +3554,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
             throw new ConfigurationException("For persisiting explicitLac, journalFormatVersionToWrite should be >= 6"
                     + "and FileInfoFormatVersionToWrite should be >= 1");
         }
+        if (getJournalFilePoolSize() > 0 && getJournalFormatVersionToWrite() < 7) {
+            throw new ConfigurationException("Reusing journal files requires journalFormatVersionToWrite >= 7");
+        }
+        for (String journalSyncMode : getJournalSyncModes()) {
+            try {
+                Journal.checkJournalSyncMode(journalSyncMode);
+            } catch (IllegalArgumentException e) {
+                throw new ConfigurationException(e.getMessage());
+            }
+        }
+        int journalSyncModes = getJournalSyncModes().length;
+        if (journalSyncModes > 1 && journalSyncModes != getJournalDirNames().length) {
+            throw new ConfigurationException("There should be one journal sync mode, or one per journal dir, found "
+                    + journalSyncModes + " journal sync modes for " + getJournalDirNames().length + " journal dirs");
+        }
+        int capacityTierDirs = getCapacityTierLedgerDirNames().length;
+        if (capacityTierDirs > 0 && capacityTierDirs != getLedgerDirNames().length) {
+            throw new ConfigurationException("There should be one capacity tier dir per ledger dir, found "
+                    + capacityTierDirs + " capacity tier dirs for " + getLedgerDirNames().length + " ledger dirs");
+        }
+        if (isEntryLogTieringEnabled() && capacityTierDirs == 0) {
+            throw new ConfigurationException("Entry log tiering is enabled but no capacity tier dirs are configured");
+        }
     }
 
     /**
@@ -3571,6 +4174,66 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /*
+     * in entryLogPerLedger feature, if positive, the write buffer of a new
+     * entrylog starts from this size and doubles each time it fills up, up to
+     * writeBufferSizeBytes. It is halved at checkpoint if the ledger wrote less
+     * than half of it since the previous checkpoint. If 0, the write buffers
+     * have a fixed size of writeBufferSizeBytes.
+     */
+    public int getEntryLogPerLedgerMinWriteBufferSizeBytes() {
+        return this.getInt(ENTRY_LOG_PER_LEDGER_MIN_WRITE_BUFFER_SIZE, 0);
+    }
+
+    /*
+     * sets the minimum size of the write buffers of the entrylogs in
+     * entryLogPerLedger feature, 0 for write buffers of a fixed size.
+     */
+    public ServerConfiguration setEntryLogPerLedgerMinWriteBufferSizeBytes(int minWriteBufferSizeBytes) {
+        this.setProperty(ENTRY_LOG_PER_LEDGER_MIN_WRITE_BUFFER_SIZE, Integer.toString(minWriteBufferSizeBytes));
+        return this;
+    }
+
+    /*
+     * in entryLogPerLedger feature, if positive, the limit of the memory used
+     * by the write buffers of the active entrylogs. Beyond it, the entrylogs of
+     * the least recently written ledgers are parked: flushed, synced and closed
+     * until their ledger is written again, when they are reopened to append to
+     * them. 0 means no limit.
+     */
+    public long getEntryLogPerLedgerWriteBufferMemoryLimitBytes() {
+        return this.getLong(ENTRY_LOG_PER_LEDGER_WRITE_BUFFER_MEMORY_LIMIT, 0L);
+    }
+
+    /*
+     * sets the limit of the memory used by the write buffers of the active
+     * entrylogs in entryLogPerLedger feature, 0 for no limit.
+     */
+    public ServerConfiguration setEntryLogPerLedgerWriteBufferMemoryLimitBytes(long writeBufferMemoryLimitBytes) {
+        this.setProperty(ENTRY_LOG_PER_LEDGER_WRITE_BUFFER_MEMORY_LIMIT, Long.toString(writeBufferMemoryLimitBytes));
+        return this;
+    }
+
+    /*
+     * in entryLogPerLedger feature, if positive, the maximum number of
+     * entrylogs open for writing, including the rotated entrylogs not synced
+     * yet. Beyond it, the rotated entrylogs are synced and closed, then the
+     * entrylogs of the least recently written ledgers are parked. 0 means no
+     * limit.
+     */
+    public int getEntryLogPerLedgerMaxOpenEntryLogs() {
+        return this.getInt(ENTRY_LOG_PER_LEDGER_MAX_OPEN_ENTRY_LOGS, 0);
+    }
+
+    /*
+     * sets the maximum number of entrylogs open for writing in
+     * entryLogPerLedger feature, 0 for no limit.
+     */
+    public ServerConfiguration setEntryLogPerLedgerMaxOpenEntryLogs(int maxOpenEntryLogs) {
+        this.setProperty(ENTRY_LOG_PER_LEDGER_MAX_OPEN_ENTRY_LOGS, Integer.toString(maxOpenEntryLogs));
+        return this;
+    }
+
     /**
      * True if a local consistency check should be performed on startup.
      */
@@ -21,6 +21,7 @@ package org.apache.bookkeeper.server.http.service;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.JournalReplayProgress;
 import org.apache.bookkeeper.bookie.StateManager;
 import org.apache.bookkeeper.http.HttpServer;
 import org.apache.bookkeeper.http.service.HttpEndpointService;
@@ -54,7 +55,12 @@ public class BookieIsReadyService implements HttpEndpointService {
             response.setBody("");
         } else {
             response.setCode(HttpServer.StatusCode.SERVICE_UNAVAILABLE);
-            response.setBody("Bookie is not fully started yet");
+            JournalReplayProgress progress = bookie.getJournalReplayProgress();
+            if (null != progress && progress.isReplaying()) {
+                response.setBody("Bookie is replaying its journals: replayed " + progress);
+            } else {
+                response.setBody("Bookie is not fully started yet");
+            }
         }
         return response;
     }
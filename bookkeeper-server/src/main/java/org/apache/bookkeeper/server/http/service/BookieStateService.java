@@ -24,6 +24,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.JournalReplayProgress;
 import org.apache.bookkeeper.bookie.StateManager;
 import org.apache.bookkeeper.common.util.JsonUtil;
 import org.apache.bookkeeper.http.HttpServer;
@@ -42,7 +43,15 @@ import org.apache.bookkeeper.http.service.HttpServiceResponse;
  *  "running" : true,
  *  "readOnly" : false,
  *  "shuttingDown" : false,
- *  "availableForHighPriorityWrites" : true
+ *  "availableForHighPriorityWrites" : true,
+ *  "journalReplay" : {
+ *    "replaying" : false,
+ *    "replayedEntries" : 1000000,
+ *    "replayedBytes" : 1048576000,
+ *    "elapsedMs" : 10000,
+ *    "entriesPerSecond" : 100000,
+ *    "bytesPerSecond" : 104857600
+ *  }
  *}
  * </code>
  * </pre>
@@ -65,6 +74,21 @@ public class BookieStateService implements HttpEndpointService {
         private boolean readOnly;
         private boolean shuttingDown;
         private boolean availableForHighPriorityWrites;
+        private JournalReplayState journalReplay;
+    }
+
+    /**
+     * POJO definition for the progress of the journal replay at bookie startup.
+     */
+    @Data
+    @NoArgsConstructor
+    public static class JournalReplayState {
+        private boolean replaying;
+        private long replayedEntries;
+        private long replayedBytes;
+        private long elapsedMs;
+        private long entriesPerSecond;
+        private long bytesPerSecond;
     }
 
     @Override
@@ -84,6 +108,18 @@ public class BookieStateService implements HttpEndpointService {
         bs.shuttingDown = sm.isShuttingDown();
         bs.availableForHighPriorityWrites = sm.isAvailableForHighPriorityWrites();
 
+        JournalReplayProgress progress = bookie.getJournalReplayProgress();
+        if (null != progress) {
+            JournalReplayState replay = new JournalReplayState();
+            replay.replaying = progress.isReplaying();
+            replay.replayedEntries = progress.getReplayedEntries();
+            replay.replayedBytes = progress.getReplayedBytes();
+            replay.elapsedMs = progress.getElapsedMillis();
+            replay.entriesPerSecond = progress.getEntriesPerSecond();
+            replay.bytesPerSecond = progress.getBytesPerSecond();
+            bs.journalReplay = replay;
+        }
+
         String jsonResponse = JsonUtil.toJson(bs);
         response.setBody(jsonResponse);
         response.setCode(HttpServer.StatusCode.OK);
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.server.http.service;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import org.apache.bookkeeper.bookie.EntryLogTieringStatus;
+import org.apache.bookkeeper.common.util.JsonUtil;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.http.HttpServer;
+import org.apache.bookkeeper.http.service.HttpEndpointService;
+import org.apache.bookkeeper.http.service.HttpServiceRequest;
+import org.apache.bookkeeper.http.service.HttpServiceResponse;
+import org.apache.bookkeeper.proto.BookieServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HttpEndpointService that handle get entry log tiering details service.
+ *
+ * <p>Get Entry Log Tiering status, empty if the tiering is disabled, the output would be like:
+ *        [ {
+ *           "migrating" : false,
+ *           "lastRunTime" : 1544578144944,
+ *           "fastTierEntryLogCount" : 12,
+ *           "fastTierEntryLogBytes" : 12884901888,
+ *           "capacityTierEntryLogCount" : 230,
+ *           "capacityTierEntryLogBytes" : 246960619520,
+ *           "demotedEntryLogCounter" : 3,
+ *           "demotedEntryLogBytes" : 3221225472,
+ *           "promotedEntryLogCounter" : 0,
+ *           "promotedEntryLogBytes" : 0,
+ *           "lastMigrationBytesPerSecond" : 52428800
+ *         } ]
+ */
+public class TieringDetailsService implements HttpEndpointService {
+
+    static final Logger LOG = LoggerFactory.getLogger(TieringDetailsService.class);
+
+    protected ServerConfiguration conf;
+    protected BookieServer bookieServer;
+
+    public TieringDetailsService(ServerConfiguration conf, BookieServer bookieServer) {
+        checkNotNull(conf);
+        checkNotNull(bookieServer);
+        this.conf = conf;
+        this.bookieServer = bookieServer;
+    }
+
+    @Override
+    public HttpServiceResponse handle(HttpServiceRequest request) throws Exception {
+        HttpServiceResponse response = new HttpServiceResponse();
+
+        if (HttpServer.Method.GET == request.getMethod()) {
+            List<EntryLogTieringStatus> details = bookieServer.getBookie()
+                .getLedgerStorage().getEntryLogTieringStatus();
+
+            String jsonResponse = JsonUtil.toJson(details);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("output body:" + jsonResponse);
+            }
+            response.setBody(jsonResponse);
+            response.setCode(HttpServer.StatusCode.OK);
+            return response;
+        } else {
+            response.setCode(HttpServer.StatusCode.NOT_FOUND);
+            response.setBody("Only support GET method to retrieve entry log tiering details.");
+            return response;
+        }
+    }
+}
@@ -18,7 +18,10 @@
  */
 package org.apache.bookkeeper.tools.cli.commands.bookie;
 
+import com.beust.jcommander.Parameter;
 import java.io.IOException;
+import lombok.Setter;
+import lombok.experimental.Accessors;
 import org.apache.bookkeeper.bookie.storage.ldb.LocationsIndexRebuildOp;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.tools.cli.helpers.BookieCommand;
@@ -30,7 +33,8 @@ import org.slf4j.LoggerFactory;
 /**
  * Command to rebuild DBLedgerStorage locations index.
  */
-public class RebuildDBLedgerLocationsIndexCommand extends BookieCommand<CliFlags> {
+public class RebuildDBLedgerLocationsIndexCommand
+        extends BookieCommand<RebuildDBLedgerLocationsIndexCommand.RebuildFlags> {
 
     static final Logger LOG = LoggerFactory.getLogger(RebuildDBLedgerLocationsIndexCommand.class);
 
@@ -38,17 +42,38 @@ public class RebuildDBLedgerLocationsIndexCommand extends BookieCommand<CliFlags
     private static final String DESC = "Rbuild DBLedgerStorage locations index by scanning the entry logs";
 
     public RebuildDBLedgerLocationsIndexCommand() {
-        super(CliSpec.newBuilder().withName(NAME).withDescription(DESC).withFlags(new CliFlags()).build());
+        this(new RebuildFlags());
+    }
+
+    private RebuildDBLedgerLocationsIndexCommand(RebuildFlags flags) {
+        super(CliSpec.<RebuildFlags>newBuilder().withName(NAME).withDescription(DESC).withFlags(flags).build());
+    }
+
+    /**
+     * Flags for rebuild DBLedgerStorage locations index command.
+     */
+    @Accessors(fluent = true)
+    @Setter
+    public static class RebuildFlags extends CliFlags {
+
+        @Parameter(names = { "-t", "--threads" }, description = "Number of threads scanning the entry logs")
+        private int threads = Runtime.getRuntime().availableProcessors();
     }
 
     @Override
-    public boolean apply(ServerConfiguration conf, CliFlags cmdFlags) {
+    public boolean apply(ServerConfiguration conf, RebuildFlags cmdFlags) {
+        if (cmdFlags.threads <= 0) {
+            LOG.error("Invalid threads {}, should be > 0", cmdFlags.threads);
+            return false;
+        }
+
         LOG.info("=== Rebuilding bookie index ===");
         ServerConfiguration serverConfiguration = new ServerConfiguration(conf);
         try {
-            new LocationsIndexRebuildOp(serverConfiguration).initiate();
+            new LocationsIndexRebuildOp(serverConfiguration, cmdFlags.threads).initiate();
         } catch (IOException e) {
-            e.printStackTrace();
+            LOG.error("Failed to rebuild bookie index", e);
+            return false;
         }
         LOG.info("-- Done rebuilding bookie index --");
         return true;
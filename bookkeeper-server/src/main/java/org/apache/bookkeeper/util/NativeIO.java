@@ -21,8 +21,12 @@ package org.apache.bookkeeper.util;
 import com.sun.jna.LastErrorException;
 import com.sun.jna.Native;
 
+import io.netty.util.internal.PlatformDependent;
+
 import java.io.FileDescriptor;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.Locale;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,8 +39,23 @@ public final class NativeIO {
 
     private static final int POSIX_FADV_DONTNEED = 4; /* fadvise.h */
 
+    private static final int F_GETFL = 3; /* fcntl.h */
+    private static final int F_SETFL = 4; /* fcntl.h */
+
+    private static final int SYNC_FILE_RANGE_WRITE = 2; /* fcntl.h */
+
+    /**
+     * Alignment of the buffers, file offsets and lengths of direct I/O operations. It covers the logical block size
+     * of all the common devices.
+     */
+    public static final int DIRECT_IO_ALIGNMENT = 4096;
+
+    // O_DIRECT is architecture dependent, -1 where it's not known
+    private static final int O_DIRECT = directIOFlag();
+
     private static boolean initialized = false;
     private static boolean fadvisePossible = true;
+    private static boolean syncFileRangePossible = isLinux();
 
     static {
         try {
@@ -54,8 +73,35 @@ public final class NativeIO {
     // fadvice
     public static native int posix_fadvise(int fd, long offset, long len, int flag) throws LastErrorException;
 
+    public static native int fcntl(int fd, int cmd, int arg) throws LastErrorException;
+
+    public static native int sync_file_range(int fd, long offset, long nbytes, int flags) throws LastErrorException;
+
     private NativeIO() {}
 
+    private static boolean isLinux() {
+        return System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("linux");
+    }
+
+    private static int directIOFlag() {
+        if (!isLinux()) {
+            return -1;
+        }
+
+        switch (System.getProperty("os.arch", "")) {
+        case "amd64":
+        case "x86_64":
+        case "i386":
+        case "x86":
+            return 040000;
+        case "aarch64":
+        case "arm":
+            return 0200000;
+        default:
+            return -1;
+        }
+    }
+
     private static Field getFieldByReflection(Class cls, String fieldName) {
         Field field = null;
 
@@ -118,4 +164,69 @@ public final class NativeIO {
         }
     }
 
+    /**
+     * Whether {@link #bestEffortStartWriteback(int, long, long)} starts the writeback of the data, rather than doing
+     * nothing, on this platform.
+     */
+    public static boolean isSyncFileRangeSupported() {
+        return initialized && syncFileRangePossible;
+    }
+
+    /**
+     * Start the writeback of the dirty pages of a range of a file, without waiting for it to complete, so that a later
+     * sync of the file mostly waits for writes already in flight. It doesn't make the data durable by itself.
+     *
+     * @param fd     The file descriptor of the file.
+     * @param offset The offset within the file.
+     * @param len    The length of the range.
+     */
+    public static void bestEffortStartWriteback(int fd, long offset, long len) {
+        if (!initialized || !syncFileRangePossible || fd < 0) {
+            return;
+        }
+        try {
+            sync_file_range(fd, offset, len, SYNC_FILE_RANGE_WRITE);
+        } catch (UnsupportedOperationException | UnsatisfiedLinkError e) {
+            LOG.warn("sync_file_range is not supported : ", e);
+            syncFileRangePossible = false;
+        } catch (Exception e) {
+            // The data is synced later anyway, so just log the failure
+            LOG.warn("Unknown exception: sync_file_range failed on file descriptor {}, offset {} : ",
+                    fd, offset, e);
+        }
+    }
+
+    /**
+     * Whether files can be switched to direct I/O with {@link #enableDirectIO(FileDescriptor)}. The aligned buffers
+     * required by direct I/O also need the memory address of direct buffers to be accessible.
+     */
+    public static boolean isDirectIOSupported() {
+        return initialized && O_DIRECT != -1 && PlatformDependent.hasUnsafe();
+    }
+
+    /**
+     * Switch an open file to direct I/O, so that reads and writes bypass the file system page cache. From then on,
+     * the buffers, file offsets and lengths of all the operations on the file must be aligned to
+     * {@link #DIRECT_IO_ALIGNMENT}.
+     *
+     * @param descriptor the file descriptor of the open file
+     * @throws IOException if direct I/O is not supported for this file, e.g. by its file system
+     */
+    public static void enableDirectIO(FileDescriptor descriptor) throws IOException {
+        if (!isDirectIOSupported()) {
+            throw new IOException("Direct I/O is not supported on this platform");
+        }
+
+        int fd = getSysFileDescriptor(descriptor);
+        if (fd < 0) {
+            throw new IOException("Unable to get the file descriptor");
+        }
+
+        try {
+            int flags = fcntl(fd, F_GETFL, 0);
+            fcntl(fd, F_SETFL, flags | O_DIRECT);
+        } catch (LastErrorException | UnsatisfiedLinkError e) {
+            throw new IOException("Failed to enable direct I/O on file descriptor " + fd, e);
+        }
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import org.apache.bookkeeper.bookie.BookieException.InvalidCookieException;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the capacity tier dirs of the {@link Cookie}.
+ */
+public class CookieTest {
+
+    private File tmpDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("bkTest", ".dir");
+        tmpDir.delete();
+        tmpDir.mkdir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private ServerConfiguration newConf(String... capacityTierDirs) {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setAllowLoopback(true);
+        conf.setJournalDirName("/journal");
+        conf.setLedgerDirNames(new String[] { "/ledgers0", "/ledgers1" });
+        conf.setCapacityTierLedgerDirNames(capacityTierDirs);
+        return conf;
+    }
+
+    private Cookie writeAndRead(ServerConfiguration conf) throws Exception {
+        Cookie.generateCookie(conf).build().writeToDirectory(tmpDir);
+        return Cookie.readFromDirectory(tmpDir);
+    }
+
+    @Test
+    public void testCapacityTierDirsRecorded() throws Exception {
+        ServerConfiguration conf = newConf("/capacity0", "/capacity1");
+        Cookie cookie = writeAndRead(conf);
+
+        Cookie.generateCookie(conf).build().verify(cookie);
+        Cookie.generateCookie(conf).build().verifyIsSuperSet(cookie);
+        Cookie.newBuilder(cookie).build().verify(cookie);
+        try {
+            Cookie.generateCookie(newConf("/capacity0", "/capacity2")).build().verify(cookie);
+            fail("The capacity tier dirs changed");
+        } catch (InvalidCookieException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCapacityTierDirsRemoved() throws Exception {
+        Cookie cookie = writeAndRead(newConf("/capacity0", "/capacity1"));
+
+        ServerConfiguration conf = newConf();
+        for (boolean superSet : new boolean[] { false, true }) {
+            try {
+                if (superSet) {
+                    Cookie.generateCookie(conf).build().verifyIsSuperSet(cookie);
+                } else {
+                    Cookie.generateCookie(conf).build().verify(cookie);
+                }
+                fail("The capacity tier dirs are no longer configured");
+            } catch (InvalidCookieException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testCapacityTierDirsAdded() throws Exception {
+        Cookie cookie = writeAndRead(newConf());
+
+        ServerConfiguration conf = newConf("/capacity0", "/capacity1");
+        Cookie.generateCookie(conf).build().verifyIsSuperSet(cookie);
+        try {
+            Cookie.generateCookie(conf).build().verify(cookie);
+            fail("The capacity tier dirs can only be added with storage expansion");
+        } catch (InvalidCookieException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.util.NativeIO.DIRECT_IO_ALIGNMENT;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link DirectIOReadChannel}. The file is not opened with direct I/O, which might not be supported here,
+ * but the reads of the channel are aligned all the same.
+ */
+public class DirectIOReadChannelTest {
+
+    private static final int FILE_SIZE = 10 * DIRECT_IO_ALIGNMENT + 123;
+
+    private File file;
+    private FileChannel fc;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("directio", ".log");
+        byte[] content = new byte[FILE_SIZE];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        Files.write(file.toPath(), content);
+        fc = spy(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fc.close();
+        file.delete();
+    }
+
+    private static void assertContent(ByteBuf buf, long pos, int length) {
+        assertEquals(length, buf.readableBytes());
+        for (int i = 0; i < length; i++) {
+            assertEquals((byte) ((pos + i) * 31), buf.getByte(buf.readerIndex() + i));
+        }
+    }
+
+    private static int read(DirectIOReadChannel channel, long pos, int length) throws Exception {
+        ByteBuf dest = Unpooled.buffer(length);
+        try {
+            int readBytes = channel.read(dest, pos, length);
+            if (readBytes > 0) {
+                assertContent(dest, pos, readBytes);
+            }
+            return readBytes;
+        } finally {
+            dest.release();
+        }
+    }
+
+    @Test
+    public void testSmallReadsAreServedFromReadAheadBuffer() throws Exception {
+        DirectIOReadChannel channel = new DirectIOReadChannel(ByteBufAllocator.DEFAULT, fc, 2 * DIRECT_IO_ALIGNMENT);
+
+        // Successive entry headers and entries within the read-ahead buffer
+        for (int pos = 10; pos + 100 <= 2 * DIRECT_IO_ALIGNMENT; pos += 100) {
+            assertEquals(100, read(channel, pos, 100));
+        }
+        verify(fc, times(1)).read(any(ByteBuffer.class), anyLong());
+
+        // Out of the read-ahead buffer, which is filled again
+        assertEquals(100, read(channel, 2 * DIRECT_IO_ALIGNMENT + 5, 100));
+        assertEquals(100, read(channel, 2 * DIRECT_IO_ALIGNMENT + 200, 100));
+        verify(fc, times(2)).read(any(ByteBuffer.class), anyLong());
+    }
+
+    @Test
+    public void testReadAcrossTheReadAheadBuffer() throws Exception {
+        DirectIOReadChannel channel = new DirectIOReadChannel(ByteBufAllocator.DEFAULT, fc, DIRECT_IO_ALIGNMENT);
+        assertEquals(100, read(channel, 10, 100));
+        // Crosses the end of the buffered block
+        assertEquals(100, read(channel, DIRECT_IO_ALIGNMENT - 50, 100));
+        // Larger than the buffer
+        assertEquals(3 * DIRECT_IO_ALIGNMENT, read(channel, 7, 3 * DIRECT_IO_ALIGNMENT));
+        // Back to the buffered blocks
+        assertEquals(10, read(channel, DIRECT_IO_ALIGNMENT - 20, 10));
+    }
+
+    @Test
+    public void testReadAtEndOfFile() throws Exception {
+        DirectIOReadChannel channel = new DirectIOReadChannel(ByteBufAllocator.DEFAULT, fc, 512);
+        assertEquals(23, read(channel, FILE_SIZE - 23, 100));
+        assertEquals(FILE_SIZE - 5, read(channel, 5, 2 * FILE_SIZE));
+        assertEquals(-1, read(channel, FILE_SIZE, 100));
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.AbstractByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.bookkeeper.bookie.EntryLogCompression.Codec;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the compression of the entries stored in the entry logs.
+ */
+public class EntryLogCompressionTest {
+
+    private static final int[] PAYLOAD_SIZES = { 0, 1024, 32 * 1024, 64 * 1024, 1024 * 1024 };
+    private static final Codec[] CODECS = { Codec.SNAPPY, Codec.DEFLATE };
+
+    private final List<File> tempDirs = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        for (File dir : tempDirs) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private File createTempDir() throws Exception {
+        File dir = File.createTempFile("entrylog", "test");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        tempDirs.add(dir);
+        return dir;
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId, int payloadSize, boolean compressible) {
+        ByteBuf entry = Unpooled.buffer(16 + payloadSize);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        Random random = new Random(entryId);
+        if (compressible) {
+            // Random bases rather than a repeated pattern, so that the compressors keep looking for matches all
+            // along the entry
+            while (entry.isWritable()) {
+                entry.writeByte("ACGT".charAt(random.nextInt(4)));
+            }
+        } else {
+            byte[] payload = new byte[payloadSize];
+            random.nextBytes(payload);
+            entry.writeBytes(payload);
+        }
+        return entry;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (Codec codec : CODECS) {
+            for (int payloadSize : PAYLOAD_SIZES) {
+                for (boolean compressible : new boolean[] { true, false }) {
+                    // A new instance every time, so that incompressible ledgers are not skipped
+                    EntryLogCompression compression = new EntryLogCompression(codec, 0.9, ByteBufAllocator.DEFAULT);
+                    String test = codec + " " + payloadSize + (compressible ? " compressible" : " incompressible");
+                    ByteBuf entry = newEntry(1, 2, payloadSize, compressible);
+
+                    ByteBuf compressed = compression.compress(1, entry);
+                    if (payloadSize == 0 || !compressible) {
+                        assertNull(test, compressed);
+                        continue;
+                    }
+
+                    assertNotNull(test, compressed);
+                    try {
+                        assertTrue(test, compressed.readableBytes() <= entry.readableBytes() * 0.9);
+                        assertEquals(test, entry.readableBytes(), EntryLogCompression.uncompressedSize(compressed));
+                        ByteBuf decompressed = compression.decompress(compressed);
+                        try {
+                            assertTrue(test, ByteBufUtil.equals(entry, decompressed));
+                        } finally {
+                            decompressed.release();
+                        }
+                    } finally {
+                        compressed.release();
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIncompressibleLedgerIsSkipped() throws Exception {
+        EntryLogCompression compression = new EntryLogCompression(Codec.SNAPPY, 0.9, ByteBufAllocator.DEFAULT);
+        assertNull(compression.compress(1, newEntry(1, 0, 1024, false)));
+        // Not even tried until the ledger is probed again
+        assertNull(compression.compress(1, newEntry(1, 1, 1024, true)));
+
+        ByteBuf compressed = compression.compress(2, newEntry(2, 0, 1024, true));
+        assertNotNull(compressed);
+        compressed.release();
+    }
+
+    @Test
+    public void testCodecFailureStoresEntryUncompressed() throws Exception {
+        // Buffers that can't grow, so that the codecs overflow them on incompressible data
+        List<ByteBuf> allocated = new ArrayList<>();
+        ByteBufAllocator allocator = new AbstractByteBufAllocator() {
+            @Override
+            protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+                ByteBuf buf = Unpooled.buffer(initialCapacity, initialCapacity);
+                allocated.add(buf);
+                return buf;
+            }
+
+            @Override
+            protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+                ByteBuf buf = Unpooled.directBuffer(initialCapacity, initialCapacity);
+                allocated.add(buf);
+                return buf;
+            }
+
+            @Override
+            public boolean isDirectBufferPooled() {
+                return false;
+            }
+        };
+
+        for (Codec codec : CODECS) {
+            EntryLogCompression compression = new EntryLogCompression(codec, 2.0, allocator);
+            assertNull(codec.toString(), compression.compress(1, newEntry(1, 0, 64 * 1024, false)));
+        }
+
+        assertEquals(2, allocated.size());
+        for (ByteBuf buf : allocated) {
+            assertEquals(0, buf.refCnt());
+        }
+    }
+
+    @Test
+    public void testInvalidCompressedEntry() throws Exception {
+        EntryLogCompression compression = new EntryLogCompression(Codec.SNAPPY, 0.9, ByteBufAllocator.DEFAULT);
+        ByteBuf compressed = compression.compress(1, newEntry(1, 0, 64 * 1024, true));
+        try {
+            compression.decompress(compressed.slice(0, compressed.readableBytes() - 10));
+            throw new AssertionError("Truncated entry must fail to decompress");
+        } catch (IOException e) {
+            // Expected
+        } finally {
+            compressed.release();
+        }
+    }
+
+    @Test
+    public void testCompactionCopiesStoredEntries() throws Exception {
+        File ledgerDir = createTempDir();
+        Bookie.checkDirectoryStructure(Bookie.getCurrentDirectory(ledgerDir));
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setEntryLogCompressionCodec("snappy");
+        EntryLogger entryLogger = new EntryLogger(conf, new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold())));
+
+        try {
+            // One ledger per entry, since the entries of a ledger found incompressible are not even compressed
+            List<Long> locations = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                locations.add(entryLogger.addEntry((long) i, newEntry(i, i, 64 * 1024, i % 2 == 0)));
+            }
+            entryLogger.flush();
+
+            // The entries are copied once the scan is done, since they are appended to the scanned entry log
+            List<ByteBuf> storedEntries = new ArrayList<>();
+            List<Boolean> storedCompressed = new ArrayList<>();
+            entryLogger.scanStoredEntries(locations.get(0) >> 32, new EntryLogger.StoredEntryScanner() {
+                @Override
+                public boolean accept(long ledgerId) {
+                    return true;
+                }
+
+                @Override
+                public void process(long ledgerId, long offset, ByteBuf entry, boolean compressed) {
+                    long entryId = entry.getLong(entry.readerIndex() + 8);
+                    assertEquals(entryId % 2 == 0, compressed);
+                    storedEntries.add(Unpooled.copiedBuffer(entry));
+                    storedCompressed.add(compressed);
+                }
+            });
+
+            List<Long> newLocations = new ArrayList<>();
+            for (int i = 0; i < storedEntries.size(); i++) {
+                newLocations.add(entryLogger.addStoredEntry(i, storedEntries.get(i), storedCompressed.get(i)));
+            }
+            entryLogger.flush();
+
+            assertEquals(10, newLocations.size());
+            for (int i = 0; i < 10; i++) {
+                ByteBuf stored = entryLogger.readStoredEntry(i, i, locations.get(i));
+                ByteBuf copied = entryLogger.readStoredEntry(i, i, newLocations.get(i));
+                ByteBuf entry = entryLogger.readEntry(i, i, newLocations.get(i));
+                try {
+                    assertTrue(ByteBufUtil.equals(stored, copied));
+                    assertTrue(ByteBufUtil.equals(newEntry(i, i, 64 * 1024, i % 2 == 0), entry));
+                } finally {
+                    stored.release();
+                    copied.release();
+                    entry.release();
+                }
+            }
+        } finally {
+            entryLogger.shutdown();
+        }
+    }
+}
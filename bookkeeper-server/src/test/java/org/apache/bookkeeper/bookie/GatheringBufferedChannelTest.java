@@ -0,0 +1,187 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Unit test for {@link GatheringBufferedChannel}.
+ */
+public class GatheringBufferedChannelTest {
+
+    private static final int WRITE_CAPACITY = 4096;
+    private static final int ALIGN_SIZE = 512;
+
+    private File file;
+    private RandomAccessFile raf;
+    private OpStatsLogger writeBytesStats;
+    private GatheringBufferedChannel channel;
+    private final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    private final List<ByteBuf> written = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("bkTest", ".journal");
+        raf = new RandomAccessFile(file, "rw");
+        FileChannel fc = raf.getChannel();
+        writeBytesStats = mock(OpStatsLogger.class);
+        channel = new GatheringBufferedChannel(ByteBufAllocator.DEFAULT, fc, WRITE_CAPACITY, ALIGN_SIZE,
+                writeBytesStats);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        channel.close();
+        raf.close();
+        file.delete();
+        for (ByteBuf buf : written) {
+            buf.release();
+        }
+    }
+
+    private ByteBuf newBuffer(int size, int seed) {
+        ByteBuf buf = Unpooled.directBuffer(size);
+        for (int i = 0; i < size; i++) {
+            buf.writeByte(seed + i);
+        }
+        byte[] bytes = new byte[size];
+        buf.getBytes(0, bytes);
+        expected.write(bytes, 0, size);
+        written.add(buf);
+        return buf;
+    }
+
+    private void assertFileContent() throws Exception {
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(file.toPath()));
+    }
+
+    private void assertBuffersReleasedByChannel() {
+        for (ByteBuf buf : written) {
+            assertEquals(1, buf.refCnt());
+        }
+    }
+
+    @Test
+    public void testWriteImmutable() throws Exception {
+        channel.write(newBuffer(100, 1));
+        channel.writeImmutable(newBuffer(1000, 2));
+        // Smaller buffers are copied
+        channel.writeImmutable(newBuffer(GatheringBufferedChannel.MIN_GATHER_BYTES - 1, 3));
+        channel.writeImmutable(newBuffer(2000, 4));
+        channel.write(newBuffer(10, 5));
+        assertEquals(3621, channel.position());
+        assertEquals(3621, channel.getNumOfBytesInWriteBuffer());
+        verify(writeBytesStats, never()).registerSuccessfulValue(anyLong());
+        assertEquals(1, written.get(0).refCnt());
+        assertEquals(2, written.get(1).refCnt());
+        assertEquals(1, written.get(2).refCnt());
+        assertEquals(2, written.get(3).refCnt());
+
+        // The written buffers can be modified once flushed
+        channel.flush();
+        assertBuffersReleasedByChannel();
+        for (ByteBuf buf : written) {
+            buf.setByte(0, 0);
+        }
+        assertEquals(0, channel.getNumOfBytesInWriteBuffer());
+        assertEquals(3621, channel.getFileChannelPosition());
+        assertFileContent();
+    }
+
+    @Test
+    public void testWritesAligned() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            channel.writeImmutable(newBuffer(1000 + i, i));
+            channel.write(newBuffer(13, i));
+            channel.writeImmutable(newBuffer(5000, i));
+            // Each write starts and ends at an aligned offset
+            ArgumentCaptor<Long> writtenBytes = ArgumentCaptor.forClass(Long.class);
+            verify(writeBytesStats, atLeastOnce()).registerSuccessfulValue(writtenBytes.capture());
+            long total = 0;
+            for (long bytes : writtenBytes.getAllValues()) {
+                total += bytes;
+            }
+            assertEquals(0, total % ALIGN_SIZE);
+            assertEquals(total, channel.getFileChannelPosition());
+            assertTrue(channel.getNumOfBytesInWriteBuffer() < ALIGN_SIZE);
+            assertEquals(total + channel.getNumOfBytesInWriteBuffer(), channel.position());
+        }
+
+        channel.flush();
+        assertBuffersReleasedByChannel();
+        assertFileContent();
+    }
+
+    @Test
+    public void testReadPendingData() throws Exception {
+        channel.write(newBuffer(100, 1));
+        channel.writeImmutable(newBuffer(1000, 2));
+
+        ByteBuf dest = Unpooled.buffer(1100);
+        try {
+            assertEquals(1000, channel.read(dest, 100, 1000));
+            byte[] bytes = new byte[1000];
+            dest.readBytes(bytes);
+            byte[] expectedBytes = new byte[1000];
+            System.arraycopy(expected.toByteArray(), 100, expectedBytes, 0, 1000);
+            assertArrayEquals(expectedBytes, bytes);
+        } finally {
+            dest.release();
+        }
+        assertBuffersReleasedByChannel();
+    }
+
+    @Test
+    public void testClearReleasesPendingData() throws Exception {
+        channel.writeImmutable(newBuffer(1000, 1));
+        assertEquals(2, written.get(0).refCnt());
+
+        channel.clear();
+        assertBuffersReleasedByChannel();
+        assertEquals(0, channel.getNumOfBytesInWriteBuffer());
+        channel.flush();
+        assertEquals(0, file.length());
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.bookkeeper.util.SnapshotMap;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the reuse of the pages of the {@link IndexInMemPageMgr}.
+ */
+public class IndexInMemPageMgrTest {
+
+    private static final int PAGE_SIZE = 1024;
+    private static final int ENTRIES_PER_PAGE = PAGE_SIZE / 8;
+    private static final int PAGE_LIMIT = 4;
+
+    private File ledgerDir;
+    private LedgerCacheImpl ledgerCache;
+    private IndexInMemPageMgr pageMgr;
+
+    @Before
+    public void setUp() throws Exception {
+        ledgerDir = File.createTempFile("bkTest", ".dir");
+        ledgerDir.delete();
+        ledgerDir.mkdir();
+        Bookie.checkDirectoryStructure(Bookie.getCurrentDirectory(ledgerDir));
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setPageSize(PAGE_SIZE);
+        conf.setPageLimit(PAGE_LIMIT);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        ledgerCache = new LedgerCacheImpl(conf, new SnapshotMap<Long, Boolean>(), ledgerDirsManager);
+        pageMgr = ledgerCache.getIndexPageManager();
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            ledgerCache.setMasterKey(ledgerId, "key".getBytes());
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ledgerCache.close();
+        FileUtils.deleteDirectory(ledgerDir);
+    }
+
+    private static long offset(long ledgerId, long entryId) {
+        return ledgerId * 1000000 + entryId + 1;
+    }
+
+    private void putPage(long ledgerId, int page) throws Exception {
+        for (long entryId = page * ENTRIES_PER_PAGE; entryId < (page + 1) * ENTRIES_PER_PAGE; entryId++) {
+            ledgerCache.putEntryOffset(ledgerId, entryId, offset(ledgerId, entryId));
+        }
+    }
+
+    private void assertPage(long ledgerId, int page) throws Exception {
+        for (long entryId = page * ENTRIES_PER_PAGE; entryId < (page + 1) * ENTRIES_PER_PAGE; entryId++) {
+            assertEquals(offset(ledgerId, entryId), ledgerCache.getEntryOffset(ledgerId, entryId));
+        }
+    }
+
+    /**
+     * Check whether a page is in memory, without marking it as referenced.
+     */
+    private boolean inMemory(long ledgerId, int page, boolean onlyDirty) {
+        LedgerEntryPage lep = pageMgr.getLedgerEntryPageFromCache(ledgerId, page * ENTRIES_PER_PAGE, onlyDirty);
+        if (lep == null) {
+            return false;
+        }
+        lep.releasePageNoCallback();
+        return true;
+    }
+
+    @Test(timeout = 60000)
+    public void testPagesReusedBeyondLimit() throws Exception {
+        for (int page = 0; page < 4 * PAGE_LIMIT; page++) {
+            putPage(1, page);
+        }
+        putPage(2, 0);
+
+        for (int page = 0; page < 4 * PAGE_LIMIT; page++) {
+            assertPage(1, page);
+        }
+        assertPage(2, 0);
+        assertEquals(4 * PAGE_LIMIT * ENTRIES_PER_PAGE - 1, ledgerCache.getLastEntry(1));
+    }
+
+    @Test(timeout = 60000)
+    public void testReferencedPagesGetSecondChance() throws Exception {
+        for (int page = 0; page < PAGE_LIMIT; page++) {
+            putPage(1, page);
+        }
+        ledgerCache.flushLedger(true);
+
+        // All the pages were used, the clock hand resets them in its first pass and reuses the first one
+        putPage(1, 4);
+        assertFalse(inMemory(1, 0, false));
+        assertTrue(inMemory(1, 4, true));
+
+        assertPage(1, 2);
+        putPage(1, 5);
+        assertFalse(inMemory(1, 1, false));
+
+        // The page used since the last pass of the hand is kept
+        putPage(1, 6);
+        assertTrue(inMemory(1, 2, false));
+        assertFalse(inMemory(1, 3, false));
+
+        for (int page = 0; page < 7; page++) {
+            assertPage(1, page);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testDirtyPagesFlushedInBatch() throws Exception {
+        putPage(1, 0);
+        putPage(1, 1);
+        putPage(2, 0);
+        putPage(2, 1);
+
+        // No clean page, the pages of the first ledger are flushed to reuse one
+        putPage(3, 0);
+        assertTrue(inMemory(1, 1, false));
+        assertFalse(inMemory(1, 1, true));
+        assertTrue(inMemory(2, 0, true));
+        assertTrue(inMemory(2, 1, true));
+
+        assertPage(1, 0);
+        assertPage(1, 1);
+        assertPage(2, 0);
+        assertPage(2, 1);
+        assertPage(3, 0);
+    }
+
+    @Test(timeout = 60000)
+    public void testRemovedPagesReusedFirst() throws Exception {
+        for (int page = 0; page < PAGE_LIMIT; page++) {
+            putPage(1, page);
+        }
+        assertEquals(PAGE_LIMIT * ENTRIES_PER_PAGE - 1, pageMgr.getLastEntryInMem(1));
+
+        ledgerCache.deleteLedger(1);
+        assertEquals(0, pageMgr.getLastEntryInMem(1));
+        assertFalse(inMemory(1, 0, false));
+
+        // The dirty pages of the deleted ledger are reused without being flushed
+        for (int page = 0; page < PAGE_LIMIT; page++) {
+            putPage(2, page);
+        }
+        for (int page = 0; page < PAGE_LIMIT; page++) {
+            assertTrue(inMemory(2, page, true));
+        }
+        assertPage(2, 0);
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.bookie.stats.JournalStats;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link JournalFilePool} and the replay of the journal files it recycles.
+ */
+public class JournalFilePoolTest {
+
+    private final List<File> tempDirs = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        tempDirs.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File dir : tempDirs) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private File createTempDir() throws Exception {
+        File dir = File.createTempFile("journal", "test");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        tempDirs.add(dir);
+        return dir;
+    }
+
+    private static File createJournalFile(File dir, long logId, int formatVersion) throws Exception {
+        JournalChannel channel = new JournalChannel(dir, logId, 1024 * 1024, 65536, JournalChannel.SECTOR_SIZE,
+                false, formatVersion);
+        ByteBuf record = Unpooled.buffer(64);
+        record.writeInt(60);
+        record.writeZero(60);
+        channel.getBufferedChannel().write(record);
+        channel.getBufferedChannel().flushAndForceWrite(false);
+        channel.close();
+        return new File(dir, Long.toHexString(logId) + ".txn");
+    }
+
+    private ServerConfiguration newConf(File journalDir) throws Exception {
+        File ledgerDir = createTempDir();
+        Bookie.checkDirectoryStructure(Bookie.getCurrentDirectory(ledgerDir));
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setJournalFormatVersionToWrite(JournalChannel.V7);
+        return conf;
+    }
+
+    private static LedgerDirsManager newLedgerDirsManager(ServerConfiguration conf) {
+        return new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+    }
+
+    private static JournalStats newJournalStats() {
+        return new JournalStats(NullStatsLogger.INSTANCE);
+    }
+
+    @Test
+    public void testRecycleAndTake() throws Exception {
+        File dir = createTempDir();
+        File journalFile = createJournalFile(dir, 1, JournalChannel.V7);
+        JournalFilePool pool = new JournalFilePool(dir, 2, newJournalStats());
+
+        assertTrue(pool.recycle(journalFile));
+        assertFalse(journalFile.exists());
+
+        File pooledFile = pool.take();
+        assertNotNull(pooledFile);
+        assertEquals(journalFile.getName() + JournalFilePool.POOL_FILE_SUFFIX, pooledFile.getName());
+
+        // The header is cleared, so that the file has no records until it's renamed and its new header written
+        try (RandomAccessFile raf = new RandomAccessFile(pooledFile, "r")) {
+            byte[] header = new byte[JournalChannel.HEADER_SIZE];
+            raf.readFully(header);
+            for (byte b : header) {
+                assertEquals(0, b);
+            }
+        }
+
+        assertNull(pool.take());
+    }
+
+    @Test
+    public void testOnlyV7FilesAreRecycled() throws Exception {
+        File dir = createTempDir();
+        File journalFile = createJournalFile(dir, 1, JournalChannel.V6);
+        JournalFilePool pool = new JournalFilePool(dir, 2, newJournalStats());
+
+        assertFalse(pool.recycle(journalFile));
+        assertTrue(journalFile.exists());
+        assertNull(pool.take());
+    }
+
+    @Test
+    public void testFullPool() throws Exception {
+        File dir = createTempDir();
+        File journalFile1 = createJournalFile(dir, 1, JournalChannel.V7);
+        File journalFile2 = createJournalFile(dir, 2, JournalChannel.V7);
+        JournalFilePool pool = new JournalFilePool(dir, 1, newJournalStats());
+
+        assertTrue(pool.recycle(journalFile1));
+        assertFalse(pool.recycle(journalFile2));
+        assertTrue(journalFile2.exists());
+    }
+
+    @Test
+    public void testPooledFilesAreFoundOnRestart() throws Exception {
+        File dir = createTempDir();
+        JournalFilePool pool = new JournalFilePool(dir, 3, newJournalStats());
+        for (long logId = 1; logId <= 3; logId++) {
+            assertTrue(pool.recycle(createJournalFile(dir, logId, JournalChannel.V7)));
+        }
+
+        // The pooled files beyond the size of the pool are deleted
+        JournalFilePool restartedPool = new JournalFilePool(dir, 2, newJournalStats());
+        assertNotNull(restartedPool.take());
+        assertNotNull(restartedPool.take());
+        assertNull(restartedPool.take());
+        File[] pooledFiles = dir.listFiles((d, name) -> name.endsWith(JournalFilePool.POOL_FILE_SUFFIX));
+        assertEquals(2, pooledFiles.length);
+    }
+
+    @Test
+    public void testScanStopsAtTheRecordsOfThePreviousEpoch() throws Exception {
+        File journalDir = createTempDir();
+        ServerConfiguration conf = newConf(journalDir);
+        JournalFilePool pool = new JournalFilePool(journalDir, 1, newJournalStats());
+
+        writeRecords(new JournalChannel(journalDir, 1, 1024 * 1024, 65536, JournalChannel.SECTOR_SIZE, false,
+                JournalChannel.V7), 1, 100);
+        assertTrue(pool.recycle(new File(journalDir, "1.txn")));
+
+        // The new records are laid over the old ones, which are at the same offsets
+        writeRecords(new JournalChannel(journalDir, 2, 1024 * 1024, 65536, JournalChannel.SECTOR_SIZE, false,
+                JournalChannel.V7, Journal.BufferedChannelBuilder.DEFAULT_BCBUILDER, JournalChannel.SyncMode.FORCE,
+                pool.take()), 2, 10);
+
+        Journal journal = new Journal(0, journalDir, conf, newLedgerDirsManager(conf));
+        List<Long> entries = new ArrayList<>();
+        journal.scanJournal(2, 0, (journalVersion, offset, entry) -> {
+            assertEquals(2, entry.getLong(0));
+            entries.add(entry.getLong(8));
+        });
+        assertEquals(10, entries.size());
+    }
+
+    private static void writeRecords(JournalChannel channel, long ledgerId, int count) throws Exception {
+        BufferedChannel bc = channel.getBufferedChannel();
+        for (long entryId = 0; entryId < count; entryId++) {
+            ByteBuf record = Unpooled.buffer(8 + 1024);
+            record.writeInt(1024);
+            record.writeInt(channel.getEpoch());
+            record.writeLong(ledgerId);
+            record.writeLong(entryId);
+            record.writeZero(1024 - 16);
+            bc.write(record);
+        }
+        bc.flushAndForceWrite(false);
+        channel.close();
+    }
+
+    @Test
+    public void testCheckpointDeletesTheFilesThatCannotBeRecycled() throws Exception {
+        File journalDir = createTempDir();
+        ServerConfiguration conf = newConf(journalDir);
+        conf.setJournalFilePoolSize(1);
+        conf.setMaxBackupJournals(0);
+        Journal journal = new Journal(0, journalDir, conf, newLedgerDirsManager(conf));
+
+        // Opening a directory fails
+        File journalFile = new File(journalDir, "1.txn");
+        assertTrue(journalFile.mkdir());
+        journal.setLastLogMark(2L, 0L);
+        journal.checkpointComplete(journal.newCheckpoint(), true);
+
+        assertFalse(journalFile.exists());
+        assertEquals(0, countPooledFiles(journalDir));
+    }
+
+    @Test
+    public void testReplayIgnoresTheRecordsOfRecycledFiles() throws Exception {
+        File journalDir = createTempDir();
+        ServerConfiguration conf = newConf(journalDir);
+        conf.setJournalFilePoolSize(4);
+        conf.setMaxJournalSizeMB(1);
+        conf.setMaxBackupJournals(0);
+        LedgerDirsManager ledgerDirsManager = newLedgerDirsManager(conf);
+
+        Journal journal = new Journal(0, journalDir, conf, ledgerDirsManager);
+        journal.start();
+        try {
+            // Fill a few journal files, and recycle them
+            writeEntries(journal, 1, 0, 3000);
+            CheckpointSource.Checkpoint checkpoint = journal.newCheckpoint();
+            journal.checkpointComplete(checkpoint, true);
+            assertTrue(countPooledFiles(journalDir) > 0);
+
+            // Roll over to a recycled file, and write a few entries in it
+            int pooledFiles = countPooledFiles(journalDir);
+            writeEntries(journal, 2, 0, 1100);
+            writeEntries(journal, 2, 1100, 10);
+            assertTrue(countPooledFiles(journalDir) < pooledFiles);
+        } finally {
+            journal.shutdown();
+        }
+
+        // The records of ledger 1 left in the recycled file are not replayed
+        Journal replayJournal = new Journal(0, journalDir, conf, ledgerDirsManager);
+        List<Long> journalIds = Journal.listJournalIds(journalDir, null);
+        long lastJournalId = journalIds.get(journalIds.size() - 1);
+        List<Long> ledger2Entries = new ArrayList<>();
+        for (long journalId : journalIds) {
+            replayJournal.scanJournal(journalId, 0, (journalVersion, offset, entry) -> {
+                long ledgerId = entry.getLong(0);
+                if (journalId == lastJournalId) {
+                    assertEquals(2, ledgerId);
+                }
+                if (ledgerId == 2) {
+                    ledger2Entries.add(entry.getLong(8));
+                }
+            });
+        }
+        assertEquals(1110, ledger2Entries.size());
+        for (int i = 0; i < ledger2Entries.size(); i++) {
+            assertEquals(i, (long) ledger2Entries.get(i));
+        }
+    }
+
+    private static void writeEntries(Journal journal, long ledgerId, long firstEntryId, int count)
+            throws Exception {
+        CountDownLatch latch = new CountDownLatch(count);
+        for (long entryId = firstEntryId; entryId < firstEntryId + count; entryId++) {
+            ByteBuf entry = Unpooled.buffer(1024);
+            entry.writeLong(ledgerId);
+            entry.writeLong(entryId);
+            entry.writeZero(1024 - 16);
+            journal.logAddEntry(ledgerId, entryId, entry, false,
+                    (rc, ledger, entryIdWritten, addr, ctx) -> latch.countDown(), null);
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+    }
+
+    private static int countPooledFiles(File journalDir) {
+        return journalDir.listFiles((d, name) -> name.endsWith(JournalFilePool.POOL_FILE_SUFFIX)).length;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.stats.JournalStats;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link JournalGroupCommitController}.
+ */
+public class JournalGroupCommitControllerTest {
+
+    private static final long TARGET_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long MAX_GROUP_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long MAX_BATCH_BYTES = 512 * 1024;
+    private static final long MIN_BATCH_BYTES = 4 * 1024;
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int ENTRY_SIZE = 1000;
+
+    private JournalGroupCommitController controller;
+    private long nowNanos;
+
+    @Before
+    public void setUp() {
+        controller = newController(MAX_GROUP_WAIT_NANOS);
+    }
+
+    private JournalGroupCommitController newController(long maxGroupWaitNanos) {
+        JournalGroupCommitController controller = new JournalGroupCommitController(TARGET_LATENCY_NANOS,
+                maxGroupWaitNanos, MAX_BATCH_BYTES, MIN_BATCH_BYTES, new JournalStats(NullStatsLogger.INSTANCE));
+        nowNanos = System.nanoTime();
+        return controller;
+    }
+
+    private void recordSyncs(int count, long syncMillis) {
+        for (int i = 0; i < count; i++) {
+            controller.recordSync(TimeUnit.MILLISECONDS.toNanos(syncMillis));
+        }
+    }
+
+    /**
+     * Add entries at a steady rate for long enough for the arrival rates to converge.
+     */
+    private void addEntries(int entriesPerInterval) {
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < entriesPerInterval; j++) {
+                controller.recordEntry(ENTRY_SIZE);
+            }
+            nowNanos += INTERVAL_NANOS;
+            controller.updateIfNeeded(nowNanos);
+        }
+    }
+
+    private static void assertApproximately(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected / 100);
+    }
+
+    @Test
+    public void testStaticThresholdsUntilSyncsMeasured() {
+        assertEquals(MAX_GROUP_WAIT_NANOS, controller.getGroupWaitNanos());
+        assertEquals(MAX_BATCH_BYTES, controller.getBatchBytes());
+
+        addEntries(1000);
+        assertEquals(MAX_GROUP_WAIT_NANOS, controller.getGroupWaitNanos());
+        assertEquals(MAX_BATCH_BYTES, controller.getBatchBytes());
+    }
+
+    @Test
+    public void testGroupWaitWithinLatencyTarget() {
+        recordSyncs(10, 3);
+        // 100 entries per ms, 100 bytes per us
+        addEntries(1000);
+
+        // The target latency minus twice the sync time
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(4), controller.getGroupWaitNanos());
+        // The bytes expected to arrive during the group wait
+        assertApproximately(400 * 1000, controller.getBatchBytes());
+
+        // Bounded by the max group wait and the max bytes
+        controller = newController(TimeUnit.MILLISECONDS.toNanos(2));
+        recordSyncs(10, 3);
+        addEntries(1000);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(2), controller.getGroupWaitNanos());
+        // The bytes expected to arrive during a sync, which is longer than the group wait
+        assertApproximately(300 * 1000, controller.getBatchBytes());
+
+        addEntries(10000);
+        assertEquals(MAX_BATCH_BYTES, controller.getBatchBytes());
+    }
+
+    @Test
+    public void testNoGroupWaitWhenSyncTooSlow() {
+        recordSyncs(10, 6);
+        addEntries(1000);
+
+        assertEquals(0, controller.getGroupWaitNanos());
+        // The bytes expected to arrive during a sync, bounded by the max bytes
+        assertEquals(MAX_BATCH_BYTES, controller.getBatchBytes());
+
+        addEntries(500);
+        assertApproximately(300 * 1000, controller.getBatchBytes());
+    }
+
+    @Test
+    public void testLoneEntriesNotDelayed() {
+        recordSyncs(10, 1);
+        // An entry every 100ms
+        for (int i = 0; i < 100; i++) {
+            if (i % 10 == 0) {
+                controller.recordEntry(ENTRY_SIZE);
+            }
+            nowNanos += INTERVAL_NANOS;
+            controller.updateIfNeeded(nowNanos);
+        }
+
+        assertEquals(0, controller.getGroupWaitNanos());
+        assertEquals(MIN_BATCH_BYTES, controller.getBatchBytes());
+    }
+
+    @Test
+    public void testSyncTimePercentile() {
+        recordSyncs(99, 1);
+        recordSyncs(1, 4);
+        addEntries(1000);
+        // The slowest sync is out of the 99th percentile
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(8), controller.getGroupWaitNanos());
+
+        recordSyncs(1, 4);
+        addEntries(1000);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(2), controller.getGroupWaitNanos());
+
+        // Only the most recent syncs are accounted for
+        recordSyncs(256, 5);
+        addEntries(1000);
+        assertEquals(0, controller.getGroupWaitNanos());
+        recordSyncs(256, 1);
+        addEntries(1000);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(8), controller.getGroupWaitNanos());
+    }
+
+    @Test
+    public void testUpdatedOncePerInterval() {
+        recordSyncs(10, 3);
+        controller.recordEntry(ENTRY_SIZE);
+        controller.updateIfNeeded(nowNanos + INTERVAL_NANOS / 2);
+        assertEquals(MAX_GROUP_WAIT_NANOS, controller.getGroupWaitNanos());
+
+        addEntries(1000);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(4), controller.getGroupWaitNanos());
+    }
+}
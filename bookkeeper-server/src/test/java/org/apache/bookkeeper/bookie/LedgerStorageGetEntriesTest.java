@@ -0,0 +1,224 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorage;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Test that {@link LedgerStorage#getEntries(long, long, long, long)} returns the same entries as reading them one by
+ * one with {@link LedgerStorage#getEntry(long, long)}.
+ */
+@RunWith(Parameterized.class)
+public class LedgerStorageGetEntriesTest {
+
+    private static final int ENTRIES_COUNT = 50;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][] {
+            { InterleavedLedgerStorage.class },
+            { SortedLedgerStorage.class },
+            { DbLedgerStorage.class },
+        });
+    }
+
+    private final Class<? extends LedgerStorage> storageClass;
+    private File ledgerDir;
+    private LedgerStorage storage;
+
+    public LedgerStorageGetEntriesTest(Class<? extends LedgerStorage> storageClass) {
+        this.storageClass = storageClass;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        ledgerDir = File.createTempFile("storage", "test");
+        assertTrue(ledgerDir.delete());
+        assertTrue(ledgerDir.mkdirs());
+        Bookie.checkDirectoryStructure(Bookie.getCurrentDirectory(ledgerDir));
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setLedgerStorageClass(storageClass.getName());
+        conf.setAllowLoopback(true);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        storage = storageClass.newInstance();
+        storage.initialize(conf, mock(LedgerManager.class), ledgerDirsManager, ledgerDirsManager, null,
+                new CheckpointSource() {
+                    @Override
+                    public Checkpoint newCheckpoint() {
+                        return Checkpoint.MAX;
+                    }
+
+                    @Override
+                    public void checkpointComplete(Checkpoint checkpoint, boolean compact) {
+                    }
+                }, Checkpointer.NULL, NullStatsLogger.INSTANCE, ByteBufAllocator.DEFAULT);
+
+        // Two ledgers with interleaved entries of various sizes
+        for (long ledgerId = 1; ledgerId <= 2; ledgerId++) {
+            storage.setMasterKey(ledgerId, "key".getBytes());
+        }
+        for (int i = 0; i < ENTRIES_COUNT; i++) {
+            for (long ledgerId = 1; ledgerId <= 2; ledgerId++) {
+                storage.addEntry(newEntry(ledgerId, i));
+            }
+            if (i == ENTRIES_COUNT / 2) {
+                // Half of the entries are flushed, the other half might still be in memory
+                storage.flush();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        storage.shutdown();
+        FileUtils.deleteDirectory(ledgerDir);
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer();
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1);
+        for (int i = 0; i < 10 + entryId * 37 % 500; i++) {
+            entry.writeByte((byte) (ledgerId + entryId + i));
+        }
+        return entry;
+    }
+
+    private void assertSameAsGetEntry(long ledgerId, long firstEntryId, List<ByteBuf> entries) throws Exception {
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                ByteBuf expected = storage.getEntry(ledgerId, firstEntryId + i);
+                try {
+                    assertTrue("Entry " + (firstEntryId + i), ByteBufUtil.equals(expected, entries.get(i)));
+                } finally {
+                    expected.release();
+                }
+            }
+        } finally {
+            entries.forEach(ByteBuf::release);
+        }
+    }
+
+    private void checkGetEntries(boolean flushed) throws Exception {
+        for (long ledgerId = 1; ledgerId <= 2; ledgerId++) {
+            for (long first : new long[] { 0, 1, ENTRIES_COUNT / 2 - 3, ENTRIES_COUNT - 1 }) {
+                List<ByteBuf> entries = storage.getEntries(ledgerId, first, ENTRIES_COUNT + 10, Long.MAX_VALUE);
+                assertEquals(flushed + " " + first, ENTRIES_COUNT - first, entries.size());
+                assertSameAsGetEntry(ledgerId, first, entries);
+
+                entries = storage.getEntries(ledgerId, first, first + 2, Long.MAX_VALUE);
+                assertEquals(Math.min(3, ENTRIES_COUNT - first), entries.size());
+                assertSameAsGetEntry(ledgerId, first, entries);
+            }
+        }
+    }
+
+    @Test
+    public void testGetEntries() throws Exception {
+        checkGetEntries(false);
+        storage.flush();
+        checkGetEntries(true);
+    }
+
+    @Test
+    public void testMaxBytes() throws Exception {
+        storage.flush();
+        List<ByteBuf> entries = storage.getEntries(1, 0, ENTRIES_COUNT - 1, 1);
+        // The first entry is always returned
+        assertEquals(1, entries.size());
+        assertSameAsGetEntry(1, 0, entries);
+
+        long maxBytes = 0;
+        for (int i = 0; i < 10; i++) {
+            maxBytes += newEntry(1, i).readableBytes();
+        }
+        entries = storage.getEntries(1, 0, ENTRIES_COUNT - 1, maxBytes);
+        assertEquals(10, entries.size());
+        assertSameAsGetEntry(1, 0, entries);
+
+        entries = storage.getEntries(1, 0, ENTRIES_COUNT - 1, maxBytes - 1);
+        assertEquals(9, entries.size());
+        assertSameAsGetEntry(1, 0, entries);
+    }
+
+    @Test
+    public void testLastAddConfirmed() throws Exception {
+        for (boolean flushed : new boolean[] { false, true }) {
+            if (flushed) {
+                storage.flush();
+            }
+            List<ByteBuf> entries = storage.getEntries(1, BookieProtocol.LAST_ADD_CONFIRMED, ENTRIES_COUNT,
+                    Long.MAX_VALUE);
+            assertEquals(1, entries.size());
+            assertEquals(ENTRIES_COUNT - 1, entries.get(0).getLong(8));
+            entries.forEach(ByteBuf::release);
+        }
+    }
+
+    @Test
+    public void testMissingFirstEntry() throws Exception {
+        storage.flush();
+        try {
+            storage.getEntries(1, ENTRIES_COUNT, ENTRIES_COUNT + 10, Long.MAX_VALUE);
+            fail("The first entry is not stored");
+        } catch (Bookie.NoEntryException e) {
+            // Expected
+        }
+
+        try {
+            storage.getEntries(3, 0, ENTRIES_COUNT, Long.MAX_VALUE);
+            fail("The ledger is not stored");
+        } catch (Bookie.NoEntryException | Bookie.NoLedgerException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link MappedEntryLogRegions}.
+ */
+public class MappedEntryLogRegionsTest {
+
+    private static final int REGION_SIZE = 4096;
+    private static final int LOG_SIZE = 3 * REGION_SIZE + 100;
+
+    private File logFile;
+
+    @Before
+    public void setUp() throws Exception {
+        logFile = File.createTempFile("mapped", ".log");
+        byte[] content = new byte[LOG_SIZE];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Files.write(logFile.toPath(), content);
+        assertTrue(logFile.setReadOnly());
+    }
+
+    @After
+    public void tearDown() {
+        logFile.delete();
+    }
+
+    private MappedEntryLogRegions newRegions(int maxRegions) {
+        return new MappedEntryLogRegions(REGION_SIZE, maxRegions, entryLogId -> {
+            if (entryLogId != 1) {
+                throw new FileNotFoundException("No entry log " + entryLogId);
+            }
+            return logFile;
+        });
+    }
+
+    private static void assertContent(ByteBuf slice, long pos, int length) {
+        assertEquals(length, slice.readableBytes());
+        for (int i = 0; i < length; i++) {
+            assertEquals((byte) (pos + i), slice.getByte(slice.readerIndex() + i));
+        }
+    }
+
+    @Test
+    public void testSlice() {
+        MappedEntryLogRegions regions = newRegions(10);
+        try {
+            ByteBuf slice = regions.slice(1, 100, 200);
+            assertContent(slice, 100, 200);
+            slice.release();
+
+            // Truncated at the end of the region
+            slice = regions.slice(1, REGION_SIZE - 10, 200);
+            assertContent(slice, REGION_SIZE - 10, 10);
+            slice.release();
+
+            // Truncated at the end of the entry log
+            slice = regions.slice(1, 3 * REGION_SIZE + 50, 200);
+            assertContent(slice, 3 * REGION_SIZE + 50, 50);
+            slice.release();
+
+            assertNull(regions.slice(1, 3 * REGION_SIZE + 100, 200));
+            assertNull(regions.slice(1, 10 * REGION_SIZE, 200));
+            assertNull(regions.slice(2, 0, 200));
+        } finally {
+            regions.close();
+        }
+    }
+
+    @Test
+    public void testSliceIsReadOnly() {
+        MappedEntryLogRegions regions = newRegions(10);
+        ByteBuf slice = regions.slice(1, 0, 100);
+        try {
+            slice.setByte(0, 1);
+            fail("The slices of the entry logs must be read only");
+        } catch (ReadOnlyBufferException e) {
+            // Expected
+        } finally {
+            slice.release();
+            regions.close();
+        }
+    }
+
+    @Test
+    public void testSlicesOutliveEvictionAndRemoval() {
+        MappedEntryLogRegions regions = newRegions(2);
+        try {
+            ByteBuf first = regions.slice(1, 0, 100);
+            ByteBuf second = regions.slice(1, REGION_SIZE, 100);
+            // Evicts the least recently used region
+            ByteBuf third = regions.slice(1, 2 * REGION_SIZE, 100);
+            assertContent(first, 0, 100);
+
+            regions.removeEntryLog(1);
+            assertContent(second, REGION_SIZE, 100);
+            assertContent(third, 2 * REGION_SIZE, 100);
+            first.release();
+            second.release();
+            third.release();
+
+            // A removed entry log is never mapped again
+            assertNull(regions.slice(1, 0, 100));
+        } finally {
+            regions.close();
+        }
+    }
+
+    @Test
+    public void testRemovalWhileMapping() {
+        AtomicReference<MappedEntryLogRegions> regionsRef = new AtomicReference<>();
+        MappedEntryLogRegions regions = new MappedEntryLogRegions(REGION_SIZE, 10, entryLogId -> {
+            // The entry log gets removed after the file is resolved and before the region is cached
+            regionsRef.get().removeEntryLog(entryLogId);
+            return logFile;
+        });
+        regionsRef.set(regions);
+        try {
+            assertNull(regions.slice(1, 0, 100));
+            assertNull(regions.slice(1, 0, 100));
+        } finally {
+            regions.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentSlices() throws Exception {
+        MappedEntryLogRegions regions = newRegions(2);
+        try {
+            Thread[] threads = new Thread[4];
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 1000; i++) {
+                            long pos = (i * 997L) % (LOG_SIZE - 16);
+                            ByteBuf slice = regions.slice(1, pos, 16);
+                            if (slice != null) {
+                                assertEquals((byte) pos, slice.getByte(slice.readerIndex()));
+                                slice.release();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.set(e);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertNull(error.get());
+
+            ByteBuf slice = regions.slice(1, 0, 16);
+            assertNotNull(slice);
+            slice.release();
+        } finally {
+            regions.close();
+        }
+    }
+}
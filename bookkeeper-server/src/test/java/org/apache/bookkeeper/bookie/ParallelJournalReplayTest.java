@@ -0,0 +1,221 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ParallelJournalReplay}.
+ */
+public class ParallelJournalReplayTest {
+
+    private static final int NUM_LEDGERS = 3;
+    private static final int RECORDS_PER_FILE = 42;
+    private static final int RECORD_SIZE = 100;
+
+    private final List<File> journalDirs = new ArrayList<>();
+    // The entry ids applied, by ledger
+    private final Map<Long, List<Long>> applied = new ConcurrentHashMap<>();
+    private final AtomicLong appliedRecords = new AtomicLong();
+
+    @Before
+    public void setUp() {
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            applied.put(ledgerId, Collections.synchronizedList(new ArrayList<>()));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File dir : journalDirs) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * Mock a journal with the given journal files, the records of each file spread over the ledgers.
+     */
+    private Journal newJournal(LogMark lastLogMark, long... journalIds) throws Exception {
+        File journalDir = File.createTempFile("bkTest", ".dir");
+        journalDir.delete();
+        journalDir.mkdir();
+        journalDirs.add(journalDir);
+        for (long journalId : journalIds) {
+            new File(journalDir, Long.toHexString(journalId) + ".txn").createNewFile();
+        }
+
+        Journal journal = mock(Journal.class);
+        Journal.LastLogMark mark = mock(Journal.LastLogMark.class);
+        when(mark.getCurMark()).thenReturn(lastLogMark);
+        when(journal.getLastLogMark()).thenReturn(mark);
+        when(journal.getJournalDirectory()).thenReturn(journalDir);
+        when(journal.scanJournal(anyLong(), anyLong(), any(JournalScanner.class))).thenAnswer(invocation -> {
+            long journalId = invocation.getArgument(0);
+            long offset = invocation.getArgument(1);
+            JournalScanner scanner = invocation.getArgument(2);
+            // The buffer is reused for all the records, like the journal scan does
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            for (int i = 0; i < RECORDS_PER_FILE; i++) {
+                record.clear();
+                record.putLong(i % NUM_LEDGERS);
+                record.putLong(journalId * RECORDS_PER_FILE + i);
+                record.position(RECORD_SIZE);
+                record.flip();
+                scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, offset, record);
+                offset += RECORD_SIZE;
+            }
+            return offset;
+        });
+        return journal;
+    }
+
+    private JournalScanner newScanner() {
+        return (journalVersion, offset, entry) -> {
+            long ledgerId = entry.getLong();
+            long entryId = entry.getLong();
+            try {
+                // Slow enough for the journals to be read ahead of the applied records, and uneven enough for the
+                // records applied out of order to show up
+                Thread.sleep(entryId % 3);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            applied.get(ledgerId).add(entryId);
+            appliedRecords.incrementAndGet();
+        };
+    }
+
+    @Test
+    public void testRecordsOfLedgerAppliedInOrder() throws Exception {
+        List<Journal> journals = Arrays.asList(
+                newJournal(new LogMark(), 1, 2),
+                newJournal(new LogMark(), 3, 4));
+        // The log mark is only moved once all the records of the file are applied
+        List<Long> appliedAtLogMark = Collections.synchronizedList(new ArrayList<>());
+        for (Journal journal : journals) {
+            doAnswer(invocation -> appliedAtLogMark.add(appliedRecords.get()))
+                    .when(journal).setLastLogMark(anyLong(), anyLong());
+        }
+        JournalReplayProgress progress = new JournalReplayProgress();
+
+        new ParallelJournalReplay(newScanner(), 4, progress).replay(journals);
+
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            List<Long> entryIds = applied.get(ledgerId);
+            assertEquals(4 * RECORDS_PER_FILE / NUM_LEDGERS, entryIds.size());
+            // Each journal is applied in order, independently of the other one
+            long lastEntryId = -1;
+            long lastEntryIdOfSecondJournal = -1;
+            for (long entryId : entryIds) {
+                if (entryId < 3 * RECORDS_PER_FILE) {
+                    assertTrue(entryId > lastEntryId);
+                    lastEntryId = entryId;
+                } else {
+                    assertTrue(entryId > lastEntryIdOfSecondJournal);
+                    lastEntryIdOfSecondJournal = entryId;
+                }
+            }
+        }
+        assertEquals(4 * RECORDS_PER_FILE, progress.getReplayedEntries());
+        assertEquals(4 * RECORDS_PER_FILE * RECORD_SIZE, progress.getReplayedBytes());
+
+        verify(journals.get(0)).scanJournal(eq(1L), eq(0L), any());
+        verify(journals.get(1)).scanJournal(eq(3L), eq(0L), any());
+        verify(journals.get(0)).setLastLogMark(1L, RECORDS_PER_FILE * RECORD_SIZE);
+        verify(journals.get(0)).setLastLogMark(2L, RECORDS_PER_FILE * RECORD_SIZE);
+        verify(journals.get(1)).setLastLogMark(3L, RECORDS_PER_FILE * RECORD_SIZE);
+        verify(journals.get(1)).setLastLogMark(4L, RECORDS_PER_FILE * RECORD_SIZE);
+        assertEquals(4, appliedAtLogMark.size());
+        // Each journal has applied at least the records of its file, and the last mark waits for all of them
+        for (long appliedAtMark : appliedAtLogMark) {
+            assertTrue(appliedAtMark >= RECORDS_PER_FILE);
+        }
+        assertEquals(4 * RECORDS_PER_FILE, (long) Collections.max(appliedAtLogMark));
+    }
+
+    @Test
+    public void testReplayFromLastLogMark() throws Exception {
+        Journal journal = newJournal(new LogMark(2, 1000), 1, 2, 3);
+
+        new ParallelJournalReplay(newScanner(), 2, new JournalReplayProgress())
+                .replay(Collections.singletonList(journal));
+
+        verify(journal, never()).scanJournal(eq(1L), anyLong(), any());
+        verify(journal).scanJournal(eq(2L), eq(1000L), any());
+        verify(journal).scanJournal(eq(3L), eq(0L), any());
+        verify(journal).setLastLogMark(2L, 1000L + RECORDS_PER_FILE * RECORD_SIZE);
+        verify(journal).setLastLogMark(3L, RECORDS_PER_FILE * RECORD_SIZE);
+        assertEquals(2 * RECORDS_PER_FILE, appliedRecords.get());
+    }
+
+    @Test
+    public void testExceptionWhileApplying() throws Exception {
+        Journal journal = newJournal(new LogMark(), 1, 2);
+        IOException failure = new IOException("Failed to apply");
+        JournalScanner scanner = newScanner();
+        JournalScanner failingScanner = (journalVersion, offset, entry) -> {
+            if (entry.getLong(8) == 2 * RECORDS_PER_FILE + 10) {
+                throw failure;
+            }
+            scanner.process(journalVersion, offset, entry);
+        };
+
+        try {
+            new ParallelJournalReplay(failingScanner, 2, new JournalReplayProgress())
+                    .replay(Collections.singletonList(journal));
+            fail("The replay should fail");
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+        // The log mark isn't moved past the file of the failed record
+        verify(journal).setLastLogMark(1L, RECORDS_PER_FILE * RECORD_SIZE);
+        verify(journal, never()).setLastLogMark(eq(2L), anyLong());
+    }
+}
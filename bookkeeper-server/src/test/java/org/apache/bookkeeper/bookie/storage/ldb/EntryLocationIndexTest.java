@@ -0,0 +1,135 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link EntryLocationIndex}.
+ */
+public class EntryLocationIndexTest {
+
+    private final ServerConfiguration serverConfiguration = new ServerConfiguration();
+    private File tmpDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("bkTest", ".dir");
+        tmpDir.delete();
+        tmpDir.mkdir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    @Test
+    public void deleteLedgerTest() throws Exception {
+        EntryLocationIndex idx = new EntryLocationIndex(serverConfiguration, KeyValueStorageRocksDB.factory,
+                tmpDir.getAbsolutePath(), NullStatsLogger.INSTANCE);
+
+        // Add some dummy indexes
+        idx.addLocation(40312, 10, 1);
+        idx.addLocation(40313, 10, 2);
+        idx.addLocation(40320, 0, 3);
+
+        // Add more indexes in a different batch
+        idx.addLocation(40313, 11, 5);
+        idx.addLocation(40313, 12, 6);
+        idx.addLocation(40320, 1, 7);
+        idx.addLocation(40312, 3, 4);
+
+        idx.delete(40313);
+
+        assertEquals(1, idx.getLocation(40312, 10));
+        assertEquals(4, idx.getLocation(40312, 3));
+        assertEquals(3, idx.getLocation(40320, 0));
+        assertEquals(7, idx.getLocation(40320, 1));
+
+        idx.removeOffsetFromDeletedLedgers();
+
+        assertEquals(0, idx.getLocation(40313, 10));
+        assertEquals(0, idx.getLocation(40313, 11));
+        assertEquals(0, idx.getLocation(40313, 12));
+        assertEquals(1, idx.getLocation(40312, 10));
+        assertEquals(4, idx.getLocation(40312, 3));
+        assertEquals(3, idx.getLocation(40320, 0));
+        assertEquals(7, idx.getLocation(40320, 1));
+
+        idx.close();
+    }
+
+    @Test
+    public void compactAdjacentDeletedLedgersTogetherTest() throws Exception {
+        AtomicReference<KeyValueStorage> locationsDb = new AtomicReference<>();
+        KeyValueStorageFactory factory = (defaultBasePath, subPath, dbConfigType, conf) -> {
+            KeyValueStorage storage = spy(KeyValueStorageRocksDB.factory.newKeyValueStorage(defaultBasePath,
+                    subPath, dbConfigType, conf));
+            locationsDb.set(storage);
+            return storage;
+        };
+        EntryLocationIndex idx = new EntryLocationIndex(serverConfiguration, factory, tmpDir.getAbsolutePath(),
+                NullStatsLogger.INSTANCE);
+
+        for (long ledgerId = 1; ledgerId <= 10; ledgerId++) {
+            for (long entryId = 0; entryId < 5; entryId++) {
+                idx.addLocation(ledgerId, entryId, ledgerId * 100 + entryId + 1);
+            }
+        }
+
+        // Ledgers 2 to 4 and ledgers 7 to 8 are compacted together, ledger 11 has no entries to compact
+        idx.delete(2);
+        idx.delete(3);
+        idx.delete(4);
+        idx.delete(7);
+        idx.delete(8);
+        idx.delete(10);
+        idx.delete(11);
+        idx.removeOffsetFromDeletedLedgers();
+
+        verify(locationsDb.get(), times(3)).compact(any(), any());
+        for (long ledgerId = 1; ledgerId <= 10; ledgerId++) {
+            boolean deleted = ledgerId == 2 || ledgerId == 3 || ledgerId == 4 || ledgerId == 7 || ledgerId == 8
+                    || ledgerId == 10;
+            for (long entryId = 0; entryId < 5; entryId++) {
+                assertEquals(deleted ? 0 : ledgerId * 100 + entryId + 1, idx.getLocation(ledgerId, entryId));
+            }
+        }
+
+        idx.close();
+    }
+}
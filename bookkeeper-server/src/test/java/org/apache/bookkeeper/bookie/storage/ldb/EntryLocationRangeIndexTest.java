@@ -0,0 +1,186 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBufAllocator;
+import org.apache.bookkeeper.bookie.storage.ldb.EntryLocationRangeIndex.RunsBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link EntryLocationRangeIndex}.
+ */
+public class EntryLocationRangeIndexTest {
+
+    private static final int ENTRY_SIZE = 100;
+    // Each entry is prefixed by its size in the entry log
+    private static final int STORED_ENTRY_SIZE = ENTRY_SIZE + 4;
+
+    private EntryLocationRangeIndex index;
+
+    @Before
+    public void setUp() {
+        index = new EntryLocationRangeIndex(ByteBufAllocator.DEFAULT, 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() {
+        index.close();
+        assertEquals(0, index.size());
+    }
+
+    /**
+     * Add entries written back to back, starting from the given location.
+     */
+    private static void addRun(RunsBuilder builder, long ledgerId, long firstEntryId, long lastEntryId,
+                               long location) {
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            builder.add(ledgerId, entryId, location, ENTRY_SIZE);
+            location += STORED_ENTRY_SIZE;
+        }
+    }
+
+    private void assertRun(long ledgerId, long firstEntryId, long lastEntryId, long location) {
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            assertEquals("Entry " + entryId, location, index.getLocation(ledgerId, entryId));
+            location += STORED_ENTRY_SIZE;
+        }
+    }
+
+    private void assertNotCovered(long ledgerId, long firstEntryId, long lastEntryId) {
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            assertEquals("Entry " + entryId, 0, index.getLocation(ledgerId, entryId));
+        }
+    }
+
+    @Test
+    public void testRuns() {
+        RunsBuilder builder = index.newRunsBuilder();
+        addRun(builder, 1, 0, 9, 1000);
+        addRun(builder, 2, 5, 7, 1000 + 10 * STORED_ENTRY_SIZE);
+        // Not contiguous with the previous entry of the ledger
+        addRun(builder, 2, 9, 10, 1000 + 13 * STORED_ENTRY_SIZE);
+        builder.finish();
+
+        assertRun(1, 0, 9, 1000);
+        assertNotCovered(1, 10, 11);
+        assertNotCovered(2, 0, 4);
+        assertRun(2, 5, 7, 1000 + 10 * STORED_ENTRY_SIZE);
+        assertNotCovered(2, 8, 8);
+        assertRun(2, 9, 10, 1000 + 13 * STORED_ENTRY_SIZE);
+        assertNotCovered(3, 0, 1);
+        assertTrue(index.size() > 0);
+    }
+
+    @Test
+    public void testRunsSplitByEntryLogRotation() {
+        RunsBuilder builder = index.newRunsBuilder();
+        addRun(builder, 1, 0, 4, 1000);
+        addRun(builder, 1, 5, 9, (1L << 32) + 1024);
+        builder.finish();
+
+        assertRun(1, 0, 4, 1000);
+        assertRun(1, 5, 9, (1L << 32) + 1024);
+    }
+
+    @Test
+    public void testShortRunsNotTracked() {
+        RunsBuilder builder = index.newRunsBuilder();
+        addRun(builder, 1, 0, 0, 1000);
+        addRun(builder, 2, 0, 0, 2000);
+        builder.finish();
+
+        assertNotCovered(1, 0, 0);
+        assertNotCovered(2, 0, 0);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testRewrittenEntries() {
+        RunsBuilder builder = index.newRunsBuilder();
+        addRun(builder, 1, 0, 9, 1000);
+        addRun(builder, 2, 0, 9, 5000);
+        builder.finish();
+
+        // The last entries are written again, by a following flush
+        builder = index.newRunsBuilder();
+        addRun(builder, 1, 5, 9, 9000);
+        // A single entry is not tracked, but it supersedes the previous locations
+        addRun(builder, 2, 3, 3, 9000 + 5 * STORED_ENTRY_SIZE);
+        builder.finish();
+
+        assertRun(1, 0, 4, 1000);
+        assertRun(1, 5, 9, 9000);
+        assertRun(2, 0, 2, 5000);
+        assertNotCovered(2, 3, 9);
+    }
+
+    @Test
+    public void testInvalidate() {
+        RunsBuilder builder = index.newRunsBuilder();
+        addRun(builder, 1, 0, 9, 1000);
+        builder.finish();
+
+        index.invalidate(1);
+
+        assertNotCovered(1, 0, 9);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyAccessedLedgers() {
+        RunsBuilder builder = index.newRunsBuilder();
+        for (long ledgerId = 1; ledgerId <= 5; ledgerId++) {
+            addRun(builder, ledgerId, 0, 9, ledgerId * 10000);
+        }
+        builder.finish();
+        long ledgerSize = index.size() / 5;
+        index.close();
+
+        index = new EntryLocationRangeIndex(ByteBufAllocator.DEFAULT, 7 * ledgerSize);
+        builder = index.newRunsBuilder();
+        for (long ledgerId = 1; ledgerId <= 5; ledgerId++) {
+            addRun(builder, ledgerId, 0, 9, ledgerId * 10000);
+        }
+        builder.finish();
+        assertRun(1, 0, 9, 10000);
+
+        builder = index.newRunsBuilder();
+        for (long ledgerId = 6; ledgerId <= 10; ledgerId++) {
+            addRun(builder, ledgerId, 0, 9, ledgerId * 10000);
+        }
+        builder.finish();
+
+        assertTrue(index.size() <= 7 * ledgerSize);
+        assertRun(1, 0, 9, 10000);
+        for (long ledgerId = 2; ledgerId <= 5; ledgerId++) {
+            assertNotCovered(ledgerId, 0, 9);
+        }
+        for (long ledgerId = 6; ledgerId <= 10; ledgerId++) {
+            assertRun(ledgerId, 0, 9, ledgerId * 10000);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link FrequencySketch}.
+ */
+public class FrequencySketchTest {
+
+    @Test
+    public void testFrequency() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+
+        assertEquals(0, sketch.frequency(1, 0));
+        for (int i = 1; i <= 5; i++) {
+            sketch.increment(1, 0);
+            assertEquals(i, sketch.frequency(1, 0));
+        }
+        for (int i = 0; i < 3; i++) {
+            sketch.increment(2, 0);
+        }
+
+        assertEquals(5, sketch.frequency(1, 0));
+        assertEquals(3, sketch.frequency(2, 0));
+        assertEquals(0, sketch.frequency(1, 1));
+    }
+
+    @Test
+    public void testSaturation() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(1, 0);
+        }
+
+        assertEquals(15, sketch.frequency(1, 0));
+    }
+
+    @Test
+    public void testAging() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 12; i++) {
+            sketch.increment(1, 0);
+        }
+        assertEquals(12, sketch.frequency(1, 0));
+
+        // After 10 accesses per counter of a row, all the counters are halved
+        for (long entryId = 0; entryId < 10 * 1024; entryId++) {
+            sketch.increment(2, entryId);
+        }
+
+        int frequency = sketch.frequency(1, 0);
+        assertTrue("Frequency " + frequency + " was not halved", frequency >= 6 && frequency < 12);
+    }
+}
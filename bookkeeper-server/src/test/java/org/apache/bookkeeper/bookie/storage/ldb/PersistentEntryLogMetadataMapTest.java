@@ -0,0 +1,155 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link PersistentEntryLogMetadataMap}.
+ */
+public class PersistentEntryLogMetadataMapTest {
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private File tmpDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("bkTest", ".dir");
+        tmpDir.delete();
+        tmpDir.mkdir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static EntryLogMetadata newMetadata(long entryLogId) {
+        EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+        meta.addLedgerSize(entryLogId * 10 + 1, 1000);
+        meta.addLedgerSize(entryLogId * 10 + 2, 2000, 4000);
+        return meta;
+    }
+
+    private static Map<Long, EntryLogMetadata> readAll(PersistentEntryLogMetadataMap map) throws Exception {
+        Map<Long, EntryLogMetadata> all = new TreeMap<>();
+        map.forEach(all::put);
+        return all;
+    }
+
+    private static void assertMetadata(EntryLogMetadata expected, EntryLogMetadata actual) {
+        assertEquals(expected.getEntryLogId(), actual.getEntryLogId());
+        assertEquals(expected.getTotalSize(), actual.getTotalSize());
+        assertEquals(expected.getRemainingSize(), actual.getRemainingSize());
+        assertEquals(expected.getTotalLogicalSize(), actual.getTotalLogicalSize());
+        assertEquals(expected.getRemainingLogicalSize(), actual.getRemainingLogicalSize());
+        assertEquals(expected.getLedgersMap().size(), actual.getLedgersMap().size());
+        expected.getLedgersMap().forEach((ledgerId, size) ->
+                assertEquals(size, actual.getLedgersMap().get(ledgerId)));
+    }
+
+    @Test
+    public void testPutRemove() throws Exception {
+        PersistentEntryLogMetadataMap map = new PersistentEntryLogMetadataMap(conf, tmpDir.toString());
+        try {
+            assertEquals(0, map.size());
+            assertFalse(map.containsKey(1));
+
+            map.put(1, newMetadata(1));
+            map.put(2, newMetadata(2));
+            assertTrue(map.containsKey(1));
+            assertTrue(map.containsKey(2));
+            assertEquals(2, map.size());
+
+            Map<Long, EntryLogMetadata> all = readAll(map);
+            assertEquals(2, all.size());
+            assertMetadata(newMetadata(1), all.get(1L));
+            assertMetadata(newMetadata(2), all.get(2L));
+
+            map.remove(1);
+            assertFalse(map.containsKey(1));
+            assertEquals(1, map.size());
+        } finally {
+            map.close();
+        }
+    }
+
+    @Test
+    public void testUpdatedMetadataPutBack() throws Exception {
+        PersistentEntryLogMetadataMap map = new PersistentEntryLogMetadataMap(conf, tmpDir.toString());
+        try {
+            map.put(1, newMetadata(1));
+
+            // The metadata read from the map is a copy
+            map.forEach((entryLogId, meta) -> meta.removeLedgerIf(ledgerId -> ledgerId == 11));
+            assertMetadata(newMetadata(1), readAll(map).get(1L));
+
+            EntryLogMetadata updated = readAll(map).get(1L);
+            updated.removeLedgerIf(ledgerId -> ledgerId == 11);
+            map.put(1, updated);
+
+            EntryLogMetadata meta = readAll(map).get(1L);
+            assertFalse(meta.containsLedger(11));
+            assertTrue(meta.containsLedger(12));
+            assertEquals(3000, meta.getTotalSize());
+            assertEquals(2000, meta.getRemainingSize());
+            assertEquals(4000, meta.getRemainingLogicalSize());
+        } finally {
+            map.close();
+        }
+    }
+
+    @Test
+    public void testPersistedAcrossRestarts() throws Exception {
+        PersistentEntryLogMetadataMap map = new PersistentEntryLogMetadataMap(conf, tmpDir.toString());
+        for (long entryLogId = 0; entryLogId < 10; entryLogId++) {
+            map.put(entryLogId, newMetadata(entryLogId));
+        }
+        map.remove(5);
+        map.close();
+
+        map = new PersistentEntryLogMetadataMap(conf, tmpDir.toString());
+        try {
+            Map<Long, EntryLogMetadata> all = readAll(map);
+            assertEquals(9, all.size());
+            assertFalse(all.containsKey(5L));
+            for (Map.Entry<Long, EntryLogMetadata> entry : all.entrySet()) {
+                assertMetadata(newMetadata(entry.getKey()), entry.getValue());
+            }
+        } finally {
+            map.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.apache.bookkeeper.bookie.storage.ldb.ReadAheadCache.ReadAheadHitListener;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ReadCache}.
+ */
+public class ReadCacheTest {
+
+    @Test
+    public void testReadAheadHits() {
+        ReadAheadHitListener listener = mock(ReadAheadHitListener.class);
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 64 * 1024, listener);
+
+        ByteBuf entry = Unpooled.wrappedBuffer(new byte[100]);
+        cache.put(1, 0, entry);
+        cache.putReadAhead(1, 1, entry);
+        assertNull(cache.get(1, 2));
+
+        ByteBuf res = cache.get(1, 0);
+        assertEquals(100, res.readableBytes());
+        res.release();
+        verify(listener, never()).onReadAheadHit(1, 100);
+
+        res = cache.get(1, 1);
+        assertEquals(100, res.readableBytes());
+        res.release();
+        verify(listener).onReadAheadHit(1, 100);
+
+        assertEquals(2, cache.count());
+        cache.close();
+    }
+}
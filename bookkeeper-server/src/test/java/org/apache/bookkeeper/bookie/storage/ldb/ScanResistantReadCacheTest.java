@@ -0,0 +1,159 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.apache.bookkeeper.bookie.storage.ldb.ReadAheadCache.ReadAheadHitListener;
+import org.apache.bookkeeper.stats.Counter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ScanResistantReadCache}.
+ */
+public class ScanResistantReadCacheTest {
+
+    private static final int ENTRY_SIZE = 1024;
+    // A single stripe of 2 segments of 32 entries
+    private static final int SEGMENT_SIZE = 32 * ENTRY_SIZE;
+    private static final int ENTRIES_PER_SEGMENT = SEGMENT_SIZE / ENTRY_SIZE;
+
+    private Counter admissionRejects;
+    private ReadAheadHitListener listener;
+    private ScanResistantReadCache cache;
+
+    @Before
+    public void setUp() {
+        admissionRejects = mock(Counter.class);
+        listener = mock(ReadAheadHitListener.class);
+        cache = new ScanResistantReadCache(ByteBufAllocator.DEFAULT, 2 * SEGMENT_SIZE, 1, SEGMENT_SIZE,
+                admissionRejects, listener);
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writerIndex(ENTRY_SIZE);
+        return entry;
+    }
+
+    private boolean contains(long ledgerId, long entryId) {
+        ByteBuf entry = cache.get(ledgerId, entryId);
+        if (entry == null) {
+            return false;
+        }
+        assertEquals(ENTRY_SIZE, entry.readableBytes());
+        assertEquals(ledgerId, entry.readLong());
+        assertEquals(entryId, entry.readLong());
+        entry.release();
+        return true;
+    }
+
+    @Test
+    public void testPutGet() {
+        assertNull(cache.get(1, 0));
+
+        cache.put(1, 0, entry(1, 0));
+        cache.put(1, 1, entry(1, 1));
+
+        assertEquals(2, cache.count());
+        assertEquals(2 * ENTRY_SIZE, cache.size());
+        assertTrue(contains(1, 0));
+        assertTrue(contains(1, 1));
+        assertFalse(contains(1, 2));
+        verify(admissionRejects, never()).inc();
+    }
+
+    @Test
+    public void testScanDoesNotEvictFrequentEntries() {
+        // Entries read by tailing readers, several times each
+        for (long entryId = 0; entryId < ENTRIES_PER_SEGMENT; entryId++) {
+            cache.put(1, entryId, entry(1, entryId));
+        }
+        for (int i = 0; i < 4; i++) {
+            for (long entryId = 0; entryId < ENTRIES_PER_SEGMENT; entryId++) {
+                assertTrue(contains(1, entryId));
+            }
+        }
+
+        // A scan of another ledger, each entry read once
+        for (long entryId = 0; entryId < 4 * ENTRIES_PER_SEGMENT; entryId++) {
+            assertFalse(contains(2, entryId));
+            cache.put(2, entryId, entry(2, entryId));
+        }
+
+        verify(admissionRejects, atLeastOnce()).inc();
+        for (long entryId = 0; entryId < ENTRIES_PER_SEGMENT; entryId++) {
+            assertTrue(contains(1, entryId));
+        }
+    }
+
+    @Test
+    public void testReadAheadEntriesReplaceEntriesReadOnce() {
+        // Entries read once, after a miss
+        for (long entryId = 0; entryId < ENTRIES_PER_SEGMENT + 1; entryId++) {
+            assertFalse(contains(1, entryId));
+            cache.put(1, entryId, entry(1, entryId));
+        }
+
+        // Entries that were never read are not admitted, unless they were read ahead
+        cache.put(2, 0, entry(2, 0));
+        verify(admissionRejects, times(1)).inc();
+        cache.putReadAhead(2, 1, entry(2, 1));
+        verify(admissionRejects, times(1)).inc();
+
+        assertFalse(contains(2, 0));
+        assertTrue(contains(2, 1));
+    }
+
+    @Test
+    public void testReadAheadHits() {
+        cache.put(1, 0, entry(1, 0));
+        cache.putReadAhead(1, 1, entry(1, 1));
+
+        assertTrue(contains(1, 0));
+        verify(listener, never()).onReadAheadHit(1, ENTRY_SIZE);
+
+        assertTrue(contains(1, 1));
+        assertTrue(contains(1, 1));
+        verify(listener, times(2)).onReadAheadHit(1, ENTRY_SIZE);
+    }
+}
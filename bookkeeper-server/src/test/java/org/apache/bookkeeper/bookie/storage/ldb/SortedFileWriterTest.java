@@ -0,0 +1,131 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageRocksDB.SortedFileWriter;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rocksdb.Options;
+import org.rocksdb.SstFileReader;
+import org.rocksdb.TableProperties;
+
+/**
+ * Unit test for {@link SortedFileWriter}.
+ */
+public class SortedFileWriterTest {
+
+    private File tmpDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("bkTest", ".dir");
+        tmpDir.delete();
+        tmpDir.mkdir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private String writeFile(ServerConfiguration conf) throws Exception {
+        String path = new File(tmpDir, "test.sst").toString();
+        try (SortedFileWriter writer = new SortedFileWriter(path, conf)) {
+            for (long entryId = 0; entryId < 100; entryId++) {
+                writer.put(keyBytes(1, entryId), valueBytes(entryId * 10));
+            }
+            writer.finish();
+        }
+        return path;
+    }
+
+    private static byte[] keyBytes(long ledgerId, long entryId) {
+        LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
+        byte[] bytes = key.array.clone();
+        key.recycle();
+        return bytes;
+    }
+
+    private static byte[] valueBytes(long location) {
+        byte[] bytes = new byte[8];
+        ArrayUtil.setLong(bytes, 0, location);
+        return bytes;
+    }
+
+    private static TableProperties readProperties(String path) throws Exception {
+        try (Options options = new Options(); SstFileReader reader = new SstFileReader(options)) {
+            reader.open(path);
+            return reader.getTableProperties();
+        }
+    }
+
+    @Test
+    public void testDefaultFileFormat() throws Exception {
+        TableProperties properties = readProperties(writeFile(new ServerConfiguration()));
+
+        assertEquals("LZ4", properties.getCompressionName());
+        assertEquals("rocksdb.BuiltinBloomFilter", properties.getFilterPolicyName());
+        assertEquals("nullptr", properties.getPrefixExtractorName());
+    }
+
+    @Test
+    public void testConfiguredFileFormat() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setProperty("dbStorage_rocksDB_lz4CompressionEnabled", false);
+        conf.setProperty("dbStorage_rocksDB_bloomFilterBitsPerKey", 0);
+        conf.setProperty("dbStorage_rocksDB_tunedProfileEnabled", true);
+        TableProperties properties = readProperties(writeFile(conf));
+
+        assertEquals("Snappy", properties.getCompressionName());
+        assertNull(properties.getFilterPolicyName());
+        assertTrue(properties.getPrefixExtractorName(), properties.getPrefixExtractorName().contains("8"));
+    }
+
+    @Test
+    public void testIngestInTunedIndex() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setProperty("dbStorage_rocksDB_tunedProfileEnabled", true);
+        String path = writeFile(conf);
+
+        KeyValueStorageRocksDB index = new KeyValueStorageRocksDB(tmpDir.toString(), "locations",
+                DbConfigType.Huge, conf);
+        try {
+            index.ingestSortedFiles(Collections.singletonList(path));
+            assertArrayEquals(valueBytes(420), index.get(keyBytes(1, 42)));
+            assertEquals(100, index.count());
+        } finally {
+            index.close();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link WriteCache}.
+ */
+public class WriteCacheTest {
+
+    private WriteCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new WriteCache(ByteBufAllocator.DEFAULT, 1024 * 1024, 16 * 1024);
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf buf = Unpooled.buffer(1024);
+        buf.writeLong(ledgerId);
+        buf.writeLong(entryId);
+        buf.writerIndex(buf.capacity());
+        return buf;
+    }
+
+    private List<long[]> collect() {
+        List<long[]> entries = new ArrayList<>();
+        cache.forEach((ledgerId, entryId, entry) -> {
+            assertEquals(ledgerId, entry.getLong(entry.readerIndex()));
+            assertEquals(entryId, entry.getLong(entry.readerIndex() + 8));
+            entries.add(new long[] { ledgerId, entryId });
+        });
+        return entries;
+    }
+
+    @Test
+    public void forEachIsSorted() {
+        for (long entryId = 9; entryId >= 0; entryId--) {
+            for (long ledgerId = 3; ledgerId >= 1; ledgerId--) {
+                assertTrue(cache.put(ledgerId, entryId, entry(ledgerId, entryId)));
+            }
+        }
+
+        List<long[]> entries = collect();
+        assertEquals(30, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(1 + i / 10, entries.get(i)[0]);
+            assertEquals(i % 10, entries.get(i)[1]);
+        }
+    }
+
+    @Test
+    public void deleteLedgerAfterSort() {
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            for (long entryId = 0; entryId < 10; entryId++) {
+                assertTrue(cache.put(ledgerId, entryId, entry(ledgerId, entryId)));
+            }
+        }
+
+        // The queued write cache gets sorted ahead of the flush, a ledger deleted in between must not be flushed
+        cache.sort();
+        cache.deleteLedger(2);
+
+        List<long[]> entries = collect();
+        assertEquals(20, entries.size());
+        for (long[] e : entries) {
+            assertFalse(e[0] == 2);
+        }
+
+        // Sorting again without changes gives the same result
+        cache.sort();
+        assertEquals(20, collect().size());
+    }
+
+    @Test
+    public void putAfterSort() {
+        assertTrue(cache.put(1, 1, entry(1, 1)));
+        cache.sort();
+        assertTrue(cache.put(1, 0, entry(1, 0)));
+
+        List<long[]> entries = collect();
+        assertEquals(2, entries.size());
+        assertEquals(0, entries.get(0)[1]);
+        assertEquals(1, entries.get(1)[1]);
+    }
+
+    @Test
+    public void clearResetsSortedEntries() {
+        assertTrue(cache.put(1, 0, entry(1, 0)));
+        cache.deleteLedger(1);
+        cache.sort();
+        cache.clear();
+        assertTrue(cache.isEmpty());
+        assertNull(cache.get(1, 0));
+
+        // The deleted ledgers are forgotten as well
+        assertTrue(cache.put(1, 0, entry(1, 0)));
+        assertEquals(1, collect().size());
+    }
+}
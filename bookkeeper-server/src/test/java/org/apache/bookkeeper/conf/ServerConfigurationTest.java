@@ -0,0 +1,60 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.conf;
+
+import static org.junit.Assert.fail;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Test;
+
+/**
+ * Test the validation of the {@link ServerConfiguration}.
+ */
+public class ServerConfigurationTest {
+
+    @Test
+    public void testJournalSyncModes() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirsName(new String[] { "/tmp/journal1", "/tmp/journal2" });
+
+        conf.setJournalSyncModes(new String[] { "FORCE" });
+        conf.validate();
+
+        conf.setJournalSyncModes(new String[] { "sync_file_range", "dsync" });
+        conf.validate();
+
+        conf.setJournalSyncModes(new String[] { "force", "dsync", "dsync" });
+        assertInvalid(conf);
+
+        conf.setJournalSyncModes(new String[] { "force", "fsync" });
+        assertInvalid(conf);
+    }
+
+    private static void assertInvalid(ServerConfiguration conf) {
+        try {
+            conf.validate();
+            fail("The configuration should be invalid");
+        } catch (ConfigurationException e) {
+            // expected
+        }
+    }
+}